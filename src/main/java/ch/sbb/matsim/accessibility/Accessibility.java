@@ -1,6 +1,7 @@
 package ch.sbb.matsim.accessibility;
 
 import ch.sbb.matsim.analysis.skims.RooftopUtils;
+import ch.sbb.matsim.accessibility.StopConnectionStore.StopConnections;
 import ch.sbb.matsim.analysis.skims.RooftopUtils.ODConnection;
 import ch.sbb.matsim.config.variables.SBBModes;
 import ch.sbb.matsim.routing.pt.raptor.*;
@@ -12,7 +13,6 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
-import org.matsim.api.core.v01.IdMap;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
@@ -40,32 +40,48 @@ import org.matsim.core.utils.collections.Tuple;
 import org.matsim.core.utils.geometry.CoordUtils;
 import org.matsim.core.utils.io.IOUtils;
 import org.matsim.core.utils.misc.Counter;
-import org.matsim.core.utils.misc.OptionalTime;
 import org.matsim.pt.transitSchedule.api.*;
 import org.matsim.vehicles.Vehicle;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
-import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.function.BiPredicate;
+import java.util.function.Supplier;
 import java.util.function.Predicate;
 
 /**
  * Calculates high-resolution accessibility.
  * <p>
- * A simple approach would iterate over all required coordinates (=locations where accessibility should be calculated). Considering the fact that, for high-resolution grids, the number of coordinates
- * is a multiple of the number of transit stops, we might end up calculating the same (or very similar) travel times from transit stops multiple times. To prevent calculating the same data over and
- * over and thus to improve the calculation speed, this algorithm applies some optimization.
+ * For high-resolution grids, the number of coordinates is a multiple of the number of transit stops. Routing from every coordinate separately would calculate
+ * the same (or very similar) connections from the same transit stops over and over. Instead, the public transport connections from a transit stop to all
+ * other stops can be calculated only once and kept in a {@link StopConnectionStore} that is shared by all threads. The public transport part of the
+ * accessibility of a coordinate then combines the stored connections of the stops near the coordinate with the walk times to the stops and from the stops
+ * near the destinations.
  * <p>
- * The optimization works as follows: - The list of coordinates is split into large blocks that cover a certain area, e.g. a 10km x 10km raster zone. - The transit stops are also assigned to the same
- * blocks, although a single stop can be part of multiple blocks as we add some buffer around the blocks (a start coordinate in the block could use a transit stop just slightly outside the block). -
- * Process each block: Compare the number of coordinates and transit stops. If the number of coordinates is considerable larger than the number of stops, use the optimized algorithm which first
- * pre-calculates connections between all stops, and then uses this data to calculate the accessibility for each coordinate. Otherwise, the unoptimized algorithm will be used which just iterates over
- * all coordinates and calculates the necessary data for each.
+ * The coordinates are split into blocks of 10km x 10km that are calculated one after the other. The transit stops are assigned to the same blocks, with a
+ * buffer of the search radius around the blocks, so a stop can be part of multiple blocks. If the number of coordinates of a block is considerably larger
+ * than the number of its stops, the connections of all stops of the block are calculated first, with a tree for every departure of the stop, and the
+ * coordinates use the stored connections. Otherwise, trees are calculated from the stops near each coordinate every two minutes. With
+ * {@link #setUseRangeQuery(boolean)}, the connections of a stop are calculated with a single range query instead, and used for all blocks.
+ * <p>
+ * The store keeps the connections in memory up to {@link #setConnectionStoreMemoryLimit(long)}. Connections exceeding the limit are written to the spill
+ * file set with {@link #setConnectionStoreSpillFile(File)}, or calculated again when needed if there is no spill file.
  */
 public class Accessibility {
 
@@ -92,6 +108,13 @@ public class Accessibility {
 	private SwissRailRaptorData raptorData;
 	private TransitSchedule transitSchedule;
 	private DeparturesCache departuresCache;
+	private long connectionStoreMemoryLimit = Runtime.getRuntime().maxMemory() / 2;
+	private File connectionStoreSpillFile = null;
+	private boolean useRangeQuery = false;
+	private File checkpointDirectory = null;
+	private int partitionIndex = 0;
+	private int partitionCount = 1;
+	private OutputFormat outputFormat = OutputFormat.CSV;
 
 	public Accessibility(String networkFilename, String eventsFilename, String scheduleFilename, String transitNetworkFilename,
 			Map<Coord, Double> attractions, double[] carAMDepTimes, double[] carPMDepTimes,
@@ -129,53 +152,144 @@ public class Accessibility {
 		return false;
 	}
 
-	private static List<ODConnection> buildODConnections(List<Map<Id<TransitStopFacility>, SwissRailRaptorCore.TravelInfo>> trees, Map<Id<TransitStopFacility>, Double> accessTimes,
-			Map<Id<TransitStopFacility>, Double> egressTimes) {
-		List<ODConnection> connections = new ArrayList<>();
-
-		for (Map<Id<TransitStopFacility>, SwissRailRaptorCore.TravelInfo> tree : trees) {
-			for (Map.Entry<Id<TransitStopFacility>, Double> egressEntry : egressTimes.entrySet()) {
-				Id<TransitStopFacility> egressStopId = egressEntry.getKey();
-				Double egressTime = egressEntry.getValue();
-				SwissRailRaptorCore.TravelInfo info = tree.get(egressStopId);
+	/**
+	 * Calculates the best connections from the stop to all other stops, departing in the extended time window around the main time window. A tree is
+	 * calculated at every departure of the stop, at most one per minute. For every reached stop, the connections of all trees are filtered with
+	 * {@link RooftopUtils#sortAndFilterConnections(List, double)} and stored in the filtered order.
+	 */
+	static StopConnections calcStopConnections(TransitStopFacility fromStop, SwissRailRaptor raptor, RaptorParameters parameters, double ptMinDepartureTime,
+			double ptMaxDepartureTime, DeparturesCache departuresCache, BiPredicate<TransitLine, TransitRoute> trainDetector) {
+		// to calculate the correct adaption times, we need to expand the time window to also catch departures before and after the time window of interest.
+		double mainTimeWindow = ptMaxDepartureTime - ptMinDepartureTime;
+		double time = ptMinDepartureTime - mainTimeWindow;
+		double endTime = ptMaxDepartureTime + mainTimeWindow;
+
+		Map<Id<TransitStopFacility>, List<ODConnection>> connectionsPerStop = new LinkedHashMap<>();
+		int fromStopIndex = fromStop.getId().index();
+		while (time < endTime) {
+			double departureTime = departuresCache.nextDepartureSeconds(fromStopIndex, time);
+			if (departureTime == DeparturesCache.NO_DEPARTURE) {
+				break;
+			}
+			Map<Id<TransitStopFacility>, TravelInfo> tree = raptor.calcTree(fromStop, departureTime, parameters, null);
+			for (Map.Entry<Id<TransitStopFacility>, TravelInfo> e : tree.entrySet()) {
+				TravelInfo info = e.getValue();
 				if (info != null && !info.isWalkOnly()) {
-					Double accessTime = accessTimes.get(info.departureStop);
-					ODConnection connection = new ODConnection(info.ptDepartureTime, info.ptTravelTime, accessTime, egressTime, info.transferCount, info);
-					connections.add(connection);
+					connectionsPerStop.computeIfAbsent(e.getKey(), k -> new ArrayList<>())
+							.add(new ODConnection(info.ptDepartureTime, info.ptTravelTime, 0, 0, info.transferCount, info));
 				}
 			}
+			time = departureTime + 60; // +1 minute
 		}
 
-		return connections;
+		StopConnectionStore.Builder builder = new StopConnectionStore.Builder();
+		for (Map.Entry<Id<TransitStopFacility>, List<ODConnection>> e : connectionsPerStop.entrySet()) {
+			int toStopIndex = e.getKey().index();
+			for (ODConnection connection : RooftopUtils.sortAndFilterConnections(e.getValue(), ptMaxDepartureTime)) {
+				RouteStatistics statistics = calcRouteStatistics(connection.travelInfo.getRaptorRoute(), trainDetector);
+				builder.add(toStopIndex, connection.departureTime, connection.travelTime, (int) connection.transferCount, statistics.distance,
+						statistics.inVehicleTime, statistics.trainInVehicleTime);
+			}
+		}
+		return builder.build();
 	}
 
-	private static List<ODConnection> buildODConnections(ConcurrentHashMap<Id<TransitStopFacility>, IdMap<TransitStopFacility, List<ODConnection>>> cache,
-			Map<Id<TransitStopFacility>, Double> accessTimes, Map<Id<TransitStopFacility>, Double> egressTimes) {
-		List<ODConnection> connections = new ArrayList<>();
+	/**
+	 * Calculates the connections from the stop to all other stops like {@link #calcStopConnections}, but with a single range query instead of a tree per
+	 * departure. From the connections of the range query, every destination stop gets the earliest arrival of the connections departing at or after each
+	 * departure the trees would use. As the range query optimizes arrival times and transfers, while the trees minimize the cost, the resulting connections
+	 * can differ from the trees, so the results are only an approximation of {@link #calcStopConnections}.
+	 */
+	static StopConnections calcStopConnectionsWithRangeQuery(TransitStopFacility fromStop, SwissRailRaptor raptor, RaptorParameters parameters, double ptMinDepartureTime,
+			double ptMaxDepartureTime, DeparturesCache departuresCache, BiPredicate<TransitLine, TransitRoute> trainDetector) {
+		// to calculate the correct adaption times, we need to expand the time window to also catch departures before and after the time window of interest.
+		double mainTimeWindow = ptMaxDepartureTime - ptMinDepartureTime;
+		double time = ptMinDepartureTime - mainTimeWindow;
+		double endTime = ptMaxDepartureTime + mainTimeWindow;
+
+		double[] sampleTimes = new double[16];
+		int sampleCount = 0;
+		int fromStopIndex = fromStop.getId().index();
+		while (time < endTime) {
+			double departureTime = departuresCache.nextDepartureSeconds(fromStopIndex, time);
+			if (departureTime == DeparturesCache.NO_DEPARTURE) {
+				break;
+			}
+			if (sampleCount == sampleTimes.length) {
+				sampleTimes = Arrays.copyOf(sampleTimes, sampleCount * 2);
+			}
+			sampleTimes[sampleCount++] = departureTime;
+			time = departureTime + 60; // +1 minute
+		}
+		if (sampleCount == 0) {
+			return new StopConnectionStore.Builder().build();
+		}
 
-		for (Map.Entry<Id<TransitStopFacility>, Double> accessE : accessTimes.entrySet()) {
-			Id<TransitStopFacility> fromStopId = accessE.getKey();
-			double accessTime = accessE.getValue();
-			IdMap<TransitStopFacility, List<ODConnection>> fromConnections = cache.get(fromStopId);
-			if (fromConnections == null) {
-				log.warn("no connections found for stop " + fromStopId);
-				continue;
+		Map<TransitStopFacility, List<RangeArrival>> arrivalsPerStop = new LinkedHashMap<>();
+		raptor.calcTreesObservable(fromStop, sampleTimes[0], endTime, parameters, null, (departureTime, stopFacility, arrivalTime, transferCount, route) ->
+				arrivalsPerStop.computeIfAbsent(stopFacility, k -> new ArrayList<>()).add(new RangeArrival(departureTime, arrivalTime, transferCount, route)));
+
+		StopConnectionStore.Builder builder = new StopConnectionStore.Builder();
+		Map<ODConnection, RangeArrival> picked = new IdentityHashMap<>();
+		for (Map.Entry<TransitStopFacility, List<RangeArrival>> e : arrivalsPerStop.entrySet()) {
+			List<RangeArrival> arrivals = e.getValue();
+			arrivals.sort(Comparator.comparingDouble(a -> a.departureTime));
+
+			// best[i]: the earliest arrival of all connections departing not before arrivals[i], the latest departure of them if several arrive at the same time
+			int[] best = new int[arrivals.size()];
+			best[best.length - 1] = best.length - 1;
+			for (int i = best.length - 2; i >= 0; i--) {
+				best[i] = arrivals.get(i).arrivalTime < arrivals.get(best[i + 1]).arrivalTime ? i : best[i + 1];
 			}
 
-			for (Map.Entry<Id<TransitStopFacility>, Double> egressE : egressTimes.entrySet()) {
-				Id<TransitStopFacility> toStopId = egressE.getKey();
-				double egressTime = egressE.getValue();
-				List<ODConnection> fromToConnections = fromConnections.get(toStopId);
-				if (fromToConnections != null) {
-					for (ODConnection conn : fromToConnections) {
-						connections.add(new ODConnection(conn.departureTime, conn.travelTime, accessTime, egressTime, conn.transferCount, conn.travelInfo));
-					}
+			List<ODConnection> connections = new ArrayList<>();
+			int next = 0;
+			for (int k = 0; k < sampleCount; k++) {
+				while (next < best.length && arrivals.get(next).departureTime < sampleTimes[k]) {
+					next++;
+				}
+				if (next == best.length) {
+					break;
 				}
+				RangeArrival arrival = arrivals.get(best[next]);
+				if (!arrival.getStatistics(trainDetector).hasPtLeg) {
+					// like a walk-only connection of a tree, it does not count as pt connection
+					continue;
+				}
+				ODConnection connection = new ODConnection(arrival.departureTime, arrival.arrivalTime - arrival.departureTime, 0, 0, arrival.transferCount, null);
+				connections.add(connection);
+				picked.put(connection, arrival);
 			}
 
+			int toStopIndex = e.getKey().getId().index();
+			for (ODConnection connection : RooftopUtils.sortAndFilterConnections(connections, ptMaxDepartureTime)) {
+				RouteStatistics statistics = picked.get(connection).getStatistics(trainDetector);
+				builder.add(toStopIndex, connection.departureTime, connection.travelTime, (int) connection.transferCount, statistics.distance,
+						statistics.inVehicleTime, statistics.trainInVehicleTime);
+			}
+			picked.clear();
 		}
+		return builder.build();
+	}
 
-		return connections;
+	private static RouteStatistics calcRouteStatistics(RaptorRoute route, BiPredicate<TransitLine, TransitRoute> trainDetector) {
+		boolean hasPtLeg = false;
+		double distance = 0;
+		double inVehicleTime = 0;
+		double trainInVehicleTime = 0;
+		for (RoutePart part : route.getParts()) {
+			if (part.line != null) {
+				// it's a non-transfer part, an actual pt stage
+				hasPtLeg = true;
+				double partInVehicleTime = part.arrivalTime - part.boardingTime;
+				distance += part.distance;
+				inVehicleTime += partInVehicleTime;
+				if (trainDetector.test(part.line, part.route)) {
+					trainInVehicleTime += partInVehicleTime;
+				}
+			}
+		}
+		return new RouteStatistics(hasPtLeg, distance, inVehicleTime, trainInVehicleTime);
 	}
 
 	private static Collection<TransitStopFacility> findStopCandidates(Coord coord, SwissRailRaptor raptor, RaptorParameters parameters) {
@@ -188,6 +302,18 @@ public class Accessibility {
 		return stops;
 	}
 
+	/**
+	 * Returns the stops in the iteration order of a hash map with the stop ids as keys. The access and egress stops are used in this order, like when their
+	 * walk times were kept in hash maps: the order of the connections decides which one is kept by the rooftop filter if several depart at the same time.
+	 */
+	private static Collection<TransitStopFacility> inHashMapOrder(Collection<TransitStopFacility> stops) {
+		Map<Id<TransitStopFacility>, TransitStopFacility> stopsById = new HashMap<>();
+		for (TransitStopFacility stop : stops) {
+			stopsById.put(stop.getId(), stop);
+		}
+		return stopsById.values();
+	}
+
 	public void setXy2LinksPredicate(Predicate<Link> xy2linksPredicate) {
 		this.xy2linksPredicate = xy2linksPredicate;
 	}
@@ -196,7 +322,64 @@ public class Accessibility {
 		this.threadCount = threadCount;
 	}
 
-	public void calculateAccessibility(List<Coord> coordinates, Modes[] modes, File csvOutputFile) {
+	/**
+	 * Sets the approximate amount of heap used to keep pre-calculated stop-to-stop connections between blocks. Defaults to half of the maximum heap size.
+	 */
+	public void setConnectionStoreMemoryLimit(long bytes) {
+		this.connectionStoreMemoryLimit = bytes;
+	}
+
+	/**
+	 * Sets a file to which pre-calculated stop-to-stop connections are written when they exceed the memory limit, instead of calculating them again. The file
+	 * is deleted at the end of the calculation.
+	 */
+	public void setConnectionStoreSpillFile(File spillFile) {
+		this.connectionStoreSpillFile = spillFile;
+	}
+
+	/**
+	 * If enabled, the connections of the transit stops are calculated with a single range query per stop instead of a tree for every departure, and also used
+	 * for the blocks with few coordinates, instead of routing from every coordinate. This is considerably faster, but the range query does not find exactly
+	 * the same connections as the trees, so the results differ slightly. Disabled by default.
+	 */
+	public void setUseRangeQuery(boolean useRangeQuery) {
+		this.useRangeQuery = useRangeQuery;
+	}
+
+	/**
+	 * Enables checkpointing: the results of every block are written to a separate file in the directory, together with a manifest of the finished blocks. A
+	 * restarted run with the same directory skips the finished blocks. At the end, all block results are combined into the output file.
+	 */
+	public void setCheckpointDirectory(File checkpointDirectory) {
+		this.checkpointDirectory = checkpointDirectory;
+	}
+
+	/**
+	 * Only calculates every <code>partitionCount</code>-th block, starting with block <code>partitionIndex</code>. Allows to distribute the calculation over
+	 * several machines that share the same checkpoint directory. Requires a checkpoint directory, see {@link #setCheckpointDirectory(File)}.
+	 */
+	public void setPartition(int partitionIndex, int partitionCount) {
+		if (this.checkpointDirectory == null) {
+			throw new IllegalStateException("a partition requires a checkpoint directory shared by all partitions, set it with setCheckpointDirectory() first.");
+		}
+		if (partitionIndex < 0 || partitionIndex >= partitionCount) {
+			throw new IllegalArgumentException("invalid partition " + partitionIndex + " of " + partitionCount);
+		}
+		this.partitionIndex = partitionIndex;
+		this.partitionCount = partitionCount;
+	}
+
+	/**
+	 * Sets the format of the output file. {@link OutputFormat#BINARY} files can be converted to CSV with {@link BinaryAccessibilityFile#exportToCsv(File, File)}.
+	 */
+	public void setOutputFormat(OutputFormat outputFormat) {
+		this.outputFormat = outputFormat;
+	}
+
+	public void calculateAccessibility(List<Coord> coordinates, Modes[] modes, File outputFile) {
+		if (this.partitionCount > 1 && this.checkpointDirectory == null) {
+			throw new IllegalStateException("partition " + this.partitionIndex + " of " + this.partitionCount + " is set, but the checkpoint directory was removed.");
+		}
 		boolean requiresCar = requiresCar(modes);
 
 		if (!this.scenarioLoaded) {
@@ -207,147 +390,266 @@ public class Accessibility {
 		log.info("filter car-only network for assigning links to locations");
 		Network xy2linksNetwork = extractXy2LinksNetwork(this.carNetwork);
 
-		log.info("pre-create SwissRailRaptor-instances...");
-		SwissRailRaptor[] raptors = new SwissRailRaptor[this.threadCount];
-		for (int i = 0; i < this.threadCount; i++) {
-			raptors[i] = new SwissRailRaptor(raptorData, null, null, new DefaultRaptorStopFinder(ConfigUtils.createConfig(), null, null), new DefaultRaptorInVehicleCostCalculator(), new DefaultRaptorTransferCostCalculator());
-		}
-
+		log.info("prepare destination data...");
+		SwissRailRaptor zoneRaptor = createRaptor();
+		boolean requiresPt = requiresPt(modes);
+		RaptorParameters raptorParameters = RaptorUtils.createParameters(this.config);
+		double walkSpeed = raptorParameters.getBeelineWalkSpeed();
 		Map<Coord, ZoneData> zoneData = new HashMap<>();
 		for (Map.Entry<Coord, Double> e : this.attractions.entrySet()) {
 			double attraction = e.getValue();
 			if (attraction > 0) {
 				Coord coord = e.getKey();
+				Zone zone = this.zones.findZone(coord.getX(), coord.getY());
+				double carEgressTime = zone == null ? 0 : ((Number) zone.getAttribute("at_car")).doubleValue(); // in seconds
+				double carParkingCost = zone == null ? 0 : ((Number) zone.getAttribute("pc_car")).doubleValue();
+
+				Collection<TransitStopFacility> egressStops = requiresPt ? inHashMapOrder(findStopCandidates(coord, zoneRaptor, raptorParameters)) : Collections.emptyList();
+				List<Id<TransitStopFacility>> egressStopIds = new ArrayList<>(egressStops.size());
+				int[] egressStopIndices = new int[egressStops.size()];
+				double[] egressTimes = new double[egressStops.size()];
+				int i = 0;
+				for (TransitStopFacility stop : egressStops) {
+					egressStopIds.add(stop.getId());
+					egressStopIndices[i] = stop.getId().index();
+					egressTimes[i] = CoordUtils.calcEuclideanDistance(stop.getCoord(), coord) / walkSpeed;
+					i++;
+				}
+
 				zoneData.put(coord, new ZoneData(
 						this.carNetwork.getNodes().get(NetworkUtils.getNearestLink(xy2linksNetwork, coord).getFromNode().getId()),
-						attraction
+						attraction, carEgressTime, carParkingCost, egressStopIds, egressStopIndices, egressTimes
 				));
 			}
 		}
 
-		try (BufferedWriter writer = IOUtils.getBufferedWriter(csvOutputFile.getAbsolutePath())) {
-			writer.write("X,Y");
-			for (Modes mode : modes) {
-				writer.write(',');
-				writer.write(mode.id);
-			}
-			writer.write(IOUtils.NATIVE_NEWLINE);
+		int blockSize = 10_000;
+		Map<BlockKey, BlockData> blocks = getBlocks(coordinates, blockSize);
+		log.info("Divided " + coordinates.size() + " coordinates into " + blocks.size() + " blocks.");
 
-			int blockSize = 10_000;
-			Map<BlockKey, BlockData> blocks = getBlocks(coordinates, blockSize);
-			log.info("Divided " + coordinates.size() + " coordinates into " + blocks.size() + " blocks.");
-
-			int blockCnt = 0;
-			for (Map.Entry<BlockKey, BlockData> e : blocks.entrySet()) {
-				BlockKey key = e.getKey();
-				BlockData block = e.getValue();
-				blockCnt++;
-				log.info("Block " + blockCnt + "/" + blocks.size() + ": " + block.toString(key, blockSize));
-				int coordCount = block.coords.size();
-				int stopCount = block.stops.size();
-				Collection<Tuple<Coord, double[]>> results;
-				if ((int) (coordCount * 1.3) > stopCount) {
-					results = doOptimizedCalculation(block, carGraph, xy2linksNetwork, zoneData, raptors, modes);
-				} else {
-					results = doBasicCalculation(block, carGraph, xy2linksNetwork, zoneData, raptors, modes);
-				}
+		StringBuilder header = new StringBuilder("X,Y");
+		for (Modes mode : modes) {
+			header.append(',').append(mode.id);
+		}
+		header.append(IOUtils.NATIVE_NEWLINE);
 
-				for (Tuple<Coord, double[]> result : results) {
-					Coord coord = result.getFirst();
-					double[] accessibilities = result.getSecond();
-					writer.write(Double.toString(coord.getX()));
-					writer.write(',');
-					writer.write(Double.toString(coord.getY()));
-					for (double acc : accessibilities) {
-						writer.write(',');
-						writer.write(Double.toString(acc));
+		try (StopConnectionStore connectionStore = new StopConnectionStore(Id.getNumberOfIds(TransitStopFacility.class), this.connectionStoreMemoryLimit,
+				this.connectionStoreSpillFile)) {
+			ZoneData[] destinations = zoneData.values().toArray(new ZoneData[0]);
+			Supplier<RowWorker> workerFactory = () -> new RowWorker(
+					this.carNetwork, carGraph, xy2linksNetwork, tt, td, this.carAMDepTimes, this.carPMDepTimes,
+					connectionStore, this.departuresCache, createRaptor(), RaptorUtils.createParameters(this.config), this.ptMinDepartureTime, this.ptMaxDepartureTime,
+					this.trainDetector, this.useRangeQuery,
+					destinations, modes, this.zones);
+			WorkerPool pool = new WorkerPool(this.threadCount, workerFactory, connectionStore, coordinates.size());
+			try {
+				if (this.checkpointDirectory == null) {
+					try (ResultWriter writer = createResultWriter(outputFile, modes, header.toString(), coordinates.size())) {
+						calculateBlocks(new ArrayList<>(blocks.keySet()), blocks, blockSize, pool, (key, results) -> writer.write(results));
 					}
-					writer.write(IOUtils.NATIVE_NEWLINE);
+				} else {
+					calculateWithCheckpoints(blocks, blockSize, pool, getRunSignature(coordinates, modes), modes, header.toString(), coordinates.size(), outputFile);
 				}
-				writer.flush();
+			} finally {
+				pool.close();
 			}
+			pool.logUtilisation();
+			connectionStore.logStatistics();
 		} catch (IOException e) {
-			e.printStackTrace();
+			throw new UncheckedIOException("Could not write accessibility to " + outputFile, e);
 		}
 	}
 
+	private SwissRailRaptor createRaptor() {
+		return new SwissRailRaptor(this.raptorData, null, null, new DefaultRaptorStopFinder(ConfigUtils.createConfig(), null, null), new DefaultRaptorInVehicleCostCalculator(),
+				new DefaultRaptorTransferCostCalculator());
+	}
+
 	/**
-	 * First, calculate for each stop in the block the best connections to every other stop in the schedule. Store these connections in a thread-safe cache. Then, calculate for each requested
-	 * coordinate the necessary data. Make use of the cache to look-up possible connections, collect and filter them instead of re-calculating them.
+	 * Calculates the blocks in the given order and passes their results, in the same order, to the consumer. The next block is scheduled before waiting for the
+	 * results of the current one, so the worker threads continue with the next block while the last coordinates of the current block are calculated.
 	 */
-	private Collection<Tuple<Coord, double[]>> doOptimizedCalculation(BlockData block, SpeedyGraph carGraph,
-			Network xy2linksNetwork, Map<Coord, ZoneData> zoneData, SwissRailRaptor[] raptors, Modes[] modes) {
-		ConcurrentLinkedQueue<TransitStopFacility> stops = new ConcurrentLinkedQueue<>(block.stops);
-		ConcurrentHashMap<Id<TransitStopFacility>, IdMap<TransitStopFacility, List<ODConnection>>> cache = new ConcurrentHashMap<>();
+	private static void calculateBlocks(List<BlockKey> keys, Map<BlockKey, BlockData> blocks, int blockSize, WorkerPool pool, BlockResultConsumer consumer)
+			throws IOException {
+		Deque<ScheduledBlock> scheduled = new ArrayDeque<>();
+		int next = 0;
+		for (int i = 0; i < keys.size(); i++) {
+			while (next < keys.size() && next <= i + 1) {
+				BlockKey key = keys.get(next);
+				BlockData block = blocks.get(key);
+				next++;
+				log.info("Block " + next + "/" + keys.size() + ": " + block.toString(key, blockSize));
+				scheduled.add(pool.schedule(key, block));
+			}
+			ScheduledBlock block = scheduled.poll();
+			consumer.accept(block.key, block.getResults());
+		}
+	}
 
-		Thread[] threads = new Thread[this.threadCount];
+	/**
+	 * Calculates the blocks of this partition which are not yet finished according to the checkpoint manifests. The blocks are assigned to the partitions by
+	 * their position when sorted by coordinates, which does not depend on the machine. The output file is written by the first run that finds all blocks
+	 * finished and claims the output in the checkpoint directory.
+	 */
+	private void calculateWithCheckpoints(Map<BlockKey, BlockData> blocks, int blockSize, WorkerPool pool, String signature, Modes[] modes, String header,
+			int rowCount, File outputFile) throws IOException {
+		AccessibilityCheckpoint checkpoint = new AccessibilityCheckpoint(this.checkpointDirectory, signature, this.partitionIndex);
+		List<BlockKey> sortedKeys = new ArrayList<>(blocks.keySet());
+		sortedKeys.sort(Comparator.comparingInt((BlockKey k) -> k.xKey).thenComparingInt(k -> k.yKey));
+
+		List<BlockKey> keysToCalculate = new ArrayList<>();
+		for (int i = this.partitionIndex; i < sortedKeys.size(); i += this.partitionCount) {
+			BlockKey key = sortedKeys.get(i);
+			if (!checkpoint.isFinished(key.getName())) {
+				keysToCalculate.add(key);
+			}
+		}
+		log.info("Partition " + this.partitionIndex + "/" + this.partitionCount + ": calculating " + keysToCalculate.size() + " of " + blocks.size() + " blocks.");
+		calculateBlocks(keysToCalculate, blocks, blockSize, pool,
+				(key, results) -> checkpoint.writeSegment(key.getName(), writer -> writeResults(writer, results)));
 
-		Counter counter = new Counter("# stops ", " / " + block.stops.size());
-		// build cache
-		for (int i = 0; i < this.threadCount; i++) {
-			StopWorker worker = new StopWorker(counter, stops, cache, raptors[i], RaptorUtils.createParameters(this.config), ptMinDepartureTime, ptMaxDepartureTime, transitSchedule, departuresCache);
-			threads[i] = new Thread(worker, "accessibility-stops-" + i);
-			threads[i].start();
+		List<String> blockNames = new ArrayList<>();
+		for (BlockKey key : blocks.keySet()) {
+			blockNames.add(key.getName());
 		}
-		for (int i = 0; i < threadCount; i++) {
-			try {
-				threads[i].join();
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+		Set<String> finishedBlocks = checkpoint.reload();
+		if (finishedBlocks.containsAll(blockNames)) {
+			log.info("All blocks finished, writing " + outputFile.getAbsolutePath());
+			if (!checkpoint.claimOutput()) {
+				log.info("The output file is already written by another partition.");
+				return;
 			}
+			if (this.outputFormat == OutputFormat.CSV) {
+				checkpoint.concatenate(blockNames, header, outputFile);
+			} else {
+				File tmpFile = checkpoint.getTemporaryOutputFile(outputFile);
+				try (ResultWriter writer = createResultWriter(tmpFile, modes, header, rowCount)) {
+					for (String blockName : blockNames) {
+						try (BufferedReader reader = checkpoint.openSegment(blockName)) {
+							writer.write(readResults(reader));
+						}
+					}
+				}
+				checkpoint.publishOutput(tmpFile, outputFile);
+			}
+		} else {
+			blockNames.removeAll(finishedBlocks);
+			log.info(blockNames.size() + " blocks are not finished yet by other partitions. The output file is written by the run that finishes the last block.");
 		}
+	}
 
-		// do calculation
-		ConcurrentLinkedQueue<Coord> accessibilityCoords = new ConcurrentLinkedQueue<>(block.coords);
-		counter = new Counter("# coords ", " / " + block.coords.size());
-		ConcurrentLinkedQueue<Tuple<Coord, double[]>> results = new ConcurrentLinkedQueue<>();
-		for (int i = 0; i < this.threadCount; i++) {
-			OptimizedRowWorker worker = new OptimizedRowWorker(
-					this.carNetwork, carGraph, xy2linksNetwork, tt, td, this.carAMDepTimes, this.carPMDepTimes,
-					cache, this.transitSchedule, this.departuresCache, raptors[i], RaptorUtils.createParameters(this.config), ptMinDepartureTime, ptMaxDepartureTime, trainDetector,
-					zoneData, modes, this.zones, counter, accessibilityCoords, results);
-			threads[i] = new Thread(worker, "accessibility-coords-" + i);
-			threads[i].start();
+	/**
+	 * Describes the settings and inputs that influence the results, so that checkpoints of different runs are not mixed. Besides the settings, the signature
+	 * contains a SHA-256 digest of the coordinates, the attractions, the routing parameters and the content of all input files. File names are included, but
+	 * not their directories, so machines that mount the inputs at different paths can still share the checkpoints.
+	 */
+	private String getRunSignature(List<Coord> coordinates, Modes[] modes) {
+		StringBuilder signature = new StringBuilder();
+		signature.append("coordinates=").append(coordinates.size());
+		signature.append(",attractions=").append(this.attractions.size());
+		signature.append(",modes=");
+		for (Modes mode : modes) {
+			signature.append(mode.id).append(' ');
 		}
-		for (int i = 0; i < threadCount; i++) {
-			try {
-				threads[i].join();
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+		signature.append(",rangeQuery=").append(this.useRangeQuery);
+		signature.append(",pt=").append(this.ptMinDepartureTime).append('-').append(this.ptMaxDepartureTime);
+		signature.append(",carAM=").append(Arrays.toString(this.carAMDepTimes));
+		signature.append(",carPM=").append(Arrays.toString(this.carPMDepTimes));
+
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+		RaptorParameters parameters = RaptorUtils.createParameters(this.config);
+		updateDigest(digest, parameters.getSearchRadius(), parameters.getExtensionRadius(), parameters.getBeelineWalkSpeed(), this.zones.getId());
+		for (Coord coord : coordinates) {
+			updateDigest(digest, coord.getX(), coord.getY());
+		}
+		this.attractions.entrySet().stream()
+				.sorted(Comparator.comparingDouble((Map.Entry<Coord, Double> e) -> e.getKey().getX()).thenComparingDouble(e -> e.getKey().getY()))
+				.forEach(e -> updateDigest(digest, e.getKey().getX(), e.getKey().getY(), e.getValue()));
+		for (String filename : new String[]{this.networkFilename, this.eventsFilename, this.scheduleFilename, this.transitNetworkFilename}) {
+			updateDigestWithFile(digest, filename);
+		}
+		signature.append(",inputs=").append(HexFormat.of().formatHex(digest.digest()));
+		return signature.toString();
+	}
+
+	private static void updateDigest(MessageDigest digest, Object... values) {
+		for (Object value : values) {
+			digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) ';');
+		}
+		digest.update((byte) '\n');
+	}
+
+	private static void updateDigestWithFile(MessageDigest digest, String filename) {
+		if (filename == null) {
+			updateDigest(digest, "none");
+			return;
+		}
+		File file = new File(filename);
+		updateDigest(digest, file.getName(), file.length());
+		log.info("calculating checksum of " + filename);
+		try (InputStream in = Files.newInputStream(file.toPath())) {
+			byte[] buffer = new byte[1 << 16];
+			int count;
+			while ((count = in.read(buffer)) > 0) {
+				digest.update(buffer, 0, count);
 			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not read " + filename, e);
 		}
+	}
 
-		return results;
+	private ResultWriter createResultWriter(File outputFile, Modes[] modes, String header, int rowCount) throws IOException {
+		if (this.outputFormat == OutputFormat.BINARY) {
+			String[] columns = new String[modes.length];
+			for (int m = 0; m < modes.length; m++) {
+				columns[m] = modes[m].id;
+			}
+			return new BinaryAccessibilityFile.Writer(outputFile, columns, rowCount);
+		}
+		return new CsvResultWriter(outputFile, header);
 	}
 
 	/**
-	 * Just calculate for each requested coordinate the necessary data to calculate the accessibility.
+	 * Reads results in the format written by {@link #writeResults(BufferedWriter, Collection)}.
 	 */
-	private Collection<Tuple<Coord, double[]>> doBasicCalculation(BlockData block, SpeedyGraph carGraph, Network xy2linksNetwork,
-			Map<Coord, ZoneData> zoneData, SwissRailRaptor[] raptors, Modes[] modes) {
-		ConcurrentLinkedQueue<Coord> accessibilityCoords = new ConcurrentLinkedQueue<>(block.coords);
-		ConcurrentLinkedQueue<Tuple<Coord, double[]>> results = new ConcurrentLinkedQueue<>();
-
-		Counter counter = new Counter("#", " / " + block.coords.size());
-		Thread[] threads = new Thread[this.threadCount];
-		for (int i = 0; i < this.threadCount; i++) {
-			RowWorker worker = new RowWorker(
-					this.carNetwork, carGraph, xy2linksNetwork, tt, td, this.carAMDepTimes, this.carPMDepTimes,
-					raptors[i], RaptorUtils.createParameters(this.config), ptMinDepartureTime, ptMaxDepartureTime, trainDetector,
-					zoneData, modes, this.zones, counter, accessibilityCoords, results);
-			threads[i] = new Thread(worker, "accessibility-" + i);
-			threads[i].start();
-		}
-		for (int i = 0; i < threadCount; i++) {
-			try {
-				threads[i].join();
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+	private static List<Tuple<Coord, double[]>> readResults(BufferedReader reader) throws IOException {
+		List<Tuple<Coord, double[]>> results = new ArrayList<>();
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (line.isEmpty()) {
+				continue;
 			}
+			String[] parts = line.split(",");
+			double[] accessibilities = new double[parts.length - 2];
+			for (int i = 0; i < accessibilities.length; i++) {
+				accessibilities[i] = Double.parseDouble(parts[i + 2]);
+			}
+			results.add(new Tuple<>(new Coord(Double.parseDouble(parts[0]), Double.parseDouble(parts[1])), accessibilities));
 		}
 		return results;
 	}
 
+	private static void writeResults(BufferedWriter writer, Collection<Tuple<Coord, double[]>> results) throws IOException {
+		for (Tuple<Coord, double[]> result : results) {
+			Coord coord = result.getFirst();
+			double[] accessibilities = result.getSecond();
+			writer.write(Double.toString(coord.getX()));
+			writer.write(',');
+			writer.write(Double.toString(coord.getY()));
+			for (double acc : accessibilities) {
+				writer.write(',');
+				writer.write(Double.toString(acc));
+			}
+			writer.write(IOUtils.NATIVE_NEWLINE);
+		}
+	}
+
 	private Map<BlockKey, BlockData> getBlocks(Collection<Coord> coordinates, int blockSize) {
 		double stopBufferSize = config.transitRouter().getSearchRadius();
 		Map<Accessibility.BlockKey, Accessibility.BlockData> blocks = new HashMap<>(1000);
@@ -500,14 +802,28 @@ public class Accessibility {
 		this.scenarioLoaded = true;
 	}
 
+	/**
+	 * The data of a destination, which is calculated once and then used for every start coordinate.
+	 */
 	private static class ZoneData {
 
-		final Node node;
+		final int nodeIndex;
 		final double attraction;
-
-		public ZoneData(Node node, double attraction) {
-			this.node = node;
+		final double carEgressTime;
+		final double carParkingCost;
+		final List<Id<TransitStopFacility>> egressStopIds;
+		final int[] egressStops;
+		final double[] egressTimes;
+
+		public ZoneData(Node node, double attraction, double carEgressTime, double carParkingCost, List<Id<TransitStopFacility>> egressStopIds, int[] egressStops,
+				double[] egressTimes) {
+			this.nodeIndex = node.getId().index();
 			this.attraction = attraction;
+			this.carEgressTime = carEgressTime;
+			this.carParkingCost = carParkingCost;
+			this.egressStopIds = egressStopIds;
+			this.egressStops = egressStops;
+			this.egressTimes = egressTimes;
 		}
 	}
 
@@ -565,6 +881,10 @@ public class Accessibility {
 			this.yKey = yKey;
 		}
 
+		String getName() {
+			return "block_" + this.xKey + "_" + this.yKey;
+		}
+
 		@Override
 		public boolean equals(Object o) {
 			if (this == o) {
@@ -584,9 +904,13 @@ public class Accessibility {
 		}
 	}
 
-	private static class RowWorker implements Runnable {
+	/**
+	 * The routing state of one worker thread. Calculates the accessibility of single coordinates, and the connections of single stops.
+	 */
+	private static class RowWorker {
 
 		private final boolean requiresCar;
+		private final boolean requiresPt;
 		private final Network carNetwork;
 		private final Network xy2linksNetwork;
 		private final LeastCostPathTree shortestLcpTree;
@@ -594,21 +918,35 @@ public class Accessibility {
 		private final LeastCostPathTree[] pmLcpTree;
 		private final double[] carAMDepTimes;
 		private final double[] carPMDepTimes;
+		private final StopConnectionStore connectionStore;
+		private final DeparturesCache departuresCache;
 		private final SwissRailRaptor raptor;
 		private final RaptorParameters parameters;
 		private final double ptMinDepartureTime;
 		private final double ptMaxDepartureTime;
 		private final BiPredicate<TransitLine, TransitRoute> trainDetector;
-		private final Map<Coord, ZoneData> zoneData;
+		private final boolean useRangeQuery;
+		private final ZoneData[] zoneData;
 		private final Modes[] modes;
-		private final Counter counter;
-		private final Queue<Coord> coordinates;
-		private final Queue<Tuple<Coord, double[]>> results;
 		private final Zones zones;
 
+		// scratch buffers, reused for every coordinate and destination
+		private final RooftopCalculator rooftop = new RooftopCalculator();
+		private StopConnections[] accessConnections = new StopConnections[16];
+		private double[] accessTimes = new double[16];
+		private int accessStopCount = 0;
+		private final Map<Id<TransitStopFacility>, Double> accessTimesById = new HashMap<>();
+		private final List<Map<Id<TransitStopFacility>, TravelInfo>> trees = new ArrayList<>();
+		private final Map<TravelInfo, RouteStatistics> treeRouteStatistics = new IdentityHashMap<>();
+
+		// utilisation, only updated by the owning thread
+		private long busyNanos = 0;
+		private int coordCount = 0;
+		private int stopCount = 0;
+
 		RowWorker(Network carNetwork, SpeedyGraph carGraph, Network xy2linksNetwork, TravelTime tt, TravelDisutility td, double[] carAMDepTimes, double[] carPMDepTimes,
-				SwissRailRaptor raptor, RaptorParameters parameters, double ptMinDepartureTime, double ptMaxDepartureTime, BiPredicate<TransitLine, TransitRoute> trainDetector,
-				Map<Coord, ZoneData> zoneData, Modes[] modes, Zones zones, Counter counter, Queue<Coord> coordinates, Queue<Tuple<Coord, double[]>> results) {
+				StopConnectionStore connectionStore, DeparturesCache departuresCache, SwissRailRaptor raptor, RaptorParameters parameters, double ptMinDepartureTime,
+				double ptMaxDepartureTime, BiPredicate<TransitLine, TransitRoute> trainDetector, boolean useRangeQuery, ZoneData[] zoneData, Modes[] modes, Zones zones) {
 			this.carNetwork = carNetwork;
 			this.xy2linksNetwork = xy2linksNetwork;
 			this.carAMDepTimes = carAMDepTimes;
@@ -625,345 +963,88 @@ public class Accessibility {
 			for (int i = 0; i < carPMDepTimes.length; i++) {
 				this.pmLcpTree[i] = new LeastCostPathTree(carGraph, tt, td);
 			}
+			this.connectionStore = connectionStore;
+			this.departuresCache = departuresCache;
 			this.raptor = raptor;
 			this.parameters = parameters;
 			this.ptMinDepartureTime = ptMinDepartureTime;
 			this.ptMaxDepartureTime = ptMaxDepartureTime;
 			this.trainDetector = trainDetector;
+			this.useRangeQuery = useRangeQuery;
 
 			this.zoneData = zoneData;
 			this.requiresCar = requiresCar(modes);
+			this.requiresPt = requiresPt(modes);
 			this.modes = modes;
 			this.zones = zones;
-			this.counter = counter;
-			this.coordinates = coordinates;
-			this.results = results;
 		}
 
-		@Override
-		public void run() {
-			while (true) {
-				Coord fromCoord = this.coordinates.poll();
-				if (fromCoord == null) {
-					return;
-				}
+		void calcForStop(TransitStopFacility fromStop) {
+			this.stopCount++;
+			this.connectionStore.getOrCalculate(fromStop.getId().index(), stopIndex -> calcConnections(fromStop));
+		}
 
-				this.counter.incCounter();
-				double[] accessibilities = calcForCoord(fromCoord);
-				this.results.add(new Tuple<>(fromCoord, accessibilities));
+		private StopConnections calcConnections(TransitStopFacility fromStop) {
+			if (this.useRangeQuery) {
+				return calcStopConnectionsWithRangeQuery(fromStop, this.raptor, this.parameters, this.ptMinDepartureTime, this.ptMaxDepartureTime,
+						this.departuresCache, this.trainDetector);
 			}
+			return calcStopConnections(fromStop, this.raptor, this.parameters, this.ptMinDepartureTime, this.ptMaxDepartureTime, this.departuresCache,
+					this.trainDetector);
 		}
 
-		private double[] calcForCoord(Coord fromCoord) {
-			Node nearestNode = this.carNetwork.getNodes().get(NetworkUtils.getNearestLink(this.xy2linksNetwork, fromCoord).getToNode().getId());
-
-			// CAR
-			if (this.requiresCar) {
-				for (int i = 0; i < this.amLcpTree.length; i++) {
-					this.amLcpTree[i].calculate(nearestNode.getId().index(), this.carAMDepTimes[i], null, null);
-				}
-
-				for (int i = 0; i < this.pmLcpTree.length; i++) {
-					this.pmLcpTree[i].calculate(nearestNode.getId().index(), this.carPMDepTimes[i], null, null);
+		/**
+		 * Finds the stops near the coordinate and looks up their connections in the store. Stops that are not yet available are calculated and added to the
+		 * store. The stops are kept in the scratch buffers of the worker.
+		 */
+		private void findAccessStops(Coord fromCoord) {
+			double walkSpeed = this.parameters.getBeelineWalkSpeed();
+			for (TransitStopFacility stop : inHashMapOrder(findStopCandidates(fromCoord, this.raptor, this.parameters))) {
+				if (this.accessStopCount == this.accessTimes.length) {
+					this.accessConnections = Arrays.copyOf(this.accessConnections, this.accessStopCount * 2);
+					this.accessTimes = Arrays.copyOf(this.accessTimes, this.accessStopCount * 2);
 				}
+				double distance = CoordUtils.calcEuclideanDistance(fromCoord, stop.getCoord());
+				this.accessTimes[this.accessStopCount] = distance / walkSpeed;
+				this.accessConnections[this.accessStopCount] = this.connectionStore.getOrCalculate(stop.getId().index(), stopIndex -> calcConnections(stop));
+				this.accessStopCount++;
 			}
+		}
 
-			// WALK, BIKE
-			{
-				this.shortestLcpTree.calculate(nearestNode.getId().index(), 8 * 3600.0, null, null);
-			}
-
-			// PT
-
+		/**
+		 * Calculates a tree from all stops near the coordinate every two minutes in the extended time window, without using the connection store.
+		 */
+		private void calcAccessTrees(Coord fromCoord) {
 			double walkSpeed = this.parameters.getBeelineWalkSpeed();
-
 			Collection<TransitStopFacility> fromStops = findStopCandidates(fromCoord, this.raptor, this.parameters);
-			Map<Id<TransitStopFacility>, Double> accessTimes = new HashMap<>();
 			for (TransitStopFacility stop : fromStops) {
 				double distance = CoordUtils.calcEuclideanDistance(fromCoord, stop.getCoord());
-				double accessTime = distance / walkSpeed;
-				accessTimes.put(stop.getId(), accessTime);
+				this.accessTimesById.put(stop.getId(), distance / walkSpeed);
 			}
 
-			List<Map<Id<TransitStopFacility>, TravelInfo>> trees = new ArrayList<>();
-
 			double timeWindow = this.ptMaxDepartureTime - this.ptMinDepartureTime;
 			double endTime = this.ptMaxDepartureTime + timeWindow;
 			double stepSize = 120;
 			for (double time = this.ptMinDepartureTime - timeWindow; time < endTime; time += stepSize) {
-
-				Map<Id<TransitStopFacility>, TravelInfo> tree = this.raptor.calcTree(fromStops, time, this.parameters, null);
-				trees.add(tree);
+				this.trees.add(this.raptor.calcTree(fromStops, time, this.parameters, null));
 			}
-
-			Zone fromZone = this.zones.findZone(fromCoord.getX(), fromCoord.getY());
-			double carAccessTime = fromZone == null ? 0 : ((Number) fromZone.getAttribute("at_car")).doubleValue(); // in seconds
-
-			// CALCULATION
-
-			double[] accessibility = new double[this.modes.length];
-			for (Entry<Coord, ZoneData> e : this.zoneData.entrySet()) {
-				Coord toCoord = e.getKey();
-				ZoneData zData = e.getValue();
-				Node toNode = zData.node;
-				double attraction = zData.attraction;
-				int toNodeIndex = toNode.getId().index();
-
-				// CAR
-
-				double distCar = 0;
-				double amTravelTime = 0;
-				double pmTravelTime = 0;
-				boolean hasCar = false;
-				if (requiresCar) {
-					int amCount = 0;
-					for (int i = 0; i < this.amLcpTree.length; i++) {
-						OptionalTime time = this.amLcpTree[i].getTime(toNodeIndex);
-						if (time.isDefined()) {
-							amTravelTime += time.seconds() - this.carAMDepTimes[i];
-							distCar += this.amLcpTree[i].getDistance(toNodeIndex);
-							amCount++;
-						}
-					}
-					amTravelTime /= Math.max(1, amCount);
-
-					int pmCount = 0;
-					for (int i = 0; i < this.pmLcpTree.length; i++) {
-						OptionalTime time = this.pmLcpTree[i].getTime(toNodeIndex);
-						if (time.isDefined()) {
-							pmTravelTime += time.seconds() - this.carPMDepTimes[i];
-							distCar += this.pmLcpTree[i].getDistance(toNodeIndex);
-							pmCount++;
-						}
-					}
-					hasCar = (amCount + pmCount) > 0;
-					pmTravelTime /= Math.max(1, pmCount);
-					distCar /= Math.max(1, amCount + pmCount);
-
-					distCar /= 1000.0; // we use kilometers in the following formulas
-				}
-
-				double ttCar = Math.max(amTravelTime, pmTravelTime) / 60; // we need minutes in the following formulas
-				double distCar0015 = Math.min(distCar, 15);
-				double distCar1550 = Math.max(0, Math.min(distCar - 15, 35)); // 35 = 50 - 15, upperBound - lowerBound
-				double distCar5099 = Math.max(0, Math.min(distCar - 50, 50)); // 50 = 100 - 50
-				double distCar100x = Math.max(0, distCar - 100);
-
-				// WALK, BIKE
-
-				boolean hasShortestDistance = true;
-				double distShortest = 0;
-				{
-					OptionalTime time = this.shortestLcpTree.getTime(toNodeIndex);
-					if (time.isDefined()) {
-						distShortest = this.shortestLcpTree.getDistance(toNodeIndex);
-					} else {
-						hasShortestDistance = false;
-					}
-				}
-				distShortest /= 1000.0; // we use kilometers in the following formulas
-
-				// PT
-				Collection<TransitStopFacility> toStops = findStopCandidates(toCoord, this.raptor, this.parameters);
-				Map<Id<TransitStopFacility>, Double> egressTimes = new HashMap<>();
-				for (TransitStopFacility stop : toStops) {
-					double distance = CoordUtils.calcEuclideanDistance(stop.getCoord(), toCoord);
-					double egressTime = distance / walkSpeed;
-					egressTimes.put(stop.getId(), egressTime);
-				}
-
-				List<ODConnection> connections = buildODConnections(trees, accessTimes, egressTimes);
-				boolean hasPT = !connections.isEmpty();
-
-				double ttTrain = 0;
-				double ttBus = 0;
-				double ptAccessTime = 0;
-				double ptEgressTime = 0;
-				double ptFrequency = 0;
-				double ptTransfers = 0;
-				double ptDistance = 0;
-
-				if (hasPT) {
-					connections = RooftopUtils.sortAndFilterConnections(connections, ptMaxDepartureTime);
-					double avgAdaptionTime = RooftopUtils.calcAverageAdaptionTime(connections, ptMinDepartureTime, ptMaxDepartureTime);
-
-					Map<ODConnection, Double> connectionShares = RooftopUtils.calcConnectionShares(connections, ptMinDepartureTime, ptMaxDepartureTime);
-
-					float accessTime = 0;
-					float egressTime = 0;
-					float transferCount = 0;
-					float travelTime = 0;
-
-					double totalInVehTime = 0;
-					double trainInVehTime = 0;
-
-					for (Entry<ODConnection, Double> cs : connectionShares.entrySet()) {
-						ODConnection connection = cs.getKey();
-						double share = cs.getValue();
-
-						accessTime += share * accessTimes.get(connection.travelInfo.departureStop).floatValue();
-						egressTime += share * (float) connection.egressTime;
-						transferCount += share * (float) connection.transferCount;
-						travelTime += share * (float) connection.totalTravelTime();
-
-						double connTotalDistance = 0;
-						double connTotalInVehTime = 0;
-						double connTrainInVehTime = 0;
-						boolean isFirstLeg = true;
-
-						RaptorRoute route = connection.travelInfo.getRaptorRoute();
-						for (RoutePart part : route.getParts()) {
-							if (part.line != null) {
-								// it's a non-transfer part, an actual pt stage
-
-								boolean isTrain = this.trainDetector.test(part.line, part.route);
-								double inVehicleTime = (part.arrivalTime - part.boardingTime);
-								isFirstLeg = false;
-
-								connTotalDistance += part.distance;
-								connTotalInVehTime += inVehicleTime;
-
-								if (isTrain) {
-									connTrainInVehTime += inVehicleTime;
-								}
-							}
-						}
-						ptDistance += share * connTotalDistance;
-
-						totalInVehTime += share * connTotalInVehTime;
-						trainInVehTime += share * connTrainInVehTime;
-					}
-
-					float trainShareByTravelTime = totalInVehTime > 0 ? (float) (trainInVehTime / totalInVehTime) : 0;
-
-					ttTrain = travelTime / 60 * trainShareByTravelTime; // in minutes
-					ttBus = travelTime / 60 - ttTrain; // in minutes
-					ptAccessTime = accessTime / 60; // in minutes
-					ptEgressTime = egressTime / 60; // in minutes
-					ptFrequency = 900 / avgAdaptionTime;
-					ptTransfers = transferCount;
-
-					ptDistance /= 1000.0; // we use kilometers in the following formulas
-				}
-				double distPt0015 = Math.min(ptDistance, 15);
-				double distPt1550 = Math.max(0, Math.min(ptDistance - 15, 35)); // 35 = 50 - 15, upperBound - lowerBound
-				double distPt5099 = Math.max(0, Math.min(ptDistance - 50, 50)); // 50 = 100 - 50
-				double distPt100x = Math.max(0, ptDistance - 100);
-
-				// ACCESSIBILITY
-
-				//                U(bike)= -0.25 + (-0.150)*dist_car/0.21667
-				//
-				//                U(car)  = -0.40 + (-0.053)*TT_car + (-0.040)*dist_car_0015 + (-0.040)*dist_car_1550 + 0.015*dist_car_5099 + 0.010*dist_car_100x + (-0.047)*(FROM[at_car]+TO[at_car])/60 + (-0.135)*TO[pc_car]*2
-				//
-				//                U(pt)  = +0.75 + (-0.042)*TT_bus + (-0.0378)*TT_train + (-0.015)*dist_car_0015 + (-0.015)*dist_car_1550 + 0.005*dist_car_5099 + 0.025*dist_car_100x + (-0.050)*(pt_accTime+pt_egrTime) + (-0.014)*(60/pt_freq) + (-0.227)*transfers
-				//
-				//                U(walk)= +2.30 + (-0.100)*dist_car/0.078336
-
-				Zone toZone = this.zones.findZone(toCoord.getX(), toCoord.getY());
-				double carEgressTime = toZone == null ? 0 : ((Number) toZone.getAttribute("at_car")).doubleValue(); // in seconds
-				double carParkingCost = toZone == null ? 0 : ((Number) toZone.getAttribute("pc_car")).doubleValue();
-
-				for (int m = 0; m < this.modes.length; m++) {
-					Modes modes = this.modes[m];
-
-					double uBike = (modes.bike && hasShortestDistance) ? (-0.25 + (-0.150) * distShortest / 0.21667) : modes.missingModeUtility;
-					double uCar = (modes.car && hasCar) ? (-0.40 + (-0.053) * ttCar + (-0.040) * distCar0015 + (-0.040) * distCar1550 + 0.015 * distCar5099 + 0.010 * distCar100x
-							+ (-0.047) * (carAccessTime + carEgressTime) / 60 + (-0.135) * carParkingCost * 2) : modes.missingModeUtility;
-					double uPt = (modes.pt && hasPT) ? (+0.75 + (-0.042) * ttBus + (-0.0378) * ttTrain + (-0.015) * distPt0015 + (-0.015) * distPt1550 + 0.005 * distPt5099 + 0.025 * distPt100x
-							+ (-0.050) * (ptAccessTime + ptEgressTime) + (-0.014) * (60 / ptFrequency) + (-0.227) * ptTransfers) : modes.missingModeUtility;
-					double uWalk = (modes.walk && hasShortestDistance) ? (+2.30 + (-0.100) * distShortest / 0.078336) : modes.missingModeUtility;
-
-					double theta = modes.theta;
-					double destinationUtility = Math.exp(uCar / theta) + Math.exp(uPt / theta) + Math.exp(uWalk / theta) + Math.exp(uBike / theta);
-
-					accessibility[m] += attraction * Math.exp(theta * Math.log(destinationUtility));
-				}
-			}
-			return accessibility;
 		}
-	}
-
-	private static class OptimizedRowWorker implements Runnable {
-
-		private final boolean requiresCar;
-		private final boolean requiresPt;
-		private final Network carNetwork;
-		private final Network xy2linksNetwork;
-		private final LeastCostPathTree shortestLcpTree;
-		private final LeastCostPathTree[] amLcpTree;
-		private final LeastCostPathTree[] pmLcpTree;
-		private final double[] carAMDepTimes;
-		private final double[] carPMDepTimes;
-		private final ConcurrentHashMap<Id<TransitStopFacility>, IdMap<TransitStopFacility, List<ODConnection>>> cache;
-		private final TransitSchedule transitSchedule;
-		private final DeparturesCache departuresCache;
-		private final SwissRailRaptor raptor;
-		private final RaptorParameters parameters;
-		private final double ptMinDepartureTime;
-		private final double ptMaxDepartureTime;
-		private final BiPredicate<TransitLine, TransitRoute> trainDetector;
-		private final Map<Coord, ZoneData> zoneData;
-		private final Modes[] modes;
-		private final Counter counter;
-		private final Queue<Coord> coordinates;
-		private final Queue<Tuple<Coord, double[]>> results;
-		private final Zones zones;
-
-		OptimizedRowWorker(Network carNetwork, SpeedyGraph carGraph, Network xy2linksNetwork, TravelTime tt, TravelDisutility td, double[] carAMDepTimes, double[] carPMDepTimes,
-				ConcurrentHashMap<Id<TransitStopFacility>, IdMap<TransitStopFacility, List<ODConnection>>> cache, TransitSchedule transitSchedule, DeparturesCache departuresCache,
-				SwissRailRaptor raptor, RaptorParameters parameters, double ptMinDepartureTime, double ptMaxDepartureTime, BiPredicate<TransitLine, TransitRoute> trainDetector,
-				Map<Coord, ZoneData> zoneData, Modes[] modes, Zones zones, Counter counter, Queue<Coord> coordinates, Queue<Tuple<Coord, double[]>> results) {
-			this.carNetwork = carNetwork;
-			this.xy2linksNetwork = xy2linksNetwork;
-			this.carAMDepTimes = carAMDepTimes;
-			this.carPMDepTimes = carPMDepTimes;
-
-			FixedSpeedTravelTimeAndDisutility shortestTTD = new FixedSpeedTravelTimeAndDisutility(1.0);
-			this.shortestLcpTree = new LeastCostPathTree(carGraph, shortestTTD, shortestTTD);
 
-			this.amLcpTree = new LeastCostPathTree[carAMDepTimes.length];
-			for (int i = 0; i < carAMDepTimes.length; i++) {
-				this.amLcpTree[i] = new LeastCostPathTree(carGraph, tt, td);
-			}
-			this.pmLcpTree = new LeastCostPathTree[carPMDepTimes.length];
-			for (int i = 0; i < carPMDepTimes.length; i++) {
-				this.pmLcpTree[i] = new LeastCostPathTree(carGraph, tt, td);
+		private RouteStatistics getRouteStatistics(TravelInfo info) {
+			RouteStatistics statistics = this.treeRouteStatistics.get(info);
+			if (statistics == null) {
+				statistics = calcRouteStatistics(info.getRaptorRoute(), this.trainDetector);
+				this.treeRouteStatistics.put(info, statistics);
 			}
-			this.cache = cache;
-			this.transitSchedule = transitSchedule;
-			this.departuresCache = departuresCache;
-			this.raptor = raptor;
-			this.parameters = parameters;
-			this.ptMinDepartureTime = ptMinDepartureTime;
-			this.ptMaxDepartureTime = ptMaxDepartureTime;
-			this.trainDetector = trainDetector;
-
-			this.zoneData = zoneData;
-			this.requiresCar = requiresCar(modes);
-			this.requiresPt = requiresPt(modes);
-			this.modes = modes;
-			this.zones = zones;
-			this.counter = counter;
-			this.coordinates = coordinates;
-			this.results = results;
+			return statistics;
 		}
 
-		@Override
-		public void run() {
-			while (true) {
-				Coord fromCoord = this.coordinates.poll();
-				if (fromCoord == null) {
-					return;
-				}
-
-				this.counter.incCounter();
-				double[] accessibilities = calcForCoord(fromCoord);
-				this.results.add(new Tuple<>(fromCoord, accessibilities));
-			}
-		}
-
-		private double[] calcForCoord(Coord fromCoord) {
+		/**
+		 * @param usePrecalculatedStops whether the connections of the access stops are taken from the connection store. Otherwise, trees are calculated from
+		 * the coordinate, unless the range query is used, as its connections are cheap enough to be always calculated per stop.
+		 */
+		double[] calcForCoord(Coord fromCoord, boolean usePrecalculatedStops) {
+			this.coordCount++;
 			Node nearestNode = this.carNetwork.getNodes().get(NetworkUtils.getNearestLink(this.xy2linksNetwork, fromCoord).getToNode().getId());
 
 			// CAR
@@ -987,70 +1068,25 @@ public class Accessibility {
 			}
 
 			// PT
-			double walkSpeed = this.parameters.getBeelineWalkSpeed();
-			Map<Id<TransitStopFacility>, Double> accessTimes = new HashMap<>();
+			this.accessStopCount = 0;
+			this.accessTimesById.clear();
+			this.trees.clear();
+			this.treeRouteStatistics.clear();
+			boolean useTrees = !usePrecalculatedStops && !this.useRangeQuery;
 			if (this.requiresPt) {
-				List<TransitStopFacility> missingStops = new ArrayList<>();
-				Collection<TransitStopFacility> fromStops = findStopCandidates(fromCoord, this.raptor, this.parameters);
-				for (TransitStopFacility stop : fromStops) {
-					double distance = CoordUtils.calcEuclideanDistance(fromCoord, stop.getCoord());
-					double accessTime = distance / walkSpeed;
-					accessTimes.put(stop.getId(), accessTime);
-					if (!cache.containsKey(stop.getId())) {
-						missingStops.add(stop);
-					}
-				}
-				if (!missingStops.isEmpty()) {
-					for (TransitStopFacility fromStop : missingStops) {
-						if (this.cache.containsKey(fromStop.getId())) {
-							continue;
-						}
-						log.info(Thread.currentThread().getName() + " missing stop: " + fromStop.getId() + " " + fromStop.getName());
-						List<Map<Id<TransitStopFacility>, TravelInfo>> trees = new ArrayList<>();
-
-						double mainTimeWindow = this.ptMaxDepartureTime - this.ptMinDepartureTime;
-						double time = this.ptMinDepartureTime - mainTimeWindow;
-						double endTime = this.ptMaxDepartureTime + mainTimeWindow;
-						while (time < endTime) {
-							time = this.departuresCache.getNextDepartureTime(fromStop.getId(), time).seconds();
-
-							Map<Id<TransitStopFacility>, TravelInfo> tree = this.raptor.calcTree(fromStop, time, this.parameters, null);
-							trees.add(tree);
-
-							time += 60; // +1 minute
-						}
-
-						IdMap<TransitStopFacility, List<ODConnection>> connectionsPerStop = new IdMap<>(TransitStopFacility.class);
-						for (TransitStopFacility toStop : this.transitSchedule.getFacilities().values()) {
-							List<ODConnection> connections = new ArrayList<>();
-
-							for (Map<Id<TransitStopFacility>, SwissRailRaptorCore.TravelInfo> tree : trees) {
-								Id<TransitStopFacility> egressStopId = toStop.getId();
-								SwissRailRaptorCore.TravelInfo info = tree.get(egressStopId);
-								if (info != null && !info.isWalkOnly()) {
-									ODConnection connection = new ODConnection(info.ptDepartureTime, info.ptTravelTime, 0, 0, info.transferCount, info);
-									connections.add(connection);
-								}
-							}
-
-							connections = RooftopUtils.sortAndFilterConnections(connections, ptMaxDepartureTime);
-							connectionsPerStop.put(toStop.getId(), connections);
-						}
-						this.cache.put(fromStop.getId(), connectionsPerStop);
-						log.info(Thread.currentThread() + " update cache with " + fromStop.getId() + " " + fromStop.getName());
-					}
+				if (useTrees) {
+					calcAccessTrees(fromCoord);
+				} else {
+					findAccessStops(fromCoord);
 				}
 			}
 
 			// CALCULATION
 
 			double[] accessibility = new double[this.modes.length];
-			for (Entry<Coord, ZoneData> e : this.zoneData.entrySet()) {
-				Coord toCoord = e.getKey();
-				ZoneData zData = e.getValue();
-				Node toNode = zData.node;
+			for (ZoneData zData : this.zoneData) {
 				double attraction = zData.attraction;
-				int toNodeIndex = toNode.getId().index();
+				int toNodeIndex = zData.nodeIndex;
 
 				// CAR
 
@@ -1061,9 +1097,9 @@ public class Accessibility {
 				if (requiresCar) {
 					int amCount = 0;
 					for (int i = 0; i < this.amLcpTree.length; i++) {
-						OptionalTime time = this.amLcpTree[i].getTime(toNodeIndex);
-						if (time.isDefined()) {
-							amTravelTime += time.seconds() - this.carAMDepTimes[i];
+						double time = this.amLcpTree[i].getTimeRaw(toNodeIndex);
+						if (Double.isFinite(time)) {
+							amTravelTime += time - this.carAMDepTimes[i];
 							distCar += this.amLcpTree[i].getDistance(toNodeIndex);
 							amCount++;
 						}
@@ -1072,9 +1108,9 @@ public class Accessibility {
 
 					int pmCount = 0;
 					for (int i = 0; i < this.pmLcpTree.length; i++) {
-						OptionalTime time = this.pmLcpTree[i].getTime(toNodeIndex);
-						if (time.isDefined()) {
-							pmTravelTime += time.seconds() - this.carPMDepTimes[i];
+						double time = this.pmLcpTree[i].getTimeRaw(toNodeIndex);
+						if (Double.isFinite(time)) {
+							pmTravelTime += time - this.carPMDepTimes[i];
 							distCar += this.pmLcpTree[i].getDistance(toNodeIndex);
 							pmCount++;
 						}
@@ -1097,8 +1133,9 @@ public class Accessibility {
 				boolean hasShortestDistance = true;
 				double distShortest = 0;
 				{
-					OptionalTime time = this.shortestLcpTree.getTime(toNodeIndex);
-					if (time.isDefined()) {
+					// unreached nodes have an infinite time
+					double time = this.shortestLcpTree.getTimeRaw(toNodeIndex);
+					if (Double.isFinite(time)) {
 						distShortest = this.shortestLcpTree.getDistance(toNodeIndex);
 					} else {
 						hasShortestDistance = false;
@@ -1118,24 +1155,39 @@ public class Accessibility {
 				double ptDistance = 0;
 				if (this.requiresPt) {
 
-					Collection<TransitStopFacility> toStops = findStopCandidates(toCoord, this.raptor, this.parameters);
-					Map<Id<TransitStopFacility>, Double> egressTimes = new HashMap<>();
-					for (TransitStopFacility stop : toStops) {
-						double distance = CoordUtils.calcEuclideanDistance(stop.getCoord(), toCoord);
-						double egressTime = distance / walkSpeed;
-						egressTimes.put(stop.getId(), egressTime);
+					RooftopCalculator rooftop = this.rooftop;
+					rooftop.clear();
+					for (int t = 0; t < this.trees.size(); t++) {
+						Map<Id<TransitStopFacility>, TravelInfo> tree = this.trees.get(t);
+						for (int e = 0; e < zData.egressStops.length; e++) {
+							TravelInfo info = tree.get(zData.egressStopIds.get(e));
+							if (info != null && !info.isWalkOnly()) {
+								rooftop.add(info.ptDepartureTime, info.ptTravelTime, this.accessTimesById.get(info.departureStop), zData.egressTimes[e], info.transferCount,
+										t, e);
+							}
+						}
+					}
+					for (int a = 0; a < this.accessStopCount; a++) {
+						StopConnections fromConnections = this.accessConnections[a];
+						double accessTime = this.accessTimes[a];
+						for (int e = 0; e < zData.egressStops.length; e++) {
+							int toStopIndex = zData.egressStops[e];
+							double egressTime = zData.egressTimes[e];
+							int last = fromConnections.getLastConnection(toStopIndex);
+							for (int i = fromConnections.getFirstConnection(toStopIndex); i < last; i++) {
+								rooftop.add(fromConnections.departureTimes[i], fromConnections.travelTimes[i], accessTime, egressTime, fromConnections.transfers[i], a, i);
+							}
+						}
 					}
 
-					List<ODConnection> connections = buildODConnections(this.cache, accessTimes, egressTimes);
-
-					hasPT = !connections.isEmpty();
+					hasPT = rooftop.size() > 0;
 					if (hasPT) {
 
-						connections = RooftopUtils.sortAndFilterConnections(connections, ptMaxDepartureTime);
+						rooftop.sortAndFilter();
 
-						double avgAdaptionTime = RooftopUtils.calcAverageAdaptionTime(connections, ptMinDepartureTime, ptMaxDepartureTime);
+						double avgAdaptionTime = rooftop.calcAverageAdaptionTime(ptMinDepartureTime, ptMaxDepartureTime);
 
-						Map<ODConnection, Double> connectionShares = RooftopUtils.calcConnectionShares(connections, ptMinDepartureTime, ptMaxDepartureTime);
+						rooftop.calcConnectionShares(ptMinDepartureTime, ptMaxDepartureTime);
 
 						float accessTime = 0;
 						float egressTime = 0;
@@ -1145,41 +1197,30 @@ public class Accessibility {
 						double totalInVehTime = 0;
 						double trainInVehTime = 0;
 
-						for (Entry<ODConnection, Double> cs : connectionShares.entrySet()) {
-							ODConnection connection = cs.getKey();
-							double share = cs.getValue();
-
-							accessTime += share * accessTimes.get(connection.travelInfo.departureStop).floatValue();
-							egressTime += share * (float) connection.egressTime;
-							transferCount += share * (float) connection.transferCount;
-							travelTime += share * (float) connection.totalTravelTime();
-
-							double connTotalDistance = 0;
-							double connTotalInVehTime = 0;
-							double connTrainInVehTime = 0;
-							boolean isFirstLeg = true;
-
-							RaptorRoute route = connection.travelInfo.getRaptorRoute();
-							for (RoutePart part : route.getParts()) {
-								if (part.line != null) {
-									// it's a non-transfer part, an actual pt stage
-
-									boolean isTrain = this.trainDetector.test(part.line, part.route);
-									double inVehicleTime = (part.arrivalTime - part.boardingTime);
-									isFirstLeg = false;
-
-									connTotalDistance += part.distance;
-									connTotalInVehTime += inVehicleTime;
-
-									if (isTrain) {
-										connTrainInVehTime += inVehicleTime;
-									}
-								}
+						for (int c = 0; c < rooftop.size(); c++) {
+							double share = rooftop.getShare(c);
+							if (share == 0) {
+								continue;
 							}
-							ptDistance += share * connTotalDistance;
 
-							totalInVehTime += share * connTotalInVehTime;
-							trainInVehTime += share * connTrainInVehTime;
+							accessTime += share * (float) rooftop.getAccessTime(c);
+							egressTime += share * (float) rooftop.getEgressTime(c);
+							transferCount += share * (float) rooftop.getTransferCount(c);
+							travelTime += share * (float) rooftop.getTotalTravelTime(c);
+
+							if (useTrees) {
+								TravelInfo info = this.trees.get(rooftop.getGroup(c)).get(zData.egressStopIds.get(rooftop.getIndex(c)));
+								RouteStatistics statistics = getRouteStatistics(info);
+								ptDistance += share * statistics.distance;
+								totalInVehTime += share * statistics.inVehicleTime;
+								trainInVehTime += share * statistics.trainInVehicleTime;
+							} else {
+								StopConnections stored = this.accessConnections[rooftop.getGroup(c)];
+								int index = rooftop.getIndex(c);
+								ptDistance += share * stored.distances[index];
+								totalInVehTime += share * stored.inVehicleTimes[index];
+								trainInVehTime += share * stored.trainInVehicleTimes[index];
+							}
 						}
 
 						float trainShareByTravelTime = totalInVehTime > 0 ? (float) (trainInVehTime / totalInVehTime) : 0;
@@ -1209,9 +1250,8 @@ public class Accessibility {
 				//
 				//                U(walk)= +2.30 + (-0.100)*dist_car/0.078336
 
-				Zone toZone = this.zones.findZone(toCoord.getX(), toCoord.getY());
-				double carEgressTime = toZone == null ? 0 : ((Number) toZone.getAttribute("at_car")).doubleValue(); // in seconds
-				double carParkingCost = toZone == null ? 0 : ((Number) toZone.getAttribute("pc_car")).doubleValue();
+				double carEgressTime = zData.carEgressTime; // in seconds
+				double carParkingCost = zData.carParkingCost;
 
 				for (int m = 0; m < this.modes.length; m++) {
 					Modes modes = this.modes[m];
@@ -1233,85 +1273,211 @@ public class Accessibility {
 		}
 	}
 
-	private static class StopWorker implements Runnable {
-
-		private final Counter counter;
-		private final ConcurrentLinkedQueue<TransitStopFacility> stops;
-		private final ConcurrentHashMap<Id<TransitStopFacility>, IdMap<TransitStopFacility, List<ODConnection>>> cache;
+	/**
+	 * Runs the calculations of all blocks on a fixed set of long-lived threads, each with its own {@link RowWorker}. The threads take the tasks from a shared
+	 * queue, so a thread that finishes early continues with the next coordinates instead of waiting for the slowest thread of the block.
+	 */
+	private static class WorkerPool {
+
+		private final ExecutorService executor;
+		private final List<WorkerThread> threads = Collections.synchronizedList(new ArrayList<>());
+		private final StopConnectionStore connectionStore;
+		private final Counter coordCounter;
+		private final Counter stopCounter = new Counter("# stops ");
+		private final long startTime = System.nanoTime();
+		private long endTime = -1;
+
+		WorkerPool(int threadCount, Supplier<RowWorker> workerFactory, StopConnectionStore connectionStore, int coordCount) {
+			this.connectionStore = connectionStore;
+			this.coordCounter = new Counter("# coords ", " / " + coordCount);
+			this.executor = Executors.newFixedThreadPool(threadCount, runnable -> {
+				WorkerThread thread = new WorkerThread(runnable, "accessibility-" + this.threads.size(), workerFactory.get());
+				this.threads.add(thread);
+				return thread;
+			});
+		}
 
-		private final SwissRailRaptor raptor;
-		private final RaptorParameters parameters;
-		private final double ptMinDepartureTime;
-		private final double ptMaxDepartureTime;
-		private final TransitSchedule transitSchedule;
-		private final DeparturesCache departuresCache;
+		/**
+		 * Schedules the calculation of all coordinates of the block. If many coordinates share the stops of the block, the connections of the stops are
+		 * scheduled first, so that the coordinates mostly only look them up. A coordinate whose stop is still being calculated by another thread waits for it.
+		 * Otherwise, the coordinates route from their access stops themselves, see {@link RowWorker#calcForCoord(Coord, boolean)}.
+		 */
+		ScheduledBlock schedule(BlockKey key, BlockData block) {
+			List<Future<?>> stopTasks = new ArrayList<>();
+			boolean usePrecalculatedStops = (int) (block.coords.size() * 1.3) > block.stops.size();
+			if (usePrecalculatedStops) {
+				for (TransitStopFacility stop : block.stops) {
+					if (!this.connectionStore.contains(stop.getId().index())) {
+						stopTasks.add(this.executor.submit(() -> runOnWorker(worker -> {
+							this.stopCounter.incCounter();
+							worker.calcForStop(stop);
+							return null;
+						})));
+					}
+				}
+			}
+			List<Future<Tuple<Coord, double[]>>> coordTasks = new ArrayList<>(block.coords.size());
+			for (Coord coord : block.coords) {
+				coordTasks.add(this.executor.submit(() -> runOnWorker(worker -> {
+					this.coordCounter.incCounter();
+					return new Tuple<>(coord, worker.calcForCoord(coord, usePrecalculatedStops));
+				})));
+			}
+			return new ScheduledBlock(key, stopTasks, coordTasks);
+		}
 
-		StopWorker(Counter counter, ConcurrentLinkedQueue<TransitStopFacility> stops,
-				ConcurrentHashMap<Id<TransitStopFacility>, IdMap<TransitStopFacility, List<ODConnection>>> cache,
-				SwissRailRaptor raptor, RaptorParameters parameters, double ptMinDepartureTime, double ptMaxDepartureTime,
-				TransitSchedule transitSchedule, DeparturesCache departuresCache) {
-			this.counter = counter;
-			this.stops = stops;
-			this.cache = cache;
+		private static <T> T runOnWorker(Function<RowWorker, T> task) {
+			RowWorker worker = ((WorkerThread) Thread.currentThread()).worker;
+			long start = System.nanoTime();
+			try {
+				return task.apply(worker);
+			} finally {
+				worker.busyNanos += System.nanoTime() - start;
+			}
+		}
 
-			this.raptor = raptor;
-			this.parameters = parameters;
-			this.ptMinDepartureTime = ptMinDepartureTime;
-			this.ptMaxDepartureTime = ptMaxDepartureTime;
-			this.transitSchedule = transitSchedule;
-			this.departuresCache = departuresCache;
+		void close() {
+			this.executor.shutdownNow();
+			try {
+				this.executor.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			this.endTime = System.nanoTime();
 		}
 
-		@Override
-		public void run() {
-			while (true) {
-				TransitStopFacility stop = this.stops.poll();
-				if (stop == null) {
-					return;
+		/**
+		 * Logs for every thread the number of calculated coordinates and stops, and the share of the time it was busy. Must be called after {@link #close()}.
+		 */
+		void logUtilisation() {
+			double elapsed = Math.max(1, this.endTime - this.startTime);
+			long totalBusy = 0;
+			synchronized (this.threads) {
+				for (WorkerThread thread : this.threads) {
+					RowWorker worker = thread.worker;
+					totalBusy += worker.busyNanos;
+					log.info(String.format("%s: %d coordinates, %d stops, busy %.1f%%", thread.getName(), worker.coordCount, worker.stopCount,
+							100.0 * worker.busyNanos / elapsed));
 				}
-
-				this.counter.incCounter();
-				calcForStop(stop);
+				log.info(String.format("average thread utilisation: %.1f%% over %.0f seconds", 100.0 * totalBusy / elapsed / Math.max(1, this.threads.size()),
+						elapsed / 1e9));
 			}
+		}
+	}
+
+	private static class WorkerThread extends Thread {
 
+		private final RowWorker worker;
+
+		WorkerThread(Runnable runnable, String name, RowWorker worker) {
+			super(runnable, name);
+			this.worker = worker;
 		}
+	}
 
-		private void calcForStop(TransitStopFacility fromStop) {
-			List<Map<Id<TransitStopFacility>, TravelInfo>> trees = new ArrayList<>();
+	private static class ScheduledBlock {
 
-			// to calculate the correct adaption times, we need to expand the time window to also catch departures before and after the time window of interest.
-			double mainTimeWindow = this.ptMaxDepartureTime - this.ptMinDepartureTime;
-			double time = this.ptMinDepartureTime - mainTimeWindow;
-			double endTime = this.ptMaxDepartureTime + mainTimeWindow;
-			while (time < endTime) {
-				time = this.departuresCache.getNextDepartureTime(fromStop.getId(), time).seconds();
+		private final BlockKey key;
+		private final List<Future<?>> stopTasks;
+		private final List<Future<Tuple<Coord, double[]>>> coordTasks;
 
-				Map<Id<TransitStopFacility>, TravelInfo> tree = this.raptor.calcTree(fromStop, time, this.parameters, null);
-				trees.add(tree);
+		ScheduledBlock(BlockKey key, List<Future<?>> stopTasks, List<Future<Tuple<Coord, double[]>>> coordTasks) {
+			this.key = key;
+			this.stopTasks = stopTasks;
+			this.coordTasks = coordTasks;
+		}
 
-				time += 60; // +1 minute
+		/**
+		 * Waits until all coordinates of the block are calculated.
+		 *
+		 * @return the results in the order of the coordinates in the block
+		 */
+		List<Tuple<Coord, double[]>> getResults() {
+			List<Tuple<Coord, double[]>> results = new ArrayList<>(this.coordTasks.size());
+			try {
+				for (Future<?> task : this.stopTasks) {
+					task.get();
+				}
+				for (Future<Tuple<Coord, double[]>> task : this.coordTasks) {
+					results.add(task.get());
+				}
+			} catch (InterruptedException | ExecutionException e) {
+				throw new RuntimeException(e);
 			}
+			return results;
+		}
+	}
+
+	/**
+	 * Writes the results of the blocks to the output file, in the order they are passed.
+	 */
+	interface ResultWriter extends Closeable {
 
-			IdMap<TransitStopFacility, List<ODConnection>> connectionsPerStop = new IdMap<>(TransitStopFacility.class);
-			for (TransitStopFacility toStop : this.transitSchedule.getFacilities().values()) {
-				List<ODConnection> connections = new ArrayList<>();
+		void write(List<Tuple<Coord, double[]>> results) throws IOException;
+	}
 
-				for (Map<Id<TransitStopFacility>, SwissRailRaptorCore.TravelInfo> tree : trees) {
-					Id<TransitStopFacility> egressStopId = toStop.getId();
-					SwissRailRaptorCore.TravelInfo info = tree.get(egressStopId);
-					if (info != null && !info.isWalkOnly()) {
-						ODConnection connection = new ODConnection(info.ptDepartureTime, info.ptTravelTime, 0, 0, info.transferCount, info);
-						connections.add(connection);
-					}
-				}
+	private static class CsvResultWriter implements ResultWriter {
+
+		private final BufferedWriter writer;
+
+		CsvResultWriter(File file, String header) throws IOException {
+			this.writer = IOUtils.getBufferedWriter(file.getAbsolutePath());
+			this.writer.write(header);
+		}
+
+		@Override
+		public void write(List<Tuple<Coord, double[]>> results) throws IOException {
+			writeResults(this.writer, results);
+			this.writer.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.writer.close();
+		}
+	}
+
+	private interface BlockResultConsumer {
+
+		void accept(BlockKey key, List<Tuple<Coord, double[]>> results) throws IOException;
+	}
+
+	private record RouteStatistics(boolean hasPtLeg, double distance, double inVehicleTime, double trainInVehicleTime) {
+	}
 
-				connections = RooftopUtils.sortAndFilterConnections(connections, ptMaxDepartureTime);
-				connectionsPerStop.put(toStop.getId(), connections);
+	/**
+	 * A connection reported by the range query. The route is only created for the connections that are used.
+	 */
+	private static class RangeArrival {
+
+		final double departureTime;
+		final double arrivalTime;
+		final int transferCount;
+		private final Supplier<RaptorRoute> route;
+		private RouteStatistics statistics = null;
+
+		RangeArrival(double departureTime, double arrivalTime, int transferCount, Supplier<RaptorRoute> route) {
+			this.departureTime = departureTime;
+			this.arrivalTime = arrivalTime;
+			this.transferCount = transferCount;
+			this.route = route;
+		}
+
+		RouteStatistics getStatistics(BiPredicate<TransitLine, TransitRoute> trainDetector) {
+			if (this.statistics == null) {
+				this.statistics = calcRouteStatistics(this.route.get(), trainDetector);
 			}
-			this.cache.put(fromStop.getId(), connectionsPerStop);
+			return this.statistics;
 		}
 	}
 
+	public enum OutputFormat {
+		/** a text file with one line per coordinate */
+		CSV,
+		/** the columnar format of {@link BinaryAccessibilityFile} */
+		BINARY
+	}
+
 	public static class Modes {
 
 		private final String id;
@@ -0,0 +1,195 @@
+package ch.sbb.matsim.accessibility;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.core.utils.io.IOUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps track of the finished blocks of an accessibility calculation, so that an interrupted run can be resumed, or the blocks can be distributed over several
+ * machines sharing the same checkpoint directory.
+ * <p>
+ * The results of every block are written to a separate segment file. Once a segment is complete, it is recorded in the manifest of the partition
+ * (<code>manifest-&lt;partition&gt;.csv</code>). Every partition has its own manifest, so no file is written by more than one machine. Manifests are
+ * replaced atomically, so other machines never read a partially written manifest. The first line of each
+ * manifest contains a signature of the run settings, to prevent mixing results of different runs. The partition that writes the final output file is
+ * elected with a marker file, see {@link #claimOutput()}.
+ */
+class AccessibilityCheckpoint {
+
+	private final static Logger log = LogManager.getLogger(AccessibilityCheckpoint.class);
+
+	private static final String SIGNATURE_PREFIX = "signature;";
+	private static final String OUTPUT_MARKER = "output.claimed";
+
+	private final File directory;
+	private final String signature;
+	private final int partitionIndex;
+	private final File manifestFile;
+	private final Set<String> finishedBlocks = new HashSet<>();
+
+	AccessibilityCheckpoint(File directory, String signature, int partitionIndex) {
+		this.directory = directory;
+		this.signature = signature;
+		this.partitionIndex = partitionIndex;
+		this.manifestFile = new File(directory, "manifest-" + partitionIndex + ".csv");
+		if (!directory.exists() && !directory.mkdirs() && !directory.exists()) {
+			throw new RuntimeException("could not create checkpoint directory " + directory);
+		}
+		reload();
+		if (!this.finishedBlocks.isEmpty()) {
+			log.info("checkpoint directory " + directory + " already contains " + this.finishedBlocks.size() + " finished blocks.");
+		}
+	}
+
+	boolean isFinished(String blockName) {
+		return this.finishedBlocks.contains(blockName);
+	}
+
+	/**
+	 * Reads the manifests of all partitions again, to include the blocks finished by other machines in the meantime.
+	 *
+	 * @return the names of all finished blocks
+	 */
+	Set<String> reload() {
+		File[] manifests = this.directory.listFiles((dir, name) -> name.startsWith("manifest-") && name.endsWith(".csv"));
+		if (manifests == null) {
+			return this.finishedBlocks;
+		}
+		for (File manifest : manifests) {
+			try (BufferedReader reader = IOUtils.getBufferedReader(manifest.getAbsolutePath())) {
+				String line = reader.readLine();
+				if (line == null) {
+					continue;
+				}
+				if (!line.equals(SIGNATURE_PREFIX + this.signature)) {
+					throw new RuntimeException("checkpoint manifest " + manifest + " belongs to a different run (" + line + "), expected " + SIGNATURE_PREFIX + this.signature
+							+ ". Use an empty checkpoint directory.");
+				}
+				while ((line = reader.readLine()) != null) {
+					if (!line.isEmpty()) {
+						this.finishedBlocks.add(line.split(";")[0]);
+					}
+				}
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		return this.finishedBlocks;
+	}
+
+	/**
+	 * Writes the segment file of the block and records it in the manifest. If the run is interrupted while the segment is written, the block is not marked as
+	 * finished and will be calculated again.
+	 */
+	void writeSegment(String blockName, SegmentContent content) throws IOException {
+		File segmentFile = getSegmentFile(blockName);
+		Path tmpFile = new File(this.directory, segmentFile.getName() + ".tmp-" + this.partitionIndex).toPath();
+		try (BufferedWriter writer = Files.newBufferedWriter(tmpFile, StandardCharsets.UTF_8)) {
+			content.write(writer);
+		}
+		Files.move(tmpFile, segmentFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		appendToManifest(blockName + ";" + segmentFile.getName());
+		this.finishedBlocks.add(blockName);
+	}
+
+	/**
+	 * Writes the manifest with the additional line to a temporary file and renames it to the manifest, so that other partitions reading the manifest at the
+	 * same time see either the previous or the new manifest, but never a partially written line.
+	 */
+	private void appendToManifest(String line) throws IOException {
+		List<String> lines = new ArrayList<>();
+		if (this.manifestFile.exists()) {
+			lines.addAll(Files.readAllLines(this.manifestFile.toPath(), StandardCharsets.UTF_8));
+		} else {
+			lines.add(SIGNATURE_PREFIX + this.signature);
+		}
+		lines.add(line);
+		Path tmpFile = new File(this.directory, this.manifestFile.getName() + ".tmp").toPath();
+		try (BufferedWriter writer = Files.newBufferedWriter(tmpFile, StandardCharsets.UTF_8)) {
+			for (String l : lines) {
+				writer.write(l);
+				writer.write(IOUtils.NATIVE_NEWLINE);
+			}
+		}
+		Files.move(tmpFile, this.manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Elects the partition that writes the output file, so that partitions finishing at the same time do not write it concurrently. The first partition that
+	 * creates the marker file in the checkpoint directory wins. A restarted partition that had claimed the output before claims it again, so an interrupted
+	 * write is repeated.
+	 *
+	 * @return <code>true</code> if this partition has to write the output file
+	 */
+	boolean claimOutput() throws IOException {
+		Path marker = new File(this.directory, OUTPUT_MARKER).toPath();
+		String owner = Integer.toString(this.partitionIndex);
+		try {
+			Files.writeString(marker, owner, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+			return true;
+		} catch (FileAlreadyExistsException e) {
+			return Files.readString(marker, StandardCharsets.UTF_8).trim().equals(owner);
+		}
+	}
+
+	/**
+	 * Writes the header and the segments of the blocks, in the given order, to the output file. Must only be called after {@link #claimOutput()} returned
+	 * <code>true</code>.
+	 */
+	void concatenate(List<String> blockNames, String header, File outputFile) throws IOException {
+		File tmpFile = getTemporaryOutputFile(outputFile);
+		try (Writer writer = IOUtils.getBufferedWriter(tmpFile.getAbsolutePath())) {
+			writer.write(header);
+			for (String blockName : blockNames) {
+				try (BufferedReader reader = Files.newBufferedReader(getSegmentFile(blockName).toPath(), StandardCharsets.UTF_8)) {
+					reader.transferTo(writer);
+				}
+			}
+		}
+		publishOutput(tmpFile, outputFile);
+	}
+
+	/**
+	 * @return a file in the directory of the output file, with the same extension, as it determines the compression.
+	 */
+	File getTemporaryOutputFile(File outputFile) {
+		return new File(outputFile.getAbsoluteFile().getParentFile(), "tmp-" + this.partitionIndex + "-" + outputFile.getName());
+	}
+
+	/**
+	 * Atomically replaces the output file with the completely written temporary file, so readers never see a partially written output.
+	 */
+	void publishOutput(File tmpFile, File outputFile) throws IOException {
+		Files.move(tmpFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	BufferedReader openSegment(String blockName) throws IOException {
+		return Files.newBufferedReader(getSegmentFile(blockName).toPath(), StandardCharsets.UTF_8);
+	}
+
+	private File getSegmentFile(String blockName) {
+		return new File(this.directory, blockName + ".csv");
+	}
+
+	interface SegmentContent {
+
+		void write(BufferedWriter writer) throws IOException;
+	}
+}
@@ -0,0 +1,181 @@
+package ch.sbb.matsim.accessibility;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.core.utils.collections.Tuple;
+import org.matsim.core.utils.io.IOUtils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A columnar, binary alternative to the accessibility CSV file, which can directly be mapped into arrays by downstream tools (e.g. with numpy).
+ * <p>
+ * All values are little-endian. The file starts with a header:
+ * <ul>
+ *     <li>4 bytes magic number <code>ACCB</code>, int version (1), int column count, int length of the column names</li>
+ *     <li>long row count</li>
+ *     <li>the column names as UTF-8, separated by newlines, padded with spaces to a multiple of 8 bytes</li>
+ * </ul>
+ * followed by the coordinate index (all x-coordinates, then all y-coordinates, as float64) and the columns (one float32 array with the accessibility of all
+ * rows per column). The number of rows must be known in advance, the results of the blocks are written to their rows as soon as they are available.
+ */
+public final class BinaryAccessibilityFile {
+
+	private final static Logger log = LogManager.getLogger(BinaryAccessibilityFile.class);
+
+	private static final int MAGIC = 0x42434341; // "ACCB" in little-endian
+	private static final int VERSION = 1;
+	private static final int FIXED_HEADER_BYTES = 24;
+	private static final int EXPORT_CHUNK_ROWS = 65536;
+
+	private BinaryAccessibilityFile() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		exportToCsv(new File(args[0]), new File(args[1]));
+	}
+
+	/**
+	 * Writes the content of a binary accessibility file in the CSV format of {@link Accessibility}.
+	 */
+	public static void exportToCsv(File binaryFile, File csvFile) throws IOException {
+		try (FileChannel channel = FileChannel.open(binaryFile.toPath(), StandardOpenOption.READ);
+				BufferedWriter writer = IOUtils.getBufferedWriter(csvFile.getAbsolutePath())) {
+			ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			channel.read(header, 0);
+			header.flip();
+			if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+				throw new IOException(binaryFile + " is not a binary accessibility file of version " + VERSION);
+			}
+			int columnCount = header.getInt();
+			int namesLength = header.getInt();
+			long rowCount = header.getLong();
+			ByteBuffer names = ByteBuffer.allocate(namesLength);
+			channel.read(names, FIXED_HEADER_BYTES);
+			String[] columns = new String(names.array(), StandardCharsets.UTF_8).split("\n");
+
+			writer.write("X,Y," + String.join(",", columns));
+			writer.write(IOUtils.NATIVE_NEWLINE);
+
+			long dataStart = FIXED_HEADER_BYTES + padded(namesLength);
+			ByteBuffer xs = ByteBuffer.allocate(8 * EXPORT_CHUNK_ROWS).order(ByteOrder.LITTLE_ENDIAN);
+			ByteBuffer ys = ByteBuffer.allocate(8 * EXPORT_CHUNK_ROWS).order(ByteOrder.LITTLE_ENDIAN);
+			ByteBuffer[] values = new ByteBuffer[columnCount];
+			for (int c = 0; c < columnCount; c++) {
+				values[c] = ByteBuffer.allocate(4 * EXPORT_CHUNK_ROWS).order(ByteOrder.LITTLE_ENDIAN);
+			}
+			for (long firstRow = 0; firstRow < rowCount; firstRow += EXPORT_CHUNK_ROWS) {
+				int count = (int) Math.min(EXPORT_CHUNK_ROWS, rowCount - firstRow);
+				readFully(channel, xs, 8 * count, dataStart + 8 * firstRow);
+				readFully(channel, ys, 8 * count, dataStart + 8 * (rowCount + firstRow));
+				for (int c = 0; c < columnCount; c++) {
+					readFully(channel, values[c], 4 * count, dataStart + 16 * rowCount + 4 * (c * rowCount + firstRow));
+				}
+				for (int row = 0; row < count; row++) {
+					writer.write(Double.toString(xs.getDouble()));
+					writer.write(',');
+					writer.write(Double.toString(ys.getDouble()));
+					for (int c = 0; c < columnCount; c++) {
+						writer.write(',');
+						writer.write(Float.toString(values[c].getFloat()));
+					}
+					writer.write(IOUtils.NATIVE_NEWLINE);
+				}
+			}
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, int length, long position) throws IOException {
+		buffer.clear().limit(length);
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read < 0) {
+				throw new IOException("unexpected end of binary accessibility file");
+			}
+		}
+		buffer.flip();
+	}
+
+	private static int padded(int length) {
+		return (length + 7) / 8 * 8;
+	}
+
+	/**
+	 * Writes results of blocks, in any order, to consecutive rows of the file.
+	 */
+	static class Writer implements Accessibility.ResultWriter {
+
+		private final FileChannel channel;
+		private final long rowCount;
+		private final int columnCount;
+		private final long dataStart;
+		private long nextRow = 0;
+
+		Writer(File file, String[] columns, long rowCount) throws IOException {
+			this.rowCount = rowCount;
+			this.columnCount = columns.length;
+			this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+
+			byte[] names = String.join("\n", columns).getBytes(StandardCharsets.UTF_8);
+			byte[] paddedNames = Arrays.copyOf(names, padded(names.length));
+			Arrays.fill(paddedNames, names.length, paddedNames.length, (byte) ' ');
+			ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER_BYTES + paddedNames.length).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putInt(columns.length).putInt(names.length).putLong(rowCount).put(paddedNames);
+			header.flip();
+			writeFully(header, 0);
+			this.dataStart = header.capacity();
+		}
+
+		@Override
+		public synchronized void write(List<Tuple<Coord, double[]>> results) throws IOException {
+			int count = results.size();
+			if (this.nextRow + count > this.rowCount) {
+				throw new IllegalStateException("more results than the expected " + this.rowCount + " rows");
+			}
+			ByteBuffer xs = ByteBuffer.allocate(8 * count).order(ByteOrder.LITTLE_ENDIAN);
+			ByteBuffer ys = ByteBuffer.allocate(8 * count).order(ByteOrder.LITTLE_ENDIAN);
+			ByteBuffer[] values = new ByteBuffer[this.columnCount];
+			for (int c = 0; c < this.columnCount; c++) {
+				values[c] = ByteBuffer.allocate(4 * count).order(ByteOrder.LITTLE_ENDIAN);
+			}
+			for (Tuple<Coord, double[]> result : results) {
+				xs.putDouble(result.getFirst().getX());
+				ys.putDouble(result.getFirst().getY());
+				double[] accessibilities = result.getSecond();
+				for (int c = 0; c < this.columnCount; c++) {
+					values[c].putFloat((float) accessibilities[c]);
+				}
+			}
+			writeFully(xs.flip(), this.dataStart + 8 * this.nextRow);
+			writeFully(ys.flip(), this.dataStart + 8 * (this.rowCount + this.nextRow));
+			for (int c = 0; c < this.columnCount; c++) {
+				writeFully(values[c].flip(), this.dataStart + 16 * this.rowCount + 4 * (c * this.rowCount + this.nextRow));
+			}
+			this.nextRow += count;
+		}
+
+		private void writeFully(ByteBuffer buffer, long position) throws IOException {
+			while (buffer.hasRemaining()) {
+				position += this.channel.write(buffer, position);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (this.nextRow != this.rowCount) {
+				log.warn("binary accessibility file contains only " + this.nextRow + " of " + this.rowCount + " rows.");
+			}
+			this.channel.close();
+		}
+	}
+}
@@ -97,15 +97,28 @@ public class CalculateAccessibility {
 	public static Map<Coord, Double> loadAttractions(File file) throws IOException {
 		Map<Coord, Double> attractions = new HashMap<>();
 		try (CSVReader csv = new CSVReader(new String[]{"x", "y", "attraction"}, file.getAbsolutePath(), ";")) {
-			csv.readLine();
-			Map<String, String> data; // header
-			while ((data = csv.readLine()) != null) {
-				attractions.put(new Coord(Double.parseDouble(data.get("x")), Double.parseDouble(data.get("y"))), Double.parseDouble(data.get("attraction")));
+			csv.next(); // header
+			while (csv.next()) {
+				attractions.put(new Coord(csv.getDouble(0), csv.getDouble(1)), csv.getDouble(2));
 			}
 		}
 		return attractions;
 	}
 
+	/**
+	 * Arguments 0 to 16 are required, see the variable names below. The optional arguments can be skipped with "-":
+	 * <ul>
+	 *     <li>17: partition, e.g. <code>0/4</code> to calculate the first of four partitions, see {@link Accessibility#setPartition(int, int)}. All partitions
+	 *     must use the same checkpoint directory (argument 22), which defaults to <code>accessibility_blocks</code> in the output directory.</li>
+	 *     <li>18: output format, <code>csv</code> (default) or <code>binary</code></li>
+	 *     <li>19: memory limit of the stop connection store in MB, defaults to half of the maximum heap size</li>
+	 *     <li>20: spill file for stop connections exceeding the memory limit. Without spill file, such connections are calculated again.</li>
+	 *     <li>21: calculation of the pt connections, <code>trees</code> (default) or <code>rangequery</code>, see {@link Accessibility#setUseRangeQuery(boolean)}.
+	 *     The range query is faster, but its results differ slightly from the trees.</li>
+	 *     <li>22: checkpoint directory, see {@link Accessibility#setCheckpointDirectory(File)}. An interrupted run started again with the same directory only
+	 *     calculates the blocks that were not finished yet.</li>
+	 * </ul>
+	 */
 	@SuppressWarnings("ResultOfMethodCallIgnored")
 	public static void main(String[] args) throws IOException {
 		System.setProperty("matsim.preferLocalDtds", "true");
@@ -140,6 +153,15 @@ public class CalculateAccessibility {
 		String[] timesPtStr = args[14].split(";");
 		String[] timesCarAMStr = args[15].split(";");
 		String[] timesCarPMStr = args[16].split(";");
+		String partition = args.length > 17 && !args[17].equals("-") ? args[17] : null; // optional, e.g. 0/4 to calculate the first of four partitions
+		Accessibility.OutputFormat outputFormat = args.length > 18 && !args[18].equals("-") ? Accessibility.OutputFormat.valueOf(args[18].toUpperCase()) : Accessibility.OutputFormat.CSV; // optional, csv or binary
+		long connectionStoreMemoryLimitMB = args.length > 19 && !args[19].equals("-") ? Long.parseLong(args[19]) : -1; // optional, in MB
+		File connectionStoreSpillFile = args.length > 20 && !args[20].equals("-") ? new File(args[20]) : null; // optional
+		String ptConnections = args.length > 21 && !args[21].equals("-") ? args[21] : "trees"; // optional, trees or rangequery
+		File checkpointDirectory = args.length > 22 && !args[22].equals("-") ? new File(args[22]) : null; // optional, enables resuming an interrupted run
+		if (!ptConnections.equals("trees") && !ptConnections.equals("rangequery")) {
+			throw new IllegalArgumentException("unknown pt connection calculation: " + ptConnections);
+		}
 
 		double[] carAMDepTimes = new double[timesCarAMStr.length];
 		for (int i = 0; i < timesCarAMStr.length; i++) {
@@ -159,7 +181,7 @@ public class CalculateAccessibility {
 			outputDir.mkdirs();
 		}
 
-		File csvOutputFile = new File(outputDirectory, "accessibility.csv");
+		File outputFile = new File(outputDirectory, outputFormat == Accessibility.OutputFormat.BINARY ? "accessibility.bin" : "accessibility.csv");
 		File attractionsFile = new File(outputDirectory, "attractions_" + gridSize + ".csv");
 
 		List<Coord> coordinates = new ArrayList<>();
@@ -209,7 +231,21 @@ public class CalculateAccessibility {
 		Accessibility accessibility = new Accessibility(networkFilename, eventsFilename, scheduleFilename, transitNetworkFilename, attractions, carAMDepTimes, carPMDepTimes, ptMinDepTime,
 				ptMaxDepTime, trainDetector, zones);
 		accessibility.setThreadCount(numThreads);
-		accessibility.calculateAccessibility(coordinates, modes, csvOutputFile);
+		accessibility.setOutputFormat(outputFormat);
+		if (connectionStoreMemoryLimitMB >= 0) {
+			accessibility.setConnectionStoreMemoryLimit(connectionStoreMemoryLimitMB * 1024 * 1024);
+		}
+		accessibility.setConnectionStoreSpillFile(connectionStoreSpillFile);
+		accessibility.setUseRangeQuery(ptConnections.equals("rangequery"));
+		if (partition != null && checkpointDirectory == null) {
+			checkpointDirectory = new File(outputDirectory, "accessibility_blocks");
+		}
+		accessibility.setCheckpointDirectory(checkpointDirectory);
+		if (partition != null) {
+			String[] parts = partition.split("/");
+			accessibility.setPartition(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+		}
+		accessibility.calculateAccessibility(coordinates, modes, outputFile);
 
 		log.info("done.");
 	}
@@ -1,9 +1,6 @@
 package ch.sbb.matsim.accessibility;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import org.matsim.api.core.v01.Id;
 import org.matsim.core.utils.misc.OptionalTime;
 import org.matsim.pt.transitSchedule.api.Departure;
@@ -13,52 +10,107 @@ import org.matsim.pt.transitSchedule.api.TransitRouteStop;
 import org.matsim.pt.transitSchedule.api.TransitSchedule;
 import org.matsim.pt.transitSchedule.api.TransitStopFacility;
 
-class DeparturesCache {
+/**
+ * The distinct departure times of all stops of a schedule, in seconds.
+ * <p>
+ * The times are kept exactly as in the schedule, without rounding, so that callers can match them against departure times calculated from the schedule.
+ * <p>
+ * The departures are stored in one array, grouped by stop index and sorted by time within each stop. The departures of a stop range from
+ * {@link #getFirstDeparture(int)} (inclusive) to {@link #getLastDeparture(int)} (exclusive). Instances are immutable and can be shared between threads.
+ */
+public class DeparturesCache {
 
-    final Map<Id<TransitStopFacility>, double[]> cache;
+	/**
+	 * Returned by {@link #nextDepartureSeconds(int, double)} if there is no later departure at the stop.
+	 */
+	public static final double NO_DEPARTURE = -1;
 
-    public DeparturesCache(TransitSchedule schedule) {
-        Map<Id<TransitStopFacility>, ArrayList<Double>> tmpCache = new ConcurrentHashMap<>(schedule.getFacilities().size());
+	private final int[] offsets;
+	private final double[] departures;
 
-        for (TransitLine line : schedule.getTransitLines().values()) {
-            for (TransitRoute route : line.getRoutes().values()) {
-                for (TransitRouteStop routeStop : route.getStops()) {
-                    TransitStopFacility stop = routeStop.getStopFacility();
-                    OptionalTime offset = routeStop.getDepartureOffset();
-                    if (offset.isDefined()) {
-						Id<TransitStopFacility> stopId = stop.getId();
-						ArrayList<Double> departures = tmpCache.computeIfAbsent(stopId, k -> new ArrayList<>());
+	public DeparturesCache(TransitSchedule schedule) {
+		int stopCount = Id.getNumberOfIds(TransitStopFacility.class);
+		int[] counts = new int[stopCount];
+		for (TransitLine line : schedule.getTransitLines().values()) {
+			for (TransitRoute route : line.getRoutes().values()) {
+				for (TransitRouteStop routeStop : route.getStops()) {
+					if (routeStop.getDepartureOffset().isDefined()) {
+						counts[routeStop.getStopFacility().getId().index()] += route.getDepartures().size();
+					}
+				}
+			}
+		}
+
+		int[] starts = new int[stopCount + 1];
+		for (int i = 0; i < stopCount; i++) {
+			starts[i + 1] = starts[i] + counts[i];
+		}
+		double[] allDepartures = new double[starts[stopCount]];
+		int[] positions = Arrays.copyOf(starts, stopCount);
+		for (TransitLine line : schedule.getTransitLines().values()) {
+			for (TransitRoute route : line.getRoutes().values()) {
+				for (TransitRouteStop routeStop : route.getStops()) {
+					OptionalTime offset = routeStop.getDepartureOffset();
+					if (offset.isDefined()) {
+						int stopIndex = routeStop.getStopFacility().getId().index();
 						for (Departure dep : route.getDepartures().values()) {
-							departures.add(dep.getDepartureTime() + offset.seconds());
+							allDepartures[positions[stopIndex]++] = dep.getDepartureTime() + offset.seconds();
 						}
 					}
 				}
 			}
 		}
 
-		this.cache = new ConcurrentHashMap<>(schedule.getFacilities().size());
-		tmpCache.forEach((stopId, departureTimes) -> {
-			double[] departures = departureTimes.stream().mapToDouble(Double::doubleValue).toArray();
-			Arrays.sort(departures);
-			cache.put(stopId, departures);
-		});
+		// sort the departures of every stop and remove duplicates, several routes often depart at the same time
+		this.offsets = new int[stopCount + 1];
+		int count = 0;
+		for (int stopIndex = 0; stopIndex < stopCount; stopIndex++) {
+			this.offsets[stopIndex] = count;
+			Arrays.sort(allDepartures, starts[stopIndex], starts[stopIndex + 1]);
+			for (int i = starts[stopIndex]; i < starts[stopIndex + 1]; i++) {
+				if (count == this.offsets[stopIndex] || allDepartures[count - 1] != allDepartures[i]) {
+					allDepartures[count++] = allDepartures[i];
+				}
+			}
+		}
+		this.offsets[stopCount] = count;
+		this.departures = Arrays.copyOf(allDepartures, count);
 	}
 
-	OptionalTime getNextDepartureTime(Id<TransitStopFacility> stopId, double depTime) {
-		double[] departures = this.cache.get(stopId);
-		if (departures == null) {
-			return OptionalTime.undefined();
+	/**
+	 * @return the first departure at the stop at or after the given time, or {@link #NO_DEPARTURE}.
+	 */
+	public double nextDepartureSeconds(int stopIndex, double time) {
+		if (stopIndex >= this.offsets.length - 1) {
+			return NO_DEPARTURE;
 		}
-		int idx = Arrays.binarySearch(departures, depTime);
+		int from = this.offsets[stopIndex];
+		int to = this.offsets[stopIndex + 1];
+		int idx = Arrays.binarySearch(this.departures, from, to, time);
 		if (idx < 0) {
 			// idx = (-insertionpoint) - 1
-			// idx + 1 = -insertionpoint
-			// -(idx + 1) = insertionpoint
 			idx = -(idx + 1);
 		}
-		if (idx >= departures.length) {
-			return OptionalTime.undefined();
-		}
-		return OptionalTime.defined(departures[idx]);
+		return idx < to ? this.departures[idx] : NO_DEPARTURE;
+	}
+
+	public OptionalTime getNextDepartureTime(Id<TransitStopFacility> stopId, double depTime) {
+		double departure = nextDepartureSeconds(stopId.index(), depTime);
+		return departure == NO_DEPARTURE ? OptionalTime.undefined() : OptionalTime.defined(departure);
+	}
+
+	public int getFirstDeparture(int stopIndex) {
+		return stopIndex < this.offsets.length - 1 ? this.offsets[stopIndex] : 0;
+	}
+
+	public int getLastDeparture(int stopIndex) {
+		return stopIndex < this.offsets.length - 1 ? this.offsets[stopIndex + 1] : 0;
+	}
+
+	/**
+	 * @param departure an index between {@link #getFirstDeparture(int)} and {@link #getLastDeparture(int)} of a stop
+	 */
+	public double getDepartureSeconds(int departure) {
+		return this.departures[departure];
 	}
 }
@@ -0,0 +1,284 @@
+package ch.sbb.matsim.accessibility;
+
+import ch.sbb.matsim.analysis.skims.RooftopUtils;
+import java.util.Arrays;
+
+/**
+ * The rooftop calculations of {@link RooftopUtils} on primitive arrays, for the inner loop of the accessibility calculation.
+ * <p>
+ * The connections of one origin-destination pair are added with {@link #add}, then {@link #sortAndFilter()} keeps the same connections as
+ * {@link RooftopUtils#sortAndFilterConnections}, in the same order. The adaption time and the connection shares are calculated like
+ * {@link RooftopUtils#calcAverageAdaptionTime} and {@link RooftopUtils#calcConnectionShares}. Every connection carries two caller-defined references, so the
+ * caller can look up further data of the remaining connections.
+ * <p>
+ * The buffers are kept between the origin-destination pairs and only grow, so an instance must only be used by a single thread.
+ */
+final class RooftopCalculator {
+
+	private double[] departureTimes = new double[64];
+	private double[] travelTimes = new double[64];
+	private double[] accessTimes = new double[64];
+	private double[] egressTimes = new double[64];
+	private double[] transferCounts = new double[64];
+	private int[] groups = new int[64];
+	private int[] indices = new int[64];
+	private int count = 0;
+
+	// the added connections, referenced by position, in the order of the filtered connections
+	private int[] order = new int[64];
+	private int[] buffer = new int[64];
+	private int[] shareCounts = new int[64];
+	private int filteredCount = 0;
+	private boolean filtered = false;
+	private int shareTotal = 0;
+
+	void clear() {
+		this.count = 0;
+		this.filteredCount = 0;
+		this.filtered = false;
+	}
+
+	void add(double departureTime, double travelTime, double accessTime, double egressTime, double transferCount, int group, int index) {
+		if (this.count == this.departureTimes.length) {
+			grow();
+		}
+		int i = this.count++;
+		this.departureTimes[i] = departureTime;
+		this.travelTimes[i] = travelTime;
+		this.accessTimes[i] = accessTime;
+		this.egressTimes[i] = egressTime;
+		this.transferCounts[i] = transferCount;
+		this.groups[i] = group;
+		this.indices[i] = index;
+	}
+
+	private void grow() {
+		int size = this.departureTimes.length * 2;
+		this.departureTimes = Arrays.copyOf(this.departureTimes, size);
+		this.travelTimes = Arrays.copyOf(this.travelTimes, size);
+		this.accessTimes = Arrays.copyOf(this.accessTimes, size);
+		this.egressTimes = Arrays.copyOf(this.egressTimes, size);
+		this.transferCounts = Arrays.copyOf(this.transferCounts, size);
+		this.groups = Arrays.copyOf(this.groups, size);
+		this.indices = Arrays.copyOf(this.indices, size);
+		this.order = new int[size];
+		this.buffer = new int[size];
+		this.shareCounts = new int[size];
+	}
+
+	/**
+	 * @return the number of added connections before {@link #sortAndFilter()}, the number of remaining connections afterwards.
+	 */
+	int size() {
+		return this.filtered ? this.filteredCount : this.count;
+	}
+
+	/**
+	 * Sorts the connections by their departure time at the origin (departure time minus access time), and removes the connections that depart earlier but
+	 * do not arrive earlier than a later connection, or depart later but do not arrive earlier than an earlier connection.
+	 */
+	void sortAndFilter() {
+		int n = this.count;
+		for (int i = 0; i < n; i++) {
+			this.order[i] = i;
+		}
+		mergeSort(0, n);
+
+		// step forward through all connections and remove those where the earlier one is better
+		int kept = 0;
+		int earlier = -1;
+		for (int k = 0; k < n; k++) {
+			int c = this.order[k];
+			if (earlier < 0) {
+				this.buffer[kept++] = c;
+				earlier = c;
+			} else {
+				double timeDiff = originDeparture(c) - originDeparture(earlier);
+				if (totalTravelTime(earlier) + timeDiff > totalTravelTime(c)) {
+					this.buffer[kept++] = c;
+					earlier = c;
+				}
+			}
+		}
+
+		// step backwards through the remaining connections and remove those where the later one is better
+		int remaining = 0;
+		int later = -1;
+		for (int k = kept - 1; k >= 0; k--) {
+			int c = this.buffer[k];
+			if (later < 0) {
+				this.order[remaining++] = c;
+				later = c;
+			} else {
+				double timeDiff = originDeparture(later) - originDeparture(c);
+				if (totalTravelTime(later) + timeDiff > totalTravelTime(c)) {
+					this.order[remaining++] = c;
+					later = c;
+				}
+			}
+		}
+		// reverse, so the remaining connections are in ascending departure order
+		for (int i = 0, j = remaining - 1; i < j; i++, j--) {
+			int tmp = this.order[i];
+			this.order[i] = this.order[j];
+			this.order[j] = tmp;
+		}
+		this.filteredCount = remaining;
+		this.filtered = true;
+	}
+
+	/**
+	 * A stable merge sort of <code>order[from, to)</code> by the departure time at the origin, like the stable sort of a list.
+	 */
+	private void mergeSort(int from, int to) {
+		if (to - from < 2) {
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		mergeSort(from, mid);
+		mergeSort(mid, to);
+		if (originDeparture(this.order[mid - 1]) <= originDeparture(this.order[mid])) {
+			return;
+		}
+		System.arraycopy(this.order, from, this.buffer, from, to - from);
+		int left = from;
+		int right = mid;
+		for (int k = from; k < to; k++) {
+			if (right >= to || (left < mid && originDeparture(this.buffer[left]) <= originDeparture(this.buffer[right]))) {
+				this.order[k] = this.buffer[left++];
+			} else {
+				this.order[k] = this.buffer[right++];
+			}
+		}
+	}
+
+	private double originDeparture(int c) {
+		return this.departureTimes[c] - this.accessTimes[c];
+	}
+
+	private double totalTravelTime(int c) {
+		return this.accessTimes[c] + this.travelTimes[c] + this.egressTimes[c];
+	}
+
+	/**
+	 * Must be called after {@link #sortAndFilter()}.
+	 */
+	double calcAverageAdaptionTime(double minDepartureTime, double maxDepartureTime) {
+		int next = 0;
+		int prevConnection = -1;
+		int nextConnection = this.order[next++];
+		double prevDepartureTime = Double.NaN;
+		double nextDepartureTime = originDeparture(nextConnection);
+
+		double sum = 0.0;
+		int count = 0;
+		for (double time = minDepartureTime; time < maxDepartureTime; time += 60.0) {
+			if (time >= nextDepartureTime) {
+				prevDepartureTime = nextDepartureTime;
+				prevConnection = nextConnection;
+				if (next < this.filteredCount) {
+					nextConnection = this.order[next++];
+					nextDepartureTime = originDeparture(nextConnection);
+				} else {
+					nextConnection = -1;
+					nextDepartureTime = Double.NaN;
+				}
+			}
+
+			double adaptionTime;
+			if (prevConnection < 0) {
+				adaptionTime = nextDepartureTime - time;
+			} else if (nextConnection < 0) {
+				adaptionTime = time - prevDepartureTime;
+			} else {
+				double prevAdaptionTime = time - prevDepartureTime;
+				double nextAdaptionTime = nextDepartureTime - time;
+				double prevTotalTime = totalTravelTime(prevConnection) + prevAdaptionTime;
+				double nextTotalTime = totalTravelTime(nextConnection) + nextAdaptionTime;
+				adaptionTime = prevTotalTime < nextTotalTime ? prevAdaptionTime : nextAdaptionTime;
+			}
+			sum += adaptionTime;
+			count++;
+		}
+		return sum / count;
+	}
+
+	/**
+	 * Calculates for every remaining connection the share of the minutes in the time window for which it is the best choice. Must be called after
+	 * {@link #sortAndFilter()}, the shares are then available from {@link #getShare(int)}.
+	 */
+	void calcConnectionShares(double minDepartureTime, double maxDepartureTime) {
+		Arrays.fill(this.shareCounts, 0, this.filteredCount, 0);
+		int next = 0;
+		int prevPosition = -1;
+		int nextPosition = next++;
+
+		int total = 0;
+		for (double time = minDepartureTime; time < maxDepartureTime; time += 60.0) {
+			if (nextPosition >= 0 && time >= originDeparture(this.order[nextPosition])) {
+				prevPosition = nextPosition;
+				nextPosition = next < this.filteredCount ? next++ : -1;
+			}
+
+			if (prevPosition < 0) {
+				this.shareCounts[nextPosition]++;
+			} else if (nextPosition < 0) {
+				this.shareCounts[prevPosition]++;
+			} else {
+				int prevConnection = this.order[prevPosition];
+				int nextConnection = this.order[nextPosition];
+				double prevAdaptionTime = time - originDeparture(prevConnection);
+				double nextAdaptionTime = originDeparture(nextConnection) - time;
+				double prevTotalTime = totalTravelTime(prevConnection) + prevAdaptionTime;
+				double nextTotalTime = totalTravelTime(nextConnection) + nextAdaptionTime;
+				if (prevTotalTime < nextTotalTime) {
+					this.shareCounts[prevPosition]++;
+				} else {
+					this.shareCounts[nextPosition]++;
+				}
+			}
+			total++;
+		}
+		this.shareTotal = total;
+	}
+
+	/**
+	 * @param i the position of a remaining connection, between 0 and {@link #size()}
+	 * @return the share calculated by {@link #calcConnectionShares}, 0 if the connection is never the best choice
+	 */
+	double getShare(int i) {
+		return this.shareCounts[i] / (double) this.shareTotal;
+	}
+
+	double getAccessTime(int i) {
+		return this.accessTimes[this.order[i]];
+	}
+
+	double getEgressTime(int i) {
+		return this.egressTimes[this.order[i]];
+	}
+
+	double getTransferCount(int i) {
+		return this.transferCounts[this.order[i]];
+	}
+
+	double getTotalTravelTime(int i) {
+		return totalTravelTime(this.order[i]);
+	}
+
+	double getDepartureTime(int i) {
+		return this.departureTimes[this.order[i]];
+	}
+
+	double getTravelTime(int i) {
+		return this.travelTimes[this.order[i]];
+	}
+
+	int getGroup(int i) {
+		return this.groups[this.order[i]];
+	}
+
+	int getIndex(int i) {
+		return this.indices[this.order[i]];
+	}
+}
@@ -0,0 +1,389 @@
+package ch.sbb.matsim.accessibility;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ * Stores the pre-calculated pt connections from stops to all other stops for a complete accessibility run, so that stops shared by several blocks are only
+ * routed once.
+ * <p>
+ * The connections of an origin stop are kept in a compact, primitive layout: the reached destination stops sorted by stop index, and for each destination
+ * the connections sorted by departure time, with travel time, number of transfers and the route characteristics required by the accessibility formulas.
+ * All times, distances and in-vehicle times are stored as double, exactly as calculated by the router. Departure times can have fractional seconds, and the
+ * distances and in-vehicle times are sums over the route parts, so the accessibility values do not change compared to calculating them from the routes.
+ * <p>
+ * The store is bounded by an approximate memory limit. If the limit is exceeded, the least recently used origin stops are evicted. If a spill file is set,
+ * evicted stops are written to it and read back through a memory-mapped buffer when they are requested again, otherwise they have to be re-calculated.
+ */
+class StopConnectionStore implements AutoCloseable {
+
+	private final static Logger log = LogManager.getLogger(StopConnectionStore.class);
+
+	private final AtomicReferenceArray<StopConnections> inMemory;
+	private final long[] lastAccess;
+	private final long[] spillOffsets;
+	private final int[] spillLengths;
+	private final long maxMemoryBytes;
+	private final FileChannel spillChannel;
+	private final File spillFile;
+	private final AtomicLong clock = new AtomicLong();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder spillReads = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder waits = new LongAdder();
+	private final ConcurrentHashMap<Integer, CompletableFuture<StopConnections>> inProgress = new ConcurrentHashMap<>();
+	private long memoryBytes = 0;
+	private long spillFileSize = 0;
+	private int evictedCount = 0;
+
+	/**
+	 * @param stopCount the number of stop indices, usually <code>Id.getNumberOfIds(TransitStopFacility.class)</code>
+	 * @param maxMemoryBytes the approximate amount of heap the stored connections may use
+	 * @param spillFile the file to which evicted stops are written, or <code>null</code> to discard evicted stops
+	 */
+	StopConnectionStore(int stopCount, long maxMemoryBytes, File spillFile) {
+		this.inMemory = new AtomicReferenceArray<>(stopCount);
+		this.lastAccess = new long[stopCount];
+		this.spillOffsets = new long[stopCount];
+		Arrays.fill(this.spillOffsets, -1);
+		this.spillLengths = new int[stopCount];
+		this.maxMemoryBytes = maxMemoryBytes;
+		this.spillFile = spillFile;
+		if (spillFile != null) {
+			try {
+				this.spillChannel = FileChannel.open(spillFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+						StandardOpenOption.WRITE);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		} else {
+			this.spillChannel = null;
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the connections of the stop can be returned without re-calculating them.
+	 */
+	boolean contains(int stopIndex) {
+		return this.inMemory.get(stopIndex) != null || this.spillOffsets[stopIndex] >= 0;
+	}
+
+	/**
+	 * @return the connections of the stop, or <code>null</code> if they were never stored or evicted without spill file.
+	 */
+	StopConnections get(int stopIndex) {
+		StopConnections connections = this.inMemory.get(stopIndex);
+		if (connections != null) {
+			this.hits.increment();
+			this.lastAccess[stopIndex] = this.clock.incrementAndGet();
+			return connections;
+		}
+		synchronized (this) {
+			connections = this.inMemory.get(stopIndex);
+			if (connections == null) {
+				if (this.spillOffsets[stopIndex] < 0) {
+					this.misses.increment();
+					return null;
+				}
+				connections = readSpilled(stopIndex);
+				this.spillReads.increment();
+				addToMemory(stopIndex, connections);
+			}
+			return connections;
+		}
+	}
+
+	/**
+	 * Returns the connections of the stop, calculating and storing them if they are not available. If another thread is already calculating the connections of
+	 * the same stop, waits for its result instead of calculating them a second time.
+	 */
+	StopConnections getOrCalculate(int stopIndex, IntFunction<StopConnections> calculator) {
+		StopConnections connections = get(stopIndex);
+		if (connections != null) {
+			return connections;
+		}
+		CompletableFuture<StopConnections> future = new CompletableFuture<>();
+		CompletableFuture<StopConnections> running = this.inProgress.putIfAbsent(stopIndex, future);
+		if (running != null) {
+			this.waits.increment();
+			return running.join();
+		}
+		try {
+			// another thread might have stored the connections after our look-up
+			connections = contains(stopIndex) ? get(stopIndex) : null;
+			if (connections == null) {
+				connections = calculator.apply(stopIndex);
+				put(stopIndex, connections);
+			}
+			future.complete(connections);
+			return connections;
+		} catch (RuntimeException | Error e) {
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			this.inProgress.remove(stopIndex);
+		}
+	}
+
+	synchronized void put(int stopIndex, StopConnections connections) {
+		StopConnections previous = this.inMemory.get(stopIndex);
+		if (previous != null) {
+			this.memoryBytes -= previous.estimateMemoryBytes();
+			this.inMemory.set(stopIndex, null);
+		}
+		addToMemory(stopIndex, connections);
+	}
+
+	void logStatistics() {
+		log.info(String.format("stop connection store: %d hits, %d reads from spill file, %d misses, %d waits for other threads, %d evictions, %.1f MB in memory, %.1f MB spilled.",
+				this.hits.sum(), this.spillReads.sum(), this.misses.sum(), this.waits.sum(), this.evictedCount, this.memoryBytes / 1e6, this.spillFileSize / 1e6));
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.spillChannel != null) {
+			this.spillChannel.close();
+			if (!this.spillFile.delete()) {
+				log.warn("could not delete spill file " + this.spillFile);
+			}
+		}
+	}
+
+	private void addToMemory(int stopIndex, StopConnections connections) {
+		this.inMemory.set(stopIndex, connections);
+		this.lastAccess[stopIndex] = this.clock.incrementAndGet();
+		this.memoryBytes += connections.estimateMemoryBytes();
+		if (this.memoryBytes > this.maxMemoryBytes) {
+			evict(stopIndex);
+		}
+	}
+
+	/**
+	 * Evicts the least recently used stops until the store uses at most 75% of the memory limit, so that eviction does not run on every insertion.
+	 */
+	private void evict(int keepStopIndex) {
+		// get() updates the access times without holding the lock, so sort by a copy which cannot change during sorting
+		long[] accessTimes = new long[this.inMemory.length()];
+		List<Integer> candidates = new ArrayList<>();
+		for (int i = 0; i < this.inMemory.length(); i++) {
+			if (i != keepStopIndex && this.inMemory.get(i) != null) {
+				candidates.add(i);
+				accessTimes[i] = this.lastAccess[i];
+			}
+		}
+		candidates.sort((a, b) -> Long.compare(accessTimes[a], accessTimes[b]));
+		long targetBytes = this.maxMemoryBytes / 4 * 3;
+		for (int stopIndex : candidates) {
+			if (this.memoryBytes <= targetBytes) {
+				break;
+			}
+			StopConnections connections = this.inMemory.get(stopIndex);
+			if (this.spillChannel != null && this.spillOffsets[stopIndex] < 0) {
+				writeSpilled(stopIndex, connections);
+			}
+			this.inMemory.set(stopIndex, null);
+			this.memoryBytes -= connections.estimateMemoryBytes();
+			this.evictedCount++;
+		}
+	}
+
+	private void writeSpilled(int stopIndex, StopConnections connections) {
+		ByteBuffer buffer = ByteBuffer.allocate(connections.serializedBytes());
+		connections.writeTo(buffer);
+		buffer.flip();
+		try {
+			long offset = this.spillFileSize;
+			long position = offset;
+			while (buffer.hasRemaining()) {
+				position += this.spillChannel.write(buffer, position);
+			}
+			this.spillOffsets[stopIndex] = offset;
+			this.spillLengths[stopIndex] = (int) (position - offset);
+			this.spillFileSize = position;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private StopConnections readSpilled(int stopIndex) {
+		try {
+			MappedByteBuffer buffer = this.spillChannel.map(FileChannel.MapMode.READ_ONLY, this.spillOffsets[stopIndex], this.spillLengths[stopIndex]);
+			return StopConnections.readFrom(buffer);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * The connections from one origin stop to all reachable destination stops. Instances are immutable.
+	 */
+	static class StopConnections {
+
+		private final int[] toStops;
+		private final int[] offsets;
+		final double[] departureTimes;
+		final double[] travelTimes;
+		final byte[] transfers;
+		final double[] distances;
+		final double[] inVehicleTimes;
+		final double[] trainInVehicleTimes;
+
+		private StopConnections(int[] toStops, int[] offsets, double[] departureTimes, double[] travelTimes, byte[] transfers, double[] distances,
+				double[] inVehicleTimes, double[] trainInVehicleTimes) {
+			this.toStops = toStops;
+			this.offsets = offsets;
+			this.departureTimes = departureTimes;
+			this.travelTimes = travelTimes;
+			this.transfers = transfers;
+			this.distances = distances;
+			this.inVehicleTimes = inVehicleTimes;
+			this.trainInVehicleTimes = trainInVehicleTimes;
+		}
+
+		/**
+		 * @return the index of the first connection to the destination stop. The connections to the stop range from this index (inclusive) to
+		 * {@link #getLastConnection(int)} (exclusive), sorted by departure time. If there are no connections to the stop, both methods return the same value.
+		 */
+		int getFirstConnection(int toStopIndex) {
+			int pos = Arrays.binarySearch(this.toStops, toStopIndex);
+			return pos < 0 ? 0 : this.offsets[pos];
+		}
+
+		int getLastConnection(int toStopIndex) {
+			int pos = Arrays.binarySearch(this.toStops, toStopIndex);
+			return pos < 0 ? 0 : this.offsets[pos + 1];
+		}
+
+		int getConnectionCount() {
+			return this.departureTimes.length;
+		}
+
+		long estimateMemoryBytes() {
+			return 128 + 4L * this.toStops.length + 4L * this.offsets.length + 41L * this.departureTimes.length;
+		}
+
+		int serializedBytes() {
+			return 8 + 4 * this.toStops.length + 4 * this.offsets.length + 41 * this.departureTimes.length;
+		}
+
+		void writeTo(ByteBuffer buffer) {
+			buffer.putInt(this.toStops.length);
+			buffer.putInt(this.departureTimes.length);
+			buffer.asIntBuffer().put(this.toStops);
+			buffer.position(buffer.position() + 4 * this.toStops.length);
+			buffer.asIntBuffer().put(this.offsets);
+			buffer.position(buffer.position() + 4 * this.offsets.length);
+			for (double[] values : new double[][]{this.departureTimes, this.travelTimes, this.distances, this.inVehicleTimes, this.trainInVehicleTimes}) {
+				buffer.asDoubleBuffer().put(values);
+				buffer.position(buffer.position() + 8 * values.length);
+			}
+			buffer.put(this.transfers);
+		}
+
+		static StopConnections readFrom(ByteBuffer buffer) {
+			int stopCount = buffer.getInt();
+			int connectionCount = buffer.getInt();
+			int[] toStops = new int[stopCount];
+			buffer.asIntBuffer().get(toStops);
+			buffer.position(buffer.position() + 4 * stopCount);
+			int[] offsets = new int[stopCount + 1];
+			buffer.asIntBuffer().get(offsets);
+			buffer.position(buffer.position() + 4 * offsets.length);
+			double[][] values = new double[5][connectionCount];
+			for (double[] v : values) {
+				buffer.asDoubleBuffer().get(v);
+				buffer.position(buffer.position() + 8 * connectionCount);
+			}
+			byte[] transfers = new byte[connectionCount];
+			buffer.get(transfers);
+			return new StopConnections(toStops, offsets, values[0], values[1], transfers, values[2], values[3], values[4]);
+		}
+	}
+
+	/**
+	 * Collects the connections of one origin stop. The connections to a destination stop must be added consecutively, sorted by departure time.
+	 */
+	static class Builder {
+
+		private final List<int[]> groups = new ArrayList<>(); // toStop, first, count
+		private double[] departureTimes = new double[256];
+		private double[] travelTimes = new double[256];
+		private byte[] transfers = new byte[256];
+		private double[] distances = new double[256];
+		private double[] inVehicleTimes = new double[256];
+		private double[] trainInVehicleTimes = new double[256];
+		private int count = 0;
+		private int currentToStop = -1;
+
+		void add(int toStopIndex, double departureTime, double travelTime, int transferCount, double distance, double inVehicleTime, double trainInVehicleTime) {
+			if (toStopIndex != this.currentToStop) {
+				this.groups.add(new int[]{toStopIndex, this.count, 0});
+				this.currentToStop = toStopIndex;
+			}
+			if (this.count == this.departureTimes.length) {
+				int newLength = this.count * 2;
+				this.departureTimes = Arrays.copyOf(this.departureTimes, newLength);
+				this.travelTimes = Arrays.copyOf(this.travelTimes, newLength);
+				this.transfers = Arrays.copyOf(this.transfers, newLength);
+				this.distances = Arrays.copyOf(this.distances, newLength);
+				this.inVehicleTimes = Arrays.copyOf(this.inVehicleTimes, newLength);
+				this.trainInVehicleTimes = Arrays.copyOf(this.trainInVehicleTimes, newLength);
+			}
+			this.departureTimes[this.count] = departureTime;
+			this.travelTimes[this.count] = travelTime;
+			this.transfers[this.count] = (byte) Math.min(Byte.MAX_VALUE, transferCount);
+			this.distances[this.count] = distance;
+			this.inVehicleTimes[this.count] = inVehicleTime;
+			this.trainInVehicleTimes[this.count] = trainInVehicleTime;
+			this.count++;
+			this.groups.get(this.groups.size() - 1)[2]++;
+		}
+
+		StopConnections build() {
+			this.groups.sort((a, b) -> Integer.compare(a[0], b[0]));
+			int[] toStops = new int[this.groups.size()];
+			int[] offsets = new int[this.groups.size() + 1];
+			double[] departureTimes = new double[this.count];
+			double[] travelTimes = new double[this.count];
+			byte[] transfers = new byte[this.count];
+			double[] distances = new double[this.count];
+			double[] inVehicleTimes = new double[this.count];
+			double[] trainInVehicleTimes = new double[this.count];
+			int pos = 0;
+			for (int g = 0; g < this.groups.size(); g++) {
+				int[] group = this.groups.get(g);
+				if (g > 0 && group[0] == toStops[g - 1]) {
+					throw new IllegalStateException("connections to stop " + group[0] + " were not added consecutively.");
+				}
+				toStops[g] = group[0];
+				offsets[g] = pos;
+				System.arraycopy(this.departureTimes, group[1], departureTimes, pos, group[2]);
+				System.arraycopy(this.travelTimes, group[1], travelTimes, pos, group[2]);
+				System.arraycopy(this.transfers, group[1], transfers, pos, group[2]);
+				System.arraycopy(this.distances, group[1], distances, pos, group[2]);
+				System.arraycopy(this.inVehicleTimes, group[1], inVehicleTimes, pos, group[2]);
+				System.arraycopy(this.trainInVehicleTimes, group[1], trainInVehicleTimes, pos, group[2]);
+				pos += group[2];
+			}
+			offsets[this.groups.size()] = pos;
+			return new StopConnections(toStops, offsets, departureTimes, travelTimes, transfers, distances, inVehicleTimes, trainInVehicleTimes);
+		}
+	}
+}
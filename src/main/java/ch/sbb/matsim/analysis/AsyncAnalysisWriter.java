@@ -0,0 +1,138 @@
+package ch.sbb.matsim.analysis;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Writes analysis results on a small pool of background threads, so that the controller can continue with the next iteration while the files are compressed
+ * and written. The writes must only access data that is not modified afterwards, typically the merged accumulators of a {@link TripAnalysisPipeline}.
+ * <p>
+ * At most <code>2 * threads</code> writes are pending at any time, further submissions block until a write has finished. A failed write is rethrown by the
+ * next call to {@link #submit} or {@link #awaitPendingWrites()}, as {@link UncheckedIOException} if writing the file failed, as {@link RuntimeException}
+ * otherwise. With zero threads, all writes run synchronously.
+ */
+public class AsyncAnalysisWriter {
+
+    private static final Logger log = LogManager.getLogger(AsyncAnalysisWriter.class);
+
+    private final ExecutorService executor;
+    private final Semaphore pendingWrites;
+    private final List<PendingWrite> pending = new ArrayList<>();
+
+    public AsyncAnalysisWriter(int threads) {
+        if (threads > 0) {
+            this.executor = Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(r, "AnalysisWriter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.pendingWrites = new Semaphore(2 * threads);
+        } else {
+            this.executor = null;
+            this.pendingWrites = null;
+        }
+    }
+
+    public synchronized void submit(String name, Runnable write) {
+        checkFinishedWrites();
+        if (this.executor == null) {
+            timedWrite(name, write);
+            return;
+        }
+        try {
+            this.pendingWrites.acquire();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        Future<?> future = this.executor.submit(() -> {
+            try {
+                timedWrite(name, write);
+            } finally {
+                this.pendingWrites.release();
+            }
+        });
+        this.pending.add(new PendingWrite(name, future));
+    }
+
+    /**
+     * Blocks until all submitted writes are finished.
+     *
+     * @throws UncheckedIOException if writing any of the files failed
+     * @throws RuntimeException if any of the writes failed otherwise
+     */
+    public synchronized void awaitPendingWrites() {
+        if (!this.pending.isEmpty()) {
+            log.info("Waiting for " + this.pending.size() + " pending analysis writes.");
+        }
+        RuntimeException failure = null;
+        for (PendingWrite write : this.pending) {
+            try {
+                write.future.get();
+            } catch (InterruptedException | ExecutionException e) {
+                if (failure == null) {
+                    failure = writeFailure(write.name, e);
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        this.pending.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Waits for all pending writes and stops the background threads.
+     */
+    public synchronized void shutdown() {
+        try {
+            awaitPendingWrites();
+        } finally {
+            if (this.executor != null) {
+                this.executor.shutdown();
+            }
+        }
+    }
+
+    private void checkFinishedWrites() {
+        Iterator<PendingWrite> iterator = this.pending.iterator();
+        while (iterator.hasNext()) {
+            PendingWrite write = iterator.next();
+            if (write.future.isDone()) {
+                iterator.remove();
+                try {
+                    write.future.get();
+                } catch (InterruptedException | ExecutionException e) {
+                    throw writeFailure(write.name, e);
+                }
+            }
+        }
+    }
+
+    private static RuntimeException writeFailure(String name, Exception e) {
+        if (e.getCause() instanceof UncheckedIOException ioException) {
+            return new UncheckedIOException("Writing " + name + " failed.", ioException.getCause());
+        }
+        return new RuntimeException("Writing " + name + " failed.", e);
+    }
+
+    private static void timedWrite(String name, Runnable write) {
+        long start = System.nanoTime();
+        write.run();
+        log.info(String.format("%s: written in %.1fs", name, (System.nanoTime() - start) / 1e9));
+    }
+
+    private record PendingWrite(String name, Future<?> future) {
+    }
+}
@@ -18,12 +18,17 @@ import org.matsim.core.config.groups.ControllerConfigGroup;
 import org.matsim.core.controler.OutputDirectoryHierarchy;
 import org.matsim.core.controler.events.IterationEndsEvent;
 import org.matsim.core.controler.events.IterationStartsEvent;
+import org.matsim.core.controler.events.ShutdownEvent;
 import org.matsim.core.controler.events.StartupEvent;
 import org.matsim.core.controler.listener.IterationEndsListener;
 import org.matsim.core.controler.listener.IterationStartsListener;
+import org.matsim.core.controler.listener.ShutdownListener;
 import org.matsim.core.controler.listener.StartupListener;
+import org.matsim.core.scoring.ExperiencedPlansService;
 
-public class SBBDefaultAnalysisListener implements IterationEndsListener, StartupListener, IterationStartsListener {
+import java.util.concurrent.ExecutorService;
+
+public class SBBDefaultAnalysisListener implements IterationEndsListener, StartupListener, IterationStartsListener, ShutdownListener {
 
     private final OutputDirectoryHierarchy controlerIO;
     private final ControllerConfigGroup config;
@@ -55,7 +60,12 @@ public class SBBDefaultAnalysisListener implements IterationEndsListener, Startu
     @Inject
     private TripsAndLegsWriter.CustomTripsWriterExtension sbbTripsExtension;
 
+    @Inject
+    private ExperiencedPlansService experiencedPlansService;
+
     private final CarLinkAnalysis carLinkAnalysis;
+    private final AsyncAnalysisWriter analysisWriter;
+    private final ExecutorService analysisExecutor;
 
 
     @Inject
@@ -71,6 +81,8 @@ public class SBBDefaultAnalysisListener implements IterationEndsListener, Startu
         this.config = config;
         this.ppConfig = ppConfig;
         this.carLinkAnalysis = new CarLinkAnalysis(ppConfig, scenario, iterationLinkAnalyzer);
+        this.analysisWriter = new AsyncAnalysisWriter(ppConfig.getAnalysisWriterThreads());
+        this.analysisExecutor = TripAnalysisPipeline.createExecutor(scenario.getConfig().global().getNumberOfThreads());
     }
 
     @Override
@@ -115,22 +127,43 @@ public class SBBDefaultAnalysisListener implements IterationEndsListener, Startu
                 String modalSpliteFileName = event.getIteration() == this.config.getLastIteration() ? controlerIO.getOutputFilename("")
                         : controlerIO.getIterationFilename(event.getIteration(), "");
 
-                railDemandReporting.calcAndwriteIterationDistanceReporting(railTripsFilename, scalefactor);
-                demandAggregator.aggregateAndWriteMatrix(scalefactor, railDemandAggregateFilename, railDemandStationToStation, railDemandStationToStationFQ, tripsPerMunFile, tripsPerMSRFile);
-                ptLinkVolumeAnalyzer.writePtLinkUsage(ptLinkUsageFilename, scalefactor);
-                putSurveyWriter.collectAndWritePUTSurvey(putSurveyNew);
-                carLinkAnalysis.writeSingleIterationStreetStats(carVolumesName);
-                tripsAndDistanceStats.analyzeAndWriteStats(fullTripsAndDistanceStatsName, tripsAndDistanceStatsName);
-                activityWriter.writeActivities(activityFilename);
-                modalSplitStats.analyzeAndWriteStats(modalSpliteFileName);
+                TripAnalysisPipeline pipeline = new TripAnalysisPipeline(scenario.getConfig().global().getNumberOfThreads(), analysisWriter, analysisExecutor);
+                pipeline.addTripAnalyzer("RailDemandReporting", railDemandReporting.createTripAnalyzer(),
+                        distances -> railDemandReporting.writeRailDistanceReporting(railTripsFilename, distances, scalefactor));
+                pipeline.addTripAnalyzer("DemandAggregator", demandAggregator.createTripAnalyzer(scalefactor, true, true),
+                        demand -> demandAggregator.writeMatrices(demand, railDemandAggregateFilename, railDemandStationToStation, railDemandStationToStationFQ, tripsPerMunFile, tripsPerMSRFile));
+                pipeline.addTripAnalyzer("PtLinkVolumeAnalyzer", ptLinkVolumeAnalyzer.createTripAnalyzer(),
+                        ptVolumes -> ptLinkVolumeAnalyzer.writePtLinkUsage(ptLinkUsageFilename, scalefactor, ptVolumes));
+                pipeline.addTripAnalyzer("PutSurveyWriter", putSurveyWriter.createTripAnalyzer(), entries -> PutSurveyWriter.writePutSurvey(putSurveyNew, entries));
+                pipeline.addTripAnalyzer("TripsAndDistanceStats", tripsAndDistanceStats.createTripAnalyzer(),
+                        stats -> tripsAndDistanceStats.writeStats(fullTripsAndDistanceStatsName, tripsAndDistanceStatsName, stats));
+                pipeline.addTripAnalyzer("ActivityWriter", activityWriter.createTripAnalyzer(), activities -> activityWriter.writeActivities(activityFilename, activities));
+                pipeline.addTripAnalyzer("ModalSplitStats", modalSplitStats.createTripAnalyzer(), stationCounts -> modalSplitStats.writeStats(modalSpliteFileName, stationCounts));
+                pipeline.addStep("CarLinkAnalysis", () -> {
+                    var carVolumes = carLinkAnalysis.calculateSingleIterationStreetVolumes();
+                    analysisWriter.submit("CarLinkAnalysis", () -> carLinkAnalysis.writeSingleIterationStreetStats(carVolumesName, carVolumes));
+                });
+                pipeline.run(experiencedPlansService.getExperiencedPlans());
             }
         }
+        if (event.getIteration() == this.config.getLastIteration()) {
+            analysisWriter.awaitPendingWrites();
+        }
         if (ppConfig.getDailyLinkVolumes()) {
             String carVolumesFile = controlerIO.getOutputFilename("car_volumes_daily.csv.gz");
             carLinkAnalysis.writeMultiIterationCarStats(carVolumesFile, event.getIteration());
         }
     }
 
+    @Override
+    public void notifyShutdown(ShutdownEvent event) {
+        try {
+            analysisWriter.shutdown();
+        } finally {
+            analysisExecutor.shutdown();
+        }
+    }
+
     @Override
     public void notifyIterationStarts(IterationStartsEvent event) {
         if (this.config.getWriteTripsInterval() > 0 && (event.getIteration() % this.config.getWriteTripsInterval() == 0)) {
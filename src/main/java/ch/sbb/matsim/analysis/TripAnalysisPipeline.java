@@ -0,0 +1,186 @@
+package ch.sbb.matsim.analysis;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.core.router.TripStructureUtils.Trip;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Runs several {@link TripAnalyzer}s in a single pass over the plans. The plans are split into one contiguous chunk per thread, the trips of every plan are
+ * extracted once and passed to all registered analyzers. After the pass, the accumulators of the chunks are merged in plan order, finished and handed to the result
+ * consumer of each analyzer, which typically writes the output files. The result consumers run on the {@link AsyncAnalysisWriter} of the pipeline, and may thus
+ * still be running when {@link #run} returns.
+ * <p>
+ * Analyses that do not work on trips (e.g. event based volumes) can be added as plain steps, they run after the trip analyzers. The time spent in every analyzer
+ * and step is logged.
+ */
+public class TripAnalysisPipeline {
+
+    private static final Logger log = LogManager.getLogger(TripAnalysisPipeline.class);
+
+    private final int numberOfThreads;
+    private final AsyncAnalysisWriter writer;
+    private final ExecutorService executor;
+    private final List<RegisteredAnalyzer<?>> analyzers = new ArrayList<>();
+    private final List<Step> steps = new ArrayList<>();
+
+    public TripAnalysisPipeline(int numberOfThreads) {
+        this(numberOfThreads, new AsyncAnalysisWriter(0));
+    }
+
+    public TripAnalysisPipeline(int numberOfThreads, AsyncAnalysisWriter writer) {
+        this(numberOfThreads, writer, null);
+    }
+
+    /**
+     * @param executor the threads analysing the chunks, typically created once with {@link #createExecutor(int)} and shared by the pipelines of all
+     *                 iterations. If <code>null</code>, the pipeline creates its own threads for every run.
+     */
+    public TripAnalysisPipeline(int numberOfThreads, AsyncAnalysisWriter writer, ExecutorService executor) {
+        this.numberOfThreads = Math.max(1, numberOfThreads);
+        this.writer = writer;
+        this.executor = executor;
+    }
+
+    /**
+     * Creates daemon threads for analysing the chunks of a pipeline. The caller is responsible for shutting the executor down.
+     */
+    public static ExecutorService createExecutor(int numberOfThreads) {
+        return Executors.newFixedThreadPool(Math.max(1, numberOfThreads), r -> {
+            Thread thread = new Thread(r, "TripAnalysis");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public <A> void addTripAnalyzer(String name, TripAnalyzer<A> analyzer, Consumer<A> resultConsumer) {
+        this.analyzers.add(new RegisteredAnalyzer<>(name, analyzer, resultConsumer));
+    }
+
+    public void addStep(String name, Runnable step) {
+        this.steps.add(new Step(name, step));
+    }
+
+    public void run(Map<Id<Person>, Plan> plans) {
+        long start = System.nanoTime();
+        for (RegisteredAnalyzer<?> analyzer : this.analyzers) {
+            analyzer.analyzer.prepare();
+        }
+        List<ChunkResult> chunkResults = analyzeChunks(new ArrayList<>(plans.entrySet()));
+        long passNanos = System.nanoTime() - start;
+
+        List<String> timings = new ArrayList<>();
+        for (int i = 0; i < this.analyzers.size(); i++) {
+            RegisteredAnalyzer<?> analyzer = this.analyzers.get(i);
+            long analyzeNanos = 0;
+            for (ChunkResult chunkResult : chunkResults) {
+                analyzeNanos += chunkResult.nanos[i];
+            }
+            long mergeStart = System.nanoTime();
+            Object result = chunkResults.get(0).accumulators[i];
+            for (int c = 1; c < chunkResults.size(); c++) {
+                result = analyzer.merge(result, chunkResults.get(c).accumulators[i]);
+            }
+            Object mergedResult = analyzer.finish(result);
+            timings.add(String.format("%s: analyze %.1fs (summed over threads), merge %.1fs", analyzer.name, analyzeNanos / 1e9, (System.nanoTime() - mergeStart) / 1e9));
+            this.writer.submit(analyzer.name, () -> analyzer.consume(mergedResult));
+        }
+        for (Step step : this.steps) {
+            long stepStart = System.nanoTime();
+            step.step.run();
+            timings.add(String.format("%s: %.1fs", step.name, (System.nanoTime() - stepStart) / 1e9));
+        }
+        log.info(String.format("Analysed %d plans with %d trip analyzers on %d threads, single pass took %.1fs, total %.1fs.", plans.size(), this.analyzers.size(),
+                this.numberOfThreads, passNanos / 1e9, (System.nanoTime() - start) / 1e9));
+        timings.forEach(log::info);
+    }
+
+    private List<ChunkResult> analyzeChunks(List<Map.Entry<Id<Person>, Plan>> entries) {
+        int chunkCount = Math.max(1, Math.min(this.numberOfThreads, entries.size()));
+        int chunkSize = (entries.size() + chunkCount - 1) / chunkCount;
+        if (chunkCount == 1) {
+            return List.of(analyzeChunk(entries));
+        }
+        ExecutorService executor = this.executor != null ? this.executor : Executors.newFixedThreadPool(chunkCount);
+        try {
+            List<Future<ChunkResult>> futures = new ArrayList<>();
+            for (int c = 0; c < chunkCount; c++) {
+                List<Map.Entry<Id<Person>, Plan>> chunk = entries.subList(Math.min(entries.size(), c * chunkSize), Math.min(entries.size(), (c + 1) * chunkSize));
+                futures.add(executor.submit(() -> analyzeChunk(chunk)));
+            }
+            List<ChunkResult> results = new ArrayList<>();
+            for (Future<ChunkResult> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        } finally {
+            if (executor != this.executor) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private ChunkResult analyzeChunk(List<Map.Entry<Id<Person>, Plan>> chunk) {
+        ChunkResult result = new ChunkResult(this.analyzers.size());
+        for (int i = 0; i < this.analyzers.size(); i++) {
+            result.accumulators[i] = this.analyzers.get(i).analyzer.createAccumulator();
+        }
+        for (Map.Entry<Id<Person>, Plan> e : chunk) {
+            List<Trip> trips = TripStructureUtils.getTrips(e.getValue());
+            for (int i = 0; i < this.analyzers.size(); i++) {
+                long start = System.nanoTime();
+                this.analyzers.get(i).analyzeTrips(result.accumulators[i], e.getKey(), e.getValue(), trips);
+                result.nanos[i] += System.nanoTime() - start;
+            }
+        }
+        return result;
+    }
+
+    private static class ChunkResult {
+
+        private final Object[] accumulators;
+        private final long[] nanos;
+
+        ChunkResult(int analyzerCount) {
+            this.accumulators = new Object[analyzerCount];
+            this.nanos = new long[analyzerCount];
+        }
+    }
+
+    private record Step(String name, Runnable step) {
+    }
+
+    @SuppressWarnings("unchecked")
+    private record RegisteredAnalyzer<A>(String name, TripAnalyzer<A> analyzer, Consumer<A> resultConsumer) {
+
+        void analyzeTrips(Object accumulator, Id<Person> personId, Plan plan, List<Trip> trips) {
+            this.analyzer.analyzeTrips((A) accumulator, personId, plan, trips);
+        }
+
+        Object merge(Object accumulator, Object other) {
+            return this.analyzer.merge((A) accumulator, (A) other);
+        }
+
+        Object finish(Object result) {
+            return this.analyzer.finish((A) result);
+        }
+
+        void consume(Object result) {
+            this.resultConsumer.accept((A) result);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package ch.sbb.matsim.analysis;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.core.router.TripStructureUtils.Trip;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An analysis that can be run as part of a {@link TripAnalysisPipeline}. The pipeline splits the plans into chunks, creates one accumulator per chunk and
+ * passes every plan of the chunk together with its trips to {@link #analyzeTrips}. Accumulators are only ever used by a single thread at a time, so they do
+ * not need to be thread-safe. Analyzers must not store per-plan results in their own fields.
+ *
+ * @param <A> the type of the accumulator holding the (partial) results
+ */
+public interface TripAnalyzer<A> {
+
+    /**
+     * Called once before a pass over all plans, before any accumulator is created.
+     */
+    default void prepare() {
+    }
+
+    A createAccumulator();
+
+    /**
+     * @param personId the id of the person owning the plan, or <code>null</code> if the plans were not read together with their persons.
+     */
+    void analyzeTrips(A accumulator, Id<Person> personId, Plan plan, List<Trip> trips);
+
+    /**
+     * Combines two accumulators. <code>other</code> contains the results of plans that come after the plans of <code>accumulator</code>. The returned accumulator
+     * may be one of the arguments.
+     */
+    A merge(A accumulator, A other);
+
+    /**
+     * Called once after a pass with the merged accumulator of all plans, on the thread that started the pass and before the result is handed on. Analyzers
+     * that keep results across passes update them here. The default returns the merged accumulator unchanged.
+     */
+    default A finish(A result) {
+        return result;
+    }
+
+    /**
+     * Runs the analyzer on the calling thread.
+     */
+    static <A> A analyze(TripAnalyzer<A> analyzer, Map<Id<Person>, Plan> plans) {
+        analyzer.prepare();
+        A accumulator = analyzer.createAccumulator();
+        for (Map.Entry<Id<Person>, Plan> e : plans.entrySet()) {
+            analyzer.analyzeTrips(accumulator, e.getKey(), e.getValue(), TripStructureUtils.getTrips(e.getValue()));
+        }
+        return analyzer.finish(accumulator);
+    }
+
+    /**
+     * Runs the analyzer on the calling thread for plans that may not be associated with persons.
+     */
+    static <A> A analyze(TripAnalyzer<A> analyzer, Collection<Plan> plans) {
+        analyzer.prepare();
+        A accumulator = analyzer.createAccumulator();
+        for (Plan plan : plans) {
+            Id<Person> personId = plan.getPerson() != null ? plan.getPerson().getId() : null;
+            analyzer.analyzeTrips(accumulator, personId, plan, TripStructureUtils.getTrips(plan));
+        }
+        return analyzer.finish(accumulator);
+    }
+}
@@ -102,11 +102,21 @@ public class CarLinkAnalysis {
 	}
 
 	public void writeSingleIterationStreetStats(String fileName) {
-		var linkVolumes = linkAnalyzer.getIterationCounts();
+		writeSingleIterationStreetStats(fileName, calculateSingleIterationStreetVolumes());
+	}
 
+	/**
+	 * Collects the volumes of the current iteration, including ride and bike volumes from the selected plans. The returned map is not modified by later
+	 * iterations and can be written on another thread.
+	 */
+	public Map<Id<Link>, LinkStorage> calculateSingleIterationStreetVolumes() {
+		var linkVolumes = linkAnalyzer.getIterationCounts();
 		calculateVolumesPerLinkForNonNetworkModes(linkVolumes, SBBModes.RIDE, AnalysisVehicleType.ride);
 		calculateVolumesPerLinkForNonNetworkModes(linkVolumes, SBBModes.BIKE, AnalysisVehicleType.bike);
+		return linkVolumes;
+	}
 
+	public void writeSingleIterationStreetStats(String fileName, Map<Id<Link>, LinkStorage> linkVolumes) {
 		try (CSVWriter writer = new CSVWriter(HEADER, VOLUMES_COLUMNS, fileName)) {
 			for (Map.Entry<Id<Link>, LinkStorage> entry : linkVolumes.entrySet()) {
 
@@ -206,7 +216,7 @@ public class CarLinkAnalysis {
 		}
 	}
 
-	static class LinkStorage {
+	public static class LinkStorage {
 
 		private final static Logger log = LogManager.getLogger(LinkStorage.class);
 
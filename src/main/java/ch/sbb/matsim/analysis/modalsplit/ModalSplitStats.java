@@ -1,5 +1,6 @@
 package ch.sbb.matsim.analysis.modalsplit;
 
+import ch.sbb.matsim.analysis.TripAnalyzer;
 import ch.sbb.matsim.analysis.tripsandlegsanalysis.RailTripsAnalyzer;
 import ch.sbb.matsim.config.PostProcessingConfigGroup;
 import ch.sbb.matsim.config.SwissRailRaptorConfigGroup;
@@ -21,7 +22,6 @@ import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.network.io.MatsimNetworkReader;
 import org.matsim.core.population.io.PopulationReader;
 import org.matsim.core.router.Transit;
-import org.matsim.core.router.TripStructureUtils;
 import org.matsim.core.router.TripStructureUtils.Trip;
 import org.matsim.core.scenario.ScenarioUtils;
 import org.matsim.core.scoring.ExperiencedPlansService;
@@ -32,6 +32,7 @@ import org.matsim.pt.transitSchedule.api.TransitStopFacility;
 import org.matsim.utils.objectattributes.attributable.Attributes;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.stream.Collectors;
@@ -56,8 +57,6 @@ public class ModalSplitStats {
     private final RailTripsAnalyzer railTripsAnalyzer;
     private final LongestMainModeIdentifier mainModeIdentifier = new LongestMainModeIdentifier();
     private final PopulationFactory pf = ScenarioUtils.createScenario(ConfigUtils.createConfig()).getPopulation().getFactory();
-    private String outputLocation;
-    private Map<Id<TransitStopFacility>, StopStation> stopStationsMap;
     private Map<String, Integer> modesMap;
     private Map<String, Integer> modesInclRailFQMap;
     private Map<String, Integer> feederModesMap;
@@ -80,7 +79,6 @@ public class ModalSplitStats {
     private Map<String, int[][]> timeMap;
     private Map<String, int[][]> travelTimeMap;
     private Map<String, Integer> variablesTimeStepsMap;
-    private Map<String, TrainStation> trainStationMap;
     private Map<String,double[][]> subpopulationDistanceChangeMap;
     private Map<String,double[][]> subpopulationDistanceChangePKMMap;
     private Set<String> feederModesFromConfig;
@@ -97,6 +95,16 @@ public class ModalSplitStats {
         this.population = scenario.getPopulation();
         this.transitSchedule = scenario.getTransitSchedule();
         this.config = config;
+        this.feederModesFromConfig = getFeederModesinConfig();
+        this.possibleModesAtStop = getPossibleModesAtStop();
+        this.possibleOriginDestinationModesAtStop = getPossibleOriginDestinationModesAtStop();
+        this.modesMap = getModesMap();
+        this.modesInclRailFQMap = getModesInclRailFQMap();
+        this.feederModesMap = getFeederModesMap();
+        this.variablesMSMap = createVariablesModalSplitMap();
+        this.variablesMSFeederMap = createVariablesModalSplitFeederMap();
+        this.variablesTimeStepsMap = createVariablesTimeStepsMap();
+        this.actualModesAtStop = getActualModesAtStop();
     }
 
     public static void main(String[] args) {
@@ -142,19 +150,63 @@ public class ModalSplitStats {
     }
 
     public void analyzeAndWriteStats(String outputLocation, IdMap<Person, Plan> experiencedPlans) {
+        writeStats(outputLocation, TripAnalyzer.analyze(createTripAnalyzer(), experiencedPlans));
+    }
 
-        this.feederModesFromConfig = getFeederModesinConfig();
-        this.possibleModesAtStop = getPossibleModesAtStop();
-        this.possibleOriginDestinationModesAtStop = getPossibleOriginDestinationModesAtStop();
-        this.outputLocation = outputLocation + "SBB_";
-        this.stopStationsMap = generateStopStationMap();
-        this.trainStationMap = generateTrainStationMap();
-        this.modesMap = getModesMap();
-        this.modesInclRailFQMap = getModesInclRailFQMap();
-        this.feederModesMap = getFeederModesMap();
-        this.variablesMSMap = createVariablesModalSplitMap();
-        this.variablesMSFeederMap = createVariablesModalSplitFeederMap();
-        this.variablesTimeStepsMap = createVariablesTimeStepsMap();
+    /**
+     * Counts boardings, alightings and transfers per stop and per train station. The analyses which are currently disabled still collect into fields of
+     * this class and have to be moved into {@link StationCounts} before they can be enabled again in a multi-threaded pass.
+     */
+    public TripAnalyzer<StationCounts> createTripAnalyzer() {
+        return new TripAnalyzer<>() {
+            @Override
+            public void prepare() {
+                prepareDisabledAnalyses();
+            }
+
+            @Override
+            public StationCounts createAccumulator() {
+                return new StationCounts(generateStopStationMap(), generateTrainStationMap());
+            }
+
+            @Override
+            public void analyzeTrips(StationCounts counts, Id<Person> personId, Plan plan, List<Trip> trips) {
+                // analysis for access and egress mode for each stop station
+                analyzeStopsStations(counts.stopStations, trips);
+                // analysis for access and egress mode for each train station
+                analyzeTrainsStations(counts.trainStations, trips);
+                // analysis for distance classes
+//                analyzeDistanceClasses(personId, trips);
+//                // analysis modal split for persons trips and person km
+//                analyzeModalSplit(personId, trips);
+//                // analysis access/egress modal split for persons trips and person km
+//                analyzeFeederModalSplit(personId, trips);
+//                // analysis public transport changes
+//                analyzeChanges(personId, trips);
+//                // analyze travel time and middle time between to activities
+//                analyzeTimes(personId, trips);
+            }
+
+            @Override
+            public StationCounts merge(StationCounts counts, StationCounts other) {
+                counts.add(other);
+                return counts;
+            }
+        };
+    }
+
+    public void writeStats(String outputLocation, StationCounts counts) {
+        String outputPrefix = outputLocation + "SBB_";
+        writeStopStationAnalysis(outputPrefix, counts.stopStations);
+        writeTrainStationAnalysis(outputPrefix, counts.trainStations);
+//        writeDistanceClassesAnalysis(outputPrefix);
+//        writeModalSplit(outputPrefix);
+//        writeFeederModalSplit(outputPrefix);
+//        writeChanges(outputPrefix);
+//        writeTimeSteps(outputPrefix);
+    }
+
+    private void prepareDisabledAnalyses() {
         this.subpopulaionDistanceMap = createArrayForSubpopulationMap(this.modesInclRailFQMap.size(), distanceClassesLabel.size());
         this.subpopulaionMSPFMap = createArrayForSubpopulationMap(this.modesMap.size(), this.variablesMSMap.size());
         this.subpopulaionMSPKMMap = createArrayForSubpopulationMap(this.modesMap.size(), this.variablesMSMap.size());
@@ -172,19 +224,6 @@ public class ModalSplitStats {
         this.subpopulationDistanceChangePKMMap = createArrayForSubpopulationMap(changeOrderList.size()* distanceClassesLabel.size(), changeLabelList.size());
         this.timeMap = createTimeStepsForSubpopulaitonMap((int) (this.config.qsim().getEndTime().seconds() / timeSplit), this.variablesTimeStepsMap.size());
         this.travelTimeMap = createTimeStepsForSubpopulaitonMap((lastTravelTimeValue / travelTimeSplit) + 1, this.variablesTimeStepsMap.size());
-        this.actualModesAtStop = getActualModesAtStop();
-        // analyzing
-        analyze(experiencedPlans);
-
-        // writing the different files
-        writeStopStationAnalysis();
-        writeTrainStationAnalysis();
-//        writeDistanceClassesAnalysis();
-//        writeModalSplit();
-//        writeFeederModalSplit();
-//        writeChanges();
-//        writeTimeSteps();
-
     }
 
     private Map<Id<TransitStopFacility>, Set<String>> getActualModesAtStop() {
@@ -216,29 +255,8 @@ public class ModalSplitStats {
     }
 
 
-    private void analyze(IdMap<Person, Plan> experiencedPlans) {
-        for (Entry<Id<Person>, Plan> entry : experiencedPlans.entrySet()) {
-
-            // analysis for access and egress mode for each stop station
-            analyzeStopsStations(entry);
-            // analysis for access and egress mode for each train station
-            analyzeTrainsStations(entry);
-            // analysis for distance classes
-//            analyzeDistanceClasses(entry);
-//            // analysis modal split for persons trips and person km
-//            analyzeModalSplit(entry);
-//            // analysis access/egress modal split for persons trips and person km
-//            analyzeFeederModalSplit(entry);
-//            // analysis public transport changes
-//            analyzeChanges(entry);
-//            // analyze travel time and middle time between to activities
-//            analyzeTimes(entry);
-
-        }
-    }
-
-    private void analyzeTrainsStations(Entry<Id<Person>, Plan> entry) {
-        for (Trip trip : TripStructureUtils.getTrips(entry.getValue())) {
+    private void analyzeTrainsStations(Map<String, TrainStation> trainStationMap, List<Trip> trips) {
+        for (Trip trip : trips) {
             if (mainModeIdentifier.identifyMainMode(trip.getTripElements()).equals(PT)) {
                 List<Leg> legs = trip.getLegsOnly();
                 Leg legBefore = pf.createLeg(SBBModes.WALK_FOR_ANALYSIS);
@@ -297,8 +315,8 @@ public class ModalSplitStats {
         return leg.getMode().equals(PT) || PTSubModes.submodes.contains(leg.getMode()) ;
     }
 
-    private void analyzeStopsStations(Entry<Id<Person>, Plan> entry) {
-        for (Trip trip : TripStructureUtils.getTrips(entry.getValue())) {
+    private void analyzeStopsStations(Map<Id<TransitStopFacility>, StopStation> stopStationsMap, List<Trip> trips) {
+        for (Trip trip : trips) {
             boolean isFQ = false;
             try {
                 isFQ = railTripsAnalyzer.getFQDistance(trip, true) > 0;
@@ -393,11 +411,11 @@ public class ModalSplitStats {
         return result;
     }
 
-    private void analyzeTimes(Entry<Id<Person>, Plan> entry) {
-        Attributes attributes = population.getPersons().get(entry.getKey()).getAttributes();
+    private void analyzeTimes(Id<Person> personId, List<Trip> trips) {
+        Attributes attributes = population.getPersons().get(personId).getAttributes();
         String subpopulation = getSubpopulation(attributes);
 
-        for (Trip trip : TripStructureUtils.getTrips(entry.getValue())) {
+        for (Trip trip : trips) {
             String tmpMode = mainModeIdentifier.identifyMainMode(trip.getTripElements());
             if (tmpMode.equals(SBBModes.WALK_MAIN_MAINMODE)) {
                 tmpMode = SBBModes.WALK_FOR_ANALYSIS;
@@ -460,10 +478,10 @@ public class ModalSplitStats {
         }
     }
 
-    private void analyzeChanges(Entry<Id<Person>, Plan> entry) {
-        Attributes attributes = population.getPersons().get(entry.getKey()).getAttributes();
+    private void analyzeChanges(Id<Person> personId, List<Trip> trips) {
+        Attributes attributes = population.getPersons().get(personId).getAttributes();
         String subpulation = getSubpopulation(attributes);
-        for (Trip trip : TripStructureUtils.getTrips(entry.getValue())) {
+        for (Trip trip : trips) {
             int ptLegs = 0;
             int railLegs = 0;
             double distance = 0;
@@ -540,11 +558,11 @@ public class ModalSplitStats {
         }
     }
 
-    private void analyzeModalSplit(Entry<Id<Person>, Plan> entry) {
-        Attributes attributes = population.getPersons().get(entry.getKey()).getAttributes();
+    private void analyzeModalSplit(Id<Person> personId, List<Trip> trips) {
+        Attributes attributes = population.getPersons().get(personId).getAttributes();
         String subpopulation = getSubpopulation(attributes);
 
-        for (Trip trip : TripStructureUtils.getTrips(entry.getValue())) {
+        for (Trip trip : trips) {
             // skip home office activities, it seems that the facility id can be null
             if (trip.getOriginActivity().getFacilityId() != null || trip.getDestinationActivity().getFacilityId() != null) {
                 if (trip.getOriginActivity().getFacilityId().equals(trip.getDestinationActivity().getFacilityId())) {
@@ -710,10 +728,10 @@ public class ModalSplitStats {
         return lastLeg;
     }
 
-    private void analyzeFeederModalSplit(Entry<Id<Person>, Plan> entry) {
-        Attributes attributes = population.getPersons().get(entry.getKey()).getAttributes();
+    private void analyzeFeederModalSplit(Id<Person> personId, List<Trip> trips) {
+        Attributes attributes = population.getPersons().get(personId).getAttributes();
         String subpopulation = getSubpopulation(attributes);
-        for (Trip trip : TripStructureUtils.getTrips(entry.getValue())) {
+        for (Trip trip : trips) {
             // skip home office activities, it seems that the facility id can be null
             if (trip.getOriginActivity().getFacilityId() != null || trip.getDestinationActivity().getFacilityId() != null) {
                 if (trip.getOriginActivity().getFacilityId().equals(trip.getDestinationActivity().getFacilityId())) {
@@ -911,9 +929,9 @@ public class ModalSplitStats {
         }
     }
 
-    private void analyzeDistanceClasses(Entry<Id<Person>, Plan> entry) {
-        Attributes attributes = this.population.getPersons().get(entry.getKey()).getAttributes();
-        for (Trip trip : TripStructureUtils.getTrips(entry.getValue())) {
+    private void analyzeDistanceClasses(Id<Person> personId, List<Trip> trips) {
+        Attributes attributes = this.population.getPersons().get(personId).getAttributes();
+        for (Trip trip : trips) {
             // skip home office activities, it seems that the facility id can be null
             if (trip.getOriginActivity().getFacilityId() != null || trip.getDestinationActivity().getFacilityId() != null) {
                 if (trip.getOriginActivity().getFacilityId().equals(trip.getDestinationActivity().getFacilityId())) {
@@ -968,7 +986,7 @@ public class ModalSplitStats {
         }
     }
 
-    private void writeDistanceClassesAnalysis() {
+    private void writeDistanceClassesAnalysis(String outputLocation) {
         final double sampleSize = ConfigUtils.addOrGetModule(this.config, PostProcessingConfigGroup.class).getSimulationSampleSize();
         String[] columns = new String[3 + distanceClassesLabel.size()];
         columns[0] = runID;
@@ -977,7 +995,7 @@ public class ModalSplitStats {
         for (int i = 0; i < distanceClassesLabel.size(); i++) {
             columns[i + 3] = distanceClassesLabel.get(i);
         }
-        try (CSVWriter csvWriter = new CSVWriter("", columns, this.outputLocation + oNDistanceClasses)) {
+        try (CSVWriter csvWriter = new CSVWriter("", columns, outputLocation + oNDistanceClasses)) {
             for (String tmpSubpopulation : analysisSubpopulations) {
                 for (Entry<String, Integer> col : this.modesInclRailFQMap.entrySet()) {
                     csvWriter.set(runID, this.config.controller().getRunId());
@@ -990,12 +1008,11 @@ public class ModalSplitStats {
                 }
             }
         } catch (IOException e) {
-            //noinspection CallToPrintStackTrace
-            e.printStackTrace();
+            throw new UncheckedIOException(e);
         }
     }
 
-    private void writeTimeSteps() {
+    private void writeTimeSteps(String outputLocation) {
 
         final double sampleSize = ConfigUtils.addOrGetModule(config, PostProcessingConfigGroup.class).getSimulationSampleSize();
         final String time = "time";
@@ -1019,9 +1036,8 @@ public class ModalSplitStats {
                     csvWriter.writeRow();
                 }
             }
-        } catch (Exception e) {
-            //noinspection CallToPrintStackTrace
-            e.printStackTrace();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
         try (CSVWriter csvWriter = new CSVWriter("", columns, outputLocation + oNTravelTimeDistribution)) {
             for (Entry<String, int[][]> entry : travelTimeMap.entrySet()) {
@@ -1038,13 +1054,12 @@ public class ModalSplitStats {
                     csvWriter.writeRow();
                 }
             }
-        } catch (Exception e) {
-            //noinspection CallToPrintStackTrace
-            e.printStackTrace();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
-    private void writeModalSplit() {
+    private void writeModalSplit(String outputLocation) {
         final double sampleSize = ConfigUtils.addOrGetModule(config, PostProcessingConfigGroup.class).getSimulationSampleSize();
         String[] columns = new String[2 + variablesMSMap.size()];
         columns[0] = runID;
@@ -1070,10 +1085,8 @@ public class ModalSplitStats {
                     csvWriterPF.writeRow();
                 }
             }
-        } catch (
-            IOException e) {
-            //noinspection CallToPrintStackTrace
-            e.printStackTrace();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
         try (CSVWriter csvWriterPKM = new CSVWriter("", columns, outputLocation + oNModalSplitPKM)) {
             for (String tmpSubpopulation : analysisSubpopulations) {
@@ -1092,14 +1105,12 @@ public class ModalSplitStats {
                     csvWriterPKM.writeRow();
                 }
             }
-        } catch (
-            IOException e) {
-            //noinspection CallToPrintStackTrace
-            e.printStackTrace();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
-    private void writeFeederModalSplit() {
+    private void writeFeederModalSplit(String outputLocation) {
         final double sampleSize = ConfigUtils.addOrGetModule(config, PostProcessingConfigGroup.class).getSimulationSampleSize();
         String[] columns = new String[3 + variablesMSFeederMap.size()];
         columns[0] = runID;
@@ -1150,10 +1161,8 @@ public class ModalSplitStats {
                     csvWriterPF.writeRow();
                 }
             }
-        } catch (
-                IOException e) {
-            //noinspection CallToPrintStackTrace
-            e.printStackTrace();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
         try (CSVWriter csvWriterPKM = new CSVWriter("", columns, outputLocation + oNModalSplitFeederPKM)) {
             for (String tmpSubpopulation : analysisSubpopulations) {
@@ -1196,10 +1205,8 @@ public class ModalSplitStats {
                     csvWriterPKM.writeRow();
                 }
             }
-        } catch (
-                IOException e) {
-            //noinspection CallToPrintStackTrace
-            e.printStackTrace();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
 
         columns = new String[4 + variablesMSFeederMap.size()];
@@ -1262,15 +1269,13 @@ public class ModalSplitStats {
                     }
                 }
             }
-        } catch (
-                IOException e) {
-            //noinspection CallToPrintStackTrace
-            e.printStackTrace();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
 
     }
 
-    private void writeTrainStationAnalysis() {
+    private void writeTrainStationAnalysis(String outputLocation, Map<String, TrainStation> trainStationMap) {
         final double sampleSize = ConfigUtils.addOrGetModule(config, PostProcessingConfigGroup.class).getSimulationSampleSize();
         final String hstNumber = "HST_Nummer";
         final String stopCode = "Code";
@@ -1286,7 +1291,7 @@ public class ModalSplitStats {
         String head = String.join(",", runID, hstNumber, stopCode, zone, zielAussteiger, quellEinsteiger, umsteigerTyp5a, umsteigerTyp5b,
             umsteigerSimbaSimba, umsteigerSimbaAndere, umsteigerAndereSimba, umsteigerAndereAndere);
         String[] columns = head.split(",");
-        try (CSVWriter csvWriter = new CSVWriter("", columns, this.outputLocation + oNTrainStrationsCount)) {
+        try (CSVWriter csvWriter = new CSVWriter("", columns, outputLocation + oNTrainStrationsCount)) {
             for (TrainStation station : trainStationMap.values()) {
                 csvWriter.set(runID, config.controller().getRunId());
                 csvWriter.set(hstNumber, station.getHstNummer());
@@ -1303,14 +1308,13 @@ public class ModalSplitStats {
                 csvWriter.set(umsteigerAndereAndere, Integer.toString((int) ((station.getUmsteigerAndereAndere() / sampleSize)) / 2));
                 csvWriter.writeRow();
             }
-        } catch (Exception e) {
-            //noinspection CallToPrintStackTrace
-            e.printStackTrace();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
 
     }
 
-    private void writeStopStationAnalysis() {
+    private void writeStopStationAnalysis(String outputLocation, Map<Id<TransitStopFacility>, StopStation> stopStationsMap) {
         final double sampleSize = ConfigUtils.addOrGetModule(config, PostProcessingConfigGroup.class).getSimulationSampleSize();
         final String hstNummer = "HST_Nummer";
         final String code = "Code";
@@ -1340,7 +1344,7 @@ public class ModalSplitStats {
         String[] columns = headColumns.toArray(new String[0]);
 
 
-        try (CSVWriter csvWriter = new CSVWriter("", columns, this.outputLocation + oNStopStationsCount)) {
+        try (CSVWriter csvWriter = new CSVWriter("", columns, outputLocation + oNStopStationsCount)) {
             for (Entry<Id<TransitStopFacility>, StopStation> entry : stopStationsMap.entrySet()) {
                 csvWriter.set(runID, config.controller().getRunId());
                 csvWriter.set(hstNummer, entry.getValue().getStop().getAttributes().getAttribute(STOP_NO).toString());
@@ -1393,16 +1397,15 @@ public class ModalSplitStats {
                 csvWriter.set(umstiege, Integer.toString((int) (entry.getValue().getUmsteigeBahnBahn() / sampleSize)));
                 csvWriter.set(zustiege, Integer.toString((int) (entry.getValue().getUmsteigeAHPBahn() / sampleSize)));
                 csvWriter.set(wegstiege, Integer.toString((int) (entry.getValue().getUmsteigeBahnAHP() / sampleSize)));
-                csvWriter.set(modesAtStop, String.join(",", actualModesAtStop.get(stopId)));
+                csvWriter.set(modesAtStop, String.join(",", actualModesAtStop.getOrDefault(stopId, Set.of())));
                 csvWriter.writeRow();
             }
-        } catch (Exception e) {
-            //noinspection CallToPrintStackTrace
-            e.printStackTrace();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
-    private void writeChanges() {
+    private void writeChanges(String outputLocation) {
         final String umsteigetyp = "Umsteigetyp";
         String[] columns = {runID, subpopulation, umsteigetyp, "0", "1", "2", "3", "4", ">=5"};
         String[] columnsDistance = {runID, subpopulation, umsteigetyp, "distanceClass", "0", "1", "2", "3", "4", ">=5"};
@@ -1425,9 +1428,8 @@ public class ModalSplitStats {
                     csvWriter.writeRow();
                 }
             }
-        } catch (Exception e) {
-            //noinspection CallToPrintStackTrace
-            e.printStackTrace();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
 
         try (CSVWriter csvWriter = new CSVWriter("", columns, outputLocation + oNChangesPKM)) {
@@ -1448,9 +1450,8 @@ public class ModalSplitStats {
                     csvWriter.writeRow();
                 }
             }
-        } catch (Exception e) {
-            //noinspection CallToPrintStackTrace
-            e.printStackTrace();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
 
         try (CSVWriter csvWriter = new CSVWriter("", columnsDistance, outputLocation + oNDistanceChangesCount)) {
@@ -1475,9 +1476,8 @@ public class ModalSplitStats {
                     }
                 }
             }
-        } catch (Exception e) {
-            //noinspection CallToPrintStackTrace
-            e.printStackTrace();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
@@ -1627,4 +1627,23 @@ public class ModalSplitStats {
         return null;
     }
 
+    /**
+     * Boardings, alightings and transfers per stop and per train station of a set of plans, as collected by {@link #createTripAnalyzer()}.
+     */
+    public static class StationCounts {
+
+        private final Map<Id<TransitStopFacility>, StopStation> stopStations;
+        private final Map<String, TrainStation> trainStations;
+
+        private StationCounts(Map<Id<TransitStopFacility>, StopStation> stopStations, Map<String, TrainStation> trainStations) {
+            this.stopStations = stopStations;
+            this.trainStations = trainStations;
+        }
+
+        private void add(StationCounts other) {
+            other.stopStations.forEach((stopId, stopStation) -> this.stopStations.get(stopId).add(stopStation));
+            other.trainStations.forEach((stationId, trainStation) -> this.trainStations.get(stationId).add(trainStation));
+        }
+    }
+
 }
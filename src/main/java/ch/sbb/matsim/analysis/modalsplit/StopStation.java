@@ -109,4 +109,22 @@ public class StopStation {
     public void setRailStation() {
         isRailStation = true;
     }
+
+    /**
+     * Adds the counts of another instance for the same stop.
+     */
+    public void add(StopStation other) {
+        entered += other.entered;
+        exited += other.exited;
+        enteredFQ += other.enteredFQ;
+        exitedFQ += other.exitedFQ;
+        for (int i = 0; i < enteredMode.length; i++) {
+            enteredMode[i] += other.enteredMode[i];
+            exitedMode[i] += other.exitedMode[i];
+        }
+        umsteigeBahnBahn += other.umsteigeBahnBahn;
+        umsteigeAHPBahn += other.umsteigeAHPBahn;
+        umsteigeBahnAHP += other.umsteigeBahnAHP;
+        isRailStation |= other.isRailStation;
+    }
 }
@@ -111,4 +111,18 @@ public class TrainStation {
     public int getUmsteigerTyp5b() {
         return umsteigerTyp5b;
     }
+
+    /**
+     * Adds the counts of another instance for the same train station.
+     */
+    public void add(TrainStation other) {
+        zielAussteiger += other.zielAussteiger;
+        quellEinsteiger += other.quellEinsteiger;
+        umsteigerTyp5a += other.umsteigerTyp5a;
+        umsteigerSimbaSimba += other.umsteigerSimbaSimba;
+        umsteigerSimbaAndere += other.umsteigerSimbaAndere;
+        umsteigerAndereSimba += other.umsteigerAndereSimba;
+        umsteigerAndereAndere += other.umsteigerAndereAndere;
+        umsteigerTyp5b += other.umsteigerTyp5b;
+    }
 }
@@ -133,13 +133,15 @@ public class AnalyzeSkimDifferences {
 
 	private void readCompareSkims(String file, int count) {
 		try (CSVReader reader = new CSVReader(file, CSVWriter.DEFAULT_SEPARATOR)) {
-			Map<String, String> line = reader.readLine();
+			int fromColumn = reader.getColumnIndex("FROM");
+			int toColumn = reader.getColumnIndex("TO");
+			int valueColumn = reader.getColumnIndex("VALUE");
 			System.out.println("Reading file " + file);
 			int i = 0;
-			while (line != null) {
-				int from = (int) Double.parseDouble(line.get("FROM"));
-				int to = (int) Double.parseDouble(line.get("TO"));
-				double value = Double.parseDouble(line.get("VALUE"));
+			while (reader.next()) {
+				int from = (int) reader.getDouble(fromColumn);
+				int to = (int) reader.getDouble(toColumn);
+				double value = reader.getDouble(valueColumn);
 				SkimsValue skimsvalue = skimsCache.get(from).get(to);
 				double diff = value - skimsvalue.origValue;
 				if (Double.isInfinite(value) && Double.isInfinite(skimsvalue.origValue)) {
@@ -152,7 +154,6 @@ public class AnalyzeSkimDifferences {
 					System.out.println("Line " + i);
 				}
 				i++;
-				line = reader.readLine();
 			}
 
 		} catch (IOException e) {
@@ -162,15 +163,16 @@ public class AnalyzeSkimDifferences {
 
 	private void readReference() {
 		try (CSVReader reader = new CSVReader(inputfile1, CSVWriter.DEFAULT_SEPARATOR)) {
-			Map<String, String> line = reader.readLine();
+			int fromColumn = reader.getColumnIndex("FROM");
+			int toColumn = reader.getColumnIndex("TO");
+			int valueColumn = reader.getColumnIndex("VALUE");
 			int i = 0;
-			while (line != null) {
-				int from = (int) Double.parseDouble(line.get("FROM"));
-				int to = (int) Double.parseDouble(line.get("TO"));
-				double value = Double.parseDouble(line.get("VALUE"));
+			while (reader.next()) {
+				int from = (int) reader.getDouble(fromColumn);
+				int to = (int) reader.getDouble(toColumn);
+				double value = reader.getDouble(valueColumn);
 				Map<Integer, SkimsValue> tovalues = skimsCache.computeIfAbsent(from, n -> new HashMap<>());
 				tovalues.put(to, new SkimsValue(value, new double[compareFiles.size()], new double[compareFiles.size()]));
-				line = reader.readLine();
 
 				if (i % 1000000 == 0) {
 					System.out.println("Line " + i);
@@ -18,6 +18,7 @@ import org.matsim.core.utils.misc.Time;
 import org.matsim.pt.transitSchedule.api.TransitLine;
 import org.matsim.pt.transitSchedule.api.TransitRoute;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -26,6 +27,14 @@ import java.util.function.BiPredicate;
 import java.util.stream.Collectors;
 
 /**
+ * Calculates car, pt and beeline skim matrices and writes them to OMX files.
+ * <p>
+ * With the optional argument <code>previous=&lt;previousOutputDirectory&gt;;&lt;previousCoordinatesFile&gt;</code>, matrices whose inputs did not change
+ * compared to the previous calculation are copied from the previous OMX files instead of being calculated again, see {@link SkimChanges}. The departure
+ * times, the train line detection and fingerprints of the network, events and schedule files are written to {@link SkimParameters#FILENAME} next to the
+ * OMX files. Car matrices are only reused if they were calculated with the same parameters, network and events, pt matrices only with the same
+ * parameters, network and schedule.
+ *
  * @author mrieser / SBB
  */
 public class CalculateIndicatorOMXMatrices {
@@ -49,6 +58,7 @@ public class CalculateIndicatorOMXMatrices {
 
         Map<String, double[]> timesCar = new LinkedHashMap<>();
         Map<String, double[]> timesPt = new LinkedHashMap<>();
+        String[] previous = null;
 
         for (int argIdx = 7; argIdx < args.length; argIdx++) {
             String arg = args[argIdx];
@@ -62,6 +72,10 @@ public class CalculateIndicatorOMXMatrices {
                 mode = "pt";
                 data = arg.substring(3);
             }
+            if (arg.startsWith("previous=")) {
+                previous = arg.substring(9).split(";");
+                continue;
+            }
             if (data != null) {
                 String[] parts = data.split(";");
                 String prefix = parts[0];
@@ -85,32 +99,137 @@ public class CalculateIndicatorOMXMatrices {
         TreeSet<Integer> zones = skims.getCoordsPerZone().keySet().stream().map(Integer::parseInt).collect(Collectors.toCollection(TreeSet::new));
         int[] lookupzones = zones.stream().mapToInt(Integer::intValue).toArray();
 
+        log.info("calculating fingerprints of the input files");
+        SkimParameters parameters = new SkimParameters(timesCar, timesPt, detectTrainLines, SkimParameters.fingerprint(networkFilename),
+                SkimParameters.fingerprint(eventsFilename), SkimParameters.fingerprint(transitScheduleFilename));
+
+        String previousDirectory = null;
+        SkimChanges changes = null;
+        boolean canReuseCar = false;
+        boolean canReusePt = false;
+        SkimParameters previousParameters = null;
+        if (previous != null) {
+            previousDirectory = previous[0];
+            if (previous.length > 2) {
+                log.warn("The file with the changed transit lines is ignored, changes of the schedule are detected with the fingerprint of the schedule file.");
+            }
+            CalculateSkimMatrices previousSkims = new CalculateSkimMatrices(previousDirectory, numberOfThreads);
+            previousSkims.loadSamplingPointsFromFile(previous[1]);
+            changes = SkimChanges.detect(previousSkims.getCoordsPerZone(), skims.getCoordsPerZone());
+            previousParameters = SkimParameters.read(new File(previousDirectory, SkimParameters.FILENAME));
+            if (previousParameters == null) {
+                log.warn("No " + SkimParameters.FILENAME + " found in " + previousDirectory + ", car and pt matrices are calculated again.");
+            } else {
+                canReuseCar = changes.canReuseMatrices() && previousParameters.hasSameCarInputs(parameters);
+                canReusePt = changes.canReuseMatrices() && previousParameters.hasSamePtInputs(parameters);
+                if (!previousParameters.hasSameCarInputs(parameters)) {
+                    log.info("The network or the events differ from the previous calculation, car matrices are calculated again.");
+                }
+                if (!previousParameters.hasSamePtInputs(parameters)) {
+                    log.info("The network or the schedule differ from the previous calculation, pt matrices are calculated again.");
+                }
+            }
+        }
+
         if (!timesCar.isEmpty()) {
             OmxFile omxFile = new OmxFile(outputDirectory + "/car_skims.omx");
             omxFile.openNew(new int[]{lookupzones.length, lookupzones.length});
             OmxIntLookup lookup = new OmxIntLookup("NO", lookupzones, 0);
             omxFile.addLookup(lookup);
+            OmxFile previousOmxFile = null;
+            if (canReuseCar && new File(previousDirectory, "car_skims.omx").exists()) {
+                previousOmxFile = new OmxFile(previousDirectory + "/car_skims.omx");
+                previousOmxFile.openReadOnly();
+            }
             for (Map.Entry<String, double[]> e : timesCar.entrySet()) {
                 String prefix = e.getKey();
                 double[] times = e.getValue();
+                if (previousOmxFile != null && previousParameters.hasCarParameters(prefix, times) && copyNetworkMatrices(previousOmxFile, omxFile, prefix, lookupzones)) {
+                    continue;
+                }
                 var networkMatrices = skims
                         .prepareAndCalculateNetworkMatrices(networkFilename, eventsFilename, times, config, l -> String.valueOf(l.getAttributes().getAttribute("accessControlled")).equals("0"));
                 exportNetworkMatrices(omxFile, prefix, networkMatrices, lookupzones);
             }
             omxFile.save();
             omxFile.close();
+            if (previousOmxFile != null) {
+                previousOmxFile.close();
+            }
         }
 
         for (Map.Entry<String, double[]> e : timesPt.entrySet()) {
             String prefix = e.getKey();
             double[] times = e.getValue();
+            if (canReusePt && previousParameters.hasPtParameters(prefix, times, detectTrainLines)
+                    && copyMatrices(previousDirectory, outputDirectory, prefix + "pt_skims.omx", lookupzones)) {
+                continue;
+            }
 
             PTSkimMatrices.PtIndicators<String> matrices = skims.calculatePTMatrices(networkFilename, transitScheduleFilename, times[0], times[1], config, trainLinePredictor, new DiameterBasedCoordCondenser());
             exportPtSkimMatrices(outputDirectory + "/" + prefix + "pt_skims.omx", matrices, lookupzones);
         }
 
-        var beelineMatrix = skims.calculateBeelineMatrix();
-        exportBeelineMatrix(outputDirectory + "/beeline_distance_matrix.omx", beelineMatrix, lookupzones);
+        if (changes == null || !changes.canReuseMatrices() || !copyMatrices(previousDirectory, outputDirectory, "beeline_distance_matrix.omx", lookupzones)) {
+            var beelineMatrix = skims.calculateBeelineMatrix();
+            exportBeelineMatrix(outputDirectory + "/beeline_distance_matrix.omx", beelineMatrix, lookupzones);
+        }
+
+        parameters.write(new File(outputDirectory, SkimParameters.FILENAME));
+    }
+
+    /**
+     * @return <code>true</code> if the matrices of the prefix and all zones were found in the previous file and copied
+     */
+    private static boolean copyNetworkMatrices(OmxFile previousOmxFile, OmxFile omxFile, String prefix, int[] lookupzones) {
+        var names = previousOmxFile.getMatrixNames();
+        if (!names.contains(prefix + "distances") || !names.contains(prefix + "travel_times")) {
+            return false;
+        }
+        int[] previousIndices = SkimChanges.findPreviousIndices((int[]) previousOmxFile.getLookup("NO").getLookup(), lookupzones);
+        if (previousIndices == null) {
+            return false;
+        }
+        log.info("Copying unchanged Network OMX matrices for " + prefix);
+        for (String name : new String[]{prefix + "distances", prefix + "travel_times"}) {
+            float[][] data = SkimChanges.selectZones((float[][]) previousOmxFile.getMatrix(name).getData(), previousIndices);
+            omxFile.addMatrix(new OmxFloatMatrix(name, data, Float.POSITIVE_INFINITY));
+        }
+        omxFile.save();
+        return true;
+    }
+
+    /**
+     * Copies all matrices of the previous file, restricted to the rows and columns of the current zones.
+     *
+     * @return <code>true</code> if the file and all zones existed in the previous directory and the matrices were copied
+     */
+    private static boolean copyMatrices(String previousDirectory, String outputDirectory, String filename, int[] lookupzones) {
+        File previousFile = new File(previousDirectory, filename);
+        if (!previousFile.exists()) {
+            return false;
+        }
+        OmxFile previousOmxFile = new OmxFile(previousFile.getAbsolutePath());
+        previousOmxFile.openReadOnly();
+        try {
+            int[] previousIndices = SkimChanges.findPreviousIndices((int[]) previousOmxFile.getLookup("NO").getLookup(), lookupzones);
+            if (previousIndices == null) {
+                return false;
+            }
+            log.info("Copying unchanged " + previousFile);
+            OmxFile omxFile = new OmxFile(new File(outputDirectory, filename).getAbsolutePath());
+            omxFile.openNew(new int[]{lookupzones.length, lookupzones.length});
+            omxFile.addLookup(new OmxIntLookup("NO", lookupzones, 0));
+            for (String name : previousOmxFile.getMatrixNames()) {
+                float[][] data = SkimChanges.selectZones((float[][]) previousOmxFile.getMatrix(name).getData(), previousIndices);
+                omxFile.addMatrix(new OmxFloatMatrix(name, data, Float.POSITIVE_INFINITY));
+            }
+            omxFile.save();
+            omxFile.close();
+            return true;
+        } finally {
+            previousOmxFile.close();
+        }
     }
 
     private static void exportBeelineMatrix(String filename, FloatMatrix<String> beelineMatrix, int[] lookupzones) {
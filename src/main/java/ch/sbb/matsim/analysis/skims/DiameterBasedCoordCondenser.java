@@ -18,32 +18,45 @@ public class DiameterBasedCoordCondenser implements PTSkimMatrices.CoordAggregat
         if (Arrays.stream(coords).allMatch(coord -> DistanceUtils.calculateSquaredDistance(averageCoord, coord) < maxDistanceSquared)) {
             return Collections.singletonList(new CalculateSkimMatrices.WeightedCoord(averageCoord, length));
         } else {
-            List<Coord> condensedCoords = new ArrayList<>();
-            Map<Coord, Double> coordWeights = new HashMap<>();
+            // Every coordinate is added to the first condensed coordinate within the max distance, or becomes a new condensed coordinate.
+            // The condensed coordinates are indexed in a grid with cells of the max distance, so only the neighbouring cells have to be checked.
+            Coord[] condensedCoords = new Coord[coords.length];
+            double[] weights = new double[coords.length];
+            int[] nextInCell = new int[coords.length];
+            Map<Long, Integer> firstInCell = new HashMap<>();
+            int condensedCount = 0;
 
             for (Coord current : coords) {
-                boolean shouldAdd = true;
-                for (var existing : condensedCoords) {
-                    double distance = DistanceUtils.calculateSquaredDistance(current, existing);
-                    if (distance <= maxDistanceSquared) {
-                        shouldAdd = false;
-                        // Increase the weight of the existing coordinate
-                        double existingWeight = coordWeights.getOrDefault(existing, 1.0);
-                        coordWeights.put(existing, existingWeight + 1.0);
-                        break;
+                long cellX = (long) Math.floor(current.getX() / MAXDISTANCE);
+                long cellY = (long) Math.floor(current.getY() / MAXDISTANCE);
+                int match = -1;
+                for (long x = cellX - 1; x <= cellX + 1; x++) {
+                    for (long y = cellY - 1; y <= cellY + 1; y++) {
+                        Integer first = firstInCell.get(cellKey(x, y));
+                        for (int i = first == null ? -1 : first; i >= 0; i = nextInCell[i]) {
+                            if ((match < 0 || i < match) && DistanceUtils.calculateSquaredDistance(current, condensedCoords[i]) <= maxDistanceSquared) {
+                                match = i;
+                            }
+                        }
                     }
                 }
 
-                if (shouldAdd) {
-                    condensedCoords.add(current);
-                    coordWeights.put(current, 1.0);
+                if (match >= 0) {
+                    weights[match] += 1.0;
+                } else {
+                    long key = cellKey(cellX, cellY);
+                    Integer first = firstInCell.get(key);
+                    nextInCell[condensedCount] = first == null ? -1 : first;
+                    firstInCell.put(key, condensedCount);
+                    condensedCoords[condensedCount] = current;
+                    weights[condensedCount] = 1.0;
+                    condensedCount++;
                 }
             }
 
-            List<CalculateSkimMatrices.WeightedCoord> condensedWeightedCoords = new ArrayList<>();
-            for (var condensed : condensedCoords) {
-                double weight = coordWeights.get(condensed);
-                condensedWeightedCoords.add(new CalculateSkimMatrices.WeightedCoord(condensed, weight));
+            List<CalculateSkimMatrices.WeightedCoord> condensedWeightedCoords = new ArrayList<>(condensedCount);
+            for (int i = 0; i < condensedCount; i++) {
+                condensedWeightedCoords.add(new CalculateSkimMatrices.WeightedCoord(condensedCoords[i], weights[i]));
             }
 
             return condensedWeightedCoords;
@@ -51,6 +64,8 @@ public class DiameterBasedCoordCondenser implements PTSkimMatrices.CoordAggregat
 
     }
 
-
+    private static long cellKey(long cellX, long cellY) {
+        return (cellX << 32) ^ (cellY & 0xffffffffL);
+    }
 }
 
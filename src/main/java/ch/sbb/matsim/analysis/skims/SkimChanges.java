@@ -0,0 +1,96 @@
+package ch.sbb.matsim.analysis.skims;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Describes how the sampling points of a skim calculation changed compared to a previous calculation, to decide which matrices can be copied from the
+ * previous output instead of being calculated again. Changes of the network, events and schedule are detected with the fingerprints of
+ * {@link SkimParameters}.
+ * <p>
+ * The values of a zone pair only depend on the sampling points of the two zones and on the input files. If zones were only removed, the matrices can thus
+ * be reused by selecting the rows and columns of the remaining zones. A zone that was added or whose sampling points changed affects its row and its
+ * column. Calculating the column requires routing from every origin zone, which is the whole cost of a calculation, so such matrices are calculated again
+ * completely.
+ */
+class SkimChanges {
+
+	private static final Logger log = LogManager.getLogger(SkimChanges.class);
+
+	private final Set<String> changedZones;
+	private final Set<String> removedZones;
+
+	private SkimChanges(Set<String> changedZones, Set<String> removedZones) {
+		this.changedZones = changedZones;
+		this.removedZones = removedZones;
+	}
+
+	static SkimChanges detect(Map<String, Coord[]> previousCoordsPerZone, Map<String, Coord[]> coordsPerZone) {
+		Set<String> changedZones = new TreeSet<>();
+		for (Map.Entry<String, Coord[]> e : coordsPerZone.entrySet()) {
+			if (!Arrays.equals(e.getValue(), previousCoordsPerZone.get(e.getKey()))) {
+				changedZones.add(e.getKey());
+			}
+		}
+		Set<String> removedZones = new TreeSet<>();
+		for (String zone : previousCoordsPerZone.keySet()) {
+			if (!coordsPerZone.containsKey(zone)) {
+				removedZones.add(zone);
+			}
+		}
+		log.info("Sampling points changed in " + changedZones.size() + " of " + coordsPerZone.size() + " zones, " + removedZones.size() + " zones removed.");
+		return new SkimChanges(changedZones, removedZones);
+	}
+
+	boolean samplingPointsChanged() {
+		return !this.changedZones.isEmpty() || !this.removedZones.isEmpty();
+	}
+
+	/**
+	 * @return <code>true</code> if all zones of the current calculation have the same sampling points as before. Removed zones do not prevent reuse. The
+	 * input files must be compared separately, see {@link SkimParameters}.
+	 */
+	boolean canReuseMatrices() {
+		return this.changedZones.isEmpty();
+	}
+
+	/**
+	 * @return for every zone, the index of the zone in the previous lookup, or <code>null</code> if a zone is missing in the previous lookup
+	 */
+	static int[] findPreviousIndices(int[] previousZones, int[] zones) {
+		Map<Integer, Integer> previousIndices = new HashMap<>();
+		for (int i = 0; i < previousZones.length; i++) {
+			previousIndices.put(previousZones[i], i);
+		}
+		int[] indices = new int[zones.length];
+		for (int i = 0; i < zones.length; i++) {
+			Integer index = previousIndices.get(zones[i]);
+			if (index == null) {
+				return null;
+			}
+			indices[i] = index;
+		}
+		return indices;
+	}
+
+	/**
+	 * @return the rows and columns of the previous matrix at the given indices, see {@link #findPreviousIndices(int[], int[])}
+	 */
+	static float[][] selectZones(float[][] previousMatrix, int[] previousIndices) {
+		float[][] matrix = new float[previousIndices.length][previousIndices.length];
+		for (int i = 0; i < previousIndices.length; i++) {
+			float[] previousRow = previousMatrix[previousIndices[i]];
+			for (int j = 0; j < previousIndices.length; j++) {
+				matrix[i][j] = previousRow[previousIndices[j]];
+			}
+		}
+		return matrix;
+	}
+}
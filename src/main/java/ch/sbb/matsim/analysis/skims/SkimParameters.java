@@ -0,0 +1,187 @@
+package ch.sbb.matsim.analysis.skims;
+
+import org.matsim.core.utils.io.IOUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The parameters of a skim calculation which are not part of the OMX files: the departure times of every car and pt prefix, whether train lines were
+ * detected, and a fingerprint of the network, events and schedule files. They are written next to the OMX files, so that a later calculation only reuses
+ * matrices that were calculated with the same parameters and inputs.
+ * <p>
+ * The file has one <code>key=value</code> pair per row, with the keys <code>detectTrainLines</code>, <code>input.network</code>, <code>input.events</code>,
+ * <code>input.schedule</code>, <code>car.&lt;prefix&gt;</code> and <code>pt.&lt;prefix&gt;</code>. The times are written in seconds, separated by
+ * semicolons. The fingerprints are SHA-256 digests of the file contents, or <code>none</code> if no file was used.
+ */
+class SkimParameters {
+
+	static final String FILENAME = "skim_parameters.txt";
+
+	private static final String DETECT_TRAIN_LINES = "detectTrainLines";
+	private static final String CAR = "car.";
+	private static final String PT = "pt.";
+	private static final String NETWORK = "input.network";
+	private static final String EVENTS = "input.events";
+	private static final String SCHEDULE = "input.schedule";
+	private static final String NO_FILE = "none";
+
+	private final Map<String, double[]> timesCar;
+	private final Map<String, double[]> timesPt;
+	private final boolean detectTrainLines;
+	private final String networkFingerprint;
+	private final String eventsFingerprint;
+	private final String scheduleFingerprint;
+
+	SkimParameters(Map<String, double[]> timesCar, Map<String, double[]> timesPt, boolean detectTrainLines, String networkFingerprint, String eventsFingerprint,
+			String scheduleFingerprint) {
+		this.timesCar = timesCar;
+		this.timesPt = timesPt;
+		this.detectTrainLines = detectTrainLines;
+		this.networkFingerprint = networkFingerprint;
+		this.eventsFingerprint = eventsFingerprint;
+		this.scheduleFingerprint = scheduleFingerprint;
+	}
+
+	/**
+	 * @return the SHA-256 digest of the content of the file, or <code>none</code> if the filename is <code>null</code>
+	 */
+	static String fingerprint(String filename) {
+		if (filename == null) {
+			return NO_FILE;
+		}
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+		try (InputStream in = Files.newInputStream(new File(filename).toPath())) {
+			byte[] buffer = new byte[1 << 16];
+			int count;
+			while ((count = in.read(buffer)) > 0) {
+				digest.update(buffer, 0, count);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not read " + filename, e);
+		}
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	/**
+	 * @return <code>true</code> if the car matrices were calculated from the same network and events as the current calculation. Parameters written
+	 * without fingerprints never match.
+	 */
+	boolean hasSameCarInputs(SkimParameters current) {
+		return this.networkFingerprint != null && this.networkFingerprint.equals(current.networkFingerprint)
+				&& this.eventsFingerprint != null && this.eventsFingerprint.equals(current.eventsFingerprint);
+	}
+
+	/**
+	 * @return <code>true</code> if the pt matrices were calculated from the same network and schedule as the current calculation. Parameters written
+	 * without fingerprints never match.
+	 */
+	boolean hasSamePtInputs(SkimParameters current) {
+		return this.networkFingerprint != null && this.networkFingerprint.equals(current.networkFingerprint)
+				&& this.scheduleFingerprint != null && this.scheduleFingerprint.equals(current.scheduleFingerprint);
+	}
+
+	/**
+	 * @return <code>true</code> if the car matrices of the prefix were calculated with the same departure times
+	 */
+	boolean hasCarParameters(String prefix, double[] times) {
+		return Arrays.equals(this.timesCar.get(prefix), times);
+	}
+
+	/**
+	 * @return <code>true</code> if the pt matrices of the prefix were calculated with the same departure times and train line detection
+	 */
+	boolean hasPtParameters(String prefix, double[] times, boolean detectTrainLines) {
+		return this.detectTrainLines == detectTrainLines && Arrays.equals(this.timesPt.get(prefix), times);
+	}
+
+	void write(File file) {
+		try (BufferedWriter writer = IOUtils.getBufferedWriter(file.getAbsolutePath())) {
+			writer.write(DETECT_TRAIN_LINES + "=" + this.detectTrainLines);
+			writer.newLine();
+			writer.write(NETWORK + "=" + this.networkFingerprint);
+			writer.newLine();
+			writer.write(EVENTS + "=" + this.eventsFingerprint);
+			writer.newLine();
+			writer.write(SCHEDULE + "=" + this.scheduleFingerprint);
+			writer.newLine();
+			writeTimes(writer, CAR, this.timesCar);
+			writeTimes(writer, PT, this.timesPt);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void writeTimes(BufferedWriter writer, String keyPrefix, Map<String, double[]> times) throws IOException {
+		for (Map.Entry<String, double[]> e : times.entrySet()) {
+			StringBuilder value = new StringBuilder();
+			for (double time : e.getValue()) {
+				if (!value.isEmpty()) {
+					value.append(';');
+				}
+				value.append(time);
+			}
+			writer.write(keyPrefix + e.getKey() + "=" + value);
+			writer.newLine();
+		}
+	}
+
+	/**
+	 * @return the parameters stored in the file, or <code>null</code> if the file does not exist, e.g. because the previous calculation did not write it yet
+	 */
+	static SkimParameters read(File file) {
+		if (!file.exists()) {
+			return null;
+		}
+		Map<String, double[]> timesCar = new LinkedHashMap<>();
+		Map<String, double[]> timesPt = new LinkedHashMap<>();
+		boolean detectTrainLines = false;
+		Map<String, String> fingerprints = new LinkedHashMap<>();
+		try (BufferedReader reader = IOUtils.getBufferedReader(file.getAbsolutePath())) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int separator = line.indexOf('=');
+				if (separator < 0) {
+					continue;
+				}
+				String key = line.substring(0, separator);
+				String value = line.substring(separator + 1);
+				if (key.equals(DETECT_TRAIN_LINES)) {
+					detectTrainLines = Boolean.parseBoolean(value);
+				} else if (key.equals(NETWORK) || key.equals(EVENTS) || key.equals(SCHEDULE)) {
+					fingerprints.put(key, value);
+				} else if (key.startsWith(CAR)) {
+					timesCar.put(key.substring(CAR.length()), parseTimes(value));
+				} else if (key.startsWith(PT)) {
+					timesPt.put(key.substring(PT.length()), parseTimes(value));
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return new SkimParameters(timesCar, timesPt, detectTrainLines, fingerprints.get(NETWORK), fingerprints.get(EVENTS), fingerprints.get(SCHEDULE));
+	}
+
+	private static double[] parseTimes(String value) {
+		if (value.isEmpty()) {
+			return new double[0];
+		}
+		return Arrays.stream(value.split(";")).mapToDouble(Double::parseDouble).toArray();
+	}
+}
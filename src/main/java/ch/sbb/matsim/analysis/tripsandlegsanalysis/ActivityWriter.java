@@ -19,15 +19,20 @@
 
 package ch.sbb.matsim.analysis.tripsandlegsanalysis;
 
+import ch.sbb.matsim.analysis.TripAnalyzer;
 import ch.sbb.matsim.config.PostProcessingConfigGroup;
 import ch.sbb.matsim.csv.CSVWriter;
 import ch.sbb.matsim.zones.Zone;
-import ch.sbb.matsim.zones.Zones;
+import ch.sbb.matsim.zones.ZoneAssignment;
 import ch.sbb.matsim.zones.ZonesCollection;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import jakarta.inject.Inject;
 import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.IdMap;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.network.Network;
@@ -37,7 +42,9 @@ import org.matsim.api.core.v01.population.Plan;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.router.TripStructureUtils;
 import org.matsim.core.router.TripStructureUtils.StageActivityHandling;
+import org.matsim.core.router.TripStructureUtils.Trip;
 import org.matsim.core.scoring.ExperiencedPlansService;
+import org.matsim.facilities.ActivityFacility;
 
 public class ActivityWriter {
 
@@ -51,7 +58,7 @@ public class ActivityWriter {
     public static final String ZONE = "zone";
     private final Network network;
     private final int simEndTime;
-    private final Zones zones;
+    private final ZoneAssignment zoneAssignment;
 
     @Inject
     private ExperiencedPlansService experiencedPlansService;
@@ -60,7 +67,7 @@ public class ActivityWriter {
     public ActivityWriter(Scenario scenario, ZonesCollection zonesCollection) {
         this.network = scenario.getNetwork();
         this.simEndTime = scenario.getConfig().hermes().getEndTime();
-        this.zones = zonesCollection.getZones(ConfigUtils.addOrGetModule(scenario.getConfig(), PostProcessingConfigGroup.class).getZonesId());
+        this.zoneAssignment = zonesCollection.getZoneAssignment(ConfigUtils.addOrGetModule(scenario.getConfig(), PostProcessingConfigGroup.class).getZonesId());
 
     }
 
@@ -70,32 +77,75 @@ public class ActivityWriter {
     }
 
     public void writeActivities(String filename, IdMap<Person, Plan> experiencedPlans) {
-        try (CSVWriter csvWriter = new CSVWriter(null, new String[]{ACTIVITY_ID, PERSON_ID, FACILITY_ID, START_TIME, END_TIME, X, Y, ZONE}, filename)) {
-            int i = 0;
-            for (var e : experiencedPlans.entrySet()) {
-                for (Activity a : TripStructureUtils.getActivities(e.getValue(), StageActivityHandling.ExcludeStageActivities)) {
-                    csvWriter.set(ACTIVITY_ID, Integer.toString(i++));
-                    csvWriter.set(PERSON_ID, e.getKey().toString());
-                    csvWriter.set(FACILITY_ID, String.valueOf(a.getFacilityId()));
-                    csvWriter.set(START_TIME, Integer.toString(a.getStartTime().isDefined() ? (int) a.getStartTime().seconds() : 0));
-                    csvWriter.set(END_TIME, Integer.toString(a.getEndTime().isDefined() ? (int) a.getEndTime().seconds() : simEndTime));
+        writeActivities(filename, TripAnalyzer.analyze(createTripAnalyzer(), experiencedPlans));
+    }
+
+    /**
+     * Collects the activities of every plan, in plan order. The activity ids are only assigned when writing, so they keep running over all plans.
+     */
+    public TripAnalyzer<List<List<ActivityEntry>>> createTripAnalyzer() {
+        return new TripAnalyzer<>() {
+            @Override
+            public List<List<ActivityEntry>> createAccumulator() {
+                return new ArrayList<>();
+            }
+
+            @Override
+            public void analyzeTrips(List<List<ActivityEntry>> entries, Id<Person> personId, Plan plan, List<Trip> trips) {
+                List<ActivityEntry> planEntries = new ArrayList<>();
+                for (Activity a : TripStructureUtils.getActivities(plan, StageActivityHandling.ExcludeStageActivities)) {
                     Coord c = a.getCoord();
                     if (c == null) {
                         c = network.getLinks().get(a.getLinkId()).getToNode().getCoord();
                     }
-                    csvWriter.set(X, String.valueOf(c.getX()));
-                    csvWriter.set(Y, String.valueOf(c.getY()));
-                    Zone z = zones.findZone(c);
-                    String zoneId = z == null ? "" : z.getId().toString();
-                    csvWriter.set(ZONE, zoneId);
+                    planEntries.add(new ActivityEntry(personId, a.getFacilityId(),
+                            a.getStartTime().isDefined() ? (int) a.getStartTime().seconds() : 0,
+                            a.getEndTime().isDefined() ? (int) a.getEndTime().seconds() : simEndTime,
+                            c, zoneAssignment.getZone(a.getFacilityId(), c)));
+                }
+                entries.add(planEntries);
+            }
+
+            @Override
+            public List<List<ActivityEntry>> merge(List<List<ActivityEntry>> entries, List<List<ActivityEntry>> other) {
+                entries.addAll(other);
+                return entries;
+            }
+        };
+    }
+
+    public void writeActivities(String filename, List<List<ActivityEntry>> entries) {
+        try (CSVWriter csvWriter = new CSVWriter(null, new String[]{ACTIVITY_ID, PERSON_ID, FACILITY_ID, START_TIME, END_TIME, X, Y, ZONE}, filename)) {
+            final int activityIdColumn = csvWriter.getColumnIndex(ACTIVITY_ID);
+            final int personIdColumn = csvWriter.getColumnIndex(PERSON_ID);
+            final int facilityIdColumn = csvWriter.getColumnIndex(FACILITY_ID);
+            final int startTimeColumn = csvWriter.getColumnIndex(START_TIME);
+            final int endTimeColumn = csvWriter.getColumnIndex(END_TIME);
+            final int xColumn = csvWriter.getColumnIndex(X);
+            final int yColumn = csvWriter.getColumnIndex(Y);
+            final int zoneColumn = csvWriter.getColumnIndex(ZONE);
+            int i = 0;
+            for (List<ActivityEntry> planEntries : entries) {
+                for (ActivityEntry a : planEntries) {
+                    csvWriter.set(activityIdColumn, i++);
+                    csvWriter.set(personIdColumn, a.personId().toString());
+                    csvWriter.set(facilityIdColumn, a.facilityId() == null ? "null" : a.facilityId().toString());
+                    csvWriter.set(startTimeColumn, a.startTime());
+                    csvWriter.set(endTimeColumn, a.endTime());
+                    csvWriter.set(xColumn, a.coord().getX());
+                    csvWriter.set(yColumn, a.coord().getY());
+                    csvWriter.set(zoneColumn, a.zone() == null ? "" : a.zone().getId().toString());
                     csvWriter.writeRow();
                 }
             }
 
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException(e);
         }
 
     }
 
+    public record ActivityEntry(Id<Person> personId, Id<ActivityFacility> facilityId, int startTime, int endTime, Coord coord, Zone zone) {
+    }
+
 }
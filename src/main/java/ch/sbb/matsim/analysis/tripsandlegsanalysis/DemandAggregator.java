@@ -19,6 +19,7 @@
 
 package ch.sbb.matsim.analysis.tripsandlegsanalysis;
 
+import ch.sbb.matsim.analysis.TripAnalyzer;
 import ch.sbb.matsim.config.PostProcessingConfigGroup;
 import ch.sbb.matsim.config.variables.Variables;
 import ch.sbb.matsim.csv.CSVWriter;
@@ -33,12 +34,12 @@ import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.population.HasPlansAndId;
+import org.matsim.api.core.v01.population.Person;
 import org.matsim.api.core.v01.population.Plan;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.network.io.MatsimNetworkReader;
 import org.matsim.core.population.io.PopulationReader;
 import org.matsim.core.router.MainModeIdentifier;
-import org.matsim.core.router.TripStructureUtils;
 import org.matsim.core.router.TripStructureUtils.Trip;
 import org.matsim.core.scenario.ScenarioUtils;
 import org.matsim.core.scoring.ExperiencedPlansService;
@@ -46,8 +47,8 @@ import org.matsim.pt.transitSchedule.api.TransitScheduleReader;
 import org.matsim.pt.transitSchedule.api.TransitStopFacility;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @Singleton
@@ -58,12 +59,14 @@ public class DemandAggregator {
     private final RailTripsAnalyzer railTripsAnalyzer;
     private final Map<Id<TransitStopFacility>, String> aggregateZoneStop = new HashMap<>();
     private final Map<Id<TransitStopFacility>, String> zoneStop = new HashMap<>();
-    private final Map<Id<TransitStopFacility>, Map<Id<TransitStopFacility>, RailODTravelInfo>> odRailDemandMatrix = new TreeMap<>();
+    /**
+     * The FQ relevant station to station demand is not reset between passes, every pass adds its demand to the demand of all previous passes of this
+     * aggregator.
+     */
     private final Map<Id<TransitStopFacility>, Map<Id<TransitStopFacility>, RailODTravelInfo>> odRailDemandMatrixFQ = new TreeMap<>();
     private final ArrayList<String> aggregateZones;
-    private final Map<Id<Zone>, Map<Id<Zone>, ODTravelInfo>> allModesOdDemand = new ConcurrentHashMap<>();
     private final Scenario scenario;
-    private final Zones zones;
+    private final ZoneAssignment zoneAssignment;
     private final MainModeIdentifier mainModeIdentifier = new SBBAnalysisMainModeIdentifier();
     private final Logger LOG = LogManager.getLogger(getClass());
     @Inject
@@ -73,7 +76,7 @@ public class DemandAggregator {
     public DemandAggregator(Scenario scenario, ZonesCollection zonesCollection, final PostProcessingConfigGroup ppConfig, RailTripsAnalyzer railTripsAnalyzer) {
         this.scenario = scenario;
         Zones zones = zonesCollection.getZones(ppConfig.getZonesId());
-        this.zones = zones;
+        this.zoneAssignment = zonesCollection.getZoneAssignment(ppConfig.getZonesId());
         this.railTripsAnalyzer = railTripsAnalyzer;
         for (TransitStopFacility facility : scenario.getTransitSchedule().getFacilities().values()) {
             Zone zone = zones.findZone(facility.getCoord());
@@ -111,9 +114,9 @@ public class DemandAggregator {
         ppcg.setZonesId("zones");
         RailTripsAnalyzer railTripsAnalyzer = new RailTripsAnalyzer(scenario.getTransitSchedule(), scenario.getNetwork(), zonesCollection);
         DemandAggregator demandAggregator = new DemandAggregator(scenario, zonesCollection, ppcg, railTripsAnalyzer);
-        demandAggregator
-                .writeMatrix(demandAggregator.aggregateRailDemand(scaleFactor, scenario.getPopulation().getPersons().values().stream().map(HasPlansAndId::getSelectedPlan).collect(
-                        Collectors.toSet())), outputFile);
+        DemandAggregate demand = TripAnalyzer.analyze(demandAggregator.createTripAnalyzer(scaleFactor, true, false),
+                scenario.getPopulation().getPersons().values().stream().map(HasPlansAndId::getSelectedPlan).collect(Collectors.toSet()));
+        demandAggregator.writeMatrix(demand.railMatrix, outputFile);
 
     }
 
@@ -124,29 +127,85 @@ public class DemandAggregator {
     }
 
     void aggregateAndWriteMatrix(double scalefactor, String outputMatrixFile, String stationToStationFile, String stationToStationFQFile, String tripsPerMunFile, String tripsPerMSRFile, Collection<Plan> experiencedPlans) {
-        LOG.info("aggregating Rail Demand");
-        float[][] matrix = aggregateRailDemand(scalefactor, experiencedPlans);
-        LOG.info("aggregating Trip Demand");
-        aggregateTripDemand(scalefactor, experiencedPlans);
+        LOG.info("aggregating Rail and Trip Demand");
+        DemandAggregate demand = TripAnalyzer.analyze(createTripAnalyzer(scalefactor, true, true), experiencedPlans);
+        writeMatrices(demand, outputMatrixFile, stationToStationFile, stationToStationFQFile, tripsPerMunFile, tripsPerMSRFile);
+    }
+
+    public void writeMatrices(DemandAggregate demand, String outputMatrixFile, String stationToStationFile, String stationToStationFQFile, String tripsPerMunFile, String tripsPerMSRFile) {
         LOG.info("Writing Trip Demand aggregate files.");
-        writeMatrix(matrix, outputMatrixFile);
-        writeStationToStationDemand(stationToStationFile, stationToStationFQFile);
-        writeTripDemand("mun_id", "mun_name", tripsPerMunFile);
-        writeTripDemand("amr_id", "amr_name", tripsPerMSRFile);
+        writeMatrix(demand.railMatrix, outputMatrixFile);
+        writeStationToStationDemand(demand, stationToStationFile, stationToStationFQFile);
+        writeTripDemand(demand, "mun_id", "mun_name", tripsPerMunFile);
+        writeTripDemand(demand, "amr_id", "amr_name", tripsPerMSRFile);
         LOG.info("Done.");
-        odRailDemandMatrix.clear();
-        allModesOdDemand.clear();
     }
 
-    public void writeTripDemand(String aggregationString, String aggregationStringName, String outputfile) {
-        ZonesImpl zonesImpl = (ZonesImpl) zones;
-        Map<Id<Zone>, String> zoneAggregate = zonesImpl.getZones().stream().collect(Collectors.toMap(zone -> zone.getId(), zone -> String.valueOf(zone.getAttribute(aggregationString))));
-        Map<String, String> zoneAggregateNameString = zonesImpl.getZones().stream().collect(Collectors.toMap(zone -> String.valueOf(zone.getAttribute(aggregationString)), zone -> String.valueOf(zone.getAttribute(aggregationStringName)), (a, b) -> a));
+    /**
+     * @param includeRailDemand whether the rail demand between stations and aggregate zones is collected
+     * @param includeTripDemand whether the demand of all modes between zones is collected
+     */
+    public TripAnalyzer<DemandAggregate> createTripAnalyzer(double scalefactor, boolean includeRailDemand, boolean includeTripDemand) {
+        if (includeTripDemand && scalefactor < 1.0) {
+            throw new RuntimeException("Scalefactor set below 1. This will scale traffic down and should not be intended.");
+        }
+        return new TripAnalyzer<>() {
+            @Override
+            public DemandAggregate createAccumulator() {
+                return new DemandAggregate(aggregateZones.size());
+            }
+
+            @Override
+            public void analyzeTrips(DemandAggregate demand, Id<Person> personId, Plan plan, List<Trip> trips) {
+                for (Trip trip : trips) {
+                    if (includeRailDemand) {
+                        aggregateRailDemand(demand, scalefactor, trip);
+                    }
+                    if (includeTripDemand) {
+                        aggregateTripDemand(demand, scalefactor, trip);
+                    }
+                }
+            }
+
+            @Override
+            public DemandAggregate merge(DemandAggregate demand, DemandAggregate other) {
+                demand.add(other);
+                return demand;
+            }
+
+            @Override
+            public DemandAggregate finish(DemandAggregate demand) {
+                if (includeRailDemand) {
+                    addToCumulativeFQDemand(demand);
+                }
+                return demand;
+            }
+        };
+    }
+
+    /**
+     * Adds the FQ relevant demand of a pass to the demand of all previous passes, and replaces the demand of the pass by a copy of the sum. The copy is not
+     * modified by later passes, so it can still be written while the next pass runs.
+     */
+    private synchronized void addToCumulativeFQDemand(DemandAggregate demand) {
+        DemandAggregate.addRailDemand(this.odRailDemandMatrixFQ, demand.odRailDemandMatrixFQ);
+        demand.odRailDemandMatrixFQ.clear();
+        DemandAggregate.addRailDemand(demand.odRailDemandMatrixFQ, this.odRailDemandMatrixFQ);
+    }
+
+    public DemandAggregate aggregateTripDemand(double scalefactor, Collection<Plan> experiencedPlans) {
+        return TripAnalyzer.analyze(createTripAnalyzer(scalefactor, false, true), experiencedPlans);
+    }
+
+    public void writeTripDemand(DemandAggregate aggregate, String aggregationString, String aggregationStringName, String outputfile) {
+        Zones zones = zoneAssignment.getZones();
+        Map<Id<Zone>, String> zoneAggregate = zones.getZones().stream().collect(Collectors.toMap(zone -> zone.getId(), zone -> String.valueOf(zone.getAttribute(aggregationString))));
+        Map<String, String> zoneAggregateNameString = zones.getZones().stream().collect(Collectors.toMap(zone -> String.valueOf(zone.getAttribute(aggregationString)), zone -> String.valueOf(zone.getAttribute(aggregationStringName)), (a, b) -> a));
         zoneAggregateNameString.put(OUTSIDE_ZONE, "Outside");
         zoneAggregate.put(OUTSIDE_ZONE_ID, OUTSIDE_ZONE);
         Map<String, Map<String, ODTravelInfo>> aggregatedAllModesOdDemand = new HashMap<>();
         Set<String> allModes = new HashSet<>();
-        allModesOdDemand.forEach((zoneId, toFlow) -> {
+        aggregate.allModesOdDemand.forEach((zoneId, toFlow) -> {
             String fromAggregate = zoneAggregate.get(zoneId);
             toFlow.forEach((toZoneId, flow) -> {
                 String toAggregate = zoneAggregate.get(toZoneId);
@@ -198,40 +257,30 @@ public class DemandAggregator {
             }
 
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            throw new UncheckedIOException(e);
         }
 
 
     }
 
-    public void aggregateTripDemand(double scalefactor, Collection<Plan> experiencedPlans) {
-        if (scalefactor < 1.0) {
-            throw new RuntimeException("Scalefactor set below 1. This will scale traffic down and should not be intended.");
-        }
-        experiencedPlans.parallelStream().forEach(plan ->
-        {
-            for (Trip trip : TripStructureUtils.getTrips(plan)) {
-                Coord startCoord = SBBTripsExtension.getCoordFromActivity(trip.getOriginActivity(), scenario);
-                Zone startZone = zones.findZone(startCoord);
-                Id<Zone> startZoneId = startZone != null ? startZone.getId() : OUTSIDE_ZONE_ID;
-
-                Coord endCoord = SBBTripsExtension.getCoordFromActivity(trip.getDestinationActivity(), scenario);
-                Zone endZone = zones.findZone(endCoord);
-                Id<Zone> endZoneId = endZone != null ? endZone.getId() : OUTSIDE_ZONE_ID;
-
-                double travelTime = trip.getLegsOnly().stream().mapToDouble(leg -> leg.getRoute().getTravelTime().orElse(0)).sum();
-                double travelDistance = trip.getLegsOnly().stream().mapToDouble(leg -> leg.getRoute().getDistance()).sum();
-                String mainMode = mainModeIdentifier.identifyMainMode(trip.getTripElements());
-                allModesOdDemand.computeIfAbsent(startZoneId, a -> new ConcurrentHashMap<>())
-                        .computeIfAbsent(endZoneId, a -> new ODTravelInfo(new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), new ConcurrentHashMap<>()))
-                        .addTravelInfo(mainMode, scalefactor, travelTime * scalefactor, travelDistance * scalefactor);
-
-
-            }
-        });
+    private void aggregateTripDemand(DemandAggregate demand, double scalefactor, Trip trip) {
+        Coord startCoord = SBBTripsExtension.getCoordFromActivity(trip.getOriginActivity(), scenario);
+        Zone startZone = zoneAssignment.getZone(trip.getOriginActivity().getFacilityId(), startCoord);
+        Id<Zone> startZoneId = startZone != null ? startZone.getId() : OUTSIDE_ZONE_ID;
+
+        Coord endCoord = SBBTripsExtension.getCoordFromActivity(trip.getDestinationActivity(), scenario);
+        Zone endZone = zoneAssignment.getZone(trip.getDestinationActivity().getFacilityId(), endCoord);
+        Id<Zone> endZoneId = endZone != null ? endZone.getId() : OUTSIDE_ZONE_ID;
+
+        double travelTime = trip.getLegsOnly().stream().mapToDouble(leg -> leg.getRoute().getTravelTime().orElse(0)).sum();
+        double travelDistance = trip.getLegsOnly().stream().mapToDouble(leg -> leg.getRoute().getDistance()).sum();
+        String mainMode = mainModeIdentifier.identifyMainMode(trip.getTripElements());
+        demand.allModesOdDemand.computeIfAbsent(startZoneId, a -> new HashMap<>())
+                .computeIfAbsent(endZoneId, a -> new ODTravelInfo(new HashMap<>(), new HashMap<>(), new HashMap<>()))
+                .addTravelInfo(mainMode, scalefactor, travelTime * scalefactor, travelDistance * scalefactor);
     }
 
-    public void writeStationToStationDemand(String outputFile, String outputFileFQ) {
+    public void writeStationToStationDemand(DemandAggregate demand, String outputFile, String outputFileFQ) {
         String from = "from_station";
         String fromName = "from_station_name";
         String fromZone = "from_station_zone";
@@ -246,7 +295,7 @@ public class DemandAggregator {
         String travel_time = "average_travel_time";
         String number_of_transfers = "number_of_rail_transfers";
         try (CSVWriter writer = new CSVWriter(null, new String[]{from, fromName, fromZone, to, toName, toZone, trips, pkm, travel_time, number_of_transfers}, outputFile)) {
-            for (var entry : this.odRailDemandMatrix.entrySet()) {
+            for (var entry : demand.odRailDemandMatrix.entrySet()) {
                 String fromZoneId = this.zoneStop.get(entry.getKey());
                 String fromStationName = String.valueOf(scenario.getTransitSchedule().getFacilities().get(entry.getKey()).getName());
                 for (var stopEntry : entry.getValue().entrySet()) {
@@ -270,11 +319,11 @@ public class DemandAggregator {
             }
 
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            throw new UncheckedIOException(e);
         }
 
         try (CSVWriter writer = new CSVWriter(null, new String[]{from, fromName, fromZone, to, toName, toZone, trips, pkm, travel_time, number_of_transfers}, outputFileFQ)) {
-            for (var entry : this.odRailDemandMatrixFQ.entrySet()) {
+            for (var entry : demand.odRailDemandMatrixFQ.entrySet()) {
                 String fromZoneId = this.zoneStop.get(entry.getKey());
                 String fromStationName = String.valueOf(scenario.getTransitSchedule().getFacilities().get(entry.getKey()).getName());
                 for (var stopEntry : entry.getValue().entrySet()) {
@@ -297,7 +346,7 @@ public class DemandAggregator {
             }
 
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            throw new UncheckedIOException(e);
         }
     }
 
@@ -315,40 +364,84 @@ public class DemandAggregator {
                 writer.writeRow();
             }
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException(e);
         }
     }
 
-    private float[][] aggregateRailDemand(double scaleFactor, Collection<Plan> plans) {
-        float[][] matrix = new float[aggregateZones.size()][aggregateZones.size()];
-        for (Plan plan : plans) {
-            for (Trip trip : TripStructureUtils.getTrips(plan)) {
-                RailTripsAnalyzer.RailTravelInfo od = railTripsAnalyzer.getRailTravelInfo(trip);
-                double pkmFQ = railTripsAnalyzer.getFQDistance(trip, true);
-                if (od != null) {
-                    String fromZone = aggregateZoneStop.get(od.fromStation());
-                    String toZone = aggregateZoneStop.get(od.toStation());
-                    matrix[aggregateZones.indexOf(fromZone)][aggregateZones.indexOf(toZone)] += scaleFactor;
-
-                    RailODTravelInfo travelInfo = this.odRailDemandMatrix.computeIfAbsent(od.fromStation(), a -> new TreeMap<>()).computeIfAbsent(od.toStation(), b -> new RailODTravelInfo(new MutableDouble(), new MutableDouble(), new MutableDouble(), new MutableDouble()));
-                    travelInfo.demand.add(scaleFactor);
-                    travelInfo.travelDistance().add(scaleFactor * od.distance() * 0.001);
-                    travelInfo.travelTime().add(scaleFactor * od.railTravelTime());
-                    travelInfo.numberOfRailTransfers().add(scaleFactor * od.numberOfTransfers());
-                    if (pkmFQ>0) {
-                        RailODTravelInfo travelInfoFQ = this.odRailDemandMatrixFQ.computeIfAbsent(od.fromStation(), a -> new TreeMap<>()).computeIfAbsent(od.toStation(), b -> new RailODTravelInfo(new MutableDouble(), new MutableDouble(), new MutableDouble(), new MutableDouble()));
-                        travelInfoFQ.demand.add(scaleFactor);
-                        travelInfoFQ.travelDistance().add(scaleFactor * od.distance() * 0.001);
-                        travelInfoFQ.travelTime().add(scaleFactor * od.railTravelTime());
-                        travelInfoFQ.numberOfRailTransfers().add(scaleFactor * od.numberOfTransfers());
-                    }
+    private void aggregateRailDemand(DemandAggregate demand, double scaleFactor, Trip trip) {
+        RailTripsAnalyzer.RailTravelInfo od = railTripsAnalyzer.getRailTravelInfo(trip);
+        if (od != null) {
+            double pkmFQ = railTripsAnalyzer.getFQDistance(trip, true);
+            String fromZone = aggregateZoneStop.get(od.fromStation());
+            String toZone = aggregateZoneStop.get(od.toStation());
+            demand.railMatrix[aggregateZones.indexOf(fromZone)][aggregateZones.indexOf(toZone)] += scaleFactor;
+
+            RailODTravelInfo travelInfo = demand.odRailDemandMatrix.computeIfAbsent(od.fromStation(), a -> new TreeMap<>()).computeIfAbsent(od.toStation(), b -> new RailODTravelInfo());
+            travelInfo.add(scaleFactor, scaleFactor * od.railTravelTime(), scaleFactor * od.distance() * 0.001, scaleFactor * od.numberOfTransfers());
+            if (pkmFQ > 0) {
+                RailODTravelInfo travelInfoFQ = demand.odRailDemandMatrixFQ.computeIfAbsent(od.fromStation(), a -> new TreeMap<>()).computeIfAbsent(od.toStation(), b -> new RailODTravelInfo());
+                travelInfoFQ.add(scaleFactor, scaleFactor * od.railTravelTime(), scaleFactor * od.distance() * 0.001, scaleFactor * od.numberOfTransfers());
+            }
+        }
+    }
+
+    /**
+     * Rail and trip demand of a set of plans, as collected by {@link #createTripAnalyzer(double, boolean, boolean)}. Once finished, the FQ relevant station
+     * to station demand contains the demand of all passes of the aggregator so far.
+     */
+    public static class DemandAggregate {
+
+        private final float[][] railMatrix;
+        private final Map<Id<TransitStopFacility>, Map<Id<TransitStopFacility>, RailODTravelInfo>> odRailDemandMatrix = new TreeMap<>();
+        private final Map<Id<TransitStopFacility>, Map<Id<TransitStopFacility>, RailODTravelInfo>> odRailDemandMatrixFQ = new TreeMap<>();
+        private final Map<Id<Zone>, Map<Id<Zone>, ODTravelInfo>> allModesOdDemand = new HashMap<>();
+
+        private DemandAggregate(int aggregateZoneCount) {
+            this.railMatrix = new float[aggregateZoneCount][aggregateZoneCount];
+        }
+
+        private void add(DemandAggregate other) {
+            for (int from = 0; from < railMatrix.length; from++) {
+                for (int to = 0; to < railMatrix.length; to++) {
+                    railMatrix[from][to] += other.railMatrix[from][to];
                 }
             }
+            addRailDemand(odRailDemandMatrix, other.odRailDemandMatrix);
+            addRailDemand(odRailDemandMatrixFQ, other.odRailDemandMatrixFQ);
+            other.allModesOdDemand.forEach((fromZoneId, toFlows) -> toFlows.forEach((toZoneId, flow) -> allModesOdDemand
+                    .computeIfAbsent(fromZoneId, a -> new HashMap<>())
+                    .computeIfAbsent(toZoneId, b -> new ODTravelInfo(new HashMap<>(), new HashMap<>(), new HashMap<>()))
+                    .add(flow)));
+        }
+
+        Map<Id<TransitStopFacility>, Map<Id<TransitStopFacility>, RailODTravelInfo>> getOdRailDemandMatrix() {
+            return odRailDemandMatrix;
+        }
+
+        Map<Id<TransitStopFacility>, Map<Id<TransitStopFacility>, RailODTravelInfo>> getOdRailDemandMatrixFQ() {
+            return odRailDemandMatrixFQ;
+        }
+
+        private static void addRailDemand(Map<Id<TransitStopFacility>, Map<Id<TransitStopFacility>, RailODTravelInfo>> demand,
+                                          Map<Id<TransitStopFacility>, Map<Id<TransitStopFacility>, RailODTravelInfo>> other) {
+            other.forEach((fromStation, toStations) -> toStations.forEach((toStation, info) -> demand
+                    .computeIfAbsent(fromStation, a -> new TreeMap<>())
+                    .computeIfAbsent(toStation, b -> new RailODTravelInfo())
+                    .add(info.demand().doubleValue(), info.travelTime().doubleValue(), info.travelDistance().doubleValue(), info.numberOfRailTransfers().doubleValue())));
         }
-        return matrix;
     }
 
     record RailODTravelInfo(MutableDouble demand, MutableDouble travelTime, MutableDouble travelDistance, MutableDouble numberOfRailTransfers) {
+        RailODTravelInfo() {
+            this(new MutableDouble(), new MutableDouble(), new MutableDouble(), new MutableDouble());
+        }
+
+        void add(double demand, double travelTime, double travelDistance, double numberOfRailTransfers) {
+            this.demand.add(demand);
+            this.travelTime.add(travelTime);
+            this.travelDistance.add(travelDistance);
+            this.numberOfRailTransfers.add(numberOfRailTransfers);
+        }
     }
 
     record ODTravelInfo(Map<String, MutableDouble> demandPerMode, Map<String, MutableDouble> travelTimePerMode,
@@ -360,6 +453,10 @@ public class DemandAggregator {
 
         }
 
+        void add(ODTravelInfo other) {
+            other.demandPerMode.forEach((mode, demand) -> addTravelInfo(mode, demand.doubleValue(), other.getTravelTime(mode), other.getTravelDistane(mode)));
+        }
+
         double getDemand(String mode) {
             return demandPerMode.getOrDefault(mode, new MutableDouble()).doubleValue();
         }
@@ -19,6 +19,7 @@
 
 package ch.sbb.matsim.analysis.tripsandlegsanalysis;
 
+import ch.sbb.matsim.analysis.TripAnalyzer;
 import ch.sbb.matsim.config.variables.SBBModes;
 import ch.sbb.matsim.config.variables.SBBModes.PTSubModes;
 import ch.sbb.matsim.csv.CSVWriter;
@@ -31,18 +32,23 @@ import org.matsim.api.core.v01.Identifiable;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.network.NetworkWriter;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
 import org.matsim.core.config.groups.NetworkConfigGroup;
 import org.matsim.core.network.filter.NetworkFilterManager;
-import org.matsim.core.router.TripStructureUtils;
+import org.matsim.core.router.TripStructureUtils.Trip;
 import org.matsim.core.scoring.ExperiencedPlansService;
 import org.matsim.pt.routes.TransitPassengerRoute;
 import org.matsim.pt.transitSchedule.api.TransitSchedule;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class PtLinkVolumeAnalyzer {
@@ -73,22 +79,45 @@ public class PtLinkVolumeAnalyzer {
     }
 
     public Map<Id<Link>, Long> analysePtLinkUsage() {
-        Map<Id<Link>, Long> ptUsage = experiencedPlansService.getExperiencedPlans().values()
-                .stream()
-                .flatMap(p -> TripStructureUtils.getLegs(p).stream())
-                .filter(l -> l.getMode().equals(SBBModes.PT))
-                .map(l -> (TransitPassengerRoute) l.getRoute())
-                .flatMap(r -> railTripsAnalyzer.getPtLinkIdsTraveledOn(r).stream())
-                .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
-        return ptUsage;
+        return TripAnalyzer.analyze(createTripAnalyzer(), experiencedPlansService.getExperiencedPlans());
+    }
+
+    public TripAnalyzer<Map<Id<Link>, Long>> createTripAnalyzer() {
+        return new TripAnalyzer<>() {
+            @Override
+            public Map<Id<Link>, Long> createAccumulator() {
+                return new HashMap<>();
+            }
 
+            @Override
+            public void analyzeTrips(Map<Id<Link>, Long> ptUsage, Id<Person> personId, Plan plan, List<Trip> trips) {
+                for (Trip trip : trips) {
+                    for (Leg leg : trip.getLegsOnly()) {
+                        if (leg.getMode().equals(SBBModes.PT)) {
+                            for (Id<Link> linkId : railTripsAnalyzer.getPtLinkIdsTraveledOn((TransitPassengerRoute) leg.getRoute())) {
+                                ptUsage.merge(linkId, 1L, Long::sum);
+                            }
+                        }
+                    }
+                }
+            }
+
+            @Override
+            public Map<Id<Link>, Long> merge(Map<Id<Link>, Long> ptUsage, Map<Id<Link>, Long> other) {
+                other.forEach((linkId, volume) -> ptUsage.merge(linkId, volume, Long::sum));
+                return ptUsage;
+            }
+        };
     }
 
     public void writePtLinkUsage(String outputfile, double scalefactor) {
+        writePtLinkUsage(outputfile, scalefactor, analysePtLinkUsage());
+    }
+
+    public void writePtLinkUsage(String outputfile, double scalefactor, Map<Id<Link>, Long> ptVolumes) {
         NetworkFilterManager nfm = new NetworkFilterManager(network, new NetworkConfigGroup());
         nfm.addLinkFilter(l -> this.ptlinks.contains(l.getId()));
         Network ptNetwork = nfm.applyFilters();
-        var ptVolumes = analysePtLinkUsage();
         try (CSVWriter writer = new CSVWriter(HEADER, VOLUMES_COLUMNS, outputfile)) {
             for (Entry<Id<Link>, Long> e : ptVolumes.entrySet()) {
                 Id<Link> currentLinkId = e.getKey();
@@ -110,7 +139,7 @@ public class PtLinkVolumeAnalyzer {
                 }
             }
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException(e);
         }
         new NetworkWriter(ptNetwork).write(outputfile + "_network.xml.gz");
         NetworkFilterManager nfm2 = new NetworkFilterManager(ptNetwork, new NetworkConfigGroup());
@@ -19,11 +19,13 @@
 
 package ch.sbb.matsim.analysis.tripsandlegsanalysis;
 
+import ch.sbb.matsim.analysis.TripAnalyzer;
 import ch.sbb.matsim.config.PostProcessingConfigGroup;
 import ch.sbb.matsim.config.variables.SBBModes;
 import ch.sbb.matsim.config.variables.SBBModes.PTSubModes;
 import ch.sbb.matsim.config.variables.Variables;
 import ch.sbb.matsim.csv.CSVWriter;
+import ch.sbb.matsim.zones.ZoneAssignment;
 import ch.sbb.matsim.zones.Zones;
 import ch.sbb.matsim.zones.ZonesCollection;
 import ch.sbb.matsim.zones.ZonesLoader;
@@ -34,7 +36,7 @@ import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.network.io.MatsimNetworkReader;
 import org.matsim.core.population.PopulationUtils;
 import org.matsim.core.population.io.PopulationReader;
-import org.matsim.core.router.TripStructureUtils;
+import org.matsim.core.router.TripStructureUtils.Trip;
 import org.matsim.core.scenario.ScenarioUtils;
 import org.matsim.core.scoring.ExperiencedPlansService;
 import org.matsim.core.utils.collections.CollectionUtils;
@@ -48,6 +50,7 @@ import org.matsim.pt.transitSchedule.api.TransitSchedule;
 import org.matsim.pt.transitSchedule.api.TransitScheduleReader;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
@@ -97,7 +100,8 @@ public class PutSurveyWriter {
     public static final String LINEROUTENAME = "03_LineRouteName";
     public static final String FZPNAME = "05_Name";
     private static IdMap<Person, LinkedList<Variables.MOBiTripAttributes>> tripIds;
-    private final Zones zones;
+    private AtomicInteger teilwegNr = new AtomicInteger();
+    private final ZoneAssignment zoneAssignment;
     private final double scaleFactor;
     private final TransitSchedule schedule;
     private final Scenario scenario;
@@ -108,7 +112,7 @@ public class PutSurveyWriter {
     @Inject
     public PutSurveyWriter(Scenario scenario, ZonesCollection zonesCollection, final PostProcessingConfigGroup ppConfig) {
         this.schedule = scenario.getTransitSchedule();
-        zones = zonesCollection.getZones(ppConfig.getZonesId());
+        zoneAssignment = zonesCollection.getZoneAssignment(ppConfig.getZonesId());
         scaleFactor = 1.0 / ppConfig.getSimulationSampleSize();
         this.scenario = scenario;
 
@@ -149,7 +153,7 @@ public class PutSurveyWriter {
                 writer.writeRow();
             });
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException(e);
         }
 
     }
@@ -168,8 +172,9 @@ public class PutSurveyWriter {
     private Coord findCoord(Activity originActivity) {
         Id<ActivityFacility> facId = originActivity.getFacilityId();
         if (facId != null) {
-            if (this.scenario.getActivityFacilities().getFacilities().get(facId) != null) {
-                return this.scenario.getActivityFacilities().getFacilities().get(facId).getCoord();
+            ActivityFacility facility = this.scenario.getActivityFacilities().getFacilities().get(facId);
+            if (facility != null) {
+                return facility.getCoord();
             }
         }
         if (originActivity.getCoord() != null) {
@@ -201,6 +206,7 @@ public class PutSurveyWriter {
         new MatsimFacilitiesReader(scenario).readFile(facilityFile);
         new TransitScheduleReader(scenario).readFile(transitScheduleFile);
         new PopulationReader(scenario).readFile(experiencedPlansFile);
+        collection.precomputeZoneAssignments(scenario.getNetwork(), scenario.getActivityFacilities());
 
         PutSurveyWriter putSurveyWriter = new PutSurveyWriter(scenario, collection, ppc);
         putSurveyWriter.collectAndWritePUTSurvey(outputFile, scenario.getPopulation().getPersons().values().stream().collect(Collectors.toMap(Identifiable::getId, HasPlansAndId::getSelectedPlan)));
@@ -212,127 +218,150 @@ public class PutSurveyWriter {
     }
 
     public void collectAndWritePUTSurvey(String filename, Map<Id<Person>, Plan> experiencedPlans) {
-        tripIds = Variables.MOBiTripAttributes.extractTripAttributes(scenario.getPopulation());
-
-        AtomicInteger teilwegNr = new AtomicInteger();
-        List<List<PutSurveyEntry>> entries = experiencedPlans.entrySet().parallelStream()
-                .map(e -> TripStructureUtils
-                        .getTrips(e.getValue()).stream()
-                        .flatMap(trip -> {
-                            Person person = this.scenario.getPopulation().getPersons().get(e.getKey());
-                            String tourId = "";
-                            String tripId = "";
-                            String direction = "";
-                            String purpose = "";
-                            if (person != null) {
-                                var visumTripIds = tripIds.get(person.getId());
-                                if (tripIds != null) {
-                                    Variables.MOBiTripAttributes tripAttributes = visumTripIds.poll();
-                                    if (tripAttributes != null) {
-                                        tourId = tripAttributes.getTourId();
-                                        tripId = tripAttributes.getTripId();
-                                        direction = tripAttributes.getTripDirection();
-                                        purpose = tripAttributes.getTripPurpose();
-                                    }
-                                }
-                            }
-
-                            List<PutSurveyEntry> tripEntry = new ArrayList<>();
-
-                            if (trip.getLegsOnly().stream().anyMatch(l -> SBBModes.ALL_PT_MODES.contains(l.getMode()))) {
-                                String path_id = String.valueOf(teilwegNr.incrementAndGet());
-                                Set<String> railAccessModes = new HashSet<>();
-                                Set<String> railEgresssModes = new HashSet<>();
-                                PutSurveyEntry firstRailLeg = null;
-                                PutSurveyEntry lastRailLeg = null;
-
-                                int leg_id = 1;
-                                String from_act = trip.getOriginActivity().getType().split("_")[0];
-                                String to_act = trip.getDestinationActivity().getType().split("_")[0];
-
-                                String subpop = "null";
-                                if (person != null) {
-                                    subpop = String.valueOf(PopulationUtils.getSubpopulation(person));
-                                }
-
-                                var origzone = zones.findZone(findCoord(trip.getOriginActivity()));
-                                var destzone = zones.findZone(findCoord(trip.getDestinationActivity()));
-
-                                String orig_gem = origzone != null ? origzone.getAttribute(GEM_SHAPE_ATTR).toString() : Variables.DEFAULT_OUTSIDE_ZONE;
-                                String dest_gem = destzone != null ? destzone.getAttribute(GEM_SHAPE_ATTR).toString() : Variables.DEFAULT_OUTSIDE_ZONE;
-                                double railAccessDist = 0.;
-                                double railEgressDist = 0.;
-                                for (Leg leg : trip.getLegsOnly()) {
-                                    boolean isRail = false;
-                                    if (leg.getRoute() instanceof TransitPassengerRoute r) {
-                                        TransitLine line = schedule.getTransitLines().get(r.getLineId());
-                                        TransitRoute transitRoute = line.getRoutes().get(r.getRouteId());
-                                        String from_stop = String.valueOf(schedule.getFacilities().get(r.getAccessStopId()).getAttributes().getAttribute(STOP_NO));
-                                        String to_stop = String.valueOf(schedule.getFacilities().get(r.getEgressStopId()).getAttributes().getAttribute(STOP_NO));
-                                        String vsyscode = String.valueOf(transitRoute.getAttributes().getAttribute(TSYS_CODE));
-                                        String linname = String.valueOf(transitRoute.getAttributes().getAttribute(TRANSITLINE));
-                                        String linroutename = String.valueOf(transitRoute.getAttributes().getAttribute(LINEROUTENAME));
-                                        String richtungscode = String.valueOf(transitRoute.getAttributes().getAttribute(DIRECTION_CODE));
-
-                                        String fzprofilname = String.valueOf(transitRoute.getAttributes().getAttribute(FZPNAME));
-
-                                        String teilweg_kennung = leg_id > 1 ? "N" : "E";
-                                        String einhstabfahrtstag = getDayIndex(r.getBoardingTime().seconds());
-                                        String einhstabfahrtszeit = getTime(r.getBoardingTime().seconds());
-
-                                        PutSurveyEntry putSurveyEntry = new PutSurveyEntry(path_id, String.valueOf(leg_id), from_stop, to_stop, vsyscode, linname, linroutename, richtungscode,
-                                                fzprofilname, teilweg_kennung, from_stop, einhstabfahrtstag, einhstabfahrtszeit, scaleFactor, subpop, orig_gem, dest_gem);
-                                        putSurveyEntry.from_act = from_act;
-                                        putSurveyEntry.to_act = to_act;
-                                        putSurveyEntry.personId = e.getKey().toString();
-                                        putSurveyEntry.tripId = tripId;
-                                        putSurveyEntry.tourId = tourId;
-                                        putSurveyEntry.purpose = purpose;
-                                        putSurveyEntry.direction = direction;
-                                        tripEntry.add(putSurveyEntry);
-                                        if (transitRoute.getTransportMode().equals(PTSubModes.RAIL)) {
-                                            isRail = true;
-                                            lastRailLeg = putSurveyEntry;
-                                            railEgressDist = 0.;
-                                            railEgresssModes.clear();
-                                            if (firstRailLeg == null) {
-                                                firstRailLeg = putSurveyEntry;
-                                            }
-                                        }
-
-                                        leg_id++;
-                                    }
-
-                                    if (firstRailLeg == null) {
-                                        railAccessModes.add(leg.getMode());
-                                        railAccessDist += leg.getRoute().getDistance();
-
-                                    }
-                                    if (lastRailLeg != null && !isRail) {
-                                        railEgresssModes.add(leg.getMode());
-                                        railEgressDist += leg.getRoute().getDistance();
-                                    }
-                                }
-                                if (!railAccessModes.isEmpty() && firstRailLeg != null) {
-                                    if (railAccessModes.size() > 1) {
-                                        railAccessModes.remove(SBBModes.ACCESS_EGRESS_WALK);
-                                    }
-                                    firstRailLeg.access_to_rail_dist = (int) railAccessDist;
-                                    firstRailLeg.access_to_rail_mode = CollectionUtils.setToString(railAccessModes);
-                                }
-                                if (!railEgresssModes.isEmpty()) {
-                                    if (railEgresssModes.size() > 1) {
-                                        railEgresssModes.remove(SBBModes.ACCESS_EGRESS_WALK);
-                                    }
-                                    lastRailLeg.egress_from_rail_dist = (int) railEgressDist;
-                                    lastRailLeg.egress_from_rail_mode = CollectionUtils.setToString(railEgresssModes);
-                                }
-                            }
-                            return tripEntry.stream();
-
-                        }).collect(Collectors.toList()))
-                .collect(Collectors.toList());
-        writePutSurvey(filename, entries);
+        writePutSurvey(filename, TripAnalyzer.analyze(createTripAnalyzer(), experiencedPlans));
+    }
+
+    public TripAnalyzer<List<List<PutSurveyEntry>>> createTripAnalyzer() {
+        return new TripAnalyzer<>() {
+            @Override
+            public void prepare() {
+                tripIds = Variables.MOBiTripAttributes.extractTripAttributes(scenario.getPopulation());
+                teilwegNr = new AtomicInteger();
+            }
+
+            @Override
+            public List<List<PutSurveyEntry>> createAccumulator() {
+                return new ArrayList<>();
+            }
+
+            @Override
+            public void analyzeTrips(List<List<PutSurveyEntry>> entries, Id<Person> personId, Plan plan, List<Trip> trips) {
+                List<PutSurveyEntry> planEntries = new ArrayList<>();
+                for (Trip trip : trips) {
+                    planEntries.addAll(createEntries(personId, trip));
+                }
+                entries.add(planEntries);
+            }
+
+            @Override
+            public List<List<PutSurveyEntry>> merge(List<List<PutSurveyEntry>> entries, List<List<PutSurveyEntry>> other) {
+                entries.addAll(other);
+                return entries;
+            }
+        };
+    }
+
+    private List<PutSurveyEntry> createEntries(Id<Person> personId, Trip trip) {
+        Person person = this.scenario.getPopulation().getPersons().get(personId);
+        String tourId = "";
+        String tripId = "";
+        String direction = "";
+        String purpose = "";
+        if (person != null) {
+            var visumTripIds = tripIds.get(person.getId());
+            if (tripIds != null) {
+                Variables.MOBiTripAttributes tripAttributes = visumTripIds.poll();
+                if (tripAttributes != null) {
+                    tourId = tripAttributes.getTourId();
+                    tripId = tripAttributes.getTripId();
+                    direction = tripAttributes.getTripDirection();
+                    purpose = tripAttributes.getTripPurpose();
+                }
+            }
+        }
+
+        List<PutSurveyEntry> tripEntry = new ArrayList<>();
+
+        if (trip.getLegsOnly().stream().anyMatch(l -> SBBModes.ALL_PT_MODES.contains(l.getMode()))) {
+            String path_id = String.valueOf(teilwegNr.incrementAndGet());
+            Set<String> railAccessModes = new HashSet<>();
+            Set<String> railEgresssModes = new HashSet<>();
+            PutSurveyEntry firstRailLeg = null;
+            PutSurveyEntry lastRailLeg = null;
+
+            int leg_id = 1;
+            String from_act = trip.getOriginActivity().getType().split("_")[0];
+            String to_act = trip.getDestinationActivity().getType().split("_")[0];
+
+            String subpop = "null";
+            if (person != null) {
+                subpop = String.valueOf(PopulationUtils.getSubpopulation(person));
+            }
+
+            var origzone = zoneAssignment.getZone(trip.getOriginActivity().getFacilityId(), findCoord(trip.getOriginActivity()));
+            var destzone = zoneAssignment.getZone(trip.getDestinationActivity().getFacilityId(), findCoord(trip.getDestinationActivity()));
+
+            String orig_gem = origzone != null ? origzone.getAttribute(GEM_SHAPE_ATTR).toString() : Variables.DEFAULT_OUTSIDE_ZONE;
+            String dest_gem = destzone != null ? destzone.getAttribute(GEM_SHAPE_ATTR).toString() : Variables.DEFAULT_OUTSIDE_ZONE;
+            double railAccessDist = 0.;
+            double railEgressDist = 0.;
+            for (Leg leg : trip.getLegsOnly()) {
+                boolean isRail = false;
+                if (leg.getRoute() instanceof TransitPassengerRoute r) {
+                    TransitLine line = schedule.getTransitLines().get(r.getLineId());
+                    TransitRoute transitRoute = line.getRoutes().get(r.getRouteId());
+                    String from_stop = String.valueOf(schedule.getFacilities().get(r.getAccessStopId()).getAttributes().getAttribute(STOP_NO));
+                    String to_stop = String.valueOf(schedule.getFacilities().get(r.getEgressStopId()).getAttributes().getAttribute(STOP_NO));
+                    String vsyscode = String.valueOf(transitRoute.getAttributes().getAttribute(TSYS_CODE));
+                    String linname = String.valueOf(transitRoute.getAttributes().getAttribute(TRANSITLINE));
+                    String linroutename = String.valueOf(transitRoute.getAttributes().getAttribute(LINEROUTENAME));
+                    String richtungscode = String.valueOf(transitRoute.getAttributes().getAttribute(DIRECTION_CODE));
+
+                    String fzprofilname = String.valueOf(transitRoute.getAttributes().getAttribute(FZPNAME));
+
+                    String teilweg_kennung = leg_id > 1 ? "N" : "E";
+                    String einhstabfahrtstag = getDayIndex(r.getBoardingTime().seconds());
+                    String einhstabfahrtszeit = getTime(r.getBoardingTime().seconds());
+
+                    PutSurveyEntry putSurveyEntry = new PutSurveyEntry(path_id, String.valueOf(leg_id), from_stop, to_stop, vsyscode, linname, linroutename, richtungscode,
+                            fzprofilname, teilweg_kennung, from_stop, einhstabfahrtstag, einhstabfahrtszeit, scaleFactor, subpop, orig_gem, dest_gem);
+                    putSurveyEntry.from_act = from_act;
+                    putSurveyEntry.to_act = to_act;
+                    putSurveyEntry.personId = personId.toString();
+                    putSurveyEntry.tripId = tripId;
+                    putSurveyEntry.tourId = tourId;
+                    putSurveyEntry.purpose = purpose;
+                    putSurveyEntry.direction = direction;
+                    tripEntry.add(putSurveyEntry);
+                    if (transitRoute.getTransportMode().equals(PTSubModes.RAIL)) {
+                        isRail = true;
+                        lastRailLeg = putSurveyEntry;
+                        railEgressDist = 0.;
+                        railEgresssModes.clear();
+                        if (firstRailLeg == null) {
+                            firstRailLeg = putSurveyEntry;
+                        }
+                    }
+
+                    leg_id++;
+                }
+
+                if (firstRailLeg == null) {
+                    railAccessModes.add(leg.getMode());
+                    railAccessDist += leg.getRoute().getDistance();
+
+                }
+                if (lastRailLeg != null && !isRail) {
+                    railEgresssModes.add(leg.getMode());
+                    railEgressDist += leg.getRoute().getDistance();
+                }
+            }
+            if (!railAccessModes.isEmpty() && firstRailLeg != null) {
+                if (railAccessModes.size() > 1) {
+                    railAccessModes.remove(SBBModes.ACCESS_EGRESS_WALK);
+                }
+                firstRailLeg.access_to_rail_dist = (int) railAccessDist;
+                firstRailLeg.access_to_rail_mode = CollectionUtils.setToString(railAccessModes);
+            }
+            if (!railEgresssModes.isEmpty()) {
+                if (railEgresssModes.size() > 1) {
+                    railEgresssModes.remove(SBBModes.ACCESS_EGRESS_WALK);
+                }
+                lastRailLeg.egress_from_rail_dist = (int) railEgressDist;
+                lastRailLeg.egress_from_rail_mode = CollectionUtils.setToString(railEgresssModes);
+            }
+        }
+        return tripEntry;
     }
 
     public static class PutSurveyEntry {
@@ -19,6 +19,7 @@
 
 package ch.sbb.matsim.analysis.tripsandlegsanalysis;
 
+import ch.sbb.matsim.analysis.TripAnalyzer;
 import ch.sbb.matsim.config.variables.Variables;
 import ch.sbb.matsim.csv.CSVWriter;
 import ch.sbb.matsim.zones.ZonesCollection;
@@ -32,12 +33,14 @@ import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.population.HasPlansAndId;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
 import org.matsim.api.core.v01.population.Plan;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.network.io.MatsimNetworkReader;
 import org.matsim.core.population.io.PopulationReader;
-import org.matsim.core.router.TripStructureUtils;
+import org.matsim.core.router.TripStructureUtils.Trip;
 import org.matsim.core.scenario.ScenarioUtils;
 import org.matsim.core.scoring.ExperiencedPlansService;
 import org.matsim.pt.routes.DefaultTransitPassengerRoute;
@@ -46,6 +49,7 @@ import org.matsim.pt.transitSchedule.api.TransitSchedule;
 import org.matsim.pt.transitSchedule.api.TransitScheduleReader;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.stream.Collectors;
@@ -56,25 +60,18 @@ public class RailDemandReporting {
     public static final String NONE = "none";
     final Logger logger = LogManager.getLogger(getClass());
     private final RailTripsAnalyzer railTripsAnalyzer;
-    private final Map<String, MutableDouble> pkmSparte = new TreeMap<>();
-    private final Map<String, MutableDouble> pkmLfpCat = new TreeMap<>();
-    private final Map<String, MutableDouble> pkmAbgrenzung = new TreeMap<>();
+    private final Set<String> sparten = new TreeSet<>();
+    private final Set<String> lfpCats = new TreeSet<>();
+    private final Set<String> abgrenzungen = new TreeSet<>();
 
     private final Map<Id<TransitLine>, String> lineSparte = new HashMap<>();
     private final Map<Id<TransitLine>, String> lineLfpCat = new HashMap<>();
     private final Map<Id<TransitLine>, String> lineAbgrenzung = new HashMap<>();
     private final Map<Id<TransitLine>, String> line2Mode = new HashMap<>();
-    private final Map<String, MutableDouble> modeDistances = new HashMap<>();
-    private final Map<String, MutableInt> modeBoardings = new HashMap<>();
+    private final Set<String> allModes = new HashSet<>();
 
     @Inject
     private ExperiencedPlansService experiencedPlansService;
-    private double fqDistance = 0;
-    private int fqTrips = 0;
-    private double railDistance = 0.0;
-    private int railtrips = 0;
-    private int domesticFQTrips = 0;
-    private double domesticFQDistance = 0;
     private static final String runIDName = "runId";
     private static final String categoryName = "category";
     private static final String subCategoryName = "subcategory";
@@ -111,31 +108,35 @@ public class RailDemandReporting {
         railDemandReporting.calcAndWriteDistanceReporting(outputFile, scenario.getPopulation().getPersons().values().stream().map(HasPlansAndId::getSelectedPlan).collect(Collectors.toSet()), scaleFactor);
     }
 
-    private void reset() {
-        pkmSparte.values().forEach(d -> d.setValue(0));
-        pkmAbgrenzung.values().forEach(d -> d.setValue(0));
-        pkmLfpCat.values().forEach(d -> d.setValue(0));
-        modeDistances.values().forEach(d -> d.setValue(0));
-        modeBoardings.values().forEach(d -> d.setValue(0));
-        fqDistance = .0;
-        fqTrips = 0;
-        domesticFQDistance = 0;
-        domesticFQTrips = 0;
-        railtrips = 0;
-        railDistance = 0.0;
-    }
-
     private void calcAndWriteDistanceReporting(String outputfile, Collection<Plan> plans, double scaleFactor) {
-        reset();
-        aggregateRailDistances(plans);
-        writeRailDistanceReporting(outputfile, scaleFactor);
+        writeRailDistanceReporting(outputfile, TripAnalyzer.analyze(createTripAnalyzer(), plans), scaleFactor);
     }
 
     public void calcAndwriteIterationDistanceReporting(String outputfile, double scaleFactor) {
-        calcAndWriteDistanceReporting(outputfile, experiencedPlansService.getExperiencedPlans().values(), scaleFactor);
+        writeRailDistanceReporting(outputfile, TripAnalyzer.analyze(createTripAnalyzer(), experiencedPlansService.getExperiencedPlans()), scaleFactor);
+    }
+
+    public TripAnalyzer<RailDistances> createTripAnalyzer() {
+        return new TripAnalyzer<>() {
+            @Override
+            public RailDistances createAccumulator() {
+                return new RailDistances(sparten, lfpCats, abgrenzungen, allModes);
+            }
+
+            @Override
+            public void analyzeTrips(RailDistances distances, Id<Person> personId, Plan plan, List<Trip> trips) {
+                aggregateRailDistances(distances, trips);
+            }
+
+            @Override
+            public RailDistances merge(RailDistances distances, RailDistances other) {
+                distances.add(other);
+                return distances;
+            }
+        };
     }
 
-    private void writeRailDistanceReporting(String outputFile, double scaleFactor) {
+    public void writeRailDistanceReporting(String outputFile, RailDistances distances, double scaleFactor) {
 
         String pf = "PF";
         String pkm = "PKM";
@@ -145,52 +146,52 @@ public class RailDemandReporting {
 
             String category = "Gesamt Bahn";
             String subCategory = "all";
-            writeRow(writer, category, subCategory, pf, railtrips * scaleFactor);
-            writeRow(writer, category, subCategory, pkm, (int) Math.round(scaleFactor * railDistance / 1000.));
+            writeRow(writer, category, subCategory, pf, distances.railtrips * scaleFactor);
+            writeRow(writer, category, subCategory, pkm, (int) Math.round(scaleFactor * distances.railDistance / 1000.));
             subCategory = "Inland";
-            double domesticRailDistance = pkmAbgrenzung.values().stream().mapToDouble(value -> value.doubleValue()).sum();
+            double domesticRailDistance = distances.pkmAbgrenzung.values().stream().mapToDouble(value -> value.doubleValue()).sum();
             writeRow(writer, category, subCategory, pkm, (int) Math.round(scaleFactor * domesticRailDistance / 1000.));
 
             subCategory = "Ausland";
-            writeRow(writer, category, subCategory, pkm, (int) Math.round(scaleFactor * (railDistance - domesticRailDistance) / 1000.));
+            writeRow(writer, category, subCategory, pkm, (int) Math.round(scaleFactor * (distances.railDistance - domesticRailDistance) / 1000.));
 
 
             category = "FQ-relevant";
             subCategory = "Inlandsfahrten";
 
-            writeRow(writer, category, subCategory, pf, domesticFQTrips * scaleFactor);
-            writeRow(writer, category, subCategory, pkm, (int) Math.round(scaleFactor * domesticFQDistance / 1000.));
+            writeRow(writer, category, subCategory, pf, distances.domesticFQTrips * scaleFactor);
+            writeRow(writer, category, subCategory, pkm, (int) Math.round(scaleFactor * distances.domesticFQDistance / 1000.));
 
             subCategory = "Inlandsanteil von Auslandsfahrten";
-            writeRow(writer, category, subCategory, pf, (fqTrips - domesticFQTrips) * scaleFactor);
-            writeRow(writer, category, subCategory, pkm, (int) Math.round(scaleFactor * (fqDistance - domesticFQDistance) / 1000.));
+            writeRow(writer, category, subCategory, pf, (distances.fqTrips - distances.domesticFQTrips) * scaleFactor);
+            writeRow(writer, category, subCategory, pkm, (int) Math.round(scaleFactor * (distances.fqDistance - distances.domesticFQDistance) / 1000.));
 
             subCategory = "nicht relevant (In- & Ausland)";
-            writeRow(writer, category, subCategory, pf, (railtrips - fqTrips) * scaleFactor);
-            writeRow(writer, category, subCategory, pkm, (int) Math.round(scaleFactor * (railDistance - fqDistance) / 1000.));
+            writeRow(writer, category, subCategory, pf, (distances.railtrips - distances.fqTrips) * scaleFactor);
+            writeRow(writer, category, subCategory, pkm, (int) Math.round(scaleFactor * (distances.railDistance - distances.fqDistance) / 1000.));
 
 
             category = "Sparte";
-            for (Entry<String, MutableDouble> e : pkmSparte.entrySet()) {
+            for (Entry<String, MutableDouble> e : distances.pkmSparte.entrySet()) {
                 writeRow(writer, category, e.getKey(), pkm, (int) Math.round(scaleFactor * e.getValue().doubleValue() / 1000.));
             }
 
             category = "Abgrenzgrupe";
-            for (Entry<String, MutableDouble> e : pkmAbgrenzung.entrySet()) {
+            for (Entry<String, MutableDouble> e : distances.pkmAbgrenzung.entrySet()) {
                 writeRow(writer, category, e.getKey(), pkm, (int) Math.round(scaleFactor * e.getValue().doubleValue() / 1000.));
             }
 
             category = "LFP-Betreiberkategorie";
-            for (Entry<String, MutableDouble> e : pkmLfpCat.entrySet()) {
+            for (Entry<String, MutableDouble> e : distances.pkmLfpCat.entrySet()) {
                 writeRow(writer, category, e.getKey(), pkm, (int) Math.round(scaleFactor * e.getValue().doubleValue() / 1000.));
             }
             category = "oeV Insgesamt";
-            for (var modalDemand : modeDistances.entrySet()) {
-                writeRow(writer, category, modalDemand.getKey(), boardings, modeBoardings.get(modalDemand.getKey()).intValue() * scaleFactor);
+            for (var modalDemand : distances.modeDistances.entrySet()) {
+                writeRow(writer, category, modalDemand.getKey(), boardings, distances.modeBoardings.get(modalDemand.getKey()).intValue() * scaleFactor);
                 writeRow(writer, category, modalDemand.getKey(), pkm, (int) Math.round(scaleFactor * modalDemand.getValue().doubleValue() / 1000.));
             }
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException(e);
         }
 
 
@@ -206,7 +207,6 @@ public class RailDemandReporting {
     }
 
     private void prepareCategories(TransitSchedule schedule) {
-        Set<String> allModes = new HashSet<>();
         for (TransitLine line : schedule.getTransitLines().values()) {
             var route = line.getRoutes().values().stream().findFirst().get();
             var mode = route.getTransportMode();
@@ -220,7 +220,7 @@ public class RailDemandReporting {
                     sparte = NONE;
                 }
                 lineSparte.put(line.getId(), sparte);
-                pkmSparte.computeIfAbsent(sparte, (a) -> new MutableDouble(0));
+                sparten.add(sparte);
 
                 String abgrenzgruppe = (String) route.getAttributes().getAttribute(Variables.ABGRENZGRUPPE);
                 if (abgrenzgruppe == null) {
@@ -228,7 +228,7 @@ public class RailDemandReporting {
                     abgrenzgruppe = NONE;
                 }
                 lineAbgrenzung.put(line.getId(), abgrenzgruppe);
-                pkmAbgrenzung.computeIfAbsent(abgrenzgruppe, (a) -> new MutableDouble(0));
+                abgrenzungen.add(abgrenzgruppe);
 
                 String lfpCat = (String) route.getAttributes().getAttribute(Variables.BETREIBERAGGRLFP);
                 if (lfpCat == null) {
@@ -236,54 +236,92 @@ public class RailDemandReporting {
                     lfpCat = NONE;
                 }
                 lineLfpCat.put(line.getId(), lfpCat);
-                pkmLfpCat.computeIfAbsent(lfpCat, (a) -> new MutableDouble(0));
+                lfpCats.add(lfpCat);
 
             }
         }
-        allModes.forEach(mode -> modeDistances.put(mode, new MutableDouble()));
-        allModes.forEach(mode -> modeBoardings.put(mode, new MutableInt()));
     }
 
-    private void aggregateRailDistances(Collection<Plan> plans) {
-        Set<DefaultTransitPassengerRoute> allPtRoutes = plans.stream().flatMap(plan -> TripStructureUtils.getLegs(plan).stream()).filter(leg -> leg.getRoute().getRouteType().equals(DefaultTransitPassengerRoute.ROUTE_TYPE)).map(leg -> (DefaultTransitPassengerRoute) leg.getRoute()).collect(Collectors.toSet());
-        Set<DefaultTransitPassengerRoute> allRailRoutes = allPtRoutes.stream().filter(defaultTransitPassengerRoute -> railTripsAnalyzer.isRailLine(defaultTransitPassengerRoute.getLineId())).collect(Collectors.toSet());
-        for (var route : allRailRoutes) {
-            double distance = railTripsAnalyzer.getDomesticRailDistance_m(route);
-            if (distance > 0.0) {
-                var transitLineId = route.getLineId();
-                pkmLfpCat.get(lineLfpCat.get(transitLineId)).add(distance);
-                pkmAbgrenzung.get(lineAbgrenzung.get(transitLineId)).add(distance);
-                pkmSparte.get(lineSparte.get(transitLineId)).add(distance);
+    private void aggregateRailDistances(RailDistances distances, List<Trip> trips) {
+        for (Trip trip : trips) {
+            for (Leg leg : trip.getLegsOnly()) {
+                if (leg.getRoute().getRouteType().equals(DefaultTransitPassengerRoute.ROUTE_TYPE)) {
+                    DefaultTransitPassengerRoute route = (DefaultTransitPassengerRoute) leg.getRoute();
+                    var transitLineId = route.getLineId();
+                    if (railTripsAnalyzer.isRailLine(transitLineId)) {
+                        double distance = railTripsAnalyzer.getDomesticRailDistance_m(route);
+                        if (distance > 0.0) {
+                            distances.pkmLfpCat.get(lineLfpCat.get(transitLineId)).add(distance);
+                            distances.pkmAbgrenzung.get(lineAbgrenzung.get(transitLineId)).add(distance);
+                            distances.pkmSparte.get(lineSparte.get(transitLineId)).add(distance);
+                        }
+                    }
+                    String mode = line2Mode.get(transitLineId);
+                    distances.modeDistances.get(mode).add(route.getDistance());
+                    distances.modeBoardings.get(mode).increment();
+                }
             }
+            aggregateFQValues(distances, trip);
         }
-        aggregateFQValues(plans);
-        for (var route : allPtRoutes) {
-            String mode = line2Mode.get(route.getLineId());
-            modeDistances.get(mode).add(route.getDistance());
-            modeBoardings.get(mode).increment();
+    }
 
+    private void aggregateFQValues(RailDistances distances, Trip trip) {
+        double tripFQDistance = railTripsAnalyzer.getFQDistance(trip, true);
+        if (tripFQDistance > 0) {
+            distances.fqDistance += tripFQDistance;
+            distances.fqTrips++;
+        }
+        double domesticFQDistance = railTripsAnalyzer.getFQDistance(trip, false);
+        if (domesticFQDistance > 0) {
+            distances.domesticFQDistance += domesticFQDistance;
+            distances.domesticFQTrips++;
+        }
+
+        final double tripRailDistance = railTripsAnalyzer.calcRailDistance(trip);
+        distances.railDistance += tripRailDistance;
+        if (tripRailDistance > 0) {
+            distances.railtrips++;
         }
     }
 
-    private void aggregateFQValues(Collection<Plan> plans) {
-        plans.stream().flatMap(plan -> TripStructureUtils.getTrips(plan).stream()).forEach(trip -> {
-            double tripFQDistance = railTripsAnalyzer.getFQDistance(trip, true);
-            if (tripFQDistance > 0) {
-                this.fqDistance += tripFQDistance;
-                this.fqTrips++;
-            }
-            double domesticFQDistance = railTripsAnalyzer.getFQDistance(trip, false);
-            if (domesticFQDistance > 0) {
-                this.domesticFQDistance += domesticFQDistance;
-                this.domesticFQTrips++;
-            }
+    /**
+     * Rail and public transport distances of a set of plans, as collected by {@link #createTripAnalyzer()}.
+     */
+    public static class RailDistances {
+
+        private final Map<String, MutableDouble> pkmSparte = new TreeMap<>();
+        private final Map<String, MutableDouble> pkmLfpCat = new TreeMap<>();
+        private final Map<String, MutableDouble> pkmAbgrenzung = new TreeMap<>();
+        private final Map<String, MutableDouble> modeDistances = new HashMap<>();
+        private final Map<String, MutableInt> modeBoardings = new HashMap<>();
+        private double fqDistance = 0;
+        private int fqTrips = 0;
+        private double railDistance = 0.0;
+        private int railtrips = 0;
+        private int domesticFQTrips = 0;
+        private double domesticFQDistance = 0;
+
+        private RailDistances(Set<String> sparten, Set<String> lfpCats, Set<String> abgrenzungen, Set<String> modes) {
+            sparten.forEach(sparte -> pkmSparte.put(sparte, new MutableDouble()));
+            lfpCats.forEach(lfpCat -> pkmLfpCat.put(lfpCat, new MutableDouble()));
+            abgrenzungen.forEach(abgrenzung -> pkmAbgrenzung.put(abgrenzung, new MutableDouble()));
+            modes.forEach(mode -> modeDistances.put(mode, new MutableDouble()));
+            modes.forEach(mode -> modeBoardings.put(mode, new MutableInt()));
+        }
 
-            final double tripRailDistance = railTripsAnalyzer.calcRailDistance(trip);
-            this.railDistance += tripRailDistance;
-            if (tripRailDistance > 0) {
-                this.railtrips++;
-            }
-        });
+        private void add(RailDistances other) {
+            other.pkmSparte.forEach((sparte, distance) -> pkmSparte.get(sparte).add(distance));
+            other.pkmLfpCat.forEach((lfpCat, distance) -> pkmLfpCat.get(lfpCat).add(distance));
+            other.pkmAbgrenzung.forEach((abgrenzung, distance) -> pkmAbgrenzung.get(abgrenzung).add(distance));
+            other.modeDistances.forEach((mode, distance) -> modeDistances.get(mode).add(distance));
+            other.modeBoardings.forEach((mode, boardings) -> modeBoardings.get(mode).add(boardings));
+            fqDistance += other.fqDistance;
+            fqTrips += other.fqTrips;
+            railDistance += other.railDistance;
+            railtrips += other.railtrips;
+            domesticFQTrips += other.domesticFQTrips;
+            domesticFQDistance += other.domesticFQDistance;
+        }
     }
 
 }
@@ -22,7 +22,7 @@ package ch.sbb.matsim.analysis.tripsandlegsanalysis;
 import ch.sbb.matsim.config.PostProcessingConfigGroup;
 import ch.sbb.matsim.config.variables.SBBModes;
 import ch.sbb.matsim.config.variables.Variables;
-import ch.sbb.matsim.zones.Zones;
+import ch.sbb.matsim.zones.ZoneAssignment;
 import ch.sbb.matsim.zones.ZonesCollection;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
@@ -48,14 +48,14 @@ import java.util.*;
 public class SBBTripsExtension implements CustomTripsWriterExtension {
 
     private final RailTripsAnalyzer railTripsAnalyzer;
-    private final Zones zones;
+    private final ZoneAssignment zoneAssignment;
     private final Scenario scenario;
     private IdMap<Person, LinkedList<Variables.MOBiTripAttributes>> additionalTripAttributes = new IdMap<>(Person.class, 100);
 
     @Inject
     public SBBTripsExtension(RailTripsAnalyzer railTripsAnalyzer, PostProcessingConfigGroup ppConfig, ZonesCollection zonesCollection, Scenario scenario) {
         this.railTripsAnalyzer = railTripsAnalyzer;
-        this.zones = zonesCollection.getZones(ppConfig.getZonesId());
+        this.zoneAssignment = zonesCollection.getZoneAssignment(ppConfig.getZonesId());
         this.scenario = scenario;
 
     }
@@ -142,8 +142,8 @@ public class SBBTripsExtension implements CustomTripsWriterExtension {
 
     @Override
     public List<String> getAdditionalTripColumns(Id<Person> personId, Trip trip) {
-        var fromZone = zones.findZone(getCoordFromActivity(trip.getOriginActivity(), scenario));
-        var toZone = zones.findZone(getCoordFromActivity(trip.getDestinationActivity(), scenario));
+        var fromZone = zoneAssignment.getZone(trip.getOriginActivity().getFacilityId(), getCoordFromActivity(trip.getOriginActivity(), scenario));
+        var toZone = zoneAssignment.getZone(trip.getDestinationActivity().getFacilityId(), getCoordFromActivity(trip.getDestinationActivity(), scenario));
         String fromZoneString = fromZone != null ? fromZone.getId().toString() : "";
         String toZoneString = toZone != null ? toZone.getId().toString() : "";
         var railOd = railTripsAnalyzer.getOriginDestination(trip);
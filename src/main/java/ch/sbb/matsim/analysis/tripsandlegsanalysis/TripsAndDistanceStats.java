@@ -19,6 +19,7 @@
 
 package ch.sbb.matsim.analysis.tripsandlegsanalysis;
 
+import ch.sbb.matsim.analysis.TripAnalyzer;
 import ch.sbb.matsim.config.PostProcessingConfigGroup;
 import ch.sbb.matsim.config.variables.SBBModes;
 import ch.sbb.matsim.config.variables.Variables;
@@ -44,7 +45,6 @@ import org.matsim.core.network.io.MatsimNetworkReader;
 import org.matsim.core.population.PopulationUtils;
 import org.matsim.core.population.io.PopulationReader;
 import org.matsim.core.population.routes.NetworkRoute;
-import org.matsim.core.router.TripStructureUtils;
 import org.matsim.core.router.TripStructureUtils.Trip;
 import org.matsim.core.scenario.ScenarioUtils;
 import org.matsim.core.scoring.ExperiencedPlansService;
@@ -58,6 +58,7 @@ import org.matsim.pt.transitSchedule.api.TransitStopFacility;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -130,8 +131,35 @@ public class TripsAndDistanceStats {
     }
 
     public void analyzeAndWriteStats(String fullStatsFileName, String condensedStatsFilename, IdMap<Person, Plan> experiencedPlans) {
-        Map<String, SubpopulationStats> stats = new TreeMap<>();
-        analyze(stats, experiencedPlans);
+        writeStats(fullStatsFileName, condensedStatsFilename, TripAnalyzer.analyze(createTripAnalyzer(), experiencedPlans));
+    }
+
+    public TripAnalyzer<Map<String, SubpopulationStats>> createTripAnalyzer() {
+        return new TripAnalyzer<>() {
+            @Override
+            public Map<String, SubpopulationStats> createAccumulator() {
+                return new TreeMap<>();
+            }
+
+            @Override
+            public void analyzeTrips(Map<String, SubpopulationStats> statsPerSubpopulation, Id<Person> personId, Plan plan, List<Trip> trips) {
+                analyzePlan(statsPerSubpopulation, personId, trips);
+            }
+
+            @Override
+            public Map<String, SubpopulationStats> merge(Map<String, SubpopulationStats> statsPerSubpopulation, Map<String, SubpopulationStats> other) {
+                for (SubpopulationStats stats : other.values()) {
+                    SubpopulationStats existing = statsPerSubpopulation.putIfAbsent(stats.subpopulation, stats);
+                    if (existing != null) {
+                        existing.add(stats);
+                    }
+                }
+                return statsPerSubpopulation;
+            }
+        };
+    }
+
+    public void writeStats(String fullStatsFileName, String condensedStatsFilename, Map<String, SubpopulationStats> stats) {
         writeFile(fullStatsFileName, stats);
         addArtificialAllPaxSubpopulation(stats);
         for (String s : Variables.EXOGENEOUS_DEMAND) {
@@ -189,7 +217,7 @@ public class TripsAndDistanceStats {
 
             }
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException(e);
         }
     }
 
@@ -228,55 +256,53 @@ public class TripsAndDistanceStats {
         stats.put("xx", allPaxTraffic);
     }
 
-    private void analyze(Map<String, SubpopulationStats> statsPerSubpopulation, IdMap<Person, Plan> experiencedPlans) {
-        for (Entry<Id<Person>, Plan> e : experiencedPlans.entrySet()) {
-            String subpopulation = PopulationUtils.getSubpopulation(population.getPersons().get(e.getKey()));
-            if (subpopulation == null) {
-                subpopulation = "none";
+    private void analyzePlan(Map<String, SubpopulationStats> statsPerSubpopulation, Id<Person> personId, List<Trip> trips) {
+        String subpopulation = PopulationUtils.getSubpopulation(population.getPersons().get(personId));
+        if (subpopulation == null) {
+            subpopulation = "none";
+        }
+        String finalSubpopulation = subpopulation;
+        SubpopulationStats stats = statsPerSubpopulation.computeIfAbsent(subpopulation, (a) -> new SubpopulationStats(finalSubpopulation));
+        for (Trip trip : trips) {
+            Link startLink = network.getLinks().get(trip.getOriginActivity().getLinkId());
+            Link endLink = network.getLinks().get(trip.getOriginActivity().getLinkId());
+            boolean domestic = (isSwiss(startLink) && isSwiss(endLink));
+            String mainmode = findMainMode(trip.getLegsOnly());
+            if (domestic) {
+                stats.domesticTrips.computeIfAbsent(mainmode, (a) -> new MutableInt()).increment();
             }
-            String finalSubpopulation = subpopulation;
-            SubpopulationStats stats = statsPerSubpopulation.computeIfAbsent(subpopulation, (a) -> new SubpopulationStats(finalSubpopulation));
-            for (Trip trip : TripStructureUtils.getTrips(e.getValue())) {
-                Link startLink = network.getLinks().get(trip.getOriginActivity().getLinkId());
-                Link endLink = network.getLinks().get(trip.getOriginActivity().getLinkId());
-                boolean domestic = (isSwiss(startLink) && isSwiss(endLink));
-                String mainmode = findMainMode(trip.getLegsOnly());
-                if (domestic) {
-                    stats.domesticTrips.computeIfAbsent(mainmode, (a) -> new MutableInt()).increment();
-                }
-                stats.tripsTotal.computeIfAbsent(mainmode, (a) -> new MutableInt()).increment();
-                for (Leg leg : trip.getLegsOnly()) {
-                    Link routeStartLink = network.getLinks().get(leg.getRoute().getStartLinkId());
-                    Link routeEndLink = network.getLinks().get(leg.getRoute().getEndLinkId());
-                    if (leg.getRoute() instanceof NetworkRoute) {
-                        NetworkRoute nr = (NetworkRoute) leg.getRoute();
-                        Tuple<Double, Double> distances = calcNetworkRouteDistances(nr, routeStartLink, routeEndLink);
-                        stats.domesticDistance.computeIfAbsent(mainmode, (a) -> new MutableDouble()).add(distances.getFirst());
-                        stats.overallDistance.computeIfAbsent(mainmode, (a) -> new MutableDouble()).add(distances.getSecond());
-                    } else if (leg.getRoute() instanceof TransitPassengerRoute) {
-                        TransitPassengerRoute route = (TransitPassengerRoute) leg.getRoute();
-                        TransitRoute transitRoute = transitSchedule.getTransitLines().get(route.getLineId()).getRoutes().get(route.getRouteId());
-                        Tuple<Double, Double> distances = calcTransitDistances(transitRoute, transitSchedule.getFacilities().get(route.getAccessStopId()),
-                                transitSchedule.getFacilities().get(route.getEgressStopId()), network);
-                        stats.domesticDistance.computeIfAbsent(mainmode, (a) -> new MutableDouble()).add(distances.getFirst());
-                        stats.overallDistance.computeIfAbsent(mainmode, (a) -> new MutableDouble()).add(distances.getSecond());
+            stats.tripsTotal.computeIfAbsent(mainmode, (a) -> new MutableInt()).increment();
+            for (Leg leg : trip.getLegsOnly()) {
+                Link routeStartLink = network.getLinks().get(leg.getRoute().getStartLinkId());
+                Link routeEndLink = network.getLinks().get(leg.getRoute().getEndLinkId());
+                if (leg.getRoute() instanceof NetworkRoute) {
+                    NetworkRoute nr = (NetworkRoute) leg.getRoute();
+                    Tuple<Double, Double> distances = calcNetworkRouteDistances(nr, routeStartLink, routeEndLink);
+                    stats.domesticDistance.computeIfAbsent(mainmode, (a) -> new MutableDouble()).add(distances.getFirst());
+                    stats.overallDistance.computeIfAbsent(mainmode, (a) -> new MutableDouble()).add(distances.getSecond());
+                } else if (leg.getRoute() instanceof TransitPassengerRoute) {
+                    TransitPassengerRoute route = (TransitPassengerRoute) leg.getRoute();
+                    TransitRoute transitRoute = transitSchedule.getTransitLines().get(route.getLineId()).getRoutes().get(route.getRouteId());
+                    Tuple<Double, Double> distances = calcTransitDistances(transitRoute, transitSchedule.getFacilities().get(route.getAccessStopId()),
+                            transitSchedule.getFacilities().get(route.getEgressStopId()), network);
+                    stats.domesticDistance.computeIfAbsent(mainmode, (a) -> new MutableDouble()).add(distances.getFirst());
+                    stats.overallDistance.computeIfAbsent(mainmode, (a) -> new MutableDouble()).add(distances.getSecond());
+                } else {
+                    //generic or teleported route
+                    double domesticDistance;
+                    double totalDistance;
+                    if (isSwiss(routeStartLink) && isSwiss(routeEndLink)) {
+                        domesticDistance = totalDistance = leg.getRoute().getDistance();
+
                     } else {
-                        //generic or teleported route
-                        double domesticDistance;
-                        double totalDistance;
-                        if (isSwiss(routeStartLink) && isSwiss(routeEndLink)) {
-                            domesticDistance = totalDistance = leg.getRoute().getDistance();
-
-                        } else {
-                            totalDistance = leg.getRoute().getDistance();
-                            domesticDistance = totalDistance / 2.0;
-                        }
-
-                        stats.domesticDistance.computeIfAbsent(mainmode, (a) -> new MutableDouble()).add(domesticDistance);
-                        stats.overallDistance.computeIfAbsent(mainmode, (a) -> new MutableDouble()).add(totalDistance);
+                        totalDistance = leg.getRoute().getDistance();
+                        domesticDistance = totalDistance / 2.0;
                     }
 
+                    stats.domesticDistance.computeIfAbsent(mainmode, (a) -> new MutableDouble()).add(domesticDistance);
+                    stats.overallDistance.computeIfAbsent(mainmode, (a) -> new MutableDouble()).add(totalDistance);
                 }
+
             }
         }
     }
@@ -372,7 +398,7 @@ public class TripsAndDistanceStats {
         }
     }
 
-    private static class SubpopulationStats {
+    public static class SubpopulationStats {
 
         final String subpopulation;
         final Map<String, MutableDouble> domesticDistance = new TreeMap<>();
@@ -383,6 +409,13 @@ public class TripsAndDistanceStats {
         public SubpopulationStats(String subpopulation) {
             this.subpopulation = subpopulation;
         }
+
+        void add(SubpopulationStats other) {
+            other.domesticDistance.forEach((mode, distance) -> domesticDistance.computeIfAbsent(mode, (a) -> new MutableDouble()).add(distance));
+            other.overallDistance.forEach((mode, distance) -> overallDistance.computeIfAbsent(mode, (a) -> new MutableDouble()).add(distance));
+            other.domesticTrips.forEach((mode, trips) -> domesticTrips.computeIfAbsent(mode, (a) -> new MutableInt()).add(trips));
+            other.tripsTotal.forEach((mode, trips) -> tripsTotal.computeIfAbsent(mode, (a) -> new MutableInt()).add(trips));
+        }
     }
 
 }
@@ -32,6 +32,8 @@ public class PostProcessingConfigGroup extends ReflectiveConfigGroup {
 	private boolean writeAnalsysis = true;
 	private String railMatrixAggregate = "amgr_id";
 	private Boolean dailylinkVolumes = false;
+	static private final String ANALYSIS_WRITER_THREADS = "analysisWriterThreads";
+	private int analysisWriterThreads = 2;
 
 	public PostProcessingConfigGroup() {
 		super(GROUP_NAME);
@@ -100,6 +102,16 @@ public class PostProcessingConfigGroup extends ReflectiveConfigGroup {
 		this.writeOutputsInterval = writeOutputsInterval;
 	}
 
+	@StringGetter(ANALYSIS_WRITER_THREADS)
+	public int getAnalysisWriterThreads() {
+		return this.analysisWriterThreads;
+	}
+
+	@StringSetter(ANALYSIS_WRITER_THREADS)
+	public void setAnalysisWriterThreads(final int analysisWriterThreads) {
+		this.analysisWriterThreads = analysisWriterThreads;
+	}
+
 	@StringGetter("writeAgentsCSV")
 	public Boolean getWriteAgentsCSV() {
 		return writeAgentsCSV;
@@ -173,8 +185,10 @@ public class PostProcessingConfigGroup extends ReflectiveConfigGroup {
 
 	@Override
 	public Map<String, String> getComments() {
-        return super.getComments();
-    }
+		Map<String, String> comments = super.getComments();
+		comments.put(ANALYSIS_WRITER_THREADS, "Number of background threads writing the default analysis files while the next iteration runs. 0 writes the files synchronously.");
+		return comments;
+	}
 
 	public void setAllPostProcessingOff() {
 		this.linkVolumes = false;
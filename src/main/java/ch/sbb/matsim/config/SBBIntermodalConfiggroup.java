@@ -20,9 +20,15 @@ public class SBBIntermodalConfiggroup extends ReflectiveConfigGroup {
 
 	static private final String PARAM_ZONESID = "zonesId";
 	static private final String PARAM_ZONESID_DESC = "Zones ID";
+	static private final String PARAM_GRIDCACHEDIRECTORY = "gridCacheDirectory";
+	static private final String PARAM_GRIDCACHEDIRECTORY_DESC = "Directory in which the grid based access/egress cache is stored and reused between runs. If not set, the cache is rebuilt at every start.";
+	static private final String PARAM_INITIALSTOPCACHESIZE = "initialStopCacheSize";
+	static private final String PARAM_INITIALSTOPCACHESIZE_DESC = "Maximum number of activity locations for which the intermodal access and egress stops of modes routed on the network, but not simulated, are cached during an iteration. 0 disables the cache.";
 	private static Logger logger = LogManager.getLogger(SBBIntermodalConfiggroup.class);
 	private final List<SBBIntermodalModeParameterSet> modeParamSets = new ArrayList<>();
 	private Id<Zones> zonesId = null;
+	private String gridCacheDirectory = null;
+	private int initialStopCacheSize = 50000;
 
 	public SBBIntermodalConfiggroup() {
 		super(GROUP_NAME);
@@ -56,6 +62,26 @@ public class SBBIntermodalConfiggroup extends ReflectiveConfigGroup {
 		this.zonesId = zonesId;
 	}
 
+	@StringGetter(PARAM_GRIDCACHEDIRECTORY)
+	public String getGridCacheDirectory() {
+		return this.gridCacheDirectory;
+	}
+
+	@StringSetter(PARAM_GRIDCACHEDIRECTORY)
+	public void setGridCacheDirectory(String gridCacheDirectory) {
+		this.gridCacheDirectory = gridCacheDirectory;
+	}
+
+	@StringGetter(PARAM_INITIALSTOPCACHESIZE)
+	public int getInitialStopCacheSize() {
+		return this.initialStopCacheSize;
+	}
+
+	@StringSetter(PARAM_INITIALSTOPCACHESIZE)
+	public void setInitialStopCacheSize(int initialStopCacheSize) {
+		this.initialStopCacheSize = initialStopCacheSize;
+	}
+
 	@Override
 	public void addParameterSet(ConfigGroup set) {
 		if (set instanceof SBBIntermodalModeParameterSet) {
@@ -81,6 +107,8 @@ public class SBBIntermodalConfiggroup extends ReflectiveConfigGroup {
 	public Map<String, String> getComments() {
 		Map<String, String> comments = super.getComments();
 		comments.put(PARAM_ZONESID, PARAM_ZONESID_DESC);
+		comments.put(PARAM_GRIDCACHEDIRECTORY, PARAM_GRIDCACHEDIRECTORY_DESC);
+		comments.put(PARAM_INITIALSTOPCACHESIZE, PARAM_INITIALSTOPCACHESIZE_DESC);
 		return (comments);
 
 	}
@@ -56,10 +56,14 @@ public class ZonesListConfigGroup extends ReflectiveConfigGroup {
 		private static final String PARAM_ID = "id";
 		private static final String PARAM_FILENAME = "filename";
 		private static final String PARAM_ID_ATTRIBUTE = "idAttributeName";
+		private static final String PARAM_USE_PREPARED_GEOMETRIES = "usePreparedGeometries";
+		private static final String PARAM_RASTER_CELL_SIZE = "rasterCellSize";
 
 		private String id = null;
 		private String filename = null;
 		private String idAttributeName = null;
+		private boolean usePreparedGeometries = false;
+		private double rasterCellSize = 0;
 
 		public ZonesParameterSet() {
 			super(TYPE);
@@ -105,6 +109,29 @@ public class ZonesListConfigGroup extends ReflectiveConfigGroup {
 		public void setIdAttributeName(String idAttributeName) {
 			this.idAttributeName = idAttributeName;
 		}
+
+		@StringGetter(PARAM_USE_PREPARED_GEOMETRIES)
+		public boolean isUsePreparedGeometries() {
+			return this.usePreparedGeometries;
+		}
+
+		@StringSetter(PARAM_USE_PREPARED_GEOMETRIES)
+		public void setUsePreparedGeometries(boolean usePreparedGeometries) {
+			this.usePreparedGeometries = usePreparedGeometries;
+		}
+
+		@StringGetter(PARAM_RASTER_CELL_SIZE)
+		public double getRasterCellSize() {
+			return this.rasterCellSize;
+		}
+
+		/**
+		 * @param rasterCellSize if larger than 0, zone queries are answered from a raster with cells of this size, see {@link ch.sbb.matsim.zones.RasterizedZones}
+		 */
+		@StringSetter(PARAM_RASTER_CELL_SIZE)
+		public void setRasterCellSize(double rasterCellSize) {
+			this.rasterCellSize = rasterCellSize;
+		}
 	}
 
 }
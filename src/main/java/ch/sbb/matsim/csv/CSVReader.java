@@ -11,26 +11,51 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
+import java.nio.CharBuffer;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+/**
+ * Reads delimited text files row by row.
+ * <p>
+ * Rows can be read with {@link #readLine()}, returning a new map per row, or in cursor style with {@link #next()}. In cursor style, the current row stays in
+ * the read buffer of the reader and the fields are accessed by column index with {@link #getField(int)}, {@link #getInt(int)}, {@link #getDouble(int)} etc.,
+ * without allocating objects per row. The values are only valid until the next call to {@link #next()} or {@link #readLine()}.
+ * <p>
+ * Single-character separators are matched literally. Longer separators are interpreted as regular expressions, as in earlier versions of this class, and
+ * only benefit from the reused buffers, not from the faster tokenizing.
+ */
 public class CSVReader implements AutoCloseable {
 
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int MAX_FAST_DIGITS = 15;
+	private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18};
+
 	private final String splitBy;
+	private final char separator;
+	private final Pattern splitPattern;
 	private final BufferedReader br;
 	private String[] columns;
 
+	private char[] buffer = new char[BUFFER_SIZE];
+	private int position = 0;
+	private int limit = 0;
+	private boolean endOfInput = false;
+	private boolean skipLineFeed = false;
+	private int[] fieldStarts = new int[16];
+	private int[] fieldEnds = new int[16];
+	private int fieldCount = 0;
+	private Field[] fields = new Field[0];
+
 	public CSVReader(String[] columns, final String csvFile, final String splitBy) {
-		this.columns = columns;
-		this.splitBy = splitBy;
-		this.br = IOUtils.getBufferedReader(csvFile);
+		this(columns, IOUtils.getBufferedReader(csvFile), splitBy);
 	}
 
 	public CSVReader(String[] columns, final URL csvFileURL, final String splitBy) {
-		this.columns = columns;
-		this.splitBy = splitBy;
-		this.br = IOUtils.getBufferedReader(csvFileURL);
+		this(columns, IOUtils.getBufferedReader(csvFileURL), splitBy);
 	}
 
 	public CSVReader(final URL csvFileURL, final String splitBy) throws IOException {
@@ -42,19 +67,38 @@ public class CSVReader implements AutoCloseable {
 	}
 
 	public CSVReader(final String splitBy, BufferedReader br) throws IOException {
-		this.splitBy = splitBy;
-		this.br = br;
+		this(null, br, splitBy);
 
-		String line = this.br.readLine();
-		this.columns = line.split(this.splitBy);
 		//if column is not in contructor defined, we take it from the csv
-		this.columns = Arrays.stream(this.columns).map(item -> item.replace("\"", "")).toArray(String[]::new);
+		if (!next()) {
+			throw new IOException("File is empty, no header found.");
+		}
+		// trailing empty columns are dropped, as String.split() did before, unless the line contains no separator at all
+		int columnCount = this.fieldCount;
+		while (columnCount > 0 && this.fieldCount > 1 && isEmpty(columnCount - 1)) {
+			columnCount--;
+		}
+		this.columns = new String[columnCount];
+		for (int i = 0; i < columnCount; i++) {
+			this.columns[i] = getString(i).replace("\"", "");
+		}
 	}
 
 	public CSVReader(String[] columns, final InputStream stream, final String splitBy) {
+		this(columns, new BufferedReader(new InputStreamReader(stream)), splitBy);
+	}
+
+	private CSVReader(String[] columns, BufferedReader br, String splitBy) {
 		this.columns = columns;
 		this.splitBy = splitBy;
-		this.br = new BufferedReader(new InputStreamReader(stream));
+		this.br = br;
+		if (splitBy.length() == 1) {
+			this.separator = splitBy.charAt(0);
+			this.splitPattern = null;
+		} else {
+			this.separator = 0;
+			this.splitPattern = Pattern.compile(splitBy);
+		}
 	}
 
 	public String[] getColumns() {
@@ -65,30 +109,288 @@ public class CSVReader implements AutoCloseable {
 		this.columns = columns;
 	}
 
+	/**
+	 * @return the index of the column in the rows, to be used with the index based getters.
+	 * @throws IllegalArgumentException if there is no such column
+	 */
+	public int getColumnIndex(String column) {
+		for (int i = 0; i < this.columns.length; i++) {
+			if (this.columns[i].equals(column)) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("Column not found: " + column);
+	}
+
 	/**
 	 * Reads the next available data row from the file.
 	 *
 	 * @return map containing the value for each column, <code>null</code> if no more line is available
 	 */
 	public Map<String, String> readLine() throws IOException {
-		String line = this.br.readLine();
-		if (line == null) {
+		if (!next()) {
 			return null;
 		}
 
 		Map<String, String> currentRow = new HashMap<>();
-		String[] parts = line.split(this.splitBy, -1);
 		for (int i = 0; i < this.columns.length; i++) {
 			String column = this.columns[i];
-			String value = (i < parts.length) ? parts[i] : null;
+			String value = (i < this.fieldCount) ? getString(i) : null;
 			currentRow.put(column, value);
 		}
 		return currentRow;
 	}
 
+	/**
+	 * Moves to the next available data row of the file. The values of the previous row must not be used afterwards.
+	 *
+	 * @return <code>false</code> if no more line is available
+	 */
+	public boolean next() throws IOException {
+		int lineEnd = findLineEnd();
+		if (lineEnd < 0) {
+			this.fieldCount = 0;
+			return false;
+		}
+		int lineStart = this.position;
+		this.position = lineEnd < this.limit ? lineEnd + 1 : lineEnd;
+		this.skipLineFeed = lineEnd < this.limit && this.buffer[lineEnd] == '\r';
+		if (this.splitPattern == null) {
+			tokenize(lineStart, lineEnd);
+		} else {
+			tokenizeWithPattern(lineStart, lineEnd);
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of fields in the current row, which may differ from the number of columns.
+	 */
+	public int getFieldCount() {
+		return this.fieldCount;
+	}
+
+	/**
+	 * @return a view on the value of the field in the current row. The view is reused and only valid until the next row is read.
+	 */
+	public CharSequence getField(int index) {
+		checkIndex(index);
+		return this.fields[index];
+	}
+
+	public String getString(int index) {
+		checkIndex(index);
+		return new String(this.buffer, this.fieldStarts[index], this.fieldEnds[index] - this.fieldStarts[index]);
+	}
+
+	public boolean isEmpty(int index) {
+		checkIndex(index);
+		return this.fieldStarts[index] == this.fieldEnds[index];
+	}
+
+	public int getInt(int index) {
+		long value = getLong(index);
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+			throw new NumberFormatException("Value out of int range in column " + index + ": " + value);
+		}
+		return (int) value;
+	}
+
+	public long getLong(int index) {
+		checkIndex(index);
+		int start = this.fieldStarts[index];
+		int end = this.fieldEnds[index];
+		boolean negative = false;
+		if (start < end && (this.buffer[start] == '-' || this.buffer[start] == '+')) {
+			negative = this.buffer[start] == '-';
+			start++;
+		}
+		if (start == end || end - start > 18) {
+			return Long.parseLong(getString(index));
+		}
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			char c = this.buffer[i];
+			if (c < '0' || c > '9') {
+				return Long.parseLong(getString(index));
+			}
+			value = value * 10 + (c - '0');
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parses plain decimal numbers like <code>-123.45</code> directly from the read buffer. Other representations (exponents, <code>Infinity</code>, more than
+	 * 15 significant digits, ...) are parsed with {@link Double#parseDouble(String)}. The results are identical.
+	 */
+	public double getDouble(int index) {
+		checkIndex(index);
+		int start = this.fieldStarts[index];
+		int end = this.fieldEnds[index];
+		boolean negative = false;
+		if (start < end && (this.buffer[start] == '-' || this.buffer[start] == '+')) {
+			negative = this.buffer[start] == '-';
+			start++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int decimals = -1;
+		for (int i = start; i < end; i++) {
+			char c = this.buffer[i];
+			if (c >= '0' && c <= '9') {
+				if (mantissa != 0 || c != '0') {
+					digits++;
+				}
+				mantissa = mantissa * 10 + (c - '0');
+				if (decimals >= 0) {
+					decimals++;
+				}
+			} else if (c == '.' && decimals < 0) {
+				decimals = 0;
+			} else {
+				return Double.parseDouble(getString(index));
+			}
+			if (digits > MAX_FAST_DIGITS || decimals >= POWERS_OF_TEN.length) {
+				return Double.parseDouble(getString(index));
+			}
+		}
+		if (start == end || (decimals == 0 && end - start == 1)) {
+			return Double.parseDouble(getString(index));
+		}
+		// both values are exactly representable, so the division is correctly rounded
+		double value = decimals > 0 ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+		return negative ? -value : value;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= this.fieldCount) {
+			throw new IndexOutOfBoundsException("Field " + index + " not available, current row has " + this.fieldCount + " fields.");
+		}
+	}
+
+	/**
+	 * Makes sure the next line is completely in the buffer. Lines are terminated by <code>\n</code>, <code>\r</code> or <code>\r\n</code>, like in
+	 * {@link BufferedReader#readLine()}.
+	 *
+	 * @return the position of the line terminator, or the end of the input for the last line; <code>-1</code> if no more line is available
+	 */
+	private int findLineEnd() throws IOException {
+		if (this.skipLineFeed) {
+			if (this.position == this.limit && !this.endOfInput) {
+				fill();
+			}
+			if (this.position < this.limit && this.buffer[this.position] == '\n') {
+				this.position++;
+			}
+			this.skipLineFeed = false;
+		}
+		int searchFrom = this.position;
+		while (true) {
+			for (int i = searchFrom; i < this.limit; i++) {
+				if (this.buffer[i] == '\n' || this.buffer[i] == '\r') {
+					return i;
+				}
+			}
+			if (this.endOfInput) {
+				return this.position < this.limit ? this.limit : -1;
+			}
+			int consumed = this.position;
+			searchFrom = this.limit - consumed;
+			fill();
+		}
+	}
+
+	private void fill() throws IOException {
+		int remaining = this.limit - this.position;
+		if (this.position > 0) {
+			System.arraycopy(this.buffer, this.position, this.buffer, 0, remaining);
+		} else if (remaining == this.buffer.length) {
+			this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+		}
+		this.position = 0;
+		this.limit = remaining;
+		int read = this.br.read(this.buffer, this.limit, this.buffer.length - this.limit);
+		if (read < 0) {
+			this.endOfInput = true;
+		} else {
+			this.limit += read;
+		}
+	}
+
+	private void tokenize(int lineStart, int lineEnd) {
+		this.fieldCount = 0;
+		int fieldStart = lineStart;
+		for (int i = lineStart; i < lineEnd; i++) {
+			if (this.buffer[i] == this.separator) {
+				addField(fieldStart, i);
+				fieldStart = i + 1;
+			}
+		}
+		addField(fieldStart, lineEnd);
+	}
+
+	private void tokenizeWithPattern(int lineStart, int lineEnd) {
+		this.fieldCount = 0;
+		Matcher matcher = this.splitPattern.matcher(CharBuffer.wrap(this.buffer, lineStart, lineEnd - lineStart));
+		int fieldStart = 0;
+		while (matcher.find()) {
+			if (matcher.end() == 0) {
+				continue;
+			}
+			addField(lineStart + fieldStart, lineStart + matcher.start());
+			fieldStart = matcher.end();
+		}
+		addField(lineStart + fieldStart, lineEnd);
+	}
+
+	private void addField(int start, int end) {
+		if (this.fieldCount == this.fieldStarts.length) {
+			this.fieldStarts = Arrays.copyOf(this.fieldStarts, this.fieldCount * 2);
+			this.fieldEnds = Arrays.copyOf(this.fieldEnds, this.fieldCount * 2);
+		}
+		if (this.fieldCount == this.fields.length) {
+			this.fields = Arrays.copyOf(this.fields, Math.max(16, this.fieldCount * 2));
+			for (int i = this.fieldCount; i < this.fields.length; i++) {
+				this.fields[i] = new Field(i);
+			}
+		}
+		this.fieldStarts[this.fieldCount] = start;
+		this.fieldEnds[this.fieldCount] = end;
+		this.fieldCount++;
+	}
+
 	@Override
 	public void close() throws IOException {
 		this.br.close();
 	}
 
+	private class Field implements CharSequence {
+
+		private final int index;
+
+		Field(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public int length() {
+			return fieldEnds[this.index] - fieldStarts[this.index];
+		}
+
+		@Override
+		public char charAt(int i) {
+			return buffer[fieldStarts[this.index] + i];
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return CharBuffer.wrap(buffer, fieldStarts[this.index] + start, end - start);
+		}
+
+		@Override
+		public String toString() {
+			return new String(buffer, fieldStarts[this.index], length());
+		}
+	}
+
 }
@@ -9,17 +9,26 @@ import org.matsim.core.utils.misc.Counter;
 
 import java.io.*;
 import java.nio.charset.Charset;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * Writes a CSV file row by row. Values can either be set by column name, or by a column index obtained once from {@link #getColumnIndex(String)}. The latter
+ * avoids the column lookup per cell, and the typed setters for numbers write the digits directly into a reused buffer without creating a String per cell.
+ */
 public class CSVWriter implements AutoCloseable {
 
 	public static final String DEFAULT_SEPARATOR = ";";
+	private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L};
 	private final String separator;
 	private final String[] columns;
+	private final Map<String, Integer> columnIndices;
 	private final int columnCount;
 	private final BufferedWriter writer;
-	private final String[] currentRow;
+	private final StringBuilder[] currentRow;
 	private final Counter counter;
+	private char[] charBuffer = new char[64];
 
 	public CSVWriter(final String header, final String[] columns, final String filename) throws IOException {
 		this(header, columns, IOUtils.getBufferedWriter(filename), DEFAULT_SEPARATOR);
@@ -48,7 +57,12 @@ public class CSVWriter implements AutoCloseable {
 	private CSVWriter(final String header, final String[] columns, final BufferedWriter writer, final String separator) throws IOException {
 		this.columns = columns;
 		this.columnCount = this.columns.length;
-		this.currentRow = new String[this.columnCount];
+		this.currentRow = new StringBuilder[this.columnCount];
+		this.columnIndices = new HashMap<>();
+		for (int i = 0; i < this.columnCount; i++) {
+			this.currentRow[i] = new StringBuilder();
+			this.columnIndices.putIfAbsent(columns[i], i);
+		}
 		this.writer = writer;
 		this.counter = new Counter("Output lines written: ");
 		this.separator = separator;
@@ -78,13 +92,81 @@ public class CSVWriter implements AutoCloseable {
 	 * @param value
 	 */
 	public void set(String column, String value) {
-		for (int i = 0; i < this.columnCount; i++) {
-			if (this.columns[i].equals(column)) {
-				this.currentRow[i] = value;
-				return;
+		set(getColumnIndex(column), value);
+	}
+
+	/**
+	 * @return the index of the column, to be used with the index based setters.
+	 * @throws IllegalArgumentException if there is no such column
+	 */
+	public int getColumnIndex(String column) {
+		Integer index = this.columnIndices.get(column);
+		if (index == null) {
+			throw new IllegalArgumentException("Column not found: " + column);
+		}
+		return index;
+	}
+
+	public void set(int column, CharSequence value) {
+		StringBuilder cell = this.currentRow[column];
+		cell.setLength(0);
+		cell.append(value);
+	}
+
+	public void set(int column, int value) {
+		StringBuilder cell = this.currentRow[column];
+		cell.setLength(0);
+		cell.append(value);
+	}
+
+	public void set(int column, long value) {
+		StringBuilder cell = this.currentRow[column];
+		cell.setLength(0);
+		cell.append(value);
+	}
+
+	/**
+	 * Sets the value in the same format as {@link Double#toString(double)}, i.e. with the shortest number of digits that uniquely identify the value. The
+	 * digits are appended directly to the cell, no String is created.
+	 */
+	public void set(int column, double value) {
+		StringBuilder cell = this.currentRow[column];
+		cell.setLength(0);
+		cell.append(value);
+	}
+
+	/**
+	 * Sets the value rounded half up to the given number of decimal places, e.g. <code>set(c, 2.5, 2)</code> writes <code>2.50</code>. Values that are too
+	 * large for a fixed precision representation, infinities and NaN are written like {@link Double#toString(double)}.
+	 *
+	 * @param decimals the number of decimal places, between 0 and 9
+	 */
+	public void set(int column, double value, int decimals) {
+		StringBuilder cell = this.currentRow[column];
+		cell.setLength(0);
+		appendFixed(cell, value, decimals);
+	}
+
+	static void appendFixed(StringBuilder sb, double value, int decimals) {
+		long factor = POWERS_OF_TEN[decimals];
+		double scaled = Math.abs(value) * factor;
+		if (!(scaled < 9.0e17)) {
+			sb.append(value);
+			return;
+		}
+		long rounded = (long) (scaled + 0.5);
+		if (value < 0 && rounded != 0) {
+			sb.append('-');
+		}
+		sb.append(rounded / factor);
+		if (decimals > 0) {
+			sb.append('.');
+			long fraction = rounded % factor;
+			for (long f = factor / 10; f > fraction && f > 1; f /= 10) {
+				sb.append('0');
 			}
+			sb.append(fraction);
 		}
-		throw new IllegalArgumentException("Column not found: " + column);
 	}
 
 	/**
@@ -106,7 +188,7 @@ public class CSVWriter implements AutoCloseable {
 				if (i > 0) {
 					this.writer.write(this.separator);
 				}
-				this.writer.write(this.currentRow[i]);
+				writeCell(this.currentRow[i]);
 			}
 			this.writer.write("\n");
 			if (flush) {
@@ -119,9 +201,18 @@ public class CSVWriter implements AutoCloseable {
 		clearRow();
 	}
 
+	private void writeCell(StringBuilder cell) throws IOException {
+		int length = cell.length();
+		if (length > this.charBuffer.length) {
+			this.charBuffer = new char[Math.max(length, 2 * this.charBuffer.length)];
+		}
+		cell.getChars(0, length, this.charBuffer, 0);
+		this.writer.write(this.charBuffer, 0, length);
+	}
+
 	private void clearRow() {
-		for (int i = 0; i < this.columns.length; i++) {
-			this.currentRow[i] = "";
+		for (StringBuilder cell : this.currentRow) {
+			cell.setLength(0);
 		}
 	}
 
@@ -45,6 +45,10 @@ public class IntermodalModule extends AbstractModule {
 			}
 			bind(RaptorIntermodalAccessEgress.class).to(SBBRaptorIntermodalAccessEgress.class).asEagerSingleton();
 			bind(AccessEgressRouteCache.class).to(GridbasedAccessEgressCache.class).asEagerSingleton();
+			bind(IntermodalInitialStopCache.class).asEagerSingleton();
+			addControlerListenerBinding().to(IntermodalInitialStopCache.class);
+			bind(IntermodalPersonModeFilter.class).asEagerSingleton();
+			addControlerListenerBinding().to(IntermodalPersonModeFilter.class);
 			bind(RaptorStopFinder.class).to(SBBIntermodalRaptorStopFinder.class);
 		}
 	}
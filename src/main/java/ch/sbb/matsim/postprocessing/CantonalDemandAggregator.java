@@ -37,8 +37,8 @@ public class CantonalDemandAggregator {
         ppcg.setSimulationSampleSize(scaleFactor);
         RailTripsAnalyzer railTripsAnalyzer = new RailTripsAnalyzer(scenario.getTransitSchedule(), scenario.getNetwork(), zonesCollection);
         DemandAggregator demandAggregator = new DemandAggregator(scenario, zonesCollection, ppcg, railTripsAnalyzer);
-        demandAggregator.aggregateTripDemand(1.0 / scaleFactor, scenario.getPopulation().getPersons().values().stream().map(person -> person.getSelectedPlan()).collect(Collectors.toList()));
-        demandAggregator.writeTripDemand("amr_id", "amr_name", outputFile);
+        var demand = demandAggregator.aggregateTripDemand(1.0 / scaleFactor, scenario.getPopulation().getPersons().values().stream().map(person -> person.getSelectedPlan()).collect(Collectors.toList()));
+        demandAggregator.writeTripDemand(demand, "amr_id", "amr_name", outputFile);
 
 
     }
@@ -1,5 +1,6 @@
 package ch.sbb.matsim.postprocessing.visumdistribution;
 
+import ch.sbb.matsim.accessibility.DeparturesCache;
 import ch.sbb.matsim.analysis.tripsandlegsanalysis.PutSurveyWriter;
 import ch.sbb.matsim.config.variables.SBBModes;
 import ch.sbb.matsim.routing.pt.raptor.*;
@@ -45,7 +46,7 @@ public class DepartureRouter {
     private final Map<String, Set<TransitStopFacility>> matchingZoneToStops = new HashMap<>();
     private final Map<TransitStopFacility, Set<String>> matchingStopsToZones = new HashMap<>();
     private final Map<String, Double> connectionTime = new HashMap<>();
-    private final Map<Id<TransitStopFacility>, Set<Double>> stopsDepatures = new HashMap<>();
+    private final DeparturesCache departuresCache;
     private final Map<String, Set<TransitRoute>> stopsRoutes = new HashMap<>();
     private final Map<String, Map<String, Double>> connectionsDemandZones = new HashMap<>();
     private final Map<String, Map<String, List<MyTransitPassengerRoute>>> connectionsLegsZones = new HashMap<>();
@@ -101,6 +102,7 @@ public class DepartureRouter {
 
         new MatsimNetworkReader(scenario.getNetwork()).readFile(transitNetworkFile);
         new TransitScheduleReader(scenario).readFile(transitSchedualFile);
+        this.departuresCache = new DeparturesCache(scenario.getTransitSchedule());
 
         RaptorStaticConfig raptorStaticConfig = RaptorUtils.createStaticConfig(scenario.getConfig());
         raptorStaticConfig.setOptimization(RaptorStaticConfig.RaptorOptimization.OneToAllRouting);
@@ -233,7 +235,9 @@ public class DepartureRouter {
         Map<String, Map<Id<TransitStopFacility>, TravelInfo>> trees = new HashMap<>();
         Map<String, Double> treesDepature = new HashMap<>();
         for (TransitStopFacility startStop : matchingZoneToStops.get(zone)) {
-            for (Double depatureTime : stopsDepatures.get(startStop.getId())) {
+            int stopIndex = startStop.getId().index();
+            for (int i = departuresCache.getFirstDeparture(stopIndex); i < departuresCache.getLastDeparture(stopIndex); i++) {
+                double depatureTime = departuresCache.getDepartureSeconds(i);
                 Map<Id<TransitStopFacility>, TravelInfo> tree = raptor.calcTree(startStop, depatureTime, params, null);
                 trees.put(startStop.getId().toString() + "_" + depatureTime, tree);
                 treesDepature.put(startStop.getId().toString() + "_" + depatureTime, depatureTime);
@@ -720,7 +724,6 @@ public class DepartureRouter {
         // clearing the maps may halp a little with the required ram
         matchingZoneToStops.clear();
         matchingStopsToZones.clear();
-        stopsDepatures.clear();
         writeRoute(csvLines);
         connectionsDemandZones.keySet().forEach(this::preparePuTPathForVisum);
         PutSurveyWriter.writePutSurvey(visum, entries);
@@ -747,7 +750,7 @@ public class DepartureRouter {
     }
 
     /**
-     * searches for all departure times at every stop of a transit line
+     * collects for every zone and departure time the routes departing at the stops of the zone
      *
      * @param transitLine
      */
@@ -763,12 +766,6 @@ public class DepartureRouter {
                     // if you change to the arrivalTime the method checkDirectConnection has to be adapted as well
                     double stopDepatureTime = startDepatureTime + stop.getDepartureOffset().seconds();
                     TransitStopFacility stopFacility = stop.getStopFacility();
-                    if (stopsDepatures.containsKey(stopFacility.getId())) {
-                        stopsDepatures.get(stopFacility.getId()).add(stopDepatureTime);
-                    } else {
-                        stopsDepatures.put(stopFacility.getId(), new HashSet<>());
-                        stopsDepatures.get(stopFacility.getId()).add(stopDepatureTime);
-                    }
                     if (!matchingStopsToZones.containsKey(stopFacility)) {
                         continue;
                     }
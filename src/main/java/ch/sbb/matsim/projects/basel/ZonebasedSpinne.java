@@ -85,7 +85,7 @@ public class ZonebasedSpinne {
         zonesCollection.addZones(zones);
         this.railTripsAnalyzer = new RailTripsAnalyzer(scenario.getTransitSchedule(),scenario.getNetwork(),zonesCollection);
         this.mainModeIdentifier = new SBBAnalysisMainModeIdentifier();
-        this.zonesList = ((ZonesImpl)zones).getZones().stream().map(zone -> String.valueOf(zone.getAttribute("Name"))).sorted().collect(Collectors.toCollection(ArrayList::new));
+        this.zonesList = zones.getZones().stream().map(zone -> String.valueOf(zone.getAttribute("Name"))).sorted().collect(Collectors.toCollection(ArrayList::new));
         this.zonesList.add(ZZZZ_OUTSIDE);
     }
     public void calculateOdMatrix(String mode, String comment, String outputFile){
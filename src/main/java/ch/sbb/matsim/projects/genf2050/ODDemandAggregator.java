@@ -24,8 +24,8 @@ import ch.sbb.matsim.config.variables.SBBModes;
 import ch.sbb.matsim.csv.CSVWriter;
 import ch.sbb.matsim.routing.SBBAnalysisMainModeIdentifier;
 import ch.sbb.matsim.zones.Zone;
+import ch.sbb.matsim.zones.Zones;
 import ch.sbb.matsim.zones.ZonesCollection;
-import ch.sbb.matsim.zones.ZonesImpl;
 import ch.sbb.matsim.zones.ZonesLoader;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.network.Network;
@@ -54,7 +54,7 @@ public class ODDemandAggregator {
     private final ArrayList<String> aggregateZones;
     private final String aggregateString;
     private final Network network;
-    private final ZonesImpl zones;
+    private final Zones zones;
     Map<String, float[][]> matrixPerMode;
     Map<String, float[][]> pkmMatrixPerMode;
     @Inject
@@ -62,7 +62,7 @@ public class ODDemandAggregator {
 
     @Inject
     public ODDemandAggregator(ZonesCollection zonesCollection, Network network, final PostProcessingConfigGroup ppConfig) {
-        this.zones = (ZonesImpl) zonesCollection.getZones(ppConfig.getZonesId());
+        this.zones = zonesCollection.getZones(ppConfig.getZonesId());
         var sortedZones = new TreeSet<String>();
         this.aggregateString = ppConfig.getRailMatrixAggregate();
         zones.getZones().forEach(z -> sortedZones.add(String.valueOf(z.getAttribute(ppConfig.getRailMatrixAggregate()))));
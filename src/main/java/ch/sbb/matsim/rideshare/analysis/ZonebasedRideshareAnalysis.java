@@ -4,7 +4,7 @@ import ch.sbb.matsim.config.PostProcessingConfigGroup;
 import ch.sbb.matsim.config.variables.Variables;
 import ch.sbb.matsim.csv.CSVWriter;
 import ch.sbb.matsim.zones.Zone;
-import ch.sbb.matsim.zones.Zones;
+import ch.sbb.matsim.zones.ZoneAssignment;
 import ch.sbb.matsim.zones.ZonesCollection;
 import jakarta.inject.Inject;
 import org.matsim.api.core.v01.Id;
@@ -40,10 +40,9 @@ import java.util.stream.Collectors;
 public class ZonebasedRideshareAnalysis implements DrtRequestSubmittedEventHandler, PersonDepartureEventHandler, PersonArrivalEventHandler, PersonEntersVehicleEventHandler,
 		PassengerRequestRejectedEventHandler {
 
-	private final Zones zones;
+	private final ZoneAssignment zoneAssignment;
 	private final Set<String> modes;
 	private final Map<Id<Person>, PendingDRTTrip> currentDepartures = new HashMap<>();
-	private final Map<Id<Link>, Id<Zone>> links2zoneCache = new HashMap<>();
 	private final Map<Id<Request>, Id<Person>> openRequests = new HashMap<>();
 	private final Network network;
 	private Map<String, Map<Id<Zone>, DoubleSummaryStatistics>> detourStats = new HashMap<>();
@@ -52,7 +51,7 @@ public class ZonebasedRideshareAnalysis implements DrtRequestSubmittedEventHandl
 	@Inject
 	public ZonebasedRideshareAnalysis(ZonesCollection zonesCollection, Config config, Network network, EventsManager eventsManager) {
 		this.network = network;
-		this.zones = zonesCollection.getZones(ConfigUtils.addOrGetModule(config, PostProcessingConfigGroup.class).getZonesId());
+		this.zoneAssignment = zonesCollection.getZoneAssignment(ConfigUtils.addOrGetModule(config, PostProcessingConfigGroup.class).getZonesId());
 		modes = MultiModeDrtConfigGroup.get(config).modes().collect(Collectors.toSet());
 		eventsManager.addHandler(this);
 	}
@@ -122,10 +121,8 @@ public class ZonebasedRideshareAnalysis implements DrtRequestSubmittedEventHandl
 	}
 
 	private Id<Zone> findZone(Id<Link> linkId) {
-		return links2zoneCache.computeIfAbsent(linkId, l -> {
-			Zone zone = zones.findZone(network.getLinks().get(linkId).getCoord());
-			return zone == null ? Id.create(Variables.DEFAULT_OUTSIDE_ZONE, Zone.class) : zone.getId();
-		});
+		Zone zone = zoneAssignment.getZoneForLink(network.getLinks().get(linkId));
+		return zone == null ? Id.create(Variables.DEFAULT_OUTSIDE_ZONE, Zone.class) : zone.getId();
 
 	}
 
@@ -6,6 +6,7 @@ import ch.sbb.matsim.config.variables.SBBModes;
 import ch.sbb.matsim.config.variables.Variables;
 import ch.sbb.matsim.routing.network.SBBNetworkRoutingConfigGroup;
 import ch.sbb.matsim.zones.Zone;
+import ch.sbb.matsim.zones.ZoneAssignment;
 import ch.sbb.matsim.zones.Zones;
 import ch.sbb.matsim.zones.ZonesCollection;
 import ch.sbb.matsim.zones.ZonesModule;
@@ -33,7 +34,7 @@ public class AccessEgressModule extends AbstractModule {
 		var sbbIntermodalConfigGroup = ConfigUtils.addOrGetModule(scenario.getConfig(), SBBIntermodalConfiggroup.class);
 
 		Id<Zones> zonesId = accessTimeConfigGroup.getZonesId();
-		Zones zones = collection.getZones(zonesId);
+		ZoneAssignment zoneAssignment = collection.getZoneAssignment(zonesId);
 		String attributePrefix = accessTimeConfigGroup.getAttributePrefix();
 		Map<String, String> accessTimeParameters = new HashMap<>();
 		accessTimeConfigGroup.getModesWithAccessTime().forEach(m -> accessTimeParameters.put(m, attributePrefix + m.toLowerCase()));
@@ -52,7 +53,7 @@ public class AccessEgressModule extends AbstractModule {
 		}
 
 		for (var l : scenario.getNetwork().getLinks().values()) {
-			Zone zone = zones.findZone(l.getCoord());
+			Zone zone = zoneAssignment.getZoneForLink(l);
 
 			for (var entry : accessTimeParameters.entrySet()) {
 				String mode = entry.getKey();
@@ -0,0 +1,227 @@
+package ch.sbb.matsim.routing.pt.raptor;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.pt.transitSchedule.api.TransitStopFacility;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact storage of the grid travel times and distances used by {@link GridbasedAccessEgressCache}.
+ * <p>
+ * Every cached stop owns one off-heap block of unsigned 16-bit values, four per grid cell (car travel time, car distance, bike travel time, bike distance). Travel times are stored in
+ * seconds, distances in units of {@link #DISTANCE_RESOLUTION_M} meters, both rounded to the nearest unit (the former <code>int[][]</code> layout
+ * truncated them). Values that do not fit into 16 bits are clamped to the largest representable value.
+ * The value <code>0xFFFF</code> is reserved for cells which could not be reached, it is read back exactly as {@link #UNREACHABLE_TIME} or
+ * {@link #UNREACHABLE_DISTANCE}.
+ * <p>
+ * The store can be written to a binary file and later memory-mapped again, in which case the blocks are backed by the file instead of being allocated.
+ * The file consists of a header (magic number, version, cell size, number of stops), one byte per stop telling whether a block is present, followed by
+ * the blocks of all present stops in stop order.
+ */
+class GridTravelTimeStore {
+
+    static final int CAR_TIME = 0;
+    static final int CAR_DISTANCE = 1;
+    static final int BIKE_TIME = 2;
+    static final int BIKE_DISTANCE = 3;
+    static final int VALUES_PER_CELL = 4;
+    static final int DISTANCE_RESOLUTION_M = 10;
+    static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+    static final double UNREACHABLE_TIME = 9999;
+    static final double UNREACHABLE_DISTANCE = 99999;
+    private static final char UNREACHABLE = 0xFFFF;
+    private static final int MAX_VALUE = UNREACHABLE - 1;
+    private static final int BYTES_PER_VALUE = 2;
+    private static final int FILE_MAGIC = 0x53424247;
+    static final int FILE_VERSION = 4;
+    private static final int FILE_HEADER_BYTES = 4 * Integer.BYTES;
+
+    private final int cellSize;
+    private final Map<Id<TransitStopFacility>, Integer> stopIndices;
+    private final ByteBuffer[] blocks;
+
+    GridTravelTimeStore(List<Id<TransitStopFacility>> stops, int cellSize) {
+        this.cellSize = cellSize;
+        this.stopIndices = new HashMap<>(stops.size() * 2);
+        for (int i = 0; i < stops.size(); i++) {
+            this.stopIndices.put(stops.get(i), i);
+        }
+        this.blocks = new ByteBuffer[stops.size()];
+    }
+
+    static void setTime(ByteBuffer block, int cell, int valueIndex, double seconds) {
+        block.putChar(offset(cell, valueIndex), quantize(seconds));
+    }
+
+    static void setDistance(ByteBuffer block, int cell, int valueIndex, double meters) {
+        block.putChar(offset(cell, valueIndex), quantize(meters / DISTANCE_RESOLUTION_M));
+    }
+
+    /**
+     * Marks a cell as not reachable, for the travel time and distance of one mode.
+     */
+    static void setUnreachable(ByteBuffer block, int cell, int timeIndex, int distanceIndex) {
+        block.putChar(offset(cell, timeIndex), UNREACHABLE);
+        block.putChar(offset(cell, distanceIndex), UNREACHABLE);
+    }
+
+    private static char quantize(double value) {
+        long rounded = Math.round(value);
+        return (char) Math.max(0, Math.min(MAX_VALUE, rounded));
+    }
+
+    private static int offset(int cell, int valueIndex) {
+        return (cell * VALUES_PER_CELL + valueIndex) * BYTES_PER_VALUE;
+    }
+
+    /**
+     * Estimates the heap used by the former <code>int[cellSize][4]</code> layout for a single stop, assuming compressed oops. The value is calculated, not
+     * measured at runtime. For the default grid of 150 x 150 cells it is 810,016 bytes; <code>GridbasedAccessEgressCacheTest</code> compares it with the
+     * heap measured after allocating that layout.
+     */
+    static long estimateLegacyBytesPerStop(int cellSize) {
+        long outerArray = 16 + 4L * cellSize;
+        long innerArrays = (16 + 4L * VALUES_PER_CELL) * cellSize;
+        return outerArray + innerArrays;
+    }
+
+    ByteBuffer allocateBlock() {
+        return ByteBuffer.allocateDirect(getBytesPerStop()).order(BYTE_ORDER);
+    }
+
+    int getBytesPerStop() {
+        return cellSize * VALUES_PER_CELL * BYTES_PER_VALUE;
+    }
+
+    /**
+     * @return the index of the stop in this store, or <code>-1</code> if the stop is not cached.
+     */
+    int getStopIndex(Id<TransitStopFacility> stopId) {
+        Integer index = stopIndices.get(stopId);
+        return index == null ? -1 : index;
+    }
+
+    void setBlock(int stopIndex, ByteBuffer block) {
+        this.blocks[stopIndex] = block;
+    }
+
+    boolean hasBlock(int stopIndex) {
+        return stopIndex >= 0 && this.blocks[stopIndex] != null;
+    }
+
+    double getTravelTime(int stopIndex, int cell, int valueIndex) {
+        char value = blocks[stopIndex].getChar(offset(cell, valueIndex));
+        return value == UNREACHABLE ? UNREACHABLE_TIME : value;
+    }
+
+    double getDistance(int stopIndex, int cell, int valueIndex) {
+        char value = blocks[stopIndex].getChar(offset(cell, valueIndex));
+        return value == UNREACHABLE ? UNREACHABLE_DISTANCE : value * (double) DISTANCE_RESOLUTION_M;
+    }
+
+    long getStoredBytes() {
+        long bytes = 0;
+        for (ByteBuffer block : blocks) {
+            if (block != null) {
+                bytes += block.capacity();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the memory used by the stored blocks, together with the heap the former <code>int[][]</code> layout would have used for the same stops,
+     * calculated by {@link #estimateLegacyBytesPerStop(int)}.
+     */
+    String getMemoryReport() {
+        long storedStops = 0;
+        for (ByteBuffer block : blocks) {
+            if (block != null) {
+                storedStops++;
+            }
+        }
+        long legacyBytes = storedStops * estimateLegacyBytesPerStop(cellSize);
+        long storedBytes = getStoredBytes();
+        return String.format("Grid cache memory for %d stops: %.1f MB off-heap (previous int[][] layout, calculated estimate: ~%.1f MB heap in %d objects).",
+                storedStops, storedBytes / 1048576.0, legacyBytes / 1048576.0, storedStops * (cellSize + 1));
+    }
+
+    void writeTo(Path file) throws IOException {
+        Path tmpFile = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(tmpFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES + blocks.length).order(BYTE_ORDER);
+            header.putInt(FILE_MAGIC).putInt(FILE_VERSION).putInt(cellSize).putInt(blocks.length);
+            for (ByteBuffer block : blocks) {
+                header.put((byte) (block != null ? 1 : 0));
+            }
+            header.flip();
+            writeFully(channel, header);
+            for (ByteBuffer block : blocks) {
+                if (block != null) {
+                    writeFully(channel, block.duplicate().clear());
+                }
+            }
+        }
+        Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Replaces all blocks of this store by read-only, memory-mapped views of the given file. The mapping stays valid after this method returns.
+     */
+    void mapFrom(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES + blocks.length).order(BYTE_ORDER);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    throw new IOException("Unexpected end of grid cache file " + file);
+                }
+            }
+            header.flip();
+            int magic = header.getInt();
+            int version = header.getInt();
+            int fileCellSize = header.getInt();
+            int fileStops = header.getInt();
+            if (magic != FILE_MAGIC || version != FILE_VERSION || fileCellSize != cellSize || fileStops != blocks.length) {
+                throw new IOException("Grid cache file " + file + " does not match the current cache layout.");
+            }
+            List<Integer> presentStops = new ArrayList<>();
+            for (int i = 0; i < blocks.length; i++) {
+                if (header.get() != 0) {
+                    presentStops.add(i);
+                }
+            }
+            long expectedSize = header.capacity() + (long) presentStops.size() * getBytesPerStop();
+            if (channel.size() != expectedSize) {
+                throw new IOException("Grid cache file " + file + " has size " + channel.size() + ", expected " + expectedSize);
+            }
+
+            int bytesPerStop = getBytesPerStop();
+            int stopsPerMapping = Math.max(1, Integer.MAX_VALUE / bytesPerStop);
+            for (int first = 0; first < presentStops.size(); first += stopsPerMapping) {
+                int count = Math.min(stopsPerMapping, presentStops.size() - first);
+                long position = header.capacity() + (long) first * bytesPerStop;
+                ByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, position, (long) count * bytesPerStop);
+                for (int i = 0; i < count; i++) {
+                    this.blocks[presentStops.get(first + i)] = mapping.slice(i * bytesPerStop, bytesPerStop).order(BYTE_ORDER);
+                }
+            }
+        }
+    }
+}
@@ -25,25 +25,37 @@ import org.matsim.core.router.RoutingModule;
 import org.matsim.core.router.TripStructureUtils;
 import org.matsim.core.router.costcalculators.FreespeedTravelTimeAndDisutility;
 import org.matsim.core.router.speedy.LeastCostPathTree;
-import org.matsim.core.router.speedy.SpeedyALTFactory;
 import org.matsim.core.router.speedy.SpeedyGraph;
 import org.matsim.core.router.speedy.SpeedyGraphBuilder;
-import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.utils.misc.OptionalTime;
 import org.matsim.facilities.Facility;
 import org.matsim.pt.transitSchedule.api.TransitStopFacility;
 import org.matsim.vehicles.Vehicle;
 import org.matsim.vehicles.VehicleType;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 public class GridbasedAccessEgressCache implements AccessEgressRouteCache {
 
     public static final double CAR_FREESPEED_TRAVELTIME_FACTOR = 1.25;
+    private static final double BACKWARD_TREE_ARRIVAL_TIME = 24 * 3600;
     final double bikeFreespeed = 16 / 3.6;
     private Network carnet;
     private Network bikenet;
@@ -60,7 +72,10 @@ public class GridbasedAccessEgressCache implements AccessEgressRouteCache {
     private final Logger logger = LogManager.getLogger(getClass());
     private Vehicle bike;
     private List<Id<TransitStopFacility>> cachedStops;
-    private final Map<Id<TransitStopFacility>, int[][]> cachedDistancesAndTimes = new ConcurrentHashMap<>();
+    private GridTravelTimeStore cachedDistancesAndTimes;
+    private NearestNodeRaster nearestNodeRaster;
+    private final AtomicLong unreachedCells = new AtomicLong();
+    private final AtomicLong cellsFoundInBackwardTree = new AtomicLong();
 
 
 
@@ -83,6 +98,7 @@ public class GridbasedAccessEgressCache implements AccessEgressRouteCache {
 
             rowSize = diameterInM / gridsizeInM;
             cellSize = rowSize * rowSize;
+            this.cachedDistancesAndTimes = new GridTravelTimeStore(cachedStops, cellSize);
             NetworkFilterManager nfm = new NetworkFilterManager(scenario.getNetwork(), scenario.getConfig().network());
             nfm.addLinkFilter(l -> l.getAllowedModes().contains(SBBModes.CAR));
             this.carnet = nfm.applyFilters();
@@ -99,7 +115,12 @@ public class GridbasedAccessEgressCache implements AccessEgressRouteCache {
 
 
             prepareAccessTimes();
-            calculateGridTraveltimesViaTree();
+            String cacheDirectory = sbbIntermodalConfiggroup.getGridCacheDirectory();
+            if (cacheDirectory != null) {
+                loadOrCalculateGridTraveltimes(Paths.get(cacheDirectory), stopFilterAttribute, stopFilterValue);
+            } else {
+                calculateGridTraveltimesViaTree();
+            }
         } else {
             logger.info("No modes with intermodal caching are being used. Will not build a cache.");
         }
@@ -122,12 +143,73 @@ public class GridbasedAccessEgressCache implements AccessEgressRouteCache {
     }
 
 
+    private void loadOrCalculateGridTraveltimes(Path cacheDirectory, String stopFilterAttribute, String stopFilterValue) {
+        Path cacheFile = cacheDirectory.resolve("gridAccessEgressCache_" + calculateFingerprint(stopFilterAttribute, stopFilterValue) + ".bin");
+        if (Files.exists(cacheFile)) {
+            try {
+                logger.info("Loading grid cache from " + cacheFile);
+                cachedDistancesAndTimes.mapFrom(cacheFile);
+                logger.info(cachedDistancesAndTimes.getMemoryReport());
+                return;
+            } catch (IOException e) {
+                logger.warn("Could not load grid cache from " + cacheFile + ", will rebuild it.", e);
+                this.cachedDistancesAndTimes = new GridTravelTimeStore(cachedStops, cellSize);
+            }
+        }
+        calculateGridTraveltimesViaTree();
+        try {
+            Files.createDirectories(cacheDirectory);
+            cachedDistancesAndTimes.writeTo(cacheFile);
+            logger.info("Grid cache written to " + cacheFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write grid cache to " + cacheFile, e);
+        }
+    }
+
+    /**
+     * The fingerprint covers everything the cached grids depend on: the network topology and link attributes, the cached stops and the grid layout.
+     * Any change results in a different cache file.
+     */
+    String calculateFingerprint(String stopFilterAttribute, String stopFilterValue) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        updateDigest(digest, GridTravelTimeStore.FILE_VERSION, gridsizeInM, diameterInM, stopFilterAttribute, stopFilterValue, linkIdAttribute, bikeFreespeed, CAR_FREESPEED_TRAVELTIME_FACTOR);
+        scenario.getNetwork().getNodes().values().stream()
+                .sorted(Comparator.comparing(Node::getId))
+                .forEach(node -> updateDigest(digest, node.getId(), node.getCoord().getX(), node.getCoord().getY()));
+        scenario.getNetwork().getLinks().values().stream()
+                .sorted(Comparator.comparing(Link::getId))
+                .forEach(link -> updateDigest(digest, link.getId(), link.getFromNode().getId(), link.getToNode().getId(), link.getLength(), link.getFreespeed(),
+                        new TreeSet<>(link.getAllowedModes())));
+        for (Id<TransitStopFacility> stopId : cachedStops) {
+            var stop = scenario.getTransitSchedule().getFacilities().get(stopId);
+            updateDigest(digest, stopId, stop.getCoord().getX(), stop.getCoord().getY(), stop.getAttributes().getAttribute(linkIdAttribute));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void updateDigest(MessageDigest digest, Object... values) {
+        for (Object value : values) {
+            digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) ';');
+        }
+        digest.update((byte) '\n');
+    }
+
     void calculateGridTraveltimesViaTree() {
         Gbl.printMemoryUsage();
         bikenet.getLinks().values().stream().filter(link -> link.getFreespeed() > bikeFreespeed).forEach(link -> link.setFreespeed(bikeFreespeed));
         SpeedyGraph carGraph = SpeedyGraphBuilder.build(carnet);
         SpeedyGraph bikeGraph = SpeedyGraphBuilder.build(bikenet);
-        SpeedyALTFactory factory = new SpeedyALTFactory();
+        logger.info("Snapping grid cells to the network.");
+        long snappingStart = System.currentTimeMillis();
+        List<Coord> stopCoords = cachedStops.stream().map(stopId -> scenario.getTransitSchedule().getFacilities().get(stopId).getCoord()).collect(Collectors.toList());
+        this.nearestNodeRaster = new NearestNodeRaster(carnet, bikenet, stopCoords, diameterInM / 2.0 + gridsizeInM, gridsizeInM);
+        logger.info("Snapped " + nearestNodeRaster.getCellCount() + " raster cells in " + (System.currentTimeMillis() - snappingStart) / 1000 + "s.");
         logger.info("Building Cache Structure for " + cachedStops.size() + " stops.");
 
         Gbl.printMemoryUsage();
@@ -144,19 +226,28 @@ public class GridbasedAccessEgressCache implements AccessEgressRouteCache {
         partitions.parallelStream().forEach(list -> {
             LeastCostPathTree bikeLeastCostPathTree = new LeastCostPathTree(bikeGraph, disutility, disutility);
             LeastCostPathTree carLeastCostPathTree = new LeastCostPathTree(carGraph, disutility, disutility);
-            var carLcp = factory.createPathCalculator(carnet, disutility, disutility);
-            var bikeLcp = factory.createPathCalculator(bikenet, disutility, disutility);
+            LeastCostPathTree bikeBackwardTree = new LeastCostPathTree(bikeGraph, disutility, disutility);
+            LeastCostPathTree carBackwardTree = new LeastCostPathTree(carGraph, disutility, disutility);
             for (Id<TransitStopFacility> stopId : list) {
                 var stop = scenario.getTransitSchedule().getFacilities().get(stopId);
-                cachedDistancesAndTimes.put(stopId, calculateGridForStopViaTree(stop, carLeastCostPathTree, bikeLeastCostPathTree, carLcp, bikeLcp));
+                cachedDistancesAndTimes.setBlock(cachedDistancesAndTimes.getStopIndex(stopId), calculateGridForStopViaTree(stop, carLeastCostPathTree, bikeLeastCostPathTree, carBackwardTree, bikeBackwardTree));
             }
 
         });
+        logger.info("Answered " + unreachedCells.get() + " cells not reached by the forward trees from backward trees instead of point-to-point queries, "
+                + cellsFoundInBackwardTree.get() + " of them were reachable.");
+        logger.info(cachedDistancesAndTimes.getMemoryReport());
+        Gbl.printMemoryUsage();
 
     }
 
 
-    int[][] calculateGridForStopViaTree(TransitStopFacility stop, LeastCostPathTree carLeastCostPathTree, LeastCostPathTree bikeLeastCostPathTree, LeastCostPathCalculator carlcp, LeastCostPathCalculator bikelcp) {
+    /**
+     * Cells whose nodes are not reached by the forward trees are answered from backward trees towards the stop, which are calculated at most once per stop and only if
+     * required.
+     */
+    ByteBuffer calculateGridForStopViaTree(TransitStopFacility stop, LeastCostPathTree carLeastCostPathTree, LeastCostPathTree bikeLeastCostPathTree, LeastCostPathTree carBackwardTree,
+            LeastCostPathTree bikeBackwardTree) {
         Link carFromLink = carnet.getLinks().get(Id.createLinkId(String.valueOf(stop.getAttributes().getAttribute(linkIdAttribute))));
         Node carFromNode = carFromLink.getToNode();
 
@@ -166,66 +257,93 @@ public class GridbasedAccessEgressCache implements AccessEgressRouteCache {
         bikeLeastCostPathTree.calculate(bikeFromNode.getId().index(), 0, null, bike, new LeastCostPathTree.TravelDistanceStopCriterion(this.diameterInM * 5.0));
 
 
-        int[][] dist = new int[cellSize][4];
+        ByteBuffer dist = cachedDistancesAndTimes.allocateBlock();
 
+        boolean carBackwardTreeCalculated = false;
+        boolean bikeBackwardTreeCalculated = false;
         int found = 0;
         for (int i = 0; i < cellSize; i++) {
-            Coord coord = getCellCoordinate(stop.getCoord(), i);
-            Node nearestCarNode = NetworkUtils.getNearestNode(carnet, coord);
-            int nearestCarNodeIndex = nearestCarNode.getId().index();
-            Node nearestBikeNode = NetworkUtils.getNearestNode(bikenet, coord);
-            int nearestBikeNodeIndex = nearestBikeNode.getId().index();
-            double carTravelTime;
-            double carDistance;
+            double x = getCellX(stop.getCoord(), i);
+            double y = getCellY(stop.getCoord(), i);
+            int nearestCarNodeIndex = nearestNodeRaster.getCarNodeIndex(x, y);
+            int nearestBikeNodeIndex = nearestNodeRaster.getBikeNodeIndex(x, y);
+            double carTravelTime = 0;
+            double carDistance = 0;
+            boolean carReached = true;
             if (carLeastCostPathTree.getTime(nearestCarNodeIndex).isDefined()) {
                 carTravelTime = carLeastCostPathTree.getTime(nearestCarNodeIndex).seconds() * CAR_FREESPEED_TRAVELTIME_FACTOR;
                 carDistance = carLeastCostPathTree.getDistance(nearestCarNodeIndex);
                 found++;
             } else {
-                var carpath = carlcp.calcLeastCostPath(nearestCarNode, carFromNode, 0, null, null);
-                if (carpath != null) {
-                    carTravelTime = carpath.travelTime * CAR_FREESPEED_TRAVELTIME_FACTOR;
-                    carDistance = carpath.links.stream().mapToDouble(l -> l.getLength()).sum();
+                if (!carBackwardTreeCalculated) {
+                    carBackwardTree.calculateBackwards(carFromNode.getId().index(), BACKWARD_TREE_ARRIVAL_TIME, null, null, new LeastCostPathTree.TravelDistanceStopCriterion(this.diameterInM * 5.0));
+                    carBackwardTreeCalculated = true;
+                }
+                unreachedCells.incrementAndGet();
+                OptionalTime departureTime = carBackwardTree.getTime(nearestCarNodeIndex);
+                if (departureTime.isDefined()) {
+                    carTravelTime = (BACKWARD_TREE_ARRIVAL_TIME - departureTime.seconds()) * CAR_FREESPEED_TRAVELTIME_FACTOR;
+                    carDistance = carBackwardTree.getDistance(nearestCarNodeIndex);
+                    cellsFoundInBackwardTree.incrementAndGet();
                 } else {
-                    carTravelTime = 9999;
-                    carDistance = 99999;
+                    carReached = false;
                 }
 
             }
 
 
-            double bikeTravelTime;
-            double bikeDistance;
+            double bikeTravelTime = 0;
+            double bikeDistance = 0;
+            boolean bikeReached = true;
             if (bikeLeastCostPathTree.getTime(nearestBikeNodeIndex).isDefined()) {
                 bikeTravelTime = bikeLeastCostPathTree.getTime(nearestBikeNodeIndex).seconds();
                 bikeDistance = bikeLeastCostPathTree.getDistance(nearestBikeNodeIndex);
             } else {
-                var bikepath = bikelcp.calcLeastCostPath(nearestBikeNode, bikeFromNode, 0, null, bike);
-                if (bikepath != null) {
-                    bikeTravelTime = bikepath.travelTime;
-                    bikeDistance = bikepath.links.stream().mapToDouble(l -> l.getLength()).sum();
+                if (!bikeBackwardTreeCalculated) {
+                    bikeBackwardTree.calculateBackwards(bikeFromNode.getId().index(), BACKWARD_TREE_ARRIVAL_TIME, null, bike, new LeastCostPathTree.TravelDistanceStopCriterion(this.diameterInM * 5.0));
+                    bikeBackwardTreeCalculated = true;
+                }
+                unreachedCells.incrementAndGet();
+                OptionalTime departureTime = bikeBackwardTree.getTime(nearestBikeNodeIndex);
+                if (departureTime.isDefined()) {
+                    bikeTravelTime = BACKWARD_TREE_ARRIVAL_TIME - departureTime.seconds();
+                    bikeDistance = bikeBackwardTree.getDistance(nearestBikeNodeIndex);
+                    cellsFoundInBackwardTree.incrementAndGet();
                 } else {
-                    bikeTravelTime = 9999;
-                    bikeDistance = 99999;
+                    bikeReached = false;
                 }
             }
-            dist[i][0] = (int) carTravelTime;
-            dist[i][1] = (int) carDistance;
-            dist[i][2] = (int) bikeTravelTime;
-            dist[i][3] = (int) bikeDistance;
+            if (carReached) {
+                GridTravelTimeStore.setTime(dist, i, GridTravelTimeStore.CAR_TIME, carTravelTime);
+                GridTravelTimeStore.setDistance(dist, i, GridTravelTimeStore.CAR_DISTANCE, carDistance);
+            } else {
+                GridTravelTimeStore.setUnreachable(dist, i, GridTravelTimeStore.CAR_TIME, GridTravelTimeStore.CAR_DISTANCE);
+            }
+            if (bikeReached) {
+                GridTravelTimeStore.setTime(dist, i, GridTravelTimeStore.BIKE_TIME, bikeTravelTime);
+                GridTravelTimeStore.setDistance(dist, i, GridTravelTimeStore.BIKE_DISTANCE, bikeDistance);
+            } else {
+                GridTravelTimeStore.setUnreachable(dist, i, GridTravelTimeStore.BIKE_TIME, GridTravelTimeStore.BIKE_DISTANCE);
+            }
         }
         //logger.info("Found " + found + " of " + cellSize);
         return dist;
     }
 
     Coord getCellCoordinate(Coord stopCoord, int i) {
+        return new Coord(getCellX(stopCoord, i), getCellY(stopCoord, i));
+    }
+
+    private double getCellX(Coord stopCoord, int i) {
+        double initialXOffset = stopCoord.getX() - diameterInM / 2; //top left
+        int columNumber = i % rowSize;
+        return initialXOffset + columNumber * gridsizeInM;
+    }
+
+    private double getCellY(Coord stopCoord, int i) {
         double initialYOffset = stopCoord.getY() + diameterInM / 2; //top left
-        double initialXOffset = stopCoord.getX() - diameterInM / 2;
         int rowNumber = i / rowSize;
-        int columNumber = i % rowSize;
-        double x = initialXOffset + columNumber * gridsizeInM;
-        double y = initialYOffset - rowNumber * gridsizeInM;
-        return new Coord(x, y);
+        return initialYOffset - rowNumber * gridsizeInM;
     }
 
     /**
@@ -248,11 +366,11 @@ public class GridbasedAccessEgressCache implements AccessEgressRouteCache {
     public RouteCharacteristics getCachedRouteCharacteristics(String mode, Facility stopFacility, Facility actFacility, RoutingModule module, Person person) {
         Id<TransitStopFacility> transitStopFacilityId = ((Identifiable<TransitStopFacility>) stopFacility).getId();
         int cell = getCellNumber(stopFacility.getCoord(), actFacility.getCoord());
-        int[][] cache = this.cachedDistancesAndTimes.get(transitStopFacilityId);
-        if (cache != null && cellInBound(cell)) {
-            int[] cellCache = cache[cell];
-            double travelTime = mode.equals(SBBModes.BIKEFEEDER) ? cellCache[2] : cellCache[0];
-            double travelDistance = mode.equals(SBBModes.BIKEFEEDER) ? cellCache[3] : cellCache[1];
+        int stopIndex = this.cachedDistancesAndTimes == null ? -1 : this.cachedDistancesAndTimes.getStopIndex(transitStopFacilityId);
+        if (stopIndex >= 0 && cellInBound(cell) && cachedDistancesAndTimes.hasBlock(stopIndex)) {
+            boolean bike = mode.equals(SBBModes.BIKEFEEDER);
+            double travelTime = cachedDistancesAndTimes.getTravelTime(stopIndex, cell, bike ? GridTravelTimeStore.BIKE_TIME : GridTravelTimeStore.CAR_TIME);
+            double travelDistance = cachedDistancesAndTimes.getDistance(stopIndex, cell, bike ? GridTravelTimeStore.BIKE_DISTANCE : GridTravelTimeStore.CAR_DISTANCE);
             Integer accessTime = this.accessTimesAtStops.get(transitStopFacilityId).get(mode);
             if (accessTime == null) {
                 accessTime = 0;
@@ -0,0 +1,154 @@
+package ch.sbb.matsim.routing.pt.raptor;
+
+import ch.sbb.matsim.config.SBBIntermodalConfiggroup;
+import ch.sbb.matsim.routing.pt.raptor.RaptorStopFinder.Direction;
+import jakarta.inject.Inject;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.controler.events.IterationStartsEvent;
+import org.matsim.core.controler.listener.IterationStartsListener;
+import org.matsim.facilities.Facility;
+import org.matsim.pt.transitSchedule.api.TransitStopFacility;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches the intermodal access and egress stops found for an activity location, so the same home and work locations do not have to be searched and
+ * routed again for every agent. Only candidates which do not depend on the person or the departure time are stored, see
+ * {@link SBBIntermodalRaptorStopFinder}.
+ * <p>
+ * The cache is shared by all routing threads. It holds at most the configured number of locations, once it is full, new locations are no longer
+ * added. As the routes of the feeder modes may use the travel times of the last iteration, the cache is cleared at the start of every iteration.
+ */
+public class IntermodalInitialStopCache implements IterationStartsListener {
+
+	private final static Logger log = LogManager.getLogger(IntermodalInitialStopCache.class);
+
+	private final int maxSize;
+	private final Map<Key, Candidates> cache = new ConcurrentHashMap<>();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	@Inject
+	public IntermodalInitialStopCache(Config config) {
+		this.maxSize = ConfigUtils.addOrGetModule(config, SBBIntermodalConfiggroup.class).getInitialStopCacheSize();
+	}
+
+	IntermodalInitialStopCache(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	public boolean isEnabled() {
+		return this.maxSize > 0;
+	}
+
+	Candidates get(Facility facility, String mode, Direction direction) {
+		Candidates candidates = this.cache.get(new Key(facility.getCoord().getX(), facility.getCoord().getY(), facility.getLinkId(), mode, direction));
+		if (candidates == null) {
+			this.misses.increment();
+		} else {
+			this.hits.increment();
+		}
+		return candidates;
+	}
+
+	void put(Facility facility, String mode, Direction direction, Candidates candidates) {
+		if (this.cache.size() < this.maxSize) {
+			this.cache.put(new Key(facility.getCoord().getX(), facility.getCoord().getY(), facility.getLinkId(), mode, direction), candidates);
+		}
+	}
+
+	public int size() {
+		return this.cache.size();
+	}
+
+	public long getHits() {
+		return this.hits.sum();
+	}
+
+	public long getMisses() {
+		return this.misses.sum();
+	}
+
+	public double getHitRate() {
+		long hits = getHits();
+		long total = hits + getMisses();
+		return total == 0 ? 0.0 : (double) hits / total;
+	}
+
+	public void clear() {
+		this.cache.clear();
+		this.hits.reset();
+		this.misses.reset();
+	}
+
+	@Override
+	public void notifyIterationStarts(IterationStartsEvent event) {
+		if (getHits() + getMisses() > 0) {
+			log.info(String.format("intermodal initial stop cache: %d locations, %d hits, %d misses, hit rate %.1f%%", size(), getHits(), getMisses(), 100 * getHitRate()));
+		}
+		clear();
+	}
+
+	private record Key(double x, double y, Id<Link> linkId, String mode, Direction direction) {
+
+	}
+
+	/**
+	 * The initial stops of one location and mode, with the disutility and travel time of the access or egress, and the travel time and distance of the
+	 * feeder leg, from which the legs are created again for every request.
+	 */
+	static final class Candidates {
+
+		final TransitStopFacility[] stops;
+		final double[] disutilities;
+		final double[] travelTimes;
+		final double[] legTravelTimes;
+		final double[] legDistances;
+		private int size = 0;
+
+		Candidates(int capacity) {
+			this.stops = new TransitStopFacility[capacity];
+			this.disutilities = new double[capacity];
+			this.travelTimes = new double[capacity];
+			this.legTravelTimes = new double[capacity];
+			this.legDistances = new double[capacity];
+		}
+
+		private Candidates(Candidates candidates) {
+			this.size = candidates.size;
+			this.stops = Arrays.copyOf(candidates.stops, this.size);
+			this.disutilities = Arrays.copyOf(candidates.disutilities, this.size);
+			this.travelTimes = Arrays.copyOf(candidates.travelTimes, this.size);
+			this.legTravelTimes = Arrays.copyOf(candidates.legTravelTimes, this.size);
+			this.legDistances = Arrays.copyOf(candidates.legDistances, this.size);
+		}
+
+		void add(TransitStopFacility stop, double disutility, double travelTime, double legTravelTime, double legDistance) {
+			this.stops[this.size] = stop;
+			this.disutilities[this.size] = disutility;
+			this.travelTimes[this.size] = travelTime;
+			this.legTravelTimes[this.size] = legTravelTime;
+			this.legDistances[this.size] = legDistance;
+			this.size++;
+		}
+
+		/**
+		 * @return a copy with arrays of the exact size, to be stored in the cache
+		 */
+		Candidates trim() {
+			return new Candidates(this);
+		}
+
+		int size() {
+			return this.size;
+		}
+	}
+}
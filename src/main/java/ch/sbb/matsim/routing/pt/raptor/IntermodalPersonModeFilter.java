@@ -0,0 +1,146 @@
+package ch.sbb.matsim.routing.pt.raptor;
+
+import ch.sbb.matsim.config.SBBIntermodalConfiggroup;
+import ch.sbb.matsim.config.SBBIntermodalModeParameterSet;
+import ch.sbb.matsim.config.SwissRailRaptorConfigGroup;
+import ch.sbb.matsim.config.SwissRailRaptorConfigGroup.IntermodalAccessEgressParameterSet;
+import jakarta.inject.Inject;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.controler.events.IterationStartsEvent;
+import org.matsim.core.controler.listener.IterationStartsListener;
+import org.matsim.core.router.TripStructureUtils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides which intermodal access/egress parameter sets a person may use at an activity location, based on the person filter attribute of the
+ * parameter set and the person activity filter attribute of the intermodal mode.
+ * <p>
+ * The allowed parameter sets are stored as a bitset per activity of the selected plan, with the bit index being the index of the parameter set in the
+ * {@link SwissRailRaptorConfigGroup}. They are calculated once per person and reused as long as the selected plan does not change, and discarded at the
+ * start of every iteration.
+ */
+public class IntermodalPersonModeFilter implements IterationStartsListener {
+
+	private final List<IntermodalAccessEgressParameterSet> paramSets;
+	private final String[] activityFilterAttributes;
+	private final Map<Id<Person>, PersonModes> personModes = new ConcurrentHashMap<>();
+
+	@Inject
+	public IntermodalPersonModeFilter(Config config) {
+		this.paramSets = ConfigUtils.addOrGetModule(config, SwissRailRaptorConfigGroup.class).getIntermodalAccessEgressParameterSets();
+		if (this.paramSets.size() > Long.SIZE) {
+			throw new RuntimeException("At most " + Long.SIZE + " intermodal access/egress parameter sets are supported, but " + this.paramSets.size() + " are configured.");
+		}
+		Map<String, SBBIntermodalModeParameterSet> modeParams = new HashMap<>();
+		for (SBBIntermodalModeParameterSet set : ConfigUtils.addOrGetModule(config, SBBIntermodalConfiggroup.class).getModeParameterSets()) {
+			modeParams.putIfAbsent(set.getMode(), set);
+		}
+		this.activityFilterAttributes = new String[this.paramSets.size()];
+		for (int i = 0; i < this.paramSets.size(); i++) {
+			SBBIntermodalModeParameterSet params = modeParams.get(this.paramSets.get(i).getMode());
+			this.activityFilterAttributes[i] = params == null ? null : params.getParamPersonActivityFilterAttribute();
+		}
+	}
+
+	/**
+	 * @param paramSetIndex the index of the parameter set in the {@link SwissRailRaptorConfigGroup}
+	 */
+	public boolean matches(Person person, Coord coord, int paramSetIndex) {
+		return (getAllowedParamSets(person, coord) & (1L << paramSetIndex)) != 0;
+	}
+
+	/**
+	 * @return a bitset of the parameter sets the person may use at an activity with the given coordinate
+	 */
+	public long getAllowedParamSets(Person person, Coord coord) {
+		Plan plan = person.getSelectedPlan();
+		PersonModes modes = this.personModes.get(person.getId());
+		if (modes == null || modes.plan != plan) {
+			modes = createPersonModes(person, plan);
+			this.personModes.put(person.getId(), modes);
+		}
+		for (int i = 0; i < modes.coords.length; i++) {
+			if (coord.equals(modes.coords[i])) {
+				return modes.allowed[i];
+			}
+		}
+		return modes.personAllowed;
+	}
+
+	private PersonModes createPersonModes(Person person, Plan plan) {
+		long personAllowed = 0;
+		for (int i = 0; i < this.paramSets.size(); i++) {
+			IntermodalAccessEgressParameterSet paramSet = this.paramSets.get(i);
+			String personFilterAttribute = paramSet.getPersonFilterAttribute();
+			boolean personDoesMatch = true;
+			if (personFilterAttribute != null) {
+				Object attr = person.getAttributes().getAttribute(personFilterAttribute);
+				String attrValue = attr == null ? null : attr.toString();
+				personDoesMatch = paramSet.getPersonFilterValue().equals(attrValue);
+			}
+			if (personDoesMatch) {
+				personAllowed |= 1L << i;
+			}
+		}
+		if (plan == null) {
+			return new PersonModes(null, new Coord[0], new long[0], personAllowed);
+		}
+
+		List<Activity> activities = TripStructureUtils.getActivities(plan, TripStructureUtils.StageActivityHandling.ExcludeStageActivities);
+		Coord[] coords = new Coord[activities.size()];
+		long[] allowed = new long[activities.size()];
+		Map<String, Long> allowedPerActivityType = new HashMap<>();
+		for (int a = 0; a < activities.size(); a++) {
+			Activity activity = activities.get(a);
+			coords[a] = activity.getCoord();
+			allowed[a] = allowedPerActivityType.computeIfAbsent(activity.getType(), type -> getAllowedParamSets(person, type, personAllowed));
+		}
+		return new PersonModes(plan, coords, allowed, personAllowed);
+	}
+
+	private long getAllowedParamSets(Person person, String activityType, long personAllowed) {
+		long allowed = personAllowed;
+		for (int i = 0; i < this.paramSets.size(); i++) {
+			String personActivityFilterAttribute = this.activityFilterAttributes[i];
+			if ((allowed & (1L << i)) == 0 || personActivityFilterAttribute == null) {
+				continue;
+			}
+			Object attr = person.getAttributes().getAttribute(personActivityFilterAttribute);
+			if (attr != null) {
+				boolean activityMatches = false;
+				for (String at : attr.toString().split(",")) {
+					if (activityType.startsWith(at) && !at.equals("")) {
+						activityMatches = true;
+						break;
+					}
+				}
+				if (!activityMatches) {
+					allowed &= ~(1L << i);
+				}
+			}
+		}
+		return allowed;
+	}
+
+	@Override
+	public void notifyIterationStarts(IterationStartsEvent event) {
+		this.personModes.clear();
+	}
+
+	/**
+	 * The allowed parameter sets at the activities of one plan, and of the person independent of the activity.
+	 */
+	private record PersonModes(Plan plan, Coord[] coords, long[] allowed, long personAllowed) {
+
+	}
+}
@@ -0,0 +1,82 @@
+package ch.sbb.matsim.routing.pt.raptor;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.network.NetworkUtils;
+
+import java.util.Collection;
+import java.util.stream.IntStream;
+
+/**
+ * A raster aligned to multiples of the cell size that holds the index of the nearest car and bike node of every cell center. The raster is computed once for the extent of
+ * all cached stops, so that the grids of neighbouring stops, which overlap to a large degree, do not need to snap the same coordinates to the network again.
+ */
+class NearestNodeRaster {
+
+    private final int cellSizeInM;
+    private final double minX;
+    private final double minY;
+    private final int columns;
+    private final int rows;
+    private final int[] carNodeIndices;
+    private final int[] bikeNodeIndices;
+
+    /**
+     * @param centers the coordinates around which the raster needs to be available
+     * @param radius  the extent around each center that needs to be covered
+     */
+    NearestNodeRaster(Network carnet, Network bikenet, Collection<Coord> centers, double radius, int cellSizeInM) {
+        this.cellSizeInM = cellSizeInM;
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (Coord c : centers) {
+            minX = Math.min(minX, c.getX() - radius);
+            minY = Math.min(minY, c.getY() - radius);
+            maxX = Math.max(maxX, c.getX() + radius);
+            maxY = Math.max(maxY, c.getY() + radius);
+        }
+        if (centers.isEmpty()) {
+            this.minX = 0;
+            this.minY = 0;
+            this.columns = 0;
+            this.rows = 0;
+        } else {
+            this.minX = Math.floor(minX / cellSizeInM) * cellSizeInM;
+            this.minY = Math.floor(minY / cellSizeInM) * cellSizeInM;
+            this.columns = (int) ((maxX - this.minX) / cellSizeInM) + 1;
+            this.rows = (int) ((maxY - this.minY) / cellSizeInM) + 1;
+        }
+        this.carNodeIndices = new int[columns * rows];
+        this.bikeNodeIndices = new int[columns * rows];
+
+        IntStream.range(0, rows).parallel().forEach(row -> {
+            double y = this.minY + (row + 0.5) * cellSizeInM;
+            for (int column = 0; column < columns; column++) {
+                Coord center = new Coord(this.minX + (column + 0.5) * cellSizeInM, y);
+                int i = row * columns + column;
+                carNodeIndices[i] = NetworkUtils.getNearestNode(carnet, center).getId().index();
+                bikeNodeIndices[i] = NetworkUtils.getNearestNode(bikenet, center).getId().index();
+            }
+        });
+    }
+
+    int getCarNodeIndex(double x, double y) {
+        return carNodeIndices[getRasterIndex(x, y)];
+    }
+
+    int getBikeNodeIndex(double x, double y) {
+        return bikeNodeIndices[getRasterIndex(x, y)];
+    }
+
+    int getCellCount() {
+        return columns * rows;
+    }
+
+    private int getRasterIndex(double x, double y) {
+        int column = Math.max(0, Math.min(columns - 1, (int) ((x - minX) / cellSizeInM)));
+        int row = Math.max(0, Math.min(rows - 1, (int) ((y - minY) / cellSizeInM)));
+        return row * columns + column;
+    }
+}
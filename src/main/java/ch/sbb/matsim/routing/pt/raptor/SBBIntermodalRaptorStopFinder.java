@@ -48,14 +48,19 @@ public class SBBIntermodalRaptorStopFinder implements RaptorStopFinder {
 	private final Random random = MatsimRandom.getLocalInstance();
 	private final AccessEgressRouteCache accessEgressRouteCache;
 	private final IntermodalAccessEgressParameterSet walkParameterset;
+	private final IntermodalInitialStopCache initialStopCache;
+	private final IntermodalPersonModeFilter personModeFilter;
 
 	@Inject
 	public SBBIntermodalRaptorStopFinder(Config config, RaptorIntermodalAccessEgress intermodalAE,
 										 Map<String, Provider<RoutingModule>> routingModuleProviders,
-										 TransitSchedule transitSchedule, AccessEgressRouteCache accessEgressRouteCache) {
+										 TransitSchedule transitSchedule, AccessEgressRouteCache accessEgressRouteCache,
+										 IntermodalInitialStopCache initialStopCache, IntermodalPersonModeFilter personModeFilter) {
 		this.intermodalAE = intermodalAE;
 		this.transitSchedule = transitSchedule;
 		this.accessEgressRouteCache = accessEgressRouteCache;
+		this.initialStopCache = initialStopCache;
+		this.personModeFilter = personModeFilter;
 
 		SBBIntermodalConfiggroup intermodalConfigGroup = ConfigUtils.addOrGetModule(config, SBBIntermodalConfiggroup.class);
 		this.intermodalModeParams = intermodalConfigGroup.getModeParameterSets().stream().collect(Collectors.toMap(SBBIntermodalModeParameterSet::getMode, set -> set, (a, b) -> a));
@@ -122,10 +127,12 @@ public class SBBIntermodalRaptorStopFinder implements RaptorStopFinder {
 		double y = facility.getCoord().getY();
 		List<InitialStop> initialStops = new ArrayList<>();
 
-		List<IntermodalAccessEgressParameterSet> filteredParameterSet = new ArrayList<>();
-		for (IntermodalAccessEgressParameterSet paramSet : srrCfg.getIntermodalAccessEgressParameterSets()) {
-			if (personMatches(facility, person, paramSet)) {
-				filteredParameterSet.add(paramSet);
+		List<IntermodalAccessEgressParameterSet> paramSets = srrCfg.getIntermodalAccessEgressParameterSets();
+		long allowedParamSets = this.personModeFilter.getAllowedParamSets(person, facility.getCoord());
+		List<IntermodalAccessEgressParameterSet> filteredParameterSet = new ArrayList<>(paramSets.size());
+		for (int i = 0; i < paramSets.size(); i++) {
+			if ((allowedParamSets & (1L << i)) != 0) {
+				filteredParameterSet.add(paramSets.get(i));
 			}
 		}
 		if (!filteredParameterSet.isEmpty()) {
@@ -161,45 +168,6 @@ public class SBBIntermodalRaptorStopFinder implements RaptorStopFinder {
 		return initialStops;
 	}
 
-	private boolean personMatches(Facility facility, Person person, IntermodalAccessEgressParameterSet paramset) {
-		String personFilterAttribute = paramset.getPersonFilterAttribute();
-		String personFilterValue = paramset.getPersonFilterValue();
-		Object attr = null;
-		String attrValue = null;
-		boolean personDoesMatch = true;
-		if (personFilterAttribute != null) {
-			attr = person.getAttributes().getAttribute(personFilterAttribute);
-			attrValue = attr == null ? null : attr.toString();
-			personDoesMatch = personFilterValue.equals(attrValue);
-		}
-		if (personDoesMatch) {
-			Optional<String> actType = TripStructureUtils.getActivities(person.getSelectedPlan(), TripStructureUtils.StageActivityHandling.ExcludeStageActivities).stream()
-					.filter(activity -> activity.getCoord().equals(facility.getCoord())).map(Activity::getType).findAny();
-			if (actType.isPresent()) {
-				final String activityType = actType.get();
-				List<SBBIntermodalModeParameterSet> filtered = intermodalModeParams.values().stream().filter(a -> a.getMode().equals(paramset.getMode()))
-						.collect(Collectors.toList());
-				if (filtered.size() == 1) {
-					String personActivityFilterAttribute = filtered.get(0).getParamPersonActivityFilterAttribute();
-					if (personActivityFilterAttribute != null) {
-						attr = person.getAttributes().getAttribute(personActivityFilterAttribute);
-						if (attr != null) {
-							personDoesMatch = false;
-							attrValue = attr.toString();
-							for (String at : attrValue.split(",")) {
-								if (activityType.startsWith(at) && !at.equals("")) {
-									personDoesMatch = true;
-									break;
-								}
-							}
-						}
-					}
-				}
-			}
-		}
-		return personDoesMatch;
-	}
-
 	private void addInitialStopsForParamSet(Facility facility, Person person, double departureTime, Direction direction, RaptorParameters parameters, SwissRailRaptorData data, double x, double y,
 			List<InitialStop> initialStops, IntermodalAccessEgressParameterSet paramset) {
 		double radius = paramset.getMaxRadius();
@@ -216,7 +184,18 @@ public class SBBIntermodalRaptorStopFinder implements RaptorStopFinder {
 		String stopFilterAttribute = paramset.getStopFilterAttribute();
 		String stopFilterValue = paramset.getStopFilterValue();
 
+		// the stops of modes with cached travel times neither depend on the person nor on the departure time, so they can be reused for other requests
+		boolean cacheable = this.initialStopCache.isEnabled() && overrideMode == null && params != null && params.isRoutedOnNetwork() && (!params.isSimulatedOnNetwork());
+		if (cacheable) {
+			IntermodalInitialStopCache.Candidates cached = this.initialStopCache.get(facility, mode, direction);
+			if (cached != null) {
+				addCachedInitialStops(facility, departureTime, direction, mode, linkIdAttribute, useMinimalTransferTimes, cached, initialStops);
+				return;
+			}
+		}
+
 		Collection<TransitStopFacility> stopFacilities = data.stopsQT.getDisk(x, y, radius);
+		IntermodalInitialStopCache.Candidates candidates = cacheable ? new IntermodalInitialStopCache.Candidates(stopFacilities.size()) : null;
 		for (TransitStopFacility stop : stopFacilities) {
 			boolean filterMatches = true;
 			if (stopFilterAttribute != null) {
@@ -225,13 +204,7 @@ public class SBBIntermodalRaptorStopFinder implements RaptorStopFinder {
 				filterMatches = stopFilterValue.equals(attrValue);
 			}
 			if (filterMatches) {
-				Facility stopFacility = stop;
-				if (linkIdAttribute != null) {
-					Object attr = stop.getAttributes().getAttribute(linkIdAttribute);
-					if (attr != null) {
-						stopFacility = new ChangedLinkFacility(stop, Id.create(attr.toString(), Link.class));
-					}
-				}
+				Facility stopFacility = getStopFacility(stop, linkIdAttribute);
 
 				List<? extends PlanElement> routeParts;
 				RoutingModule module = this.routingModules.get(mode);
@@ -279,47 +252,78 @@ public class SBBIntermodalRaptorStopFinder implements RaptorStopFinder {
 					}
 				}
 				if (stopFacility != stop) {
-					if (direction == Direction.ACCESS) {
-						Leg transferLeg = PopulationUtils.createLeg(SBBModes.ACCESS_EGRESS_WALK);
-						Route transferRoute = RouteUtils.createGenericRouteImpl(stopFacility.getLinkId(), stop.getLinkId());
-						double transferTime = 0.0;
-						if (useMinimalTransferTimes) {
-							transferTime = this.getMinimalTransferTime(stop);
-						}
-						transferTime += this.getStopAccessTime(stop, mode);
-						transferRoute.setTravelTime(transferTime);
-						transferRoute.setDistance(0);
-						transferLeg.setRoute(transferRoute);
-						transferLeg.setTravelTime(transferTime);
-
-						List<PlanElement> tmp = new ArrayList<>(routeParts.size() + 1);
-						tmp.addAll(routeParts);
-						tmp.add(transferLeg);
-						routeParts = tmp;
-					} else {
-						Leg transferLeg = PopulationUtils.createLeg(SBBModes.ACCESS_EGRESS_WALK);
-						Route transferRoute = RouteUtils.createGenericRouteImpl(stop.getLinkId(), stopFacility.getLinkId());
-						double transferTime = 0.0;
-						if (useMinimalTransferTimes) {
-							transferTime = this.getMinimalTransferTime(stop);
-						}
-						transferTime += this.getStopAccessTime(stop, mode);
-						transferRoute.setTravelTime(transferTime);
-						transferRoute.setDistance(0);
-						transferLeg.setRoute(transferRoute);
-						transferLeg.setTravelTime(transferTime);
-
-						List<PlanElement> tmp = new ArrayList<>(routeParts.size() + 1);
-						tmp.add(transferLeg);
-						tmp.addAll(routeParts);
-						routeParts = tmp;
-					}
+					routeParts = addTransferLeg(routeParts, stop, stopFacility, mode, direction, useMinimalTransferTimes);
 				}
 				RaptorIntermodalAccessEgress.RIntermodalAccessEgress accessEgress = this.intermodalAE.calcIntermodalAccessEgress(routeParts, parameters, person, direction);
 				InitialStop iStop = new InitialStop(stop, accessEgress.disutility, accessEgress.travelTime, accessEgress.routeParts);
 				initialStops.add(iStop);
+				if (candidates != null) {
+					Leg leg = TripStructureUtils.getLegs(accessEgress.routeParts).stream().filter(l -> l.getMode().equals(mode)).findFirst().orElseThrow(RuntimeException::new);
+					candidates.add(stop, accessEgress.disutility, accessEgress.travelTime, leg.getTravelTime().seconds(), leg.getRoute().getDistance());
+				}
 			}
 		}
+		if (candidates != null) {
+			this.initialStopCache.put(facility, mode, direction, candidates.trim());
+		}
+	}
+
+	private void addCachedInitialStops(Facility facility, double departureTime, Direction direction, String mode, String linkIdAttribute, boolean useMinimalTransferTimes,
+			IntermodalInitialStopCache.Candidates candidates, List<InitialStop> initialStops) {
+		for (int i = 0; i < candidates.size(); i++) {
+			TransitStopFacility stop = candidates.stops[i];
+			Facility stopFacility = getStopFacility(stop, linkIdAttribute);
+			List<PlanElement> routeParts = new ArrayList<>(2);
+			if (direction == Direction.ACCESS) {
+				Leg leg = createLeg(mode, facility.getLinkId(), stopFacility.getLinkId(), candidates.legTravelTimes[i], candidates.legDistances[i]);
+				leg.setDepartureTime(departureTime);
+				routeParts.add(leg);
+			} else {
+				routeParts.add(createLeg(mode, stopFacility.getLinkId(), facility.getLinkId(), candidates.legTravelTimes[i], candidates.legDistances[i]));
+			}
+			List<? extends PlanElement> stopRouteParts = routeParts;
+			if (stopFacility != stop) {
+				stopRouteParts = addTransferLeg(routeParts, stop, stopFacility, mode, direction, useMinimalTransferTimes);
+			}
+			initialStops.add(new InitialStop(stop, candidates.disutilities[i], candidates.travelTimes[i], stopRouteParts));
+		}
+	}
+
+	private Facility getStopFacility(TransitStopFacility stop, String linkIdAttribute) {
+		if (linkIdAttribute != null) {
+			Object attr = stop.getAttributes().getAttribute(linkIdAttribute);
+			if (attr != null) {
+				return new ChangedLinkFacility(stop, Id.create(attr.toString(), Link.class));
+			}
+		}
+		return stop;
+	}
+
+	private List<? extends PlanElement> addTransferLeg(List<? extends PlanElement> routeParts, TransitStopFacility stop, Facility stopFacility, String mode, Direction direction,
+			boolean useMinimalTransferTimes) {
+		Leg transferLeg = PopulationUtils.createLeg(SBBModes.ACCESS_EGRESS_WALK);
+		Route transferRoute = direction == Direction.ACCESS
+				? RouteUtils.createGenericRouteImpl(stopFacility.getLinkId(), stop.getLinkId())
+				: RouteUtils.createGenericRouteImpl(stop.getLinkId(), stopFacility.getLinkId());
+		double transferTime = 0.0;
+		if (useMinimalTransferTimes) {
+			transferTime = this.getMinimalTransferTime(stop);
+		}
+		transferTime += this.getStopAccessTime(stop, mode);
+		transferRoute.setTravelTime(transferTime);
+		transferRoute.setDistance(0);
+		transferLeg.setRoute(transferRoute);
+		transferLeg.setTravelTime(transferTime);
+
+		List<PlanElement> tmp = new ArrayList<>(routeParts.size() + 1);
+		if (direction == Direction.ACCESS) {
+			tmp.addAll(routeParts);
+			tmp.add(transferLeg);
+		} else {
+			tmp.add(transferLeg);
+			tmp.addAll(routeParts);
+		}
+		return tmp;
 	}
 	
 	private double getStopAccessTime(TransitStopFacility stop, String mode) {
@@ -340,12 +344,9 @@ public class SBBIntermodalRaptorStopFinder implements RaptorStopFinder {
 
         Id<Link> startLink = backwards ? actFacility.getLinkId() : stopFacility.getLinkId();
         Id<Link> endLink = backwards ? stopFacility.getLinkId() : actFacility.getLinkId();
-        List<PlanElement> travel = new ArrayList<>();
         double accessTime = backwards ? characteristics.egressTime() : characteristics.accessTime();
         double egressTime = backwards ? characteristics.accessTime() : characteristics.egressTime();
 
-        Leg leg = PopulationUtils.createLeg(mode);
-        Route route = RouteUtils.createGenericRouteImpl(startLink, endLink);
         double travelTime = characteristics.travelTime();
         if (!Double.isNaN(accessTime)) {
             travelTime += accessTime;
@@ -353,17 +354,25 @@ public class SBBIntermodalRaptorStopFinder implements RaptorStopFinder {
         if (!Double.isNaN(egressTime)) {
             travelTime += egressTime;
         }
-        route.setTravelTime(travelTime);
-        route.setDistance(characteristics.distance());
-        leg.setTravelTime(travelTime);
-		leg.setRoute(route);
+        Leg leg = createLeg(mode, startLink, endLink, travelTime, characteristics.distance());
 		leg.setDepartureTime(departureTime);
+		List<PlanElement> travel = new ArrayList<>();
 		travel.add(leg);
 
 		return travel;
 
 	}
 
+	private static Leg createLeg(String mode, Id<Link> startLink, Id<Link> endLink, double travelTime, double distance) {
+		Leg leg = PopulationUtils.createLeg(mode);
+		Route route = RouteUtils.createGenericRouteImpl(startLink, endLink);
+		route.setTravelTime(travelTime);
+		route.setDistance(distance);
+		leg.setTravelTime(travelTime);
+		leg.setRoute(route);
+		return leg;
+	}
+
 	private boolean doUseMinimalTransferTimes(String mode) {
 		var params = this.intermodalModeParams.get(mode);
 		return (params != null && params.doUseMinimalTransferTimes());
@@ -19,16 +19,58 @@
  * *********************************************************************** */
 package ch.sbb.matsim.routing.pt.raptor;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.function.Supplier;
 
 import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorCore.PathElement;
+import jakarta.inject.Inject;
+import org.matsim.api.core.v01.Id;
+import org.matsim.pt.transitSchedule.api.TransitLine;
+import org.matsim.pt.transitSchedule.api.TransitRoute;
+import org.matsim.pt.transitSchedule.api.TransitSchedule;
 
 
 /**
+ * The transport modes of the transit routes are mapped to integer codes when the calculator is created, so the mode-to-mode transfer penalties can be
+ * looked up in a matrix instead of by mode names. Routes which are not part of the schedule fall back to the lookup by mode names.
+ *
  * @author mrieser / Simunto
  */
 public class SBBRaptorTransferCostCalculator implements RaptorTransferCostCalculator {
 	private static final int TIME_UNDEFINED =  Integer.MIN_VALUE;
+	private static final int NO_MODE = -1;
+
+	private final String[] modes;
+	private final TransitRoute[] routes;
+	private final int[] modePerRoute;
+	private volatile PenaltyMatrix penaltyMatrix = null;
+	private final ThreadLocal<FirstPECache> firstPECache = ThreadLocal.withInitial(FirstPECache::new);
+
+	public SBBRaptorTransferCostCalculator() {
+		this.modes = new String[0];
+		this.routes = new TransitRoute[0];
+		this.modePerRoute = new int[0];
+	}
+
+	@Inject
+	public SBBRaptorTransferCostCalculator(TransitSchedule schedule) {
+		Map<String, Integer> modeCodes = new HashMap<>();
+		int routeCount = Id.getNumberOfIds(TransitRoute.class);
+		this.routes = new TransitRoute[routeCount];
+		this.modePerRoute = new int[routeCount];
+		Arrays.fill(this.modePerRoute, NO_MODE);
+		for (TransitLine line : schedule.getTransitLines().values()) {
+			for (TransitRoute route : line.getRoutes().values()) {
+				int index = route.getId().index();
+				this.routes[index] = route;
+				this.modePerRoute[index] = modeCodes.computeIfAbsent(route.getTransportMode(), mode -> modeCodes.size());
+			}
+		}
+		this.modes = new String[modeCodes.size()];
+		modeCodes.forEach((mode, code) -> this.modes[code] = mode);
+	}
 
 	@Override
 	public double calcTransferCost(SwissRailRaptorCore.PathElement currentPE, Supplier<Transfer> transfer, RaptorStaticConfig staticConfig, RaptorParameters raptorParams, int totalTravelTime, int transferCount, double existingTransferCosts, double currentTime) {
@@ -39,8 +81,10 @@ public class SBBRaptorTransferCostCalculator implements RaptorTransferCostCalcul
 
 		if (staticConfig.isUseModeToModeTransferPenalty()) {
 			double cost;
-			double transferCostModeToMode = staticConfig.getModeToModeTransferPenalty(transfer.get().getFromTransitRoute().getTransportMode(), transfer.get().getToTransitRoute().getTransportMode());
-			SwissRailRaptorCore.PathElement firstPEOfTripPart = getFirstPEOfTripPart(currentPE, staticConfig);
+			double[][] penalties = getPenalties(staticConfig);
+			Transfer t = transfer.get();
+			double transferCostModeToMode = getModeToModeTransferPenalty(t.getFromTransitRoute(), t.getToTransitRoute(), staticConfig, penalties);
+			SwissRailRaptorCore.PathElement firstPEOfTripPart = getFirstPEOfTripPart(currentPE, staticConfig, penalties);
 			double baseArrivalTransferCost = firstPEOfTripPart.arrivalTransferCost;
 			int transferCountSinceModeChange = transferCount;
 			double travelTimeSinceModeChange = totalTravelTime;
@@ -48,7 +92,7 @@ public class SBBRaptorTransferCostCalculator implements RaptorTransferCostCalcul
 				if (currentPE.firstDepartureTime != TIME_UNDEFINED) {
 					currentTime = currentPE.firstDepartureTime + totalTravelTime;
 				}
-				travelTimeSinceModeChange = currentTime + transfer.get().getTransferTime() - firstPEOfTripPart.arrivalTime;
+				travelTimeSinceModeChange = currentTime + t.getTransferTime() - firstPEOfTripPart.arrivalTime;
 				transferCountSinceModeChange = transferCount - firstPEOfTripPart.transferCount;
 			}
 			double singleTransferCost = calcSingleTransferCost(transferCostBase, transferCostPerHour, transferCostMin, transferCostMax, travelTimeSinceModeChange);
@@ -69,16 +113,59 @@ public class SBBRaptorTransferCostCalculator implements RaptorTransferCostCalcul
 	}
 
 	public PathElement getFirstPEOfTripPart(SwissRailRaptorCore.PathElement fromPE, RaptorStaticConfig staticConfig) {
+		return getFirstPEOfTripPart(fromPE, staticConfig, getPenalties(staticConfig));
+	}
+
+	/**
+	 * The raptor calculates the costs of all transfers from a stop with the same path element, so the result of the last path element is kept per thread.
+	 */
+	private PathElement getFirstPEOfTripPart(PathElement fromPE, RaptorStaticConfig staticConfig, double[][] penalties) {
+		FirstPECache cache = this.firstPECache.get();
+		if (cache.fromPE == fromPE && cache.staticConfig == staticConfig) {
+			return cache.firstPE;
+		}
 		PathElement checkElement = fromPE;
-		String mode = checkElement.toRouteStop.route.getTransportMode();
-		while ((checkElement.comingFrom != null) && ((staticConfig.isUseModeToModeTransferPenalty()& checkElement.isTransfer) ? staticConfig.getModeToModeTransferPenalty(checkElement.comingFrom.toRouteStop.route.getTransportMode(), mode):0)==0) {
-			mode = checkElement.toRouteStop.route.getTransportMode();
+		TransitRoute route = checkElement.toRouteStop.route;
+		while ((checkElement.comingFrom != null) && ((staticConfig.isUseModeToModeTransferPenalty() & checkElement.isTransfer) ? getModeToModeTransferPenalty(checkElement.comingFrom.toRouteStop.route, route, staticConfig, penalties) : 0) == 0) {
+			route = checkElement.toRouteStop.route;
 			checkElement = checkElement.comingFrom;
 		}
 
+		cache.fromPE = fromPE;
+		cache.staticConfig = staticConfig;
+		cache.firstPE = checkElement;
 		return checkElement;
 	}
 
+	private double getModeToModeTransferPenalty(TransitRoute fromRoute, TransitRoute toRoute, RaptorStaticConfig staticConfig, double[][] penalties) {
+		int fromMode = getMode(fromRoute);
+		int toMode = getMode(toRoute);
+		if (fromMode == NO_MODE || toMode == NO_MODE) {
+			return staticConfig.getModeToModeTransferPenalty(fromRoute.getTransportMode(), toRoute.getTransportMode());
+		}
+		return penalties[fromMode][toMode];
+	}
+
+	private int getMode(TransitRoute route) {
+		int index = route.getId().index();
+		return index < this.routes.length && this.routes[index] == route ? this.modePerRoute[index] : NO_MODE;
+	}
+
+	private double[][] getPenalties(RaptorStaticConfig staticConfig) {
+		PenaltyMatrix matrix = this.penaltyMatrix;
+		if (matrix == null || matrix.staticConfig != staticConfig) {
+			double[][] penalties = new double[this.modes.length][this.modes.length];
+			for (int from = 0; from < this.modes.length; from++) {
+				for (int to = 0; to < this.modes.length; to++) {
+					penalties[from][to] = staticConfig.getModeToModeTransferPenalty(this.modes[from], this.modes[to]);
+				}
+			}
+			matrix = new PenaltyMatrix(staticConfig, penalties);
+			this.penaltyMatrix = matrix;
+		}
+		return matrix.penalties;
+	}
+
 	private double calcSingleTransferCost(double costBase, double costPerHour, double costMin, double costMax, double travelTime) {
 		double cost = costBase + costPerHour / 3600 * travelTime;
 		double max = Math.max(costMin, costMax);
@@ -92,4 +179,14 @@ public class SBBRaptorTransferCostCalculator implements RaptorTransferCostCalcul
 		return cost;
 	}
 
+	private record PenaltyMatrix(RaptorStaticConfig staticConfig, double[][] penalties) {
+
+	}
+
+	private static final class FirstPECache {
+		private PathElement fromPE;
+		private RaptorStaticConfig staticConfig;
+		private PathElement firstPE;
+	}
+
 }
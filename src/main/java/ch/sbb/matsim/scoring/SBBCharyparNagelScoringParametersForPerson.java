@@ -18,8 +18,10 @@ import org.matsim.core.scoring.functions.ModeUtilityParameters;
 import org.matsim.core.scoring.functions.ScoringParameters;
 import org.matsim.core.scoring.functions.ScoringParametersForPerson;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -29,6 +31,10 @@ import java.util.concurrent.ConcurrentHashMap;
  * 		<p>
  * 		extended the code to allow customized personal scoring parameters depending on different behaviorally homogeneous groups. extended the code to reduce memory consumption when a large number of
  * 		actiivty types is used.
+ * 		<p>
+ * 		Persons with the same subpopulation, behavior groups and activity types share the same scoring parameters. The parameters can be requested from
+ * 		several threads concurrently. Nothing is stored per person, the signature of a person is created on each request and resolved through the shared
+ * 		parameters.
  */
 
 public class SBBCharyparNagelScoringParametersForPerson implements ScoringParametersForPerson {
@@ -37,10 +43,12 @@ public class SBBCharyparNagelScoringParametersForPerson implements ScoringParame
 
 	private final ScoringConfigGroup config;
 	private final ScenarioConfigGroup scConfig;
-	private final Map<Person, SBBScoringParameters> paramsPerPerson = new LinkedHashMap<>();
 	private final SBBBehaviorGroupsConfigGroup behaviorGroupsConfigGroup;
+	private final List<SBBBehaviorGroupsConfigGroup.BehaviorGroupParams> behaviorGroupParams;
+	private final List<Map<String, SBBBehaviorGroupsConfigGroup.PersonGroupValues>> personGroupsByAttribute = new ArrayList<>();
 
 	private final Map<ComparableActivityParams, ComparableActivityParams> actParamCache = new ConcurrentHashMap<>();
+	private final Map<ParametersSignature, SBBScoringParameters> paramsPerSignature = new ConcurrentHashMap<>();
 
 	public SBBCharyparNagelScoringParametersForPerson(Scenario scenario) {
 		this(scenario.getConfig().plans(),
@@ -57,6 +65,10 @@ public class SBBCharyparNagelScoringParametersForPerson implements ScoringParame
 		this.config = ScoringConfigGroup;
 		this.scConfig = scenarioConfigGroup;
 		this.behaviorGroupsConfigGroup = behaviorGroupsConfigGroup;
+		this.behaviorGroupParams = new ArrayList<>(behaviorGroupsConfigGroup.getBehaviorGroupParams().values());
+		for (SBBBehaviorGroupsConfigGroup.BehaviorGroupParams bgp : this.behaviorGroupParams) {
+			this.personGroupsByAttribute.add(bgp.getPersonGroupByAttribute());
+		}
 	}
 
 	@Override
@@ -66,18 +78,19 @@ public class SBBCharyparNagelScoringParametersForPerson implements ScoringParame
 	}
 
 	public SBBScoringParameters getSBBScoringParameters(Person person) {
-		SBBScoringParameters sbbParams = this.paramsPerPerson.get(person);
-		if (sbbParams != null) {
-			return sbbParams;
-		}
-
-		final String subpopulation = PopulationUtils.getSubpopulation(person);
+		// only threads with a new signature wait for each other, lookups of a known signature do not lock
+		return this.paramsPerSignature.computeIfAbsent(createSignature(person), this::buildSBBScoringParameters);
+	}
 
-		ScoringConfigGroup.ScoringParameterSet scoringParameters = this.config.getScoringParameters(subpopulation);
-		ScoringConfigGroup.ScoringParameterSet filteredParameters = (ScoringConfigGroup.ScoringParameterSet) this.config
-				.createParameterSet(ScoringConfigGroup.ScoringParameterSet.SET_TYPE);
+	private ParametersSignature createSignature(Person person) {
+		SBBBehaviorGroupsConfigGroup.PersonGroupValues[] personGroups = new SBBBehaviorGroupsConfigGroup.PersonGroupValues[this.behaviorGroupParams.size()];
+		for (int i = 0; i < personGroups.length; i++) {
+			Object personAttributeObj = person.getAttributes().getAttribute(this.behaviorGroupParams.get(i).getPersonAttribute());
+			if (personAttributeObj != null) {
+				personGroups[i] = this.personGroupsByAttribute.get(i).get(personAttributeObj.toString());
+			}
+		}
 
-		// make a (filtered) duplicate. Not very nice as it is not very future-proof, but I didn't find a better way to achieve the goal
 		Set<String> usedActTypes = new HashSet<>();
 		for (PlanElement pe : person.getSelectedPlan().getPlanElements()) {
 			if (pe instanceof Activity) {
@@ -85,6 +98,18 @@ public class SBBCharyparNagelScoringParametersForPerson implements ScoringParame
 			}
 		}
 		usedActTypes.addAll(SBBActivities.stageActivityTypeList);
+		return new ParametersSignature(PopulationUtils.getSubpopulation(person), Arrays.asList(personGroups), usedActTypes);
+	}
+
+	private SBBScoringParameters buildSBBScoringParameters(ParametersSignature signature) {
+		final String subpopulation = signature.subpopulation();
+
+		ScoringConfigGroup.ScoringParameterSet scoringParameters = this.config.getScoringParameters(subpopulation);
+		ScoringConfigGroup.ScoringParameterSet filteredParameters = (ScoringConfigGroup.ScoringParameterSet) this.config
+				.createParameterSet(ScoringConfigGroup.ScoringParameterSet.SET_TYPE);
+
+		// make a (filtered) duplicate. Not very nice as it is not very future-proof, but I didn't find a better way to achieve the goal
+		Set<String> usedActTypes = signature.activityTypes();
 		filteredParameters.setSubpopulation(scoringParameters.getSubpopulation());
 		filteredParameters.setMarginalUtlOfWaiting_utils_hr(scoringParameters.getMarginalUtlOfWaiting_utils_hr());
 		filteredParameters.setMarginalUtlOfWaitingPt_utils_hr(scoringParameters.getMarginalUtlOfWaitingPt_utils_hr());
@@ -112,15 +137,7 @@ public class SBBCharyparNagelScoringParametersForPerson implements ScoringParame
 		double transferUtilityBase = this.behaviorGroupsConfigGroup.getBaseTransferUtility();
 		double transferUtilityPerTravelTime = this.behaviorGroupsConfigGroup.getTransferUtilityPerTravelTime_utils_hr();
 
-		for (SBBBehaviorGroupsConfigGroup.BehaviorGroupParams bgp : behaviorGroupsConfigGroup.getBehaviorGroupParams().values()) {
-			Object personAttributeObj = person.getAttributes().getAttribute(bgp.getPersonAttribute());
-			if (personAttributeObj == null) {
-				continue;
-			}
-
-			String personAttribute = personAttributeObj.toString();
-
-			SBBBehaviorGroupsConfigGroup.PersonGroupValues pgt = bgp.getPersonGroupByAttribute(personAttribute);
+		for (SBBBehaviorGroupsConfigGroup.PersonGroupValues pgt : signature.personGroups()) {
 			if (pgt == null) {
 				continue;
 			}
@@ -143,15 +160,7 @@ public class SBBCharyparNagelScoringParametersForPerson implements ScoringParame
 			double margUtilDistance = defaultModeParams.getMarginalUtilityOfDistance();
 			double monDistRate = defaultModeParams.getMonetaryDistanceRate();
 
-			for (SBBBehaviorGroupsConfigGroup.BehaviorGroupParams bgp : behaviorGroupsConfigGroup.getBehaviorGroupParams().values()) {
-				Object personAttributeObj = person.getAttributes().getAttribute(bgp.getPersonAttribute());
-				if (personAttributeObj == null) {
-					continue;
-				}
-
-				String personAttribute = personAttributeObj.toString();
-
-				SBBBehaviorGroupsConfigGroup.PersonGroupValues pgt = bgp.getPersonGroupByAttribute(personAttribute);
+			for (SBBBehaviorGroupsConfigGroup.PersonGroupValues pgt : signature.personGroups()) {
 				if (pgt == null) {
 					continue;
 				}
@@ -173,7 +182,7 @@ public class SBBCharyparNagelScoringParametersForPerson implements ScoringParame
 			modeParameteresBuilder.setMonetaryDistanceRate(monDistRate);
 			builder.getMatsimScoringParametersBuilder().setModeParameters(mode, modeParameteresBuilder.build());
 		}
-		sbbParams = builder.build();
+		SBBScoringParameters sbbParams = builder.build();
 
 		// make sure we re-use activity params when possible
 		Map<String, ActivityUtilityParameters> actParams = sbbParams.getMatsimScoringParameters().utilParams;
@@ -186,11 +195,17 @@ public class SBBCharyparNagelScoringParametersForPerson implements ScoringParame
 			actParams.replace(actType, params);
 		}
 
-		this.paramsPerPerson.put(person, sbbParams);
-
 		return sbbParams;
 	}
 
+	/**
+	 * Everything the scoring parameters of a person depend on. The person groups are the groups of the behavior groups in the order of the config, or
+	 * <code>null</code> if the person does not belong to any group of a behavior group.
+	 */
+	private record ParametersSignature(String subpopulation, List<SBBBehaviorGroupsConfigGroup.PersonGroupValues> personGroups, Set<String> activityTypes) {
+
+	}
+
 	private static class ComparableActivityParams {
 
 		final ActivityUtilityParameters params;
@@ -0,0 +1,185 @@
+package ch.sbb.matsim.zones;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.matsim.api.core.v01.Id;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Answers zone queries from a precomputed raster. Cells lying completely within a single zone and not touched by any other zone store the index of that zone,
+ * cells outside of all zone envelopes are known to have no zone. The remaining cells along zone borders, and cells where zones overlap, fall back to an exact
+ * query of the underlying zones, so the results are always the same as the ones of {@link Zones#findZone(double, double)} of the underlying zones.
+ * <p>
+ * Used instead of the zones when a raster cell size is set in the {@link ch.sbb.matsim.config.ZonesListConfigGroup}.
+ */
+public class RasterizedZones implements Zones {
+
+	public static final double DEFAULT_CELL_SIZE = 250.0;
+	private static final Logger log = LogManager.getLogger(RasterizedZones.class);
+	private static final int NO_ZONE = -1;
+	private static final int BORDER = -2;
+
+	private final Zones zones;
+	private final Zone[] zoneArray;
+	private final double cellSize;
+	private final double minX;
+	private final double minY;
+	private final int columns;
+	private final int rows;
+	private final int[] cells;
+
+	public RasterizedZones(Zones zones) {
+		this(zones, DEFAULT_CELL_SIZE);
+	}
+
+	public RasterizedZones(Zones zones, double cellSize) {
+		this.zones = zones;
+		this.cellSize = cellSize;
+		List<Zone> zoneList = zones.getZones();
+		this.zoneArray = zoneList.toArray(new Zone[0]);
+
+		Envelope extent = new Envelope();
+		for (Zone zone : this.zoneArray) {
+			extent.expandToInclude(zone.getEnvelope());
+		}
+		if (extent.isNull()) {
+			this.minX = 0;
+			this.minY = 0;
+			this.columns = 0;
+			this.rows = 0;
+		} else {
+			this.minX = extent.getMinX();
+			this.minY = extent.getMinY();
+			this.columns = (int) (extent.getWidth() / cellSize) + 1;
+			this.rows = (int) (extent.getHeight() / cellSize) + 1;
+		}
+		this.cells = new int[this.columns * this.rows];
+		Arrays.fill(this.cells, NO_ZONE);
+
+		long start = System.currentTimeMillis();
+		CellCoverage[] coverages = IntStream.range(0, this.zoneArray.length).parallel().mapToObj(i -> findCells(this.zoneArray[i])).toArray(CellCoverage[]::new);
+		int[] zoneCounts = new int[this.cells.length];
+		for (CellCoverage coverage : coverages) {
+			for (int cell : coverage.covered) {
+				zoneCounts[cell]++;
+			}
+			for (int cell : coverage.intersected) {
+				zoneCounts[cell]++;
+			}
+		}
+		for (Zone zone : this.zoneArray) {
+			Envelope env = zone.getEnvelope();
+			for (int row = getRow(env.getMinY()); row <= getRow(env.getMaxY()); row++) {
+				for (int column = getColumn(env.getMinX()); column <= getColumn(env.getMaxX()); column++) {
+					this.cells[row * this.columns + column] = BORDER;
+				}
+			}
+		}
+		int coveredCount = 0;
+		for (int i = 0; i < coverages.length; i++) {
+			for (int cell : coverages[i].covered) {
+				if (zoneCounts[cell] == 1) {
+					this.cells[cell] = i;
+					coveredCount++;
+				}
+			}
+		}
+		log.info("Rasterized " + this.zoneArray.length + " zones into " + this.cells.length + " cells of " + cellSize + "m, " + coveredCount
+				+ " cells lie completely within a single zone. Took " + (System.currentTimeMillis() - start) / 1000 + "s.");
+	}
+
+	/**
+	 * Finds the cells lying completely within the zone, and the cells only partially intersected by it. Zones without geometry are treated as if they
+	 * intersected all cells of their envelope.
+	 */
+	private CellCoverage findCells(Zone zone) {
+		Geometry geometry = zone.getGeometry();
+		Envelope env = zone.getEnvelope();
+		IntStream.Builder covered = IntStream.builder();
+		IntStream.Builder intersected = IntStream.builder();
+		PreparedGeometry prepared = geometry == null ? null : PreparedGeometryFactory.prepare(geometry);
+		for (int row = getRow(env.getMinY()); row <= getRow(env.getMaxY()); row++) {
+			double y = this.minY + row * this.cellSize;
+			for (int column = getColumn(env.getMinX()); column <= getColumn(env.getMaxX()); column++) {
+				int index = row * this.columns + column;
+				if (prepared == null) {
+					intersected.add(index);
+					continue;
+				}
+				double x = this.minX + column * this.cellSize;
+				Geometry cell = geometry.getFactory().toGeometry(new Envelope(x, x + this.cellSize, y, y + this.cellSize));
+				if (prepared.containsProperly(cell)) {
+					covered.add(index);
+				} else if (prepared.intersects(cell)) {
+					intersected.add(index);
+				}
+			}
+		}
+		return new CellCoverage(covered.build().toArray(), intersected.build().toArray());
+	}
+
+	private int getColumn(double x) {
+		return (int) Math.floor((x - this.minX) / this.cellSize);
+	}
+
+	private int getRow(double y) {
+		return (int) Math.floor((y - this.minY) / this.cellSize);
+	}
+
+	@Override
+	public Id<Zones> getId() {
+		return this.zones.getId();
+	}
+
+	@Override
+	public int size() {
+		return this.zones.size();
+	}
+
+	@Override
+	public Zone findZone(double x, double y) {
+		int column = getColumn(x);
+		int row = getRow(y);
+		if (column < 0 || row < 0 || column >= this.columns || row >= this.rows) {
+			return null;
+		}
+		int value = this.cells[row * this.columns + column];
+		if (value >= 0) {
+			return this.zoneArray[value];
+		}
+		if (value == NO_ZONE) {
+			return null;
+		}
+		return this.zones.findZone(x, y);
+	}
+
+	@Override
+	public Zone findNearestZone(double x, double y, double maxDistance) {
+		Zone zone = findZone(x, y);
+		if (zone != null) {
+			return zone;
+		}
+		return this.zones.findNearestZone(x, y, maxDistance);
+	}
+
+	@Override
+	public Zone getZone(Id<Zone> id) {
+		return this.zones.getZone(id);
+	}
+
+	@Override
+	public List<Zone> getZones() {
+		return this.zones.getZones();
+	}
+
+	private record CellCoverage(int[] covered, int[] intersected) {
+
+	}
+}
@@ -47,4 +47,9 @@ public class SimpleFeatureZone implements Zone {
 		Geometry geom = (Geometry) this.feature.getDefaultGeometry();
 		return geom.distance(pt);
 	}
+
+	@Override
+	public Geometry getGeometry() {
+		return this.feature == null ? null : (Geometry) this.feature.getDefaultGeometry();
+	}
 }
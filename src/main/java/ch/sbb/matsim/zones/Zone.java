@@ -1,6 +1,7 @@
 package ch.sbb.matsim.zones;
 
 import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.Point;
 import org.matsim.api.core.v01.Id;
 
@@ -19,4 +20,6 @@ public interface Zone {
 
 	double distance(Point pt);
 
+	Geometry getGeometry();
+
 }
@@ -0,0 +1,110 @@
+package ch.sbb.matsim.zones;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.facilities.ActivityFacilities;
+import org.matsim.facilities.ActivityFacility;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Zone of every link and every facility of a scenario for one set of {@link Zones}, stored as dense arrays of zone indices indexed by the link and facility id
+ * indices. Links are assigned by their coordinate (the middle of the link), facilities by their coordinate.
+ * <p>
+ * Links and facilities that were created after the assignment was computed, as well as queries with coordinates that differ from the facility coordinate, fall
+ * back to {@link Zones#findZone(Coord)}. An assignment created with {@link #ZoneAssignment(Zones)} contains no precomputed data and always falls back.
+ */
+public class ZoneAssignment {
+
+	private static final int NO_ZONE = -1;
+	private static final int NOT_ASSIGNED = -2;
+
+	private final Zones zones;
+	private final Zone[] zoneArray;
+	private final int[] linkZones;
+	private final int[] facilityZones;
+	private final double[] facilityX;
+	private final double[] facilityY;
+
+	public ZoneAssignment(Zones zones) {
+		this.zones = zones;
+		this.zoneArray = new Zone[0];
+		this.linkZones = new int[0];
+		this.facilityZones = new int[0];
+		this.facilityX = new double[0];
+		this.facilityY = new double[0];
+	}
+
+	public ZoneAssignment(Zones zones, Network network, ActivityFacilities facilities) {
+		this.zones = zones;
+		this.zoneArray = zones.getZones().toArray(new Zone[0]);
+		Map<Zone, Integer> zoneIndices = new IdentityHashMap<>();
+		for (int i = 0; i < this.zoneArray.length; i++) {
+			zoneIndices.put(this.zoneArray[i], i);
+		}
+
+		this.linkZones = new int[Id.getNumberOfIds(Link.class)];
+		Arrays.fill(this.linkZones, NOT_ASSIGNED);
+		network.getLinks().values().parallelStream().forEach(link -> this.linkZones[link.getId().index()] = findZoneIndex(link.getCoord(), zoneIndices));
+
+		int facilityCount = Id.getNumberOfIds(ActivityFacility.class);
+		this.facilityZones = new int[facilityCount];
+		Arrays.fill(this.facilityZones, NOT_ASSIGNED);
+		this.facilityX = new double[facilityCount];
+		this.facilityY = new double[facilityCount];
+		if (facilities != null) {
+			facilities.getFacilities().values().parallelStream()
+					.filter(facility -> facility.getCoord() != null)
+					.forEach(facility -> {
+						int index = facility.getId().index();
+						this.facilityX[index] = facility.getCoord().getX();
+						this.facilityY[index] = facility.getCoord().getY();
+						this.facilityZones[index] = findZoneIndex(facility.getCoord(), zoneIndices);
+					});
+		}
+	}
+
+	private int findZoneIndex(Coord coord, Map<Zone, Integer> zoneIndices) {
+		Zone zone = this.zones.findZone(coord);
+		if (zone == null) {
+			return NO_ZONE;
+		}
+		// zones not contained in getZones() are not assigned and queried again
+		return zoneIndices.getOrDefault(zone, NOT_ASSIGNED);
+	}
+
+	public Zones getZones() {
+		return this.zones;
+	}
+
+	public Zone getZoneForLink(Link link) {
+		int index = link.getId().index();
+		if (index < this.linkZones.length && this.linkZones[index] != NOT_ASSIGNED) {
+			return toZone(this.linkZones[index]);
+		}
+		return this.zones.findZone(link.getCoord());
+	}
+
+	/**
+	 * Returns the zone of the facility if the given coordinate is the coordinate of the facility, otherwise the zone containing the coordinate.
+	 *
+	 * @param facilityId may be <code>null</code>
+	 */
+	public Zone getZone(Id<ActivityFacility> facilityId, Coord coord) {
+		if (facilityId != null) {
+			int index = facilityId.index();
+			if (index < this.facilityZones.length && this.facilityZones[index] != NOT_ASSIGNED && this.facilityX[index] == coord.getX() && this.facilityY[index] == coord.getY()) {
+				return toZone(this.facilityZones[index]);
+			}
+		}
+		return this.zones.findZone(coord);
+	}
+
+	private Zone toZone(int zoneIndex) {
+		return zoneIndex == NO_ZONE ? null : this.zoneArray[zoneIndex];
+	}
+}
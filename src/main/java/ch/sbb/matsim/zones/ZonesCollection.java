@@ -2,16 +2,23 @@ package ch.sbb.matsim.zones;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.logging.log4j.LogManager;
 import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.facilities.ActivityFacilities;
 
 /**
  * A data container to store one or more collection of zones. Zones typically come from Shapefiles and have an Id.
+ * <p>
+ * For every collection of zones, a {@link ZoneAssignment} can be precomputed, which resolves the zones of links and facilities with a single array lookup.
  *
  * @author mrieser
  */
 public class ZonesCollection {
 
 	private final Map<Id<Zones>, Zones> zonesMap;
+	private final Map<Id<Zones>, ZoneAssignment> assignments = new ConcurrentHashMap<>();
 
 	public ZonesCollection() {
 		this.zonesMap = new HashMap<>();
@@ -23,6 +30,30 @@ public class ZonesCollection {
 
 	public void addZones(Zones zones) {
 		this.zonesMap.put(zones.getId(), zones);
+		this.assignments.remove(zones.getId());
+	}
+
+	/**
+	 * Precomputes the zone of every link and facility for all zones in this collection.
+	 */
+	public void precomputeZoneAssignments(Network network, ActivityFacilities facilities) {
+		for (Zones zones : this.zonesMap.values()) {
+			long start = System.currentTimeMillis();
+			this.assignments.put(zones.getId(), new ZoneAssignment(zones, network, facilities));
+			LogManager.getLogger(ZonesCollection.class).info("Assigned links and facilities to zones " + zones.getId() + " in " + (System.currentTimeMillis() - start) / 1000 + "s.");
+		}
+	}
+
+	/**
+	 * @return the precomputed zone assignment, or an assignment that queries the zones directly if none was precomputed. <code>null</code> if there are no
+	 * zones with this id.
+	 */
+	public ZoneAssignment getZoneAssignment(Id<Zones> id) {
+		Zones zones = getZones(id);
+		if (zones == null) {
+			return null;
+		}
+		return this.assignments.computeIfAbsent(id, zonesId -> new ZoneAssignment(zones));
 	}
 
 	/**
@@ -30,6 +61,7 @@ public class ZonesCollection {
 	 * @return <code>true</code> if the zones were part of the collection and were removed, <code>false</code> otherwise.
 	 */
 	public boolean removeZones(Zones zones) {
+		this.assignments.remove(zones.getId());
 		return this.zonesMap.remove(zones.getId()) != null;
 	}
 
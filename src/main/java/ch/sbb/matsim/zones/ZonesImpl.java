@@ -5,27 +5,42 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import org.locationtech.jts.algorithm.locate.IndexedPointInAreaLocator;
 import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Location;
 import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
 import org.locationtech.jts.index.SpatialIndex;
 import org.locationtech.jts.index.quadtree.Quadtree;
+import org.locationtech.jts.index.strtree.STRtree;
 import org.matsim.api.core.v01.Id;
 import org.matsim.core.utils.geometry.geotools.MGC;
 
 /**
  * A collection of zones.
+ * <p>
+ * By default, the zone envelopes are stored in a {@link Quadtree}. Optionally, the zones can be bulk-loaded into an {@link STRtree} with an indexed
+ * point-in-polygon locator per zone, which makes containment tests against detailed zone borders considerably faster. The index and the locators are built
+ * completely on the first query and are immutable afterwards, so they can be queried concurrently by many threads without locking.
  *
  * @author mrieser
  */
 public class ZonesImpl implements Zones {
 
 	private final Id<Zones> id;
+	private final boolean usePreparedGeometries;
 	private final List<Zone> zones = new ArrayList<>();
-	private ConcurrentHashMap<Id<Zone>, Zone> lookup;
-	private SpatialIndex qt = null;
+	private volatile ConcurrentHashMap<Id<Zone>, Zone> lookup;
+	private volatile SpatialIndex qt = null;
 
 	public ZonesImpl(Id<Zones> id) {
+		this(id, false);
+	}
+
+	public ZonesImpl(Id<Zones> id, boolean usePreparedGeometries) {
 		this.id = id;
+		this.usePreparedGeometries = usePreparedGeometries;
 	}
 
 	@Override
@@ -47,6 +62,8 @@ public class ZonesImpl implements Zones {
 
 	public void clear() {
 		this.zones.clear();
+		this.qt = null;
+		this.lookup = null;
 	}
 
 	@Override
@@ -60,9 +77,15 @@ public class ZonesImpl implements Zones {
 		Point pt = MGC.xy2Point(x, y);
 		List elements = qt.query(pt.getEnvelopeInternal());
 		for (Object o : elements) {
-			Zone z = (Zone) o;
-			if (z.contains(pt)) {
-				return z;
+			if (o instanceof PreparedZone pz) {
+				if (pz.contains(pt)) {
+					return pz.zone;
+				}
+			} else {
+				Zone z = (Zone) o;
+				if (z.contains(pt)) {
+					return z;
+				}
 			}
 		}
 		return null;
@@ -78,8 +101,15 @@ public class ZonesImpl implements Zones {
 		Zone nearestZone = null;
 		double nearestDistance = Double.POSITIVE_INFINITY;
 		for (Object o : elements) {
-			Zone z = (Zone) o;
-			double distance = z.distance(pt);
+			Zone z;
+			double distance;
+			if (o instanceof PreparedZone pz) {
+				z = pz.zone;
+				distance = pz.contains(pt) ? 0.0 : pz.geometry.distance(pt);
+			} else {
+				z = (Zone) o;
+				distance = z.distance(pt);
+			}
 			if (distance < nearestDistance) {
 				nearestZone = z;
 				nearestDistance = distance;
@@ -112,10 +142,21 @@ public class ZonesImpl implements Zones {
 		if (qt != null) {
 			return qt;
 		}
-		qt = new Quadtree();
-		for (Zone zone : this.zones) {
-			Envelope envelope = zone.getEnvelope();
-			qt.insert(envelope, zone);
+		if (this.usePreparedGeometries) {
+			STRtree strTree = new STRtree();
+			for (Zone zone : this.zones) {
+				Geometry geometry = zone.getGeometry();
+				Envelope envelope = zone.getEnvelope();
+				strTree.insert(envelope, geometry == null ? zone : PreparedZone.create(zone, geometry));
+			}
+			strTree.build();
+			qt = strTree;
+		} else {
+			qt = new Quadtree();
+			for (Zone zone : this.zones) {
+				Envelope envelope = zone.getEnvelope();
+				qt.insert(envelope, zone);
+			}
 		}
 		this.qt = qt;
 		return qt;
@@ -145,4 +186,22 @@ public class ZonesImpl implements Zones {
 	public List<Zone> getZones() {
 		return ImmutableList.copyOf(zones);
 	}
+
+	/**
+	 * Point-in-polygon tests use the {@link IndexedPointInAreaLocator} directly instead of {@link PreparedGeometry#intersects(Geometry)}, as the prepared
+	 * polygon hands out its locator through a synchronized getter on every query. The index of the locator is otherwise built lazily on the first query, so it
+	 * is built here, before the spatial index is published to the querying threads.
+	 */
+	private record PreparedZone(Zone zone, Geometry geometry, IndexedPointInAreaLocator locator) {
+
+		static PreparedZone create(Zone zone, Geometry geometry) {
+			IndexedPointInAreaLocator locator = new IndexedPointInAreaLocator(geometry);
+			locator.locate(geometry.getEnvelopeInternal().centre());
+			return new PreparedZone(zone, geometry, locator);
+		}
+
+		boolean contains(Point pt) {
+			return this.locator.locate(pt.getCoordinate()) != Location.EXTERIOR;
+		}
+	}
 }
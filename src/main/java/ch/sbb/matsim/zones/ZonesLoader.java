@@ -34,14 +34,21 @@ public final class ZonesLoader {
 			URL filenameURL = group.getFilenameURL(config.getContext());
 			String filenameString = group.getFilename();
 			String idAttribute = group.getIdAttributeName();
-			Zones zones = loadZones(id, filenameURL, filenameString, idAttribute);
+			Zones zones = loadZones(id, filenameURL, filenameString, idAttribute, group.isUsePreparedGeometries());
+			if (group.getRasterCellSize() > 0) {
+				zones = new RasterizedZones(zones, group.getRasterCellSize());
+			}
 			zonesCollection.addZones(zones);
 		}
     }
 
     public static Zones loadZones(String id, String filename, String idAttribute) {
+		return loadZones(id, filename, idAttribute, false);
+	}
+
+	public static Zones loadZones(String id, String filename, String idAttribute, boolean usePreparedGeometries) {
 		LogManager.getLogger(ZonesLoader.class).info(" zones file " + filename);
-		return loadZonesFromFile(id, filename, idAttribute);
+		return loadZonesFromFile(id, filename, idAttribute, usePreparedGeometries);
 	}
 
 	public static Zones loadZones(String id, String filename) {
@@ -49,18 +56,22 @@ public final class ZonesLoader {
 	}
 
 	public static Zones loadZones(String id, URL filenameURL, String fileNameString, String idAttribute) {
+		return loadZones(id, filenameURL, fileNameString, idAttribute, false);
+	}
+
+	public static Zones loadZones(String id, URL filenameURL, String fileNameString, String idAttribute, boolean usePreparedGeometries) {
 		try {
 			String filename = new File(filenameURL.toURI()).getAbsolutePath();
-			return loadZones(id, filename, idAttribute);
+			return loadZones(id, filename, idAttribute, usePreparedGeometries);
 		} catch (URISyntaxException | IllegalArgumentException e) {
-			return loadZones(id, fileNameString, idAttribute);
+			return loadZones(id, fileNameString, idAttribute, usePreparedGeometries);
 		}
 
 	}
 
-	private static Zones loadZonesFromFile(String id, String filename, String idAttribute) {
+	private static Zones loadZonesFromFile(String id, String filename, String idAttribute, boolean usePreparedGeometries) {
 		boolean noZoneId = idAttribute == null || idAttribute.isEmpty();
-		ZonesImpl zones = new ZonesImpl(Id.create(id, Zones.class));
+		ZonesImpl zones = new ZonesImpl(Id.create(id, Zones.class), usePreparedGeometries);
 		Name layerName = null;
 		if (!FilenameUtils.getExtension(filename).equals("shp")) {
 			layerName = new NameImpl(FilenameUtils.getBaseName(filename));
@@ -18,6 +18,7 @@ public class ZonesModule extends AbstractModule {
 	public static void addZonestoScenario(Scenario scenario) {
 		ZonesCollection zonesCollection = new ZonesCollection();
 		ZonesLoader.loadAllZones(scenario.getConfig(), zonesCollection);
+		zonesCollection.precomputeZoneAssignments(scenario.getNetwork(), scenario.getActivityFacilities());
 		scenario.addScenarioElement(SBB_ZONES, zonesCollection);
 	}
 
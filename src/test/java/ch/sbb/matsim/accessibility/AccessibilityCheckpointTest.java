@@ -0,0 +1,87 @@
+package ch.sbb.matsim.accessibility;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Set;
+
+public class AccessibilityCheckpointTest {
+
+	@TempDir
+	File tempDir;
+
+	@Test
+	public void testResumeAndConcatenate() throws IOException {
+		File directory = new File(this.tempDir, "blocks");
+		AccessibilityCheckpoint partition0 = new AccessibilityCheckpoint(directory, "test", 0);
+		partition0.writeSegment("block_0_0", writer -> writer.write("1.0,2.0,0.5\n"));
+		Assert.assertTrue(partition0.isFinished("block_0_0"));
+		Assert.assertFalse(partition0.isFinished("block_0_1"));
+
+		AccessibilityCheckpoint partition1 = new AccessibilityCheckpoint(directory, "test", 1);
+		Assert.assertTrue(partition1.isFinished("block_0_0"));
+		partition1.writeSegment("block_0_1", writer -> writer.write("3.0,4.0,0.25\n"));
+
+		// a restarted first partition sees the blocks of both partitions
+		AccessibilityCheckpoint restarted = new AccessibilityCheckpoint(directory, "test", 0);
+		Assert.assertTrue(restarted.isFinished("block_0_0"));
+		Assert.assertTrue(restarted.isFinished("block_0_1"));
+		Assert.assertTrue(partition0.reload().contains("block_0_1"));
+
+		File output = new File(this.tempDir, "accessibility.csv");
+		Assert.assertTrue(restarted.claimOutput());
+		restarted.concatenate(List.of("block_0_1", "block_0_0"), "X,Y,mm\n", output);
+		Assert.assertEquals("X,Y,mm\n3.0,4.0,0.25\n1.0,2.0,0.5\n", Files.readString(output.toPath()));
+	}
+
+	@Test
+	public void testOnlyOnePartitionWritesOutput() throws IOException {
+		File directory = new File(this.tempDir, "blocks");
+		AccessibilityCheckpoint partition0 = new AccessibilityCheckpoint(directory, "test", 0);
+		AccessibilityCheckpoint partition1 = new AccessibilityCheckpoint(directory, "test", 1);
+		partition0.writeSegment("block_0_0", writer -> writer.write("1.0,2.0,0.5\n"));
+
+		Assert.assertTrue(partition1.claimOutput());
+		Assert.assertFalse(partition0.claimOutput());
+		// a restarted partition that claimed the output writes it again
+		Assert.assertTrue(new AccessibilityCheckpoint(directory, "test", 1).claimOutput());
+
+		File output = new File(this.tempDir, "accessibility.csv");
+		partition1.concatenate(List.of("block_0_0"), "X,Y,mm\n", output);
+		Assert.assertEquals("X,Y,mm\n1.0,2.0,0.5\n", Files.readString(output.toPath()));
+		Assert.assertFalse(partition1.getTemporaryOutputFile(output).exists());
+	}
+
+	@Test
+	public void testDifferentSignatureFails() throws IOException {
+		File directory = new File(this.tempDir, "blocks");
+		new AccessibilityCheckpoint(directory, "first", 0).writeSegment("block_0_0", writer -> writer.write("1.0,2.0,0.5\n"));
+		try {
+			new AccessibilityCheckpoint(directory, "second", 1);
+			Assert.fail("expected exception because of different signature");
+		} catch (RuntimeException expected) {
+			// ok
+		}
+	}
+
+	@Test
+	public void testManifestIsReplacedAtomically() throws IOException {
+		File directory = new File(this.tempDir, "blocks");
+		AccessibilityCheckpoint partition0 = new AccessibilityCheckpoint(directory, "test", 0);
+		partition0.writeSegment("block_0_0", writer -> writer.write("1.0,2.0,0.5\n"));
+		partition0.writeSegment("block_0_1", writer -> writer.write("3.0,4.0,0.25\n"));
+		Assert.assertEquals(List.of("signature;test", "block_0_0;block_0_0.csv", "block_0_1;block_0_1.csv"),
+				Files.readAllLines(new File(directory, "manifest-0.csv").toPath()));
+		Assert.assertFalse(new File(directory, "manifest-0.csv.tmp").exists());
+
+		// a manifest being written by another partition is not read before it is renamed
+		Files.writeString(new File(directory, "manifest-1.csv.tmp").toPath(), "signature;test\nblock_1_");
+		AccessibilityCheckpoint partition2 = new AccessibilityCheckpoint(directory, "test", 2);
+		Assert.assertEquals(Set.of("block_0_0", "block_0_1"), partition2.reload());
+	}
+}
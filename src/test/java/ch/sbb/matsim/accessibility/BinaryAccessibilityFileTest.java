@@ -0,0 +1,38 @@
+package ch.sbb.matsim.accessibility;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.core.utils.collections.Tuple;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+public class BinaryAccessibilityFileTest {
+
+	@TempDir
+	File tempDir;
+
+	@Test
+	public void testWriteAndExport() throws IOException {
+		File binaryFile = new File(this.tempDir, "accessibility.bin");
+		try (BinaryAccessibilityFile.Writer writer = new BinaryAccessibilityFile.Writer(binaryFile, new String[]{"mm", "car"}, 3)) {
+			writer.write(List.of(new Tuple<>(new Coord(2600000.0, 1200000.0), new double[]{1.5, -2.25})));
+			writer.write(List.of(
+					new Tuple<>(new Coord(2600100.0, 1200000.0), new double[]{3.0, 0.0}),
+					new Tuple<>(new Coord(2600200.0, 1200100.0), new double[]{4.5, 8.0})));
+		}
+
+		File csvFile = new File(this.tempDir, "accessibility.csv");
+		BinaryAccessibilityFile.exportToCsv(binaryFile, csvFile);
+		List<String> lines = Files.readAllLines(csvFile.toPath());
+		Assert.assertEquals(4, lines.size());
+		Assert.assertEquals("X,Y,mm,car", lines.get(0));
+		Assert.assertEquals("2600000.0,1200000.0,1.5,-2.25", lines.get(1));
+		Assert.assertEquals("2600100.0,1200000.0,3.0,0.0", lines.get(2));
+		Assert.assertEquals("2600200.0,1200100.0,4.5,8.0", lines.get(3));
+	}
+}
@@ -34,6 +34,60 @@ public class DeparturesCacheTest {
 		Assert.assertEquals(7 * 3600 + 20 * 60 + 300, cache.getNextDepartureTime(stopId, 7 * 3600 + 1021).seconds(), 1e-8); // line 1, route A
 	}
 
+	@Test
+	public void testNextDepartureSeconds() {
+		Fixture f = new Fixture();
+
+		DeparturesCache cache = new DeparturesCache(f.scenario.getTransitSchedule());
+
+		int stop2 = Id.create("2", TransitStopFacility.class).index();
+		Assert.assertEquals(7 * 3600 + 300, cache.nextDepartureSeconds(stop2, 7 * 3600), 0.0);
+		Assert.assertEquals(7 * 3600 + 360, cache.nextDepartureSeconds(stop2, 7 * 3600 + 301), 0.0);
+		Assert.assertEquals(7 * 3600 + 40 * 60 + 360, cache.nextDepartureSeconds(stop2, 7 * 3600 + 40 * 60 + 360), 0.0);
+		Assert.assertEquals(DeparturesCache.NO_DEPARTURE, cache.nextDepartureSeconds(stop2, 8 * 3600 + 421), 0.0);
+
+		int stop3 = Id.create("3", TransitStopFacility.class).index();
+		Assert.assertEquals(DeparturesCache.NO_DEPARTURE, cache.nextDepartureSeconds(stop3, 0), 0.0);
+		Assert.assertEquals(cache.getFirstDeparture(stop3), cache.getLastDeparture(stop3));
+
+		int stop4 = Id.create("4", TransitStopFacility.class).index();
+		int first = cache.getFirstDeparture(stop4);
+		Assert.assertEquals(6, cache.getLastDeparture(stop4) - first);
+		for (int i = 0; i < 6; i++) {
+			Assert.assertEquals(7 * 3600 + i * 10 * 60, cache.getDepartureSeconds(first + i), 0.0);
+		}
+	}
+
+	@Test
+	public void testFractionalDepartures() {
+		Fixture f = new Fixture();
+		TransitSchedule schedule = f.scenario.getTransitSchedule();
+		TransitScheduleFactory sf = schedule.getFactory();
+		TransitStopFacility stop5 = schedule.getFacilities().get(Id.create("5", TransitStopFacility.class));
+		TransitStopFacility stop1 = schedule.getFacilities().get(Id.create("1", TransitStopFacility.class));
+
+		TransitLine line3 = sf.createTransitLine(Id.create("3", TransitLine.class));
+		List<TransitRouteStop> stops = new ArrayList<>();
+		stops.add(sf.createTransitRouteStopBuilder(stop5).departureOffset(0.5).build());
+		stops.add(sf.createTransitRouteStopBuilder(stop1).arrivalOffset(300).build());
+		TransitRoute route3D = sf.createTransitRoute(Id.create("D", TransitRoute.class), null, stops, "bus");
+		route3D.addDeparture(sf.createDeparture(Id.create("D1", Departure.class), 7 * 3600 + 10.25));
+		route3D.addDeparture(sf.createDeparture(Id.create("D2", Departure.class), 7 * 3600 + 10.75));
+		line3.addRoute(route3D);
+		schedule.addTransitLine(line3);
+
+		DeparturesCache cache = new DeparturesCache(schedule);
+
+		// the departures must not be rounded, they are matched against times calculated from the schedule
+		int stop5Index = stop5.getId().index();
+		Assert.assertEquals(2, cache.getLastDeparture(stop5Index) - cache.getFirstDeparture(stop5Index));
+		Assert.assertEquals(7 * 3600 + 10.75, cache.nextDepartureSeconds(stop5Index, 7 * 3600), 0.0);
+		Assert.assertEquals(7 * 3600 + 11.25, cache.nextDepartureSeconds(stop5Index, 7 * 3600 + 10.8), 0.0);
+		Assert.assertEquals(DeparturesCache.NO_DEPARTURE, cache.nextDepartureSeconds(stop5Index, 7 * 3600 + 11.3), 0.0);
+		Assert.assertEquals(7 * 3600 + 10.75, cache.getDepartureSeconds(cache.getFirstDeparture(stop5Index)), 0.0);
+		Assert.assertEquals(7 * 3600 + 11.25, cache.getNextDepartureTime(stop5.getId(), 7 * 3600 + 11).seconds(), 0.0);
+	}
+
 	private static class Fixture {
 
         final Config config = ConfigUtils.createConfig();
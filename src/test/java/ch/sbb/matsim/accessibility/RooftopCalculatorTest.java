@@ -0,0 +1,80 @@
+package ch.sbb.matsim.accessibility;
+
+import ch.sbb.matsim.analysis.skims.RooftopUtils;
+import ch.sbb.matsim.analysis.skims.RooftopUtils.ODConnection;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares the primitive calculations against {@link RooftopUtils}, which the accessibility used before.
+ */
+public class RooftopCalculatorTest {
+
+	private static final double MIN_DEPARTURE_TIME = 7 * 3600;
+	private static final double MAX_DEPARTURE_TIME = 8 * 3600;
+
+	@Test
+	public void testSameResultsAsRooftopUtils() {
+		Random random = new Random(20240611);
+		RooftopCalculator rooftop = new RooftopCalculator();
+		for (int run = 0; run < 500; run++) {
+			int count = 1 + random.nextInt(run < 250 ? 10 : 200);
+			List<ODConnection> connections = new ArrayList<>();
+			rooftop.clear();
+			for (int i = 0; i < count; i++) {
+				// departures in whole minutes to also get connections departing at the same time
+				double departureTime = MIN_DEPARTURE_TIME - 3600 + 60 * random.nextInt(180);
+				double travelTime = 300 + 60 * random.nextInt(60);
+				double accessTime = 60 * random.nextInt(10);
+				double egressTime = 60 * random.nextInt(10);
+				int transfers = random.nextInt(4);
+				connections.add(new ODConnection(departureTime, travelTime, accessTime, egressTime, transfers, null));
+				rooftop.add(departureTime, travelTime, accessTime, egressTime, transfers, run, i);
+			}
+
+			List<ODConnection> expected = RooftopUtils.sortAndFilterConnections(new ArrayList<>(connections), MAX_DEPARTURE_TIME);
+			rooftop.sortAndFilter();
+			Assert.assertEquals(expected.size(), rooftop.size());
+			for (int c = 0; c < expected.size(); c++) {
+				Assert.assertSame(expected.get(c), connections.get(rooftop.getIndex(c)));
+				Assert.assertEquals(run, rooftop.getGroup(c));
+			}
+
+			double expectedAdaptionTime = RooftopUtils.calcAverageAdaptionTime(expected, MIN_DEPARTURE_TIME, MAX_DEPARTURE_TIME);
+			Assert.assertEquals(expectedAdaptionTime, rooftop.calcAverageAdaptionTime(MIN_DEPARTURE_TIME, MAX_DEPARTURE_TIME), 0.0);
+
+			Map<ODConnection, Double> expectedShares = RooftopUtils.calcConnectionShares(expected, MIN_DEPARTURE_TIME, MAX_DEPARTURE_TIME);
+			rooftop.calcConnectionShares(MIN_DEPARTURE_TIME, MAX_DEPARTURE_TIME);
+			for (int c = 0; c < expected.size(); c++) {
+				Double expectedShare = expectedShares.get(expected.get(c));
+				Assert.assertEquals(expectedShare == null ? 0.0 : expectedShare, rooftop.getShare(c), 1e-12);
+				Assert.assertEquals(expected.get(c).totalTravelTime(), rooftop.getTotalTravelTime(c), 0.0);
+			}
+		}
+	}
+
+	@Test
+	public void testBuffersAreReused() {
+		RooftopCalculator rooftop = new RooftopCalculator();
+		for (int i = 0; i < 100; i++) {
+			rooftop.add(MIN_DEPARTURE_TIME + 60 * i, 600, 0, 0, 0, 0, i);
+		}
+		rooftop.sortAndFilter();
+		Assert.assertEquals(100, rooftop.size());
+
+		rooftop.clear();
+		Assert.assertEquals(0, rooftop.size());
+		rooftop.add(MIN_DEPARTURE_TIME + 600, 1200, 0, 0, 1, 3, 7);
+		rooftop.add(MIN_DEPARTURE_TIME + 300, 1800, 0, 0, 0, 3, 8); // departs earlier, arrives later
+		rooftop.sortAndFilter();
+		Assert.assertEquals(1, rooftop.size());
+		Assert.assertEquals(7, rooftop.getIndex(0));
+		rooftop.calcConnectionShares(MIN_DEPARTURE_TIME, MAX_DEPARTURE_TIME);
+		Assert.assertEquals(1.0, rooftop.getShare(0), 0.0);
+	}
+}
@@ -0,0 +1,128 @@
+package ch.sbb.matsim.accessibility;
+
+import ch.sbb.matsim.accessibility.StopConnectionStore.StopConnections;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class StopConnectionStoreTest {
+
+	@Test
+	public void testBuildAndLookup() throws IOException {
+		StopConnections connections = createConnections(1);
+		Assert.assertEquals(5, connections.getConnectionCount());
+
+		int first = connections.getFirstConnection(3);
+		int last = connections.getLastConnection(3);
+		Assert.assertEquals(3, last - first);
+		Assert.assertEquals(7 * 3600, connections.departureTimes[first], 0.0);
+		Assert.assertEquals(7 * 3600 + 1200, connections.departureTimes[last - 1], 0.0);
+		Assert.assertEquals("departure times must not be rounded", 7 * 3600 + 600.25, connections.departureTimes[first + 1], 0.0);
+		Assert.assertEquals(1501.123456789, connections.travelTimes[first + 1], 0.0);
+		Assert.assertEquals(2, connections.transfers[first + 1]);
+		Assert.assertEquals("distances must not be rounded", 21001.123456789, connections.distances[first + 1], 0.0);
+		Assert.assertEquals(1301.1, connections.inVehicleTimes[first + 1], 0.0);
+
+		Assert.assertEquals(1, connections.getLastConnection(7) - connections.getFirstConnection(7));
+		Assert.assertEquals(0, connections.getLastConnection(5) - connections.getFirstConnection(5));
+
+		try (StopConnectionStore store = new StopConnectionStore(10, Long.MAX_VALUE, null)) {
+			Assert.assertFalse(store.contains(4));
+			Assert.assertNull(store.get(4));
+			store.put(4, connections);
+			Assert.assertTrue(store.contains(4));
+			Assert.assertSame(connections, store.get(4));
+		}
+	}
+
+	@Test
+	public void testEvictionWithoutSpillFile() throws IOException {
+		long limit = createConnections(0).estimateMemoryBytes() * 3 - 1;
+		try (StopConnectionStore store = new StopConnectionStore(10, limit, null)) {
+			store.put(1, createConnections(1));
+			store.put(2, createConnections(2));
+			store.get(1);
+			store.put(3, createConnections(3));
+
+			Assert.assertTrue(store.contains(1));
+			Assert.assertFalse("least recently used stop should be evicted", store.contains(2));
+			Assert.assertTrue(store.contains(3));
+			Assert.assertNull(store.get(2));
+		}
+	}
+
+	@Test
+	public void testEvictionWithSpillFile() throws IOException {
+		File spillFile = File.createTempFile("stopConnections", ".bin");
+		long limit = createConnections(0).estimateMemoryBytes() * 3 - 1;
+		try (StopConnectionStore store = new StopConnectionStore(10, limit, spillFile)) {
+			for (int stop = 0; stop < 10; stop++) {
+				store.put(stop, createConnections(stop));
+			}
+			for (int stop = 0; stop < 10; stop++) {
+				Assert.assertTrue(store.contains(stop));
+				StopConnections expected = createConnections(stop);
+				StopConnections actual = store.get(stop);
+				Assert.assertEquals(expected.getConnectionCount(), actual.getConnectionCount());
+				Assert.assertEquals(expected.getFirstConnection(3), actual.getFirstConnection(3));
+				Assert.assertEquals(expected.getLastConnection(7), actual.getLastConnection(7));
+				Assert.assertArrayEquals(expected.departureTimes, actual.departureTimes, 0.0);
+				Assert.assertArrayEquals(expected.travelTimes, actual.travelTimes, 0.0);
+				Assert.assertArrayEquals(expected.transfers, actual.transfers);
+				Assert.assertArrayEquals(expected.distances, actual.distances, 0.0);
+				Assert.assertArrayEquals(expected.inVehicleTimes, actual.inVehicleTimes, 0.0);
+				Assert.assertArrayEquals(expected.trainInVehicleTimes, actual.trainInVehicleTimes, 0.0);
+			}
+		}
+		Assert.assertFalse(spillFile.exists());
+	}
+
+	@Test
+	public void testConcurrentCalculationRunsOnce() throws Exception {
+		AtomicInteger calculations = new AtomicInteger();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		try (StopConnectionStore store = new StopConnectionStore(10, Long.MAX_VALUE, null)) {
+			Thread first = new Thread(() -> store.getOrCalculate(5, stopIndex -> {
+				calculations.incrementAndGet();
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				return createConnections(stopIndex);
+			}));
+			first.start();
+			started.await();
+
+			StopConnections[] waited = new StopConnections[1];
+			Thread second = new Thread(() -> waited[0] = store.getOrCalculate(5, stopIndex -> {
+				calculations.incrementAndGet();
+				return createConnections(stopIndex);
+			}));
+			second.start();
+			release.countDown();
+			first.join();
+			second.join();
+
+			Assert.assertEquals(1, calculations.get());
+			Assert.assertSame(store.get(5), waited[0]);
+		}
+	}
+
+	private static StopConnections createConnections(int seed) {
+		StopConnectionStore.Builder builder = new StopConnectionStore.Builder();
+		// destinations are added in schedule order, not in index order
+		builder.add(7, 8 * 3600, 900 + seed, 0, 5000, 800, 0);
+		builder.add(3, 7 * 3600, 1800 + seed, 1, 20000, 1500, 1200);
+		builder.add(3, 7 * 3600 + 600.25, 1500.123456789 + seed, 2, 21000.123456789 + seed, 1300.1 + seed, 1300.1 + seed);
+		builder.add(3, 7 * 3600 + 1200, 1800 + seed, 1, 20000, 1500, 1200);
+		builder.add(1, 9 * 3600, 300 + seed, 0, 1000, 240, 0);
+		return builder.build();
+	}
+}
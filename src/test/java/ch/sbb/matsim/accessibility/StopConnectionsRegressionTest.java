@@ -0,0 +1,197 @@
+package ch.sbb.matsim.accessibility;
+
+import ch.sbb.matsim.accessibility.StopConnectionStore.StopConnections;
+import ch.sbb.matsim.analysis.skims.RooftopUtils;
+import ch.sbb.matsim.analysis.skims.RooftopUtils.ODConnection;
+import ch.sbb.matsim.config.variables.SBBModes;
+import ch.sbb.matsim.routing.pt.raptor.DefaultRaptorInVehicleCostCalculator;
+import ch.sbb.matsim.routing.pt.raptor.DefaultRaptorStopFinder;
+import ch.sbb.matsim.routing.pt.raptor.DefaultRaptorTransferCostCalculator;
+import ch.sbb.matsim.routing.pt.raptor.RaptorParameters;
+import ch.sbb.matsim.routing.pt.raptor.RaptorRoute;
+import ch.sbb.matsim.routing.pt.raptor.RaptorRoute.RoutePart;
+import ch.sbb.matsim.routing.pt.raptor.RaptorStaticConfig;
+import ch.sbb.matsim.routing.pt.raptor.RaptorUtils;
+import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptor;
+import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorCore.TravelInfo;
+import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorData;
+import org.junit.Assert;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.io.MatsimNetworkReader;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.pt.transitSchedule.api.TransitLine;
+import org.matsim.pt.transitSchedule.api.TransitRoute;
+import org.matsim.pt.transitSchedule.api.TransitScheduleReader;
+import org.matsim.pt.transitSchedule.api.TransitStopFacility;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiPredicate;
+
+/**
+ * Compares the stop connections against the connections of the previous approach, the <code>StopWorker</code> which calculated a tree for every departure
+ * in the time window and kept the filtered connections of every destination stop.
+ */
+public class StopConnectionsRegressionTest {
+
+	private static final String FOLDER = "test/input/scenarios/mobi31test/";
+	private static final double MIN_DEPARTURE_TIME = 7 * 3600;
+	private static final double MAX_DEPARTURE_TIME = 8 * 3600;
+	private static final double EARLIEST_DEPARTURE_TIME = MIN_DEPARTURE_TIME - (MAX_DEPARTURE_TIME - MIN_DEPARTURE_TIME);
+	private static final double LATEST_DEPARTURE_TIME = MAX_DEPARTURE_TIME + (MAX_DEPARTURE_TIME - MIN_DEPARTURE_TIME);
+	private static final BiPredicate<TransitLine, TransitRoute> TRAIN_DETECTOR = (line, route) -> route.getTransportMode().equals(SBBModes.PTSubModes.RAIL);
+
+	private static Scenario scenario;
+	private static SwissRailRaptor raptor;
+	private static RaptorParameters parameters;
+	private static DeparturesCache departuresCache;
+
+	@BeforeAll
+	public static void loadScenario() {
+		Config config = ConfigUtils.createConfig();
+		scenario = ScenarioUtils.createScenario(config);
+		new MatsimNetworkReader(scenario.getNetwork()).readFile(FOLDER + "network.xml.gz");
+		new TransitScheduleReader(scenario).readFile(FOLDER + "transitSchedule.xml.gz");
+		RaptorStaticConfig raptorConfig = RaptorUtils.createStaticConfig(config);
+		raptorConfig.setOptimization(RaptorStaticConfig.RaptorOptimization.OneToAllRouting);
+		SwissRailRaptorData data = SwissRailRaptorData.create(scenario.getTransitSchedule(), scenario.getTransitVehicles(), raptorConfig, scenario.getNetwork(), null);
+		raptor = new SwissRailRaptor(data, null, null, new DefaultRaptorStopFinder(ConfigUtils.createConfig(), null, null),
+				new DefaultRaptorInVehicleCostCalculator(), new DefaultRaptorTransferCostCalculator());
+		parameters = RaptorUtils.createParameters(config);
+		departuresCache = new DeparturesCache(scenario.getTransitSchedule());
+	}
+
+	@Test
+	public void testConnectionsEqualTreesPerDeparture() {
+		int testedStops = 0;
+		int comparedConnections = 0;
+		for (TransitStopFacility fromStop : scenario.getTransitSchedule().getFacilities().values()) {
+			if (departuresCache.nextDepartureSeconds(fromStop.getId().index(), EARLIEST_DEPARTURE_TIME) == DeparturesCache.NO_DEPARTURE) {
+				continue;
+			}
+			testedStops++;
+
+			StopConnections connections = Accessibility.calcStopConnections(fromStop, raptor, parameters, MIN_DEPARTURE_TIME, MAX_DEPARTURE_TIME, departuresCache,
+					TRAIN_DETECTOR);
+			List<Map<Id<TransitStopFacility>, TravelInfo>> trees = calcTreesPerDeparture(fromStop);
+
+			int storedConnections = 0;
+			for (TransitStopFacility toStop : scenario.getTransitSchedule().getFacilities().values()) {
+				List<ODConnection> expected = calcExpectedConnections(trees, toStop);
+				String relation = fromStop.getId() + " -> " + toStop.getId();
+
+				int first = connections.getFirstConnection(toStop.getId().index());
+				int last = connections.getLastConnection(toStop.getId().index());
+				Assert.assertEquals("number of connections " + relation, expected.size(), last - first);
+				for (int i = 0; i < expected.size(); i++) {
+					ODConnection connection = expected.get(i);
+					int c = first + i;
+					Assert.assertEquals("departure time " + relation, connection.departureTime, connections.departureTimes[c], 0.0);
+					Assert.assertEquals("travel time " + relation, connection.travelTime, connections.travelTimes[c], 0.0);
+					Assert.assertEquals("transfers " + relation, (int) connection.transferCount, connections.transfers[c]);
+
+					// summed up exactly like the previous accessibility calculation did for every used connection
+					double distance = 0;
+					double inVehicleTime = 0;
+					double trainInVehicleTime = 0;
+					RaptorRoute route = connection.travelInfo.getRaptorRoute();
+					for (RoutePart part : route.getParts()) {
+						if (part.line != null) {
+							double partInVehicleTime = part.arrivalTime - part.boardingTime;
+							distance += part.distance;
+							inVehicleTime += partInVehicleTime;
+							if (TRAIN_DETECTOR.test(part.line, part.route)) {
+								trainInVehicleTime += partInVehicleTime;
+							}
+						}
+					}
+					Assert.assertEquals("distance " + relation, distance, connections.distances[c], 0.0);
+					Assert.assertEquals("in-vehicle time " + relation, inVehicleTime, connections.inVehicleTimes[c], 0.0);
+					Assert.assertEquals("train in-vehicle time " + relation, trainInVehicleTime, connections.trainInVehicleTimes[c], 0.0);
+					comparedConnections++;
+				}
+				storedConnections += last - first;
+			}
+			Assert.assertEquals("connections to unknown stops from " + fromStop.getId(), connections.getConnectionCount(), storedConnections);
+		}
+		Assert.assertTrue(testedStops > 0);
+		Assert.assertTrue(comparedConnections > 0);
+	}
+
+	/**
+	 * The range query is only an approximation of the trees, so it is not compared for equality. It must find every connection of the trees, or a better
+	 * one: departing not earlier and arriving not later.
+	 */
+	@Test
+	public void testRangeQueryFindsAllConnectionsOfTreesPerDeparture() {
+		int comparedConnections = 0;
+		for (TransitStopFacility fromStop : scenario.getTransitSchedule().getFacilities().values()) {
+			if (departuresCache.nextDepartureSeconds(fromStop.getId().index(), EARLIEST_DEPARTURE_TIME) == DeparturesCache.NO_DEPARTURE) {
+				continue;
+			}
+
+			StopConnections connections = Accessibility.calcStopConnectionsWithRangeQuery(fromStop, raptor, parameters, MIN_DEPARTURE_TIME, MAX_DEPARTURE_TIME,
+					departuresCache, TRAIN_DETECTOR);
+			List<Map<Id<TransitStopFacility>, TravelInfo>> trees = calcTreesPerDeparture(fromStop);
+
+			for (TransitStopFacility toStop : scenario.getTransitSchedule().getFacilities().values()) {
+				int first = connections.getFirstConnection(toStop.getId().index());
+				int last = connections.getLastConnection(toStop.getId().index());
+				for (int i = first + 1; i < last; i++) {
+					// the stored connections are sorted by departure, and a later departure must not arrive earlier after filtering
+					Assert.assertTrue(connections.departureTimes[i - 1] <= connections.departureTimes[i]);
+					Assert.assertTrue(connections.departureTimes[i - 1] + connections.travelTimes[i - 1] <= connections.departureTimes[i] + connections.travelTimes[i]);
+				}
+				for (ODConnection connection : calcExpectedConnections(trees, toStop)) {
+					if (connection.departureTime > LATEST_DEPARTURE_TIME) {
+						// a tree calculated shortly before the end of the time window may use a departure after it
+						continue;
+					}
+					double arrivalTime = connection.departureTime + connection.travelTime;
+					boolean found = false;
+					for (int i = first; i < last && !found; i++) {
+						found = connections.departureTimes[i] >= connection.departureTime - 0.5 && connections.departureTimes[i] + connections.travelTimes[i] <= arrivalTime + 0.5;
+					}
+					Assert.assertTrue("missing connection " + fromStop.getId() + " -> " + toStop.getId() + " at " + connection.departureTime, found);
+					comparedConnections++;
+				}
+			}
+		}
+		Assert.assertTrue(comparedConnections > 0);
+	}
+
+	/**
+	 * The reference, as calculated by the previous <code>StopWorker</code>: one tree for every departure in the extended time window, at most one per minute.
+	 */
+	private static List<Map<Id<TransitStopFacility>, TravelInfo>> calcTreesPerDeparture(TransitStopFacility fromStop) {
+		List<Map<Id<TransitStopFacility>, TravelInfo>> trees = new ArrayList<>();
+		double time = EARLIEST_DEPARTURE_TIME;
+		while (time < LATEST_DEPARTURE_TIME) {
+			double departure = departuresCache.nextDepartureSeconds(fromStop.getId().index(), time);
+			if (departure == DeparturesCache.NO_DEPARTURE) {
+				break;
+			}
+			time = departure;
+			trees.add(raptor.calcTree(fromStop, time, parameters, null));
+			time += 60; // +1 minute
+		}
+		return trees;
+	}
+
+	private static List<ODConnection> calcExpectedConnections(List<Map<Id<TransitStopFacility>, TravelInfo>> trees, TransitStopFacility toStop) {
+		List<ODConnection> connections = new ArrayList<>();
+		for (Map<Id<TransitStopFacility>, TravelInfo> tree : trees) {
+			TravelInfo info = tree.get(toStop.getId());
+			if (info != null && !info.isWalkOnly()) {
+				connections.add(new ODConnection(info.ptDepartureTime, info.ptTravelTime, 0, 0, info.transferCount, info));
+			}
+		}
+		return RooftopUtils.sortAndFilterConnections(connections, MAX_DEPARTURE_TIME);
+	}
+}
@@ -0,0 +1,54 @@
+package ch.sbb.matsim.analysis;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.io.UncheckedIOException;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AsyncAnalysisWriterTest {
+
+    @Test
+    public void testAllWritesFinishBeforeShutdownReturns() {
+        AsyncAnalysisWriter writer = new AsyncAnalysisWriter(2);
+        AtomicInteger written = new AtomicInteger();
+        for (int i = 0; i < 20; i++) {
+            writer.submit("write" + i, () -> {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                written.incrementAndGet();
+            });
+        }
+        writer.shutdown();
+        Assert.assertEquals(20, written.get());
+    }
+
+    @Test
+    public void testFailedWriteIsRethrown() {
+        AsyncAnalysisWriter writer = new AsyncAnalysisWriter(1);
+        writer.submit("failing", () -> {
+            throw new UncheckedIOException(new IOException("disk full"));
+        });
+        try {
+            writer.awaitPendingWrites();
+            Assert.fail("expected the write failure to be rethrown");
+        } catch (UncheckedIOException e) {
+            Assert.assertTrue(e.getMessage().contains("failing"));
+            Assert.assertEquals("disk full", e.getCause().getMessage());
+        }
+        writer.shutdown();
+    }
+
+    @Test
+    public void testSynchronousWriter() {
+        AsyncAnalysisWriter writer = new AsyncAnalysisWriter(0);
+        AtomicInteger written = new AtomicInteger();
+        writer.submit("write", written::incrementAndGet);
+        Assert.assertEquals(1, written.get());
+        writer.shutdown();
+    }
+}
@@ -0,0 +1,114 @@
+package ch.sbb.matsim.analysis;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.IdMap;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.router.TripStructureUtils.Trip;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TripAnalysisPipelineTest {
+
+    @Test
+    public void testSinglePassGivesSameResultsAsSequentialAnalysis() {
+        IdMap<Person, Plan> plans = new IdMap<>(Person.class);
+        for (int i = 0; i < 1000; i++) {
+            Plan plan = PopulationUtils.createPlan();
+            plan.addActivity(PopulationUtils.createActivityFromCoord("home", new Coord(0, 0)));
+            for (int t = 0; t < i % 4; t++) {
+                plan.addLeg(PopulationUtils.createLeg("walk"));
+                plan.addActivity(PopulationUtils.createActivityFromCoord(t % 2 == 0 ? "work" : "home", new Coord(100, 0)));
+            }
+            plans.put(Id.createPersonId(i), plan);
+        }
+
+        List<Id<Person>> expectedOrder = TripAnalyzer.analyze(new PersonOrderAnalyzer(), plans);
+        int expectedTrips = TripAnalyzer.analyze(new TripCounter(), plans)[0];
+        Assert.assertEquals(1500, expectedTrips);
+
+        AtomicReference<List<Id<Person>>> order = new AtomicReference<>();
+        AtomicReference<int[]> trips = new AtomicReference<>();
+        AtomicInteger stepCalls = new AtomicInteger();
+        TripAnalysisPipeline pipeline = new TripAnalysisPipeline(4);
+        pipeline.addTripAnalyzer("order", new PersonOrderAnalyzer(), order::set);
+        pipeline.addTripAnalyzer("trips", new TripCounter(), trips::set);
+        pipeline.addStep("step", stepCalls::incrementAndGet);
+        pipeline.run(plans);
+
+        Assert.assertEquals(expectedOrder, order.get());
+        Assert.assertEquals(expectedTrips, trips.get()[0]);
+        Assert.assertEquals(1, stepCalls.get());
+    }
+
+    @Test
+    public void testSharedExecutorIsReusedAcrossRuns() {
+        IdMap<Person, Plan> plans = new IdMap<>(Person.class);
+        for (int i = 0; i < 100; i++) {
+            Plan plan = PopulationUtils.createPlan();
+            plan.addActivity(PopulationUtils.createActivityFromCoord("home", new Coord(0, 0)));
+            plans.put(Id.createPersonId(i), plan);
+        }
+        List<Id<Person>> expectedOrder = TripAnalyzer.analyze(new PersonOrderAnalyzer(), plans);
+
+        ExecutorService executor = TripAnalysisPipeline.createExecutor(3);
+        try {
+            for (int run = 0; run < 2; run++) {
+                AtomicReference<List<Id<Person>>> order = new AtomicReference<>();
+                TripAnalysisPipeline pipeline = new TripAnalysisPipeline(3, new AsyncAnalysisWriter(0), executor);
+                pipeline.addTripAnalyzer("order", new PersonOrderAnalyzer(), order::set);
+                pipeline.run(plans);
+                Assert.assertEquals(expectedOrder, order.get());
+                Assert.assertFalse(executor.isShutdown());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static class PersonOrderAnalyzer implements TripAnalyzer<List<Id<Person>>> {
+
+        @Override
+        public List<Id<Person>> createAccumulator() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public void analyzeTrips(List<Id<Person>> accumulator, Id<Person> personId, Plan plan, List<Trip> trips) {
+            accumulator.add(personId);
+        }
+
+        @Override
+        public List<Id<Person>> merge(List<Id<Person>> accumulator, List<Id<Person>> other) {
+            accumulator.addAll(other);
+            return accumulator;
+        }
+    }
+
+    private static class TripCounter implements TripAnalyzer<int[]> {
+
+        @Override
+        public int[] createAccumulator() {
+            return new int[1];
+        }
+
+        @Override
+        public void analyzeTrips(int[] accumulator, Id<Person> personId, Plan plan, List<Trip> trips) {
+            accumulator[0] += trips.size();
+        }
+
+        @Override
+        public int[] merge(int[] accumulator, int[] other) {
+            accumulator[0] += other[0];
+            return accumulator;
+        }
+    }
+}
@@ -5,6 +5,10 @@ import org.junit.jupiter.api.Test;
 import org.matsim.api.core.v01.Coord;
 import org.matsim.testcases.MatsimTestUtils;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 class DiameterBasedCoordCondenserTest {
 
     @Test
@@ -35,4 +39,50 @@ class DiameterBasedCoordCondenserTest {
         Assert.assertEquals(result.get(1).weight(), 2.0, MatsimTestUtils.EPSILON);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testSameResultAsGreedyComparison() {
+        DiameterBasedCoordCondenser condenser = new DiameterBasedCoordCondenser();
+        Random random = new Random(4711);
+        for (int run = 0; run < 20; run++) {
+            Coord[] coords = new Coord[500 + random.nextInt(1500)];
+            for (int i = 0; i < coords.length; i++) {
+                // integer coordinates, so that some coordinates are exactly at the max distance or at cell borders
+                coords[i] = new Coord(2600000 + random.nextInt(5000) - 2500, 1200000 + random.nextInt(3000) - 1500);
+            }
+            var result = condenser.aggregateCoords(coords);
+            List<Coord> expectedCoords = new ArrayList<>();
+            List<Double> expectedWeights = new ArrayList<>();
+            aggregateGreedy(coords, expectedCoords, expectedWeights);
+
+            Assert.assertEquals(expectedCoords.size(), result.size());
+            for (int i = 0; i < result.size(); i++) {
+                Assert.assertSame(expectedCoords.get(i), result.get(i).coord());
+                Assert.assertEquals(expectedWeights.get(i), result.get(i).weight(), 0.0);
+            }
+        }
+    }
+
+    /**
+     * The previous implementation, comparing every coordinate with all condensed coordinates.
+     */
+    private static void aggregateGreedy(Coord[] coords, List<Coord> condensedCoords, List<Double> weights) {
+        for (Coord current : coords) {
+            boolean shouldAdd = true;
+            for (int i = 0; i < condensedCoords.size(); i++) {
+                Coord existing = condensedCoords.get(i);
+                double dx = current.getX() - existing.getX();
+                double dy = current.getY() - existing.getY();
+                if (dx * dx + dy * dy <= 250.0 * 250.0) {
+                    shouldAdd = false;
+                    weights.set(i, weights.get(i) + 1.0);
+                    break;
+                }
+            }
+            if (shouldAdd) {
+                condensedCoords.add(current);
+                weights.add(1.0);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,58 @@
+package ch.sbb.matsim.analysis.skims;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Coord;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class SkimChangesTest {
+
+	@Test
+	public void testUnchangedSamplingPoints() {
+		SkimChanges changes = SkimChanges.detect(createCoordsPerZone(), createCoordsPerZone());
+		Assert.assertFalse(changes.samplingPointsChanged());
+		Assert.assertTrue(changes.canReuseMatrices());
+	}
+
+	@Test
+	public void testChangedSamplingPoints() {
+		Map<String, Coord[]> moved = createCoordsPerZone();
+		moved.put("2", new Coord[]{new Coord(1000, 0), new Coord(1100, 50)});
+		SkimChanges changes = SkimChanges.detect(createCoordsPerZone(), moved);
+		Assert.assertTrue(changes.samplingPointsChanged());
+		Assert.assertFalse(changes.canReuseMatrices());
+
+		Map<String, Coord[]> added = createCoordsPerZone();
+		added.put("3", new Coord[]{new Coord(2000, 0)});
+		Assert.assertFalse(SkimChanges.detect(createCoordsPerZone(), added).canReuseMatrices());
+
+		Map<String, Coord[]> removed = createCoordsPerZone();
+		removed.remove("2");
+		changes = SkimChanges.detect(createCoordsPerZone(), removed);
+		Assert.assertTrue(changes.samplingPointsChanged());
+		Assert.assertTrue("the remaining zones can be selected from the previous matrices", changes.canReuseMatrices());
+	}
+
+	@Test
+	public void testSelectZones() {
+		int[] previousZones = {10, 20, 30};
+		float[][] previousMatrix = {{1, 2, 3}, {4, 5, 6}, {7, 8, 9}};
+
+		int[] indices = SkimChanges.findPreviousIndices(previousZones, new int[]{10, 30});
+		Assert.assertArrayEquals(new int[]{0, 2}, indices);
+		float[][] matrix = SkimChanges.selectZones(previousMatrix, indices);
+		Assert.assertArrayEquals(new float[]{1, 3}, matrix[0], 0.0f);
+		Assert.assertArrayEquals(new float[]{7, 9}, matrix[1], 0.0f);
+
+		Assert.assertNull(SkimChanges.findPreviousIndices(previousZones, new int[]{10, 40}));
+	}
+
+	private static Map<String, Coord[]> createCoordsPerZone() {
+		Map<String, Coord[]> coordsPerZone = new HashMap<>();
+		coordsPerZone.put("1", new Coord[]{new Coord(0, 0), new Coord(100, 0)});
+		coordsPerZone.put("2", new Coord[]{new Coord(1000, 0), new Coord(1100, 0)});
+		return coordsPerZone;
+	}
+}
@@ -0,0 +1,75 @@
+package ch.sbb.matsim.analysis.skims;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class SkimParametersTest {
+
+	@TempDir
+	File tempDir;
+
+	@Test
+	public void testWriteAndRead() {
+		Map<String, double[]> timesCar = new LinkedHashMap<>();
+		timesCar.put("AM_", new double[]{6 * 3600, 7 * 3600 + 0.5});
+		Map<String, double[]> timesPt = new LinkedHashMap<>();
+		timesPt.put("", new double[]{6 * 3600, 9 * 3600});
+		File file = new File(this.tempDir, SkimParameters.FILENAME);
+		SkimParameters current = new SkimParameters(timesCar, timesPt, true, "network", "none", "schedule");
+		current.write(file);
+
+		SkimParameters parameters = SkimParameters.read(file);
+		Assert.assertNotNull(parameters);
+		Assert.assertTrue(parameters.hasCarParameters("AM_", new double[]{6 * 3600, 7 * 3600 + 0.5}));
+		Assert.assertFalse("other departure times", parameters.hasCarParameters("AM_", new double[]{6 * 3600, 8 * 3600}));
+		Assert.assertFalse("unknown prefix", parameters.hasCarParameters("PM_", new double[]{6 * 3600, 7 * 3600 + 0.5}));
+		Assert.assertTrue(parameters.hasPtParameters("", new double[]{6 * 3600, 9 * 3600}, true));
+		Assert.assertFalse("other train line detection", parameters.hasPtParameters("", new double[]{6 * 3600, 9 * 3600}, false));
+		Assert.assertFalse("car times are not pt times", parameters.hasPtParameters("AM_", new double[]{6 * 3600, 7 * 3600 + 0.5}, true));
+
+		Assert.assertTrue(parameters.hasSameCarInputs(current));
+		Assert.assertTrue(parameters.hasSamePtInputs(current));
+		SkimParameters otherSchedule = new SkimParameters(timesCar, timesPt, true, "network", "none", "schedule2");
+		Assert.assertTrue(parameters.hasSameCarInputs(otherSchedule));
+		Assert.assertFalse(parameters.hasSamePtInputs(otherSchedule));
+		SkimParameters otherEvents = new SkimParameters(timesCar, timesPt, true, "network", "events", "schedule");
+		Assert.assertFalse(parameters.hasSameCarInputs(otherEvents));
+		Assert.assertTrue(parameters.hasSamePtInputs(otherEvents));
+		SkimParameters otherNetwork = new SkimParameters(timesCar, timesPt, true, "network2", "none", "schedule");
+		Assert.assertFalse(parameters.hasSameCarInputs(otherNetwork));
+		Assert.assertFalse(parameters.hasSamePtInputs(otherNetwork));
+
+		Assert.assertNull(SkimParameters.read(new File(this.tempDir, "missing.txt")));
+	}
+
+	@Test
+	public void testWithoutFingerprints() throws IOException {
+		// written before the fingerprints were added
+		File file = new File(this.tempDir, SkimParameters.FILENAME);
+		Files.writeString(file.toPath(), "detectTrainLines=true\npt.=21600.0;32400.0\n");
+		SkimParameters parameters = SkimParameters.read(file);
+		SkimParameters current = new SkimParameters(new LinkedHashMap<>(), new LinkedHashMap<>(), true, "network", "none", "schedule");
+		Assert.assertTrue(parameters.hasPtParameters("", new double[]{6 * 3600, 9 * 3600}, true));
+		Assert.assertFalse(parameters.hasSamePtInputs(current));
+		Assert.assertFalse(parameters.hasSameCarInputs(current));
+	}
+
+	@Test
+	public void testFingerprint() throws IOException {
+		File file = new File(this.tempDir, "network.xml");
+		Files.writeString(file.toPath(), "<network/>");
+		String fingerprint = SkimParameters.fingerprint(file.getAbsolutePath());
+		Assert.assertEquals(64, fingerprint.length());
+		Assert.assertEquals(fingerprint, SkimParameters.fingerprint(file.getAbsolutePath()));
+		Files.writeString(file.toPath(), "<network></network>");
+		Assert.assertNotEquals(fingerprint, SkimParameters.fingerprint(file.getAbsolutePath()));
+		Assert.assertEquals("none", SkimParameters.fingerprint(null));
+	}
+}
@@ -1,17 +1,24 @@
 package ch.sbb.matsim.analysis.tripsandlegsanalysis;
 
 import ch.sbb.matsim.RunSBB;
+import ch.sbb.matsim.analysis.TripAnalyzer;
 import ch.sbb.matsim.config.PostProcessingConfigGroup;
 import ch.sbb.matsim.zones.ZonesCollection;
 import ch.sbb.matsim.zones.ZonesLoader;
+import org.junit.Assert;
 import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.population.HasPlansAndId;
+import org.matsim.api.core.v01.population.Plan;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.population.io.PopulationReader;
+import org.matsim.pt.transitSchedule.api.TransitStopFacility;
 import org.matsim.testcases.MatsimTestUtils;
 
 import java.io.File;
+import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import static org.matsim.core.config.ConfigUtils.createConfig;
@@ -36,4 +43,34 @@ public class DemandAggregatorTest {
         aggregator.aggregateAndWriteMatrix(10, outputFolder + "matrix.csv", outputFolder + "railDemandStationToStation.csv.gz", outputFolder + "railDemandStationToStationFQ.csv.gz", outputFolder + "tripsPerMun.csv.gz", outputFolder + "tripsPerAMR.csv.gz", scenario2.getPopulation().getPersons().values().stream().map(HasPlansAndId::getSelectedPlan).collect(Collectors.toList()));
         MatsimTestUtils.assertEqualFilesLineByLine(outputFolder + "railDemandStationToStation.csv.gz", inputFolder + "MOBI33IT.railDemandStationToStation.csv.gz");
     }
-}
\ No newline at end of file
+
+    /**
+     * The FQ relevant station to station demand adds up over all passes of an aggregator, the other results only contain the demand of the current pass.
+     */
+    @Test
+    public void fqDemandAccumulatesOverPassesTest() {
+        Scenario scenario = createScenario(RunSBB.buildConfig("test/input/scenarios/mobi31test/config.xml"));
+        ZonesCollection zones = new ZonesCollection();
+        ZonesLoader.loadAllZones(scenario.getConfig(), zones);
+        RailTripsAnalyzer railTripsAnalyzer = new RailTripsAnalyzer(scenario.getTransitSchedule(), scenario.getNetwork(), zones);
+        DemandAggregator aggregator = new DemandAggregator(scenario, zones, ConfigUtils.addOrGetModule(scenario.getConfig(), PostProcessingConfigGroup.class), railTripsAnalyzer);
+        Scenario scenario2 = createScenario(createConfig());
+        new PopulationReader(scenario2).readFile("test/input/ch/sbb/matsim/analysis/tripsandlegsanalysis/MOBI33IT.output_experienced_plans.xml.gz");
+        List<Plan> plans = scenario2.getPopulation().getPersons().values().stream().map(HasPlansAndId::getSelectedPlan).collect(Collectors.toList());
+
+        DemandAggregator.DemandAggregate first = TripAnalyzer.analyze(aggregator.createTripAnalyzer(10, true, false), plans);
+        double firstDemand = sumDemand(first.getOdRailDemandMatrix());
+        double firstFQDemand = sumDemand(first.getOdRailDemandMatrixFQ());
+        Assert.assertTrue(firstFQDemand > 0);
+
+        DemandAggregator.DemandAggregate second = TripAnalyzer.analyze(aggregator.createTripAnalyzer(10, true, false), plans);
+        Assert.assertEquals(firstDemand, sumDemand(second.getOdRailDemandMatrix()), 1e-6);
+        Assert.assertEquals(2 * firstFQDemand, sumDemand(second.getOdRailDemandMatrixFQ()), 1e-6);
+        // the result of the first pass is not changed by the second one
+        Assert.assertEquals(firstFQDemand, sumDemand(first.getOdRailDemandMatrixFQ()), 1e-6);
+    }
+
+    private static double sumDemand(Map<Id<TransitStopFacility>, Map<Id<TransitStopFacility>, DemandAggregator.RailODTravelInfo>> matrix) {
+        return matrix.values().stream().flatMap(toStations -> toStations.values().stream()).mapToDouble(info -> info.demand().doubleValue()).sum();
+    }
+}
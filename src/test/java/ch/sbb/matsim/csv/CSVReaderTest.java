@@ -7,10 +7,13 @@ package ch.sbb.matsim.csv;
 import org.junit.Assert;
 import org.junit.jupiter.api.Test;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
+import java.io.StringReader;
 import java.util.Map;
+import java.util.Random;
 
 /**
  * @author mrieser / SBB
@@ -66,4 +69,83 @@ public class CSVReaderTest {
 		new File("testfile.csv").delete();
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void readWithCursor() throws Exception {
+		String content = "\"FROM\";TO;VALUE;NAME\r\n1;2;3.25;eins\n-4;5;-0.5;\n7;8;Infinity;sieben;extra\n9;10;1e3";
+		CSVReader reader = new CSVReader(";", new BufferedReader(new StringReader(content)));
+		Assert.assertArrayEquals(new String[]{"FROM", "TO", "VALUE", "NAME"}, reader.getColumns());
+		int from = reader.getColumnIndex("FROM");
+		int value = reader.getColumnIndex("VALUE");
+		int name = reader.getColumnIndex("NAME");
+
+		Assert.assertTrue(reader.next());
+		Assert.assertEquals(4, reader.getFieldCount());
+		Assert.assertEquals(1, reader.getInt(from));
+		Assert.assertEquals(3.25, reader.getDouble(value), 0.0);
+		Assert.assertEquals("eins", reader.getField(name).toString());
+
+		Assert.assertTrue(reader.next());
+		Assert.assertEquals(-4L, reader.getLong(from));
+		Assert.assertEquals(-0.5, reader.getDouble(value), 0.0);
+		Assert.assertTrue(reader.isEmpty(name));
+
+		Assert.assertTrue(reader.next());
+		Assert.assertEquals(5, reader.getFieldCount());
+		Assert.assertEquals(Double.POSITIVE_INFINITY, reader.getDouble(value), 0.0);
+		Assert.assertEquals("extra", reader.getString(4));
+
+		Assert.assertTrue(reader.next());
+		Assert.assertEquals(1000.0, reader.getDouble(value), 0.0);
+		Assert.assertEquals(3, reader.getFieldCount());
+		Assert.assertThrows(IndexOutOfBoundsException.class, () -> reader.getField(name));
+
+		Assert.assertFalse(reader.next());
+		reader.close();
+	}
+
+	@Test
+	public void readLineTerminatorsAndTrailingEmptyColumns() throws Exception {
+		String content = "A;B;;\rone;two;;\r\nthree;four\n\rfive\r";
+		CSVReader reader = new CSVReader(";", new BufferedReader(new StringReader(content)));
+		Assert.assertArrayEquals("trailing empty columns of the header are dropped", new String[]{"A", "B"}, reader.getColumns());
+
+		Map<String, String> row = reader.readLine();
+		Assert.assertEquals("one", row.get("A"));
+		Assert.assertEquals("two", row.get("B"));
+		row = reader.readLine();
+		Assert.assertEquals("three", row.get("A"));
+		Assert.assertEquals("four", row.get("B"));
+		row = reader.readLine();
+		Assert.assertEquals("a single \\r after \\n ends another, empty line", "", row.get("A"));
+		Assert.assertNull(row.get("B"));
+		row = reader.readLine();
+		Assert.assertEquals("five", row.get("A"));
+		Assert.assertNull(reader.readLine());
+		reader.close();
+
+		reader = new CSVReader(";", new BufferedReader(new StringReader("ID\n1\n")));
+		Assert.assertArrayEquals(new String[]{"ID"}, reader.getColumns());
+		reader.close();
+	}
+
+	@Test
+	public void readLongFileWithCursor() throws Exception {
+		StringBuilder content = new StringBuilder("ID;VALUE\n");
+		Random random = new Random(42);
+		double[] values = new double[50_000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (random.nextDouble() - 0.5) * 1e6;
+			content.append(i).append(';').append(values[i]).append('\n');
+		}
+		CSVReader reader = new CSVReader(";", new BufferedReader(new StringReader(content.toString())));
+		int count = 0;
+		while (reader.next()) {
+			Assert.assertEquals(count, reader.getInt(0));
+			Assert.assertEquals(values[count], reader.getDouble(1), 0.0);
+			count++;
+		}
+		Assert.assertEquals(values.length, count);
+		reader.close();
+	}
+
+}
@@ -0,0 +1,104 @@
+package ch.sbb.matsim.csv;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes one million rows with the columns of the activity output, once with the column name based setters and once with column indices and typed setters.
+ * The output is discarded, so the benchmark measures formatting and encoding only.
+ * <p>
+ * Run the main method from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CSVWriterBenchmark {
+
+	private static final int ROWS = 1_000_000;
+	private static final String[] COLUMNS = new String[]{"activity_id", "person_id", "facility_id", "start_time", "end_time", "x", "y", "zone"};
+
+	private String[] personIds;
+	private int[] times;
+	private double[] coords;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(20231016);
+		this.personIds = new String[ROWS / 4];
+		for (int i = 0; i < this.personIds.length; i++) {
+			this.personIds[i] = "person_" + random.nextInt(10_000_000);
+		}
+		this.times = new int[ROWS];
+		this.coords = new double[2 * ROWS];
+		for (int i = 0; i < ROWS; i++) {
+			this.times[i] = random.nextInt(30 * 3600);
+			this.coords[2 * i] = 2_480_000 + random.nextDouble() * 350_000;
+			this.coords[2 * i + 1] = 1_070_000 + random.nextDouble() * 230_000;
+		}
+	}
+
+	@Benchmark
+	public void writeByColumnName() throws IOException {
+		try (CSVWriter writer = new CSVWriter(null, COLUMNS, OutputStream.nullOutputStream(), CSVWriter.DEFAULT_SEPARATOR)) {
+			for (int i = 0; i < ROWS; i++) {
+				writer.set("activity_id", Integer.toString(i));
+				writer.set("person_id", this.personIds[i / 4]);
+				writer.set("facility_id", "null");
+				writer.set("start_time", Integer.toString(this.times[i]));
+				writer.set("end_time", Integer.toString(this.times[i] + 3600));
+				writer.set("x", String.valueOf(this.coords[2 * i]));
+				writer.set("y", String.valueOf(this.coords[2 * i + 1]));
+				writer.set("zone", "");
+				writer.writeRow();
+			}
+		}
+	}
+
+	@Benchmark
+	public void writeByColumnIndex() throws IOException {
+		try (CSVWriter writer = new CSVWriter(null, COLUMNS, OutputStream.nullOutputStream(), CSVWriter.DEFAULT_SEPARATOR)) {
+			int activityId = writer.getColumnIndex("activity_id");
+			int personId = writer.getColumnIndex("person_id");
+			int facilityId = writer.getColumnIndex("facility_id");
+			int startTime = writer.getColumnIndex("start_time");
+			int endTime = writer.getColumnIndex("end_time");
+			int x = writer.getColumnIndex("x");
+			int y = writer.getColumnIndex("y");
+			int zone = writer.getColumnIndex("zone");
+			for (int i = 0; i < ROWS; i++) {
+				writer.set(activityId, i);
+				writer.set(personId, this.personIds[i / 4]);
+				writer.set(facilityId, "null");
+				writer.set(startTime, this.times[i]);
+				writer.set(endTime, this.times[i] + 3600);
+				writer.set(x, this.coords[2 * i]);
+				writer.set(y, this.coords[2 * i + 1]);
+				writer.set(zone, "");
+				writer.writeRow();
+			}
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(CSVWriterBenchmark.class.getSimpleName()).build()).run();
+	}
+}
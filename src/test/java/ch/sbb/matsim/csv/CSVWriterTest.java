@@ -50,4 +50,60 @@ public class CSVWriterTest {
 
 		Assert.assertEquals("This is a\nrandom file header\n\nId;ATTR1;ATTR2\n1;eins;zwei\n2;un;deux\n3;uno;due\n4;one;\n5;;two\n", result);
 	}
+
+	@Test
+	public void testWriteWithColumnIndices() throws IOException {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		CSVWriter writer = new CSVWriter(null, new String[]{"Id", "COUNT", "X", "NAME"}, stream, ";");
+		int idColumn = writer.getColumnIndex("Id");
+		int countColumn = writer.getColumnIndex("COUNT");
+		int xColumn = writer.getColumnIndex("X");
+		int nameColumn = writer.getColumnIndex("NAME");
+
+		writer.set(idColumn, 1);
+		writer.set(countColumn, 12345678901L);
+		writer.set(xColumn, 2600000.125, 2);
+		writer.set(nameColumn, "eins");
+		writer.writeRow();
+
+		writer.set(idColumn, -2);
+		writer.set(xColumn, -0.004, 2);
+		writer.writeRow();
+
+		writer.set(idColumn, 3);
+		writer.set(xColumn, 1.5, 0);
+		writer.set("NAME", "drei");
+		writer.writeRow();
+
+		writer.set(idColumn, 4);
+		writer.set(xColumn, Double.NaN, 2);
+		writer.writeRow();
+
+		writer.close();
+
+		Assert.assertEquals("Id;COUNT;X;NAME\n1;12345678901;2600000.13;eins\n-2;;0.00;\n3;;2;drei\n4;;NaN;\n", stream.toString());
+	}
+
+	@Test
+	public void testWriteDoubleLikeToString() throws IOException {
+		double[] values = {2600000.125, 1199999.9999999998, -0.004, 0.1 + 0.2, 1.0, 1e21, Double.NaN, Double.NEGATIVE_INFINITY};
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		CSVWriter writer = new CSVWriter(null, new String[]{"X"}, stream, ";");
+		StringBuilder expected = new StringBuilder("X\n");
+		for (double value : values) {
+			writer.set(0, value);
+			writer.writeRow();
+			expected.append(Double.toString(value)).append('\n');
+		}
+		writer.close();
+
+		Assert.assertEquals(expected.toString(), stream.toString());
+	}
+
+	@Test
+	public void testUnknownColumn() throws IOException {
+		CSVWriter writer = new CSVWriter(null, new String[]{"Id"}, new ByteArrayOutputStream(), ";");
+		Assert.assertThrows(IllegalArgumentException.class, () -> writer.getColumnIndex("foo"));
+		writer.close();
+	}
 }
@@ -6,9 +6,20 @@ import ch.sbb.matsim.config.SwissRailRaptorConfigGroup;
 import ch.sbb.matsim.config.variables.SBBModes;
 import org.junit.Assert;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.core.config.Config;
+import org.matsim.pt.transitSchedule.api.TransitStopFacility;
+
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.matsim.core.config.ConfigUtils.createConfig;
 import static org.matsim.core.scenario.ScenarioUtils.createScenario;
@@ -87,5 +98,120 @@ public class GridbasedAccessEgressCacheTest {
 
     }
 
+    @Test
+    public void testCompactStoreQuantization() {
+        var stops = List.of(Id.create("A", TransitStopFacility.class), Id.create("B", TransitStopFacility.class));
+        GridTravelTimeStore store = new GridTravelTimeStore(stops, 4);
+        ByteBuffer block = store.allocateBlock();
+        GridTravelTimeStore.setTime(block, 2, GridTravelTimeStore.CAR_TIME, 1234.4);
+        GridTravelTimeStore.setDistance(block, 2, GridTravelTimeStore.CAR_DISTANCE, 45678.0);
+        GridTravelTimeStore.setTime(block, 0, GridTravelTimeStore.BIKE_TIME, 99.6);
+        GridTravelTimeStore.setTime(block, 3, GridTravelTimeStore.BIKE_TIME, 100000);
+        GridTravelTimeStore.setDistance(block, 3, GridTravelTimeStore.BIKE_DISTANCE, 99999);
+        GridTravelTimeStore.setUnreachable(block, 1, GridTravelTimeStore.CAR_TIME, GridTravelTimeStore.CAR_DISTANCE);
+        int stopIndex = store.getStopIndex(Id.create("B", TransitStopFacility.class));
+        store.setBlock(stopIndex, block);
+
+        Assert.assertEquals(-1, store.getStopIndex(Id.create("C", TransitStopFacility.class)));
+        Assert.assertFalse(store.hasBlock(store.getStopIndex(Id.create("A", TransitStopFacility.class))));
+        Assert.assertTrue(store.hasBlock(stopIndex));
+        Assert.assertEquals(1234.0, store.getTravelTime(stopIndex, 2, GridTravelTimeStore.CAR_TIME), 0.0);
+        Assert.assertEquals(45680.0, store.getDistance(stopIndex, 2, GridTravelTimeStore.CAR_DISTANCE), 0.0);
+        Assert.assertEquals(65534.0, store.getTravelTime(stopIndex, 3, GridTravelTimeStore.BIKE_TIME), 0.0);
+        Assert.assertEquals(100000.0, store.getDistance(stopIndex, 3, GridTravelTimeStore.BIKE_DISTANCE), 0.0);
+        Assert.assertEquals(0.0, store.getTravelTime(stopIndex, 0, GridTravelTimeStore.CAR_TIME), 0.0);
+        Assert.assertEquals(GridTravelTimeStore.UNREACHABLE_TIME, store.getTravelTime(stopIndex, 1, GridTravelTimeStore.CAR_TIME), 0.0);
+        Assert.assertEquals(GridTravelTimeStore.UNREACHABLE_DISTANCE, store.getDistance(stopIndex, 1, GridTravelTimeStore.CAR_DISTANCE), 0.0);
+        Assert.assertEquals(0.0, store.getTravelTime(stopIndex, 1, GridTravelTimeStore.BIKE_TIME), 0.0);
+        // rounded to the nearest second, the former int[][] layout truncated this to 99
+        Assert.assertEquals(100.0, store.getTravelTime(stopIndex, 0, GridTravelTimeStore.BIKE_TIME), 0.0);
+
+        Assert.assertEquals(4 * 4 * 2, store.getStoredBytes());
+        Assert.assertTrue(store.getMemoryReport().startsWith("Grid cache memory for 1 stops: "));
+    }
+
+    /**
+     * Measures the heap used by the former <code>int[cellSize][4]</code> layout and the direct memory used by the compact blocks for the default grid, after
+     * a garbage collection, and compares them with the figures of the memory report.
+     */
+    @Test
+    public void testMeasuredMemoryOfLegacyAndCompactLayout() {
+        int stopCount = 20;
+        int cellSize = 150 * 150;
+        List<Id<TransitStopFacility>> stops = new ArrayList<>();
+        for (int i = 0; i < stopCount; i++) {
+            stops.add(Id.create("stop" + i, TransitStopFacility.class));
+        }
+
+        long heapBefore = usedHeapAfterGc();
+        int[][][] legacy = new int[stopCount][][];
+        for (int i = 0; i < stopCount; i++) {
+            legacy[i] = new int[cellSize][4];
+        }
+        measuredObject = legacy;
+        long legacyBytes = usedHeapAfterGc() - heapBefore;
+        measuredObject = null;
+        legacy = null;
+        long estimatedBytes = stopCount * GridTravelTimeStore.estimateLegacyBytesPerStop(cellSize);
+        System.out.println("int[][] layout: measured " + legacyBytes + " bytes, estimated " + estimatedBytes + " bytes for " + stopCount + " stops");
+        Assert.assertEquals(estimatedBytes, legacyBytes, estimatedBytes * 0.05);
+
+        long directBefore = usedDirectMemory();
+        GridTravelTimeStore store = new GridTravelTimeStore(stops, cellSize);
+        for (int i = 0; i < stopCount; i++) {
+            store.setBlock(i, store.allocateBlock());
+        }
+        long directBytes = usedDirectMemory() - directBefore;
+        System.out.println("compact layout: measured " + directBytes + " bytes off-heap for " + stopCount + " stops");
+        Assert.assertEquals(store.getStoredBytes(), directBytes);
+        Assert.assertTrue(directBytes * 4 < legacyBytes);
+    }
+
+    private static Object measuredObject;
+
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long usedDirectMemory() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                return pool.getMemoryUsed();
+            }
+        }
+        throw new IllegalStateException("no direct buffer pool");
+    }
+
+    @Test
+    public void testCompactStoreWriteAndMap(@TempDir Path tempDir) throws IOException {
+        var stops = List.of(Id.create("A", TransitStopFacility.class), Id.create("B", TransitStopFacility.class), Id.create("C", TransitStopFacility.class));
+        GridTravelTimeStore store = new GridTravelTimeStore(stops, 3);
+        for (int stopIndex : new int[]{0, 2}) {
+            ByteBuffer block = store.allocateBlock();
+            for (int cell = 0; cell < 3; cell++) {
+                GridTravelTimeStore.setTime(block, cell, GridTravelTimeStore.CAR_TIME, 100 * stopIndex + cell);
+                GridTravelTimeStore.setDistance(block, cell, GridTravelTimeStore.BIKE_DISTANCE, 1000 * stopIndex + 10 * cell);
+            }
+            store.setBlock(stopIndex, block);
+        }
+        Path file = tempDir.resolve("grid.bin");
+        store.writeTo(file);
+
+        GridTravelTimeStore mapped = new GridTravelTimeStore(stops, 3);
+        mapped.mapFrom(file);
+        Assert.assertTrue(mapped.hasBlock(0));
+        Assert.assertFalse(mapped.hasBlock(1));
+        Assert.assertTrue(mapped.hasBlock(2));
+        Assert.assertEquals(202.0, mapped.getTravelTime(2, 2, GridTravelTimeStore.CAR_TIME), 0.0);
+        Assert.assertEquals(2010.0, mapped.getDistance(2, 1, GridTravelTimeStore.BIKE_DISTANCE), 0.0);
+        Assert.assertEquals(1.0, mapped.getTravelTime(0, 1, GridTravelTimeStore.CAR_TIME), 0.0);
+
+        GridTravelTimeStore otherLayout = new GridTravelTimeStore(stops, 4);
+        Assert.assertThrows(IOException.class, () -> otherLayout.mapFrom(file));
+    }
+
 
-}
\ No newline at end of file
+}
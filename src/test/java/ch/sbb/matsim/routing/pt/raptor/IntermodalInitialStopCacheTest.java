@@ -0,0 +1,63 @@
+package ch.sbb.matsim.routing.pt.raptor;
+
+import ch.sbb.matsim.config.variables.SBBModes;
+import ch.sbb.matsim.routing.pt.raptor.RaptorStopFinder.Direction;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.facilities.ActivityFacilitiesFactoryImpl;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.facilities.Facility;
+
+public class IntermodalInitialStopCacheTest {
+
+	private static Facility createFacility(String id, double x, double y) {
+		return new ActivityFacilitiesFactoryImpl().createActivityFacility(Id.create(id, ActivityFacility.class), new Coord(x, y), Id.create(id, Link.class));
+	}
+
+	@Test
+	public void testHitsAndMisses() {
+		IntermodalInitialStopCache cache = new IntermodalInitialStopCache(10);
+		Facility home = createFacility("home", 1000, 2000);
+		Assert.assertNull(cache.get(home, SBBModes.CARFEEDER, Direction.ACCESS));
+
+		IntermodalInitialStopCache.Candidates candidates = new IntermodalInitialStopCache.Candidates(3);
+		candidates.add(null, 12.5, 300.0, 240.0, 1500.0);
+		cache.put(home, SBBModes.CARFEEDER, Direction.ACCESS, candidates.trim());
+
+		IntermodalInitialStopCache.Candidates cached = cache.get(createFacility("home", 1000, 2000), SBBModes.CARFEEDER, Direction.ACCESS);
+		Assert.assertNotNull(cached);
+		Assert.assertEquals(1, cached.size());
+		Assert.assertEquals(1, cached.disutilities.length);
+		Assert.assertEquals(12.5, cached.disutilities[0], 0.0);
+		Assert.assertEquals(300.0, cached.travelTimes[0], 0.0);
+		Assert.assertEquals(240.0, cached.legTravelTimes[0], 0.0);
+		Assert.assertEquals(1500.0, cached.legDistances[0], 0.0);
+
+		Assert.assertNull(cache.get(home, SBBModes.CARFEEDER, Direction.EGRESS));
+		Assert.assertNull(cache.get(home, SBBModes.BIKEFEEDER, Direction.ACCESS));
+		Assert.assertEquals(1, cache.getHits());
+		Assert.assertEquals(3, cache.getMisses());
+		Assert.assertEquals(0.25, cache.getHitRate(), 1e-9);
+
+		cache.clear();
+		Assert.assertEquals(0, cache.size());
+		Assert.assertEquals(0.0, cache.getHitRate(), 0.0);
+		Assert.assertNull(cache.get(home, SBBModes.CARFEEDER, Direction.ACCESS));
+	}
+
+	@Test
+	public void testMaxSize() {
+		IntermodalInitialStopCache cache = new IntermodalInitialStopCache(2);
+		for (int i = 0; i < 5; i++) {
+			cache.put(createFacility("f" + i, i, 0), SBBModes.CARFEEDER, Direction.ACCESS, new IntermodalInitialStopCache.Candidates(0));
+		}
+		Assert.assertEquals(2, cache.size());
+		Assert.assertNotNull(cache.get(createFacility("f0", 0, 0), SBBModes.CARFEEDER, Direction.ACCESS));
+		Assert.assertNull(cache.get(createFacility("f4", 4, 0), SBBModes.CARFEEDER, Direction.ACCESS));
+
+		Assert.assertFalse(new IntermodalInitialStopCache(0).isEnabled());
+	}
+}
@@ -0,0 +1,94 @@
+package ch.sbb.matsim.routing.pt.raptor;
+
+import ch.sbb.matsim.config.SBBIntermodalConfiggroup;
+import ch.sbb.matsim.config.SBBIntermodalModeParameterSet;
+import ch.sbb.matsim.config.SwissRailRaptorConfigGroup;
+import ch.sbb.matsim.config.variables.SBBModes;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.PopulationUtils;
+
+public class IntermodalPersonModeFilterTest {
+
+	private static final Coord HOME = new Coord(0, 0);
+	private static final Coord WORK = new Coord(5000, 0);
+	private static final Coord OTHER = new Coord(0, 5000);
+
+	private static IntermodalPersonModeFilter createFilter() {
+		Config config = ConfigUtils.createConfig();
+		SwissRailRaptorConfigGroup srrConfig = ConfigUtils.addOrGetModule(config, SwissRailRaptorConfigGroup.class);
+		SwissRailRaptorConfigGroup.IntermodalAccessEgressParameterSet walkSet = new SwissRailRaptorConfigGroup.IntermodalAccessEgressParameterSet();
+		walkSet.setMode(TransportMode.walk);
+		srrConfig.addIntermodalAccessEgress(walkSet);
+		SwissRailRaptorConfigGroup.IntermodalAccessEgressParameterSet carSet = new SwissRailRaptorConfigGroup.IntermodalAccessEgressParameterSet();
+		carSet.setMode(SBBModes.CARFEEDER);
+		carSet.setPersonFilterAttribute("hasCar");
+		carSet.setPersonFilterValue("true");
+		srrConfig.addIntermodalAccessEgress(carSet);
+
+		SBBIntermodalConfiggroup intermodalConfig = ConfigUtils.addOrGetModule(config, SBBIntermodalConfiggroup.class);
+		SBBIntermodalModeParameterSet carParams = new SBBIntermodalModeParameterSet();
+		carParams.setMode(SBBModes.CARFEEDER);
+		carParams.setParamPersonActivityFilterAttribute("carFeederActivities");
+		intermodalConfig.addModeParameters(carParams);
+		return new IntermodalPersonModeFilter(config);
+	}
+
+	private static Person createPerson(String id, boolean hasCar, String carFeederActivities) {
+		Person person = PopulationUtils.getFactory().createPerson(Id.create(id, Person.class));
+		person.getAttributes().putAttribute("hasCar", Boolean.toString(hasCar));
+		if (carFeederActivities != null) {
+			person.getAttributes().putAttribute("carFeederActivities", carFeederActivities);
+		}
+		Plan plan = PopulationUtils.createPlan(person);
+		plan.addActivity(PopulationUtils.createActivityFromCoord("home_1", HOME));
+		plan.addLeg(PopulationUtils.createLeg(SBBModes.PT));
+		plan.addActivity(PopulationUtils.createActivityFromCoord("work_2", WORK));
+		person.addPlan(plan);
+		person.setSelectedPlan(plan);
+		return person;
+	}
+
+	@Test
+	public void testActivityFilter() {
+		IntermodalPersonModeFilter filter = createFilter();
+		Person person = createPerson("1", true, "home,");
+		Assert.assertTrue(filter.matches(person, HOME, 0));
+		Assert.assertTrue(filter.matches(person, HOME, 1));
+		Assert.assertTrue(filter.matches(person, WORK, 0));
+		Assert.assertFalse(filter.matches(person, WORK, 1));
+		Assert.assertTrue("no activity at the location, only the person filter applies", filter.matches(person, OTHER, 1));
+	}
+
+	@Test
+	public void testPersonFilter() {
+		IntermodalPersonModeFilter filter = createFilter();
+		Person withoutCar = createPerson("1", false, "home");
+		Assert.assertEquals(1L, filter.getAllowedParamSets(withoutCar, HOME));
+		Assert.assertEquals(1L, filter.getAllowedParamSets(withoutCar, OTHER));
+
+		Person withoutActivityFilter = createPerson("2", true, null);
+		Assert.assertEquals(3L, filter.getAllowedParamSets(withoutActivityFilter, HOME));
+		Assert.assertEquals(3L, filter.getAllowedParamSets(withoutActivityFilter, WORK));
+	}
+
+	@Test
+	public void testChangedSelectedPlan() {
+		IntermodalPersonModeFilter filter = createFilter();
+		Person person = createPerson("1", true, "work");
+		Assert.assertFalse(filter.matches(person, HOME, 1));
+
+		Plan plan = PopulationUtils.createPlan(person);
+		plan.addActivity(PopulationUtils.createActivityFromCoord("work_1", HOME));
+		person.addPlan(plan);
+		person.setSelectedPlan(plan);
+		Assert.assertTrue(filter.matches(person, HOME, 1));
+	}
+}
@@ -0,0 +1,176 @@
+package ch.sbb.matsim.routing.pt.raptor;
+
+import ch.sbb.matsim.RunSBB;
+import ch.sbb.matsim.config.SwissRailRaptorConfigGroup;
+import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorCore.PathElement;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.io.MatsimNetworkReader;
+import org.matsim.core.router.DefaultRoutingRequest;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.pt.transitSchedule.api.TransitSchedule;
+import org.matsim.pt.transitSchedule.api.TransitScheduleReader;
+import org.matsim.pt.transitSchedule.api.TransitStopFacility;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Routes between randomly chosen stops of the mobi31test schedule, departing at random times spread over the whole day, with the mode-to-mode transfer
+ * penalties of the mobi31test config. Compares the {@link SBBRaptorTransferCostCalculator} looking up the penalties by mode names (created without a
+ * schedule) and the one using mode codes to a copy of the calculator before the penalty matrix and the per-thread first path element were added, as
+ * baseline. The same origins, destinations and departure times are used for all three calculators.
+ * <p>
+ * Run the main method from the test classpath, in the project directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class SBBRaptorTransferCostCalculatorBenchmark {
+
+	private static final String FOLDER = "test/input/scenarios/mobi31test/";
+	private static final int ROUTES = 2000;
+	private static final long SEED = 4711;
+
+	private SwissRailRaptor baselineRaptor;
+	private SwissRailRaptor modeNamesRaptor;
+	private SwissRailRaptor modeCodesRaptor;
+	private final List<TransitStopFacility> fromStops = new ArrayList<>();
+	private final List<TransitStopFacility> toStops = new ArrayList<>();
+	private double[] departureTimes;
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(SBBRaptorTransferCostCalculatorBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	@Setup
+	public void setup() {
+		Config config = RunSBB.buildConfig(FOLDER + "config.xml");
+		// stop to stop routing, the intermodal access and egress would need the person attributes of the population
+		ConfigUtils.addOrGetModule(config, SwissRailRaptorConfigGroup.class).setUseIntermodalAccessEgress(false);
+		Scenario scenario = ScenarioUtils.createScenario(config);
+		new MatsimNetworkReader(scenario.getNetwork()).readFile(FOLDER + "network.xml.gz");
+		new TransitScheduleReader(scenario).readFile(FOLDER + "transitSchedule.xml.gz");
+		TransitSchedule schedule = scenario.getTransitSchedule();
+
+		SwissRailRaptorData data = SwissRailRaptorData.create(schedule, null, RaptorUtils.createStaticConfig(config), scenario.getNetwork(), null);
+		this.baselineRaptor = new SwissRailRaptor.Builder(data, config).with(new BaselineTransferCostCalculator()).build();
+		this.modeNamesRaptor = new SwissRailRaptor.Builder(data, config).with(new SBBRaptorTransferCostCalculator()).build();
+		this.modeCodesRaptor = new SwissRailRaptor.Builder(data, config).with(new SBBRaptorTransferCostCalculator(schedule)).build();
+
+		List<TransitStopFacility> stops = new ArrayList<>(schedule.getFacilities().values());
+		stops.sort(Comparator.comparing(stop -> stop.getId().toString()));
+		Random random = new Random(SEED);
+		this.departureTimes = new double[ROUTES];
+		for (int i = 0; i < ROUTES; i++) {
+			TransitStopFacility from = stops.get(random.nextInt(stops.size()));
+			TransitStopFacility to = stops.get(random.nextInt(stops.size()));
+			while (to == from) {
+				to = stops.get(random.nextInt(stops.size()));
+			}
+			this.fromStops.add(from);
+			this.toStops.add(to);
+			this.departureTimes[i] = random.nextInt(24 * 3600);
+		}
+	}
+
+	@Benchmark
+	public int baseline() {
+		return routeSample(this.baselineRaptor);
+	}
+
+	@Benchmark
+	public int modeNames() {
+		return routeSample(this.modeNamesRaptor);
+	}
+
+	@Benchmark
+	public int modeCodes() {
+		return routeSample(this.modeCodesRaptor);
+	}
+
+	private int routeSample(SwissRailRaptor raptor) {
+		int legs = 0;
+		for (int i = 0; i < ROUTES; i++) {
+			List<?> route = raptor.calcRoute(DefaultRoutingRequest.withoutAttributes(this.fromStops.get(i), this.toStops.get(i), this.departureTimes[i], null));
+			legs += route == null ? 0 : route.size();
+		}
+		return legs;
+	}
+
+	/**
+	 * The transfer cost calculation as it was before mode codes were introduced: the penalties are looked up by mode names, and the first path element of
+	 * the trip part is searched again for every transfer.
+	 */
+	private static class BaselineTransferCostCalculator implements RaptorTransferCostCalculator {
+
+		private static final int TIME_UNDEFINED = Integer.MIN_VALUE;
+
+		@Override
+		public double calcTransferCost(PathElement currentPE, Supplier<Transfer> transfer, RaptorStaticConfig staticConfig, RaptorParameters raptorParams, int totalTravelTime, int transferCount, double existingTransferCosts, double currentTime) {
+			double transferCostBase = raptorParams.getTransferPenaltyFixCostPerTransfer();
+			double transferCostPerHour = raptorParams.getTransferPenaltyPerTravelTimeHour();
+			double transferCostMin = raptorParams.getTransferPenaltyMinimum();
+			double transferCostMax = raptorParams.getTransferPenaltyMaximum();
+
+			if (staticConfig.isUseModeToModeTransferPenalty()) {
+				double transferCostModeToMode = staticConfig.getModeToModeTransferPenalty(transfer.get().getFromTransitRoute().getTransportMode(), transfer.get().getToTransitRoute().getTransportMode());
+				PathElement firstPEOfTripPart = getFirstPEOfTripPart(currentPE, staticConfig);
+				double baseArrivalTransferCost = firstPEOfTripPart.arrivalTransferCost;
+				int transferCountSinceModeChange = transferCount;
+				double travelTimeSinceModeChange = totalTravelTime;
+				if (firstPEOfTripPart.comingFrom != null) {
+					if (currentPE.firstDepartureTime != TIME_UNDEFINED) {
+						currentTime = currentPE.firstDepartureTime + totalTravelTime;
+					}
+					travelTimeSinceModeChange = currentTime + transfer.get().getTransferTime() - firstPEOfTripPart.arrivalTime;
+					transferCountSinceModeChange = transferCount - firstPEOfTripPart.transferCount;
+				}
+				double singleTransferCost = calcSingleTransferCost(transferCostBase, transferCostPerHour, transferCostMin, transferCostMax, travelTimeSinceModeChange);
+				if (transferCostModeToMode > 0) {
+					return transferCountSinceModeChange > 0 ? baseArrivalTransferCost + transferCostModeToMode - existingTransferCosts : 0;
+				}
+				return baseArrivalTransferCost + (singleTransferCost * transferCountSinceModeChange) - existingTransferCosts;
+			}
+			return (calcSingleTransferCost(transferCostBase, transferCostPerHour, transferCostMin, transferCostMax, totalTravelTime) * transferCount) - existingTransferCosts;
+		}
+
+		private PathElement getFirstPEOfTripPart(PathElement fromPE, RaptorStaticConfig staticConfig) {
+			PathElement checkElement = fromPE;
+			String mode = checkElement.toRouteStop.route.getTransportMode();
+			while ((checkElement.comingFrom != null) && ((staticConfig.isUseModeToModeTransferPenalty() & checkElement.isTransfer) ? staticConfig.getModeToModeTransferPenalty(checkElement.comingFrom.toRouteStop.route.getTransportMode(), mode) : 0) == 0) {
+				mode = checkElement.toRouteStop.route.getTransportMode();
+				checkElement = checkElement.comingFrom;
+			}
+			return checkElement;
+		}
+
+		private double calcSingleTransferCost(double costBase, double costPerHour, double costMin, double costMax, double travelTime) {
+			double cost = costBase + costPerHour / 3600 * travelTime;
+			double max = Math.max(costMin, costMax);
+			double min = Math.min(costMin, costMax);
+			return Math.max(min, Math.min(max, cost));
+		}
+	}
+}
@@ -27,6 +27,11 @@ public class SBBRaptorTransferCostCalculatorTest extends TestCase {
 		return raptor;
 	}
 
+	private SwissRailRaptor createTransitRouterWithModeCodes(TransitSchedule schedule, Config config, Network network) {
+		SwissRailRaptorData data = SwissRailRaptorData.create(schedule, null, RaptorUtils.createStaticConfig(config), network, null);
+		return new SwissRailRaptor.Builder(data, config).with(new SBBRaptorTransferCostCalculator(schedule)).build();
+	}
+
 	@Test
 	public void testNoModeToModePenalties() {
 		Fixture f = new Fixture();
@@ -200,4 +205,47 @@ public class SBBRaptorTransferCostCalculatorTest extends TestCase {
 		assertEquals(Math.ceil(expectedTravelTime), actualTravelTime, MatsimTestUtils.EPSILON);
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void testModeCodesGiveSameRoutesAsModeNames() {
+		Fixture f = new Fixture();
+		f.init();
+		SwissRailRaptorConfigGroup srrConfig = ConfigUtils.addOrGetModule(f.config, SwissRailRaptorConfigGroup.class);
+		srrConfig.addModeToModeTransferPenalty(new SwissRailRaptorConfigGroup.ModeToModeTransferPenalty("train", "bus", 1.3));
+		srrConfig.addModeToModeTransferPenalty(new SwissRailRaptorConfigGroup.ModeToModeTransferPenalty("bus", "train", 1.3));
+		srrConfig.addModeToModeTransferPenalty(new SwissRailRaptorConfigGroup.ModeToModeTransferPenalty("bus", "bus", 4.02));
+		SwissRailRaptor modeNamesRouter = createTransitRouter(f.schedule, f.config, f.network);
+		SwissRailRaptor modeCodesRouter = createTransitRouterWithModeCodes(f.schedule, f.config, f.network);
+
+		for (double time = 5.0 * 3600; time < 9.0 * 3600; time += 1200) {
+			for (TransitStopFacility from : f.schedule.getFacilities().values()) {
+				for (TransitStopFacility to : f.schedule.getFacilities().values()) {
+					if (from == to) {
+						continue;
+					}
+					List<? extends PlanElement> expected = modeNamesRouter.calcRoute(DefaultRoutingRequest.withoutAttributes(from, to, time, null));
+					List<? extends PlanElement> actual = modeCodesRouter.calcRoute(DefaultRoutingRequest.withoutAttributes(from, to, time, null));
+					String message = "from " + from.getId() + " to " + to.getId() + " at " + time;
+					if (expected == null) {
+						assertNull(message, actual);
+						continue;
+					}
+					assertEquals(message, expected.size(), actual.size());
+					for (int i = 0; i < expected.size(); i++) {
+						Leg expectedLeg = (Leg) expected.get(i);
+						Leg actualLeg = (Leg) actual.get(i);
+						assertEquals(message, expectedLeg.getMode(), actualLeg.getMode());
+						assertEquals(message, expectedLeg.getDepartureTime(), actualLeg.getDepartureTime());
+						assertEquals(message, expectedLeg.getTravelTime(), actualLeg.getTravelTime());
+						if (expectedLeg.getRoute() instanceof TransitPassengerRoute expectedRoute) {
+							TransitPassengerRoute actualRoute = (TransitPassengerRoute) actualLeg.getRoute();
+							assertEquals(message, expectedRoute.getRouteId(), actualRoute.getRouteId());
+							assertEquals(message, expectedRoute.getAccessStopId(), actualRoute.getAccessStopId());
+							assertEquals(message, expectedRoute.getEgressStopId(), actualRoute.getEgressStopId());
+						}
+					}
+				}
+			}
+		}
+	}
+
+}
@@ -10,11 +10,24 @@ import org.apache.logging.log4j.Logger;
 import org.junit.jupiter.api.Test;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.PopulationFactory;
 import org.matsim.core.config.groups.ScoringConfigGroup;
 import org.matsim.core.scoring.functions.ScoringParameters;
 import org.matsim.testcases.MatsimTestUtils;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 
 public class SBBScoringParametersForPersonTest {
 
@@ -119,4 +132,69 @@ public class SBBScoringParametersForPersonTest {
 		assertEquals(1.4 / 3600, params.modeParams.get(SBBModes.PT).marginalUtilityOfTraveling_s, 0.0);
 		assertEquals(0.0, params.modeParams.get(SBBModes.PT).monetaryDistanceCostRate, 0.0);
 	}
+
+	@Test
+	public void testSharedScoringParams() {
+		ScoringFixture f = new ScoringFixture();
+		f.addCustomScoringParams();
+		f.addPersonNoAttribute();
+		f.personOneAttribute();
+		f.personTwoAttribute();
+		Person samePerson = f.scenario.getPopulation().getFactory().createPerson(Id.create(5, Person.class));
+		samePerson.addPlan(f.scenario.getPopulation().getFactory().createPlan());
+		samePerson.getAttributes().putAttribute("season_ticket", "Generalabo");
+		samePerson.getAttributes().putAttribute("raumtyp", 5);
+		f.scenario.getPopulation().addPerson(samePerson);
+
+		SBBCharyparNagelScoringParametersForPerson psf = new SBBCharyparNagelScoringParametersForPerson(f.scenario);
+		ScoringParameters noAttribute = psf.getScoringParameters(f.scenario.getPopulation().getPersons().get(Id.create(1, Person.class)));
+		ScoringParameters oneAttribute = psf.getScoringParameters(f.scenario.getPopulation().getPersons().get(Id.create(2, Person.class)));
+		ScoringParameters twoAttributes = psf.getScoringParameters(f.scenario.getPopulation().getPersons().get(Id.create(3, Person.class)));
+		assertNotSame(noAttribute, oneAttribute);
+		assertNotSame(oneAttribute, twoAttributes);
+		assertSame("other attribute value of the same person group", twoAttributes, psf.getScoringParameters(samePerson));
+	}
+
+	@Test
+	public void testConcurrentScoringParams() throws InterruptedException, ExecutionException {
+		ScoringFixture f = new ScoringFixture();
+		f.addCustomScoringParams();
+		PopulationFactory pf = f.scenario.getPopulation().getFactory();
+		String[] seasonTickets = {null, "Generalabo", "none"};
+		for (int i = 0; i < 1000; i++) {
+			Person person = pf.createPerson(Id.create(i, Person.class));
+			person.addPlan(pf.createPlan());
+			if (seasonTickets[i % 3] != null) {
+				person.getAttributes().putAttribute("season_ticket", seasonTickets[i % 3]);
+			}
+			f.scenario.getPopulation().addPerson(person);
+		}
+
+		SBBCharyparNagelScoringParametersForPerson psf = new SBBCharyparNagelScoringParametersForPerson(f.scenario);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<List<ScoringParameters>>> results = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				results.add(executor.submit(() -> {
+					List<ScoringParameters> params = new ArrayList<>();
+					for (Person person : f.scenario.getPopulation().getPersons().values()) {
+						params.add(psf.getScoringParameters(person));
+					}
+					return params;
+				}));
+			}
+			List<ScoringParameters> first = results.get(0).get();
+			Set<ScoringParameters> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+			distinct.addAll(first);
+			assertEquals(2, distinct.size());
+			for (Future<List<ScoringParameters>> result : results) {
+				List<ScoringParameters> params = result.get();
+				for (int i = 0; i < params.size(); i++) {
+					assertSame(first.get(i), params.get(i));
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
 }
@@ -0,0 +1,91 @@
+package ch.sbb.matsim.zones;
+
+import ch.sbb.matsim.config.variables.Variables;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.matsim.api.core.v01.Id;
+
+import java.util.Random;
+
+public class RasterizedZonesTest {
+
+	@Test
+	public void testSameResultsAsZonesImpl() {
+		Zones zones = ZonesLoader.loadZones("zones", "test/input/scenarios/mobi50test/zones/mobi-zones.shp", Variables.ZONE_ID);
+		RasterizedZones rasterized = new RasterizedZones(zones, 100.0);
+
+		Envelope extent = new Envelope();
+		zones.getZones().forEach(zone -> extent.expandToInclude(zone.getEnvelope()));
+		extent.expandBy(1000.0);
+		Random random = new Random(42);
+		for (int i = 0; i < 50_000; i++) {
+			double x = extent.getMinX() + random.nextDouble() * extent.getWidth();
+			double y = extent.getMinY() + random.nextDouble() * extent.getHeight();
+			Assert.assertSame("x=" + x + " y=" + y, zones.findZone(x, y), rasterized.findZone(x, y));
+		}
+		Assert.assertEquals(zones.size(), rasterized.size());
+	}
+
+	@Test
+	public void testSameResultsForOverlappingZones() {
+		ZonesImpl zones = new ZonesImpl(Id.create("zones", Zones.class));
+		zones.add(new TestZone("large", 0, 0, 1000, 1000));
+		zones.add(new TestZone("inner", 300, 300, 700, 700));
+		zones.add(new TestZone("shifted", 500, 500, 1500, 1500));
+		RasterizedZones rasterized = new RasterizedZones(zones, 50.0);
+
+		for (double x = -100; x <= 1600; x += 7.0) {
+			for (double y = -100; y <= 1600; y += 7.0) {
+				Assert.assertSame("x=" + x + " y=" + y, zones.findZone(x, y), rasterized.findZone(x, y));
+			}
+		}
+		Assert.assertNull(rasterized.findZone(1200, 200));
+	}
+
+	private static class TestZone implements Zone {
+
+		private static final GeometryFactory F = new GeometryFactory();
+
+		private final Id<Zone> id;
+		private final Geometry geom;
+
+		TestZone(String id, double minX, double minY, double maxX, double maxY) {
+			this.id = Id.create(id, Zone.class);
+			this.geom = F.toGeometry(new Envelope(minX, maxX, minY, maxY));
+		}
+
+		@Override
+		public Id<Zone> getId() {
+			return this.id;
+		}
+
+		@Override
+		public Object getAttribute(String name) {
+			return null;
+		}
+
+		@Override
+		public Envelope getEnvelope() {
+			return this.geom.getEnvelopeInternal();
+		}
+
+		@Override
+		public boolean contains(Point pt) {
+			return this.geom.intersects(pt);
+		}
+
+		@Override
+		public double distance(Point pt) {
+			return this.geom.distance(pt);
+		}
+
+		@Override
+		public Geometry getGeometry() {
+			return this.geom;
+		}
+	}
+}
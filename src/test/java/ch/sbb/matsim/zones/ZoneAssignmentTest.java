@@ -0,0 +1,66 @@
+package ch.sbb.matsim.zones;
+
+import ch.sbb.matsim.config.variables.Variables;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.facilities.ActivityFacilities;
+import org.matsim.facilities.ActivityFacility;
+
+public class ZoneAssignmentTest {
+
+	@Test
+	public void testAssignment() {
+		Zones zones = ZonesLoader.loadZones("zones", "test/input/scenarios/mobi31test/zones/andermatt-zones.shp", Variables.ZONE_ID);
+		Zone zone = zones.getZones().get(0);
+		Coord inside = new Coord(zone.getGeometry().getInteriorPoint().getX(), zone.getGeometry().getInteriorPoint().getY());
+		Coord outside = new Coord(zone.getEnvelope().getMinX() - 100000, zone.getEnvelope().getMinY() - 100000);
+
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		Network network = scenario.getNetwork();
+		Node n1 = network.getFactory().createNode(Id.createNodeId("za1"), new Coord(inside.getX() - 1, inside.getY()));
+		Node n2 = network.getFactory().createNode(Id.createNodeId("za2"), new Coord(inside.getX() + 1, inside.getY()));
+		Node n3 = network.getFactory().createNode(Id.createNodeId("za3"), outside);
+		network.addNode(n1);
+		network.addNode(n2);
+		network.addNode(n3);
+		Link insideLink = network.getFactory().createLink(Id.createLinkId("za_in"), n1, n2);
+		Link outsideLink = network.getFactory().createLink(Id.createLinkId("za_out"), n2, n3);
+		network.addLink(insideLink);
+		network.addLink(outsideLink);
+
+		ActivityFacilities facilities = scenario.getActivityFacilities();
+		ActivityFacility facility = facilities.getFactory().createActivityFacility(Id.create("za_f", ActivityFacility.class), inside);
+		facilities.addActivityFacility(facility);
+
+		ZonesCollection collection = new ZonesCollection();
+		collection.addZones(zones);
+		collection.precomputeZoneAssignments(network, facilities);
+		ZoneAssignment assignment = collection.getZoneAssignment(zones.getId());
+
+		Assert.assertSame(zones.findZone(insideLink.getCoord()), assignment.getZoneForLink(insideLink));
+		Assert.assertSame(zone, assignment.getZoneForLink(insideLink));
+		Assert.assertSame(zones.findZone(outsideLink.getCoord()), assignment.getZoneForLink(outsideLink));
+		Assert.assertSame(zone, assignment.getZone(facility.getId(), inside));
+		Assert.assertNull(assignment.getZone(facility.getId(), outside));
+		Assert.assertNull(assignment.getZone(null, outside));
+
+		// links created after the precomputation fall back to a direct query
+		Link lateLink = network.getFactory().createLink(Id.createLinkId("za_late"), n2, n1);
+		network.addLink(lateLink);
+		Assert.assertSame(zone, assignment.getZoneForLink(lateLink));
+
+		// without precomputation, the assignment queries the zones directly
+		ZonesCollection plainCollection = new ZonesCollection();
+		plainCollection.addZones(zones);
+		Assert.assertSame(zone, plainCollection.getZoneAssignment(zones.getId()).getZone(null, inside));
+		Assert.assertNull(plainCollection.getZoneAssignment(Id.create("unknown", Zones.class)));
+	}
+}
@@ -1,12 +1,16 @@
 package ch.sbb.matsim.zones;
 
 import ch.sbb.matsim.config.ZonesListConfigGroup;
+import ch.sbb.matsim.config.variables.Variables;
 import org.junit.Assert;
 import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Envelope;
 import org.matsim.api.core.v01.Id;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 
+import java.util.Random;
+
 /**
  * @author mrieser
  */
@@ -39,4 +43,42 @@ public class ZonesLoaderTest {
 		Assert.assertNotNull(testZones);
 		Assert.assertEquals(5, testZones.size());
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testLoadAllZonesRasterized() {
+		Config config = ConfigUtils.createConfig();
+		ZonesListConfigGroup cfg = new ZonesListConfigGroup();
+		ZonesListConfigGroup.ZonesParameterSet zonesParams = new ZonesListConfigGroup.ZonesParameterSet("testZones", "src/test/resources/shapefiles/AccessTime/accesstime_zone.shp", "ID");
+		zonesParams.setRasterCellSize(500.0);
+		cfg.addZones(zonesParams);
+		ZonesCollection zonesCollection = new ZonesCollection();
+		config.addModule(cfg);
+		ZonesLoader.loadAllZones(config, zonesCollection);
+
+		Zones testZones = zonesCollection.getZones(Id.create("testZones", Zones.class));
+		Assert.assertTrue(testZones instanceof RasterizedZones);
+		Assert.assertEquals(5, testZones.size());
+		Assert.assertEquals("4", testZones.findZone(600000, 200000).getId().toString());
+		Assert.assertNull(testZones.findZone(610000, 207000));
+	}
+
+	@Test
+	public void testPreparedGeometriesGiveSameResults() {
+		Zones quadtreeZones = ZonesLoader.loadZones("zones", "test/input/scenarios/mobi50test/zones/mobi-zones.shp", Variables.ZONE_ID);
+		Zones preparedZones = ZonesLoader.loadZones("zones", "test/input/scenarios/mobi50test/zones/mobi-zones.shp", Variables.ZONE_ID, true);
+
+		Envelope extent = new Envelope();
+		quadtreeZones.getZones().forEach(zone -> extent.expandToInclude(zone.getEnvelope()));
+		Random random = new Random(42);
+		for (int i = 0; i < 10_000; i++) {
+			double x = extent.getMinX() + random.nextDouble() * extent.getWidth();
+			double y = extent.getMinY() + random.nextDouble() * extent.getHeight();
+			Zone expected = quadtreeZones.findZone(x, y);
+			Zone actual = preparedZones.findZone(x, y);
+			Assert.assertEquals(expected == null ? null : expected.getId(), actual == null ? null : actual.getId());
+			Zone expectedNearest = quadtreeZones.findNearestZone(x, y, 500);
+			Zone actualNearest = preparedZones.findNearestZone(x, y, 500);
+			Assert.assertEquals(expectedNearest == null ? null : expectedNearest.getId(), actualNearest == null ? null : actualNearest.getId());
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package ch.sbb.matsim.zones;
+
+import ch.sbb.matsim.config.variables.Variables;
+import org.locationtech.jts.geom.Envelope;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link Zones#findZone(double, double)} of {@link ZonesImpl}, {@link ZonesQueryCache} and {@link RasterizedZones} on the zones of the test scenario.
+ * Queries are drawn from a limited set of locations, similar to activity locations that are looked up repeatedly by the analyses.
+ * <p>
+ * Run the main method from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ZonesLookupBenchmark {
+
+	private static final String ZONES_FILE = "test/input/scenarios/mobi50test/zones/mobi-zones.shp";
+	private static final int LOCATIONS = 20_000;
+	private static final int QUERIES = 100_000;
+
+	private Zones zonesImpl;
+	private Zones queryCache;
+	private Zones rasterized;
+	private final double[] xs = new double[QUERIES];
+	private final double[] ys = new double[QUERIES];
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(ZonesLookupBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	@Setup
+	public void setup() {
+		this.zonesImpl = ZonesLoader.loadZones("zones", ZONES_FILE, Variables.ZONE_ID);
+		this.queryCache = new ZonesQueryCache(this.zonesImpl);
+		this.rasterized = new RasterizedZones(this.zonesImpl);
+
+		Envelope extent = new Envelope();
+		this.zonesImpl.getZones().forEach(zone -> extent.expandToInclude(zone.getEnvelope()));
+		Random random = new Random(20240501);
+		double[] locationXs = new double[LOCATIONS];
+		double[] locationYs = new double[LOCATIONS];
+		for (int i = 0; i < LOCATIONS; i++) {
+			locationXs[i] = extent.getMinX() + random.nextDouble() * extent.getWidth();
+			locationYs[i] = extent.getMinY() + random.nextDouble() * extent.getHeight();
+		}
+		for (int i = 0; i < QUERIES; i++) {
+			int location = random.nextInt(LOCATIONS);
+			this.xs[i] = locationXs[location];
+			this.ys[i] = locationYs[location];
+		}
+	}
+
+	@Benchmark
+	public int zonesImpl() {
+		return query(this.zonesImpl);
+	}
+
+	@Benchmark
+	public int zonesQueryCache() {
+		return query(this.queryCache);
+	}
+
+	@Benchmark
+	public int rasterizedZones() {
+		return query(this.rasterized);
+	}
+
+	private int query(Zones zones) {
+		int found = 0;
+		for (int i = 0; i < QUERIES; i++) {
+			if (zones.findZone(this.xs[i], this.ys[i]) != null) {
+				found++;
+			}
+		}
+		return found;
+	}
+}
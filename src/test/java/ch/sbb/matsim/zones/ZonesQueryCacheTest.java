@@ -190,6 +190,11 @@ public class ZonesQueryCacheTest {
 		public double distance(Point pt) {
 			return this.geom.distance(pt);
 		}
+
+		@Override
+		public Geometry getGeometry() {
+			return this.geom;
+		}
 	}
 
 }